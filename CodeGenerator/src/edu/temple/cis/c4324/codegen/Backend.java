@@ -0,0 +1,98 @@
+package edu.temple.cis.c4324.codegen;
+
+import org.apache.bcel.generic.Type;
+
+/**
+ * The operations a compiler uses to generate a class. CodeGenerator builds
+ * the class with BCEL; ClassFileWriter writes the class file bytes
+ * directly. Type names are given as to CodeGenerator.getType.
+ */
+public interface Backend {
+
+    /**
+     * Set the listener notified as each method is finished.
+     * @param methodListener The listener, or null for none
+     */
+    void setMethodListener(CodeGenerator.MethodListener methodListener);
+
+    /**
+     * Begin a public class whose superclass is java.lang.Object.
+     * @param sourceFileName The name of the source file
+     * @param className The name of the class
+     */
+    void beginClass(String sourceFileName, String className);
+
+    /**
+     * Add a private static field.
+     * @param name The name of the field
+     * @param typeName The type of the field
+     */
+    void addStaticField(String name, String typeName);
+
+    /**
+     * Begin a method, ending the current method if there is one.
+     * @param accessFlags The access flags
+     * @param returnTypeName The return type
+     * @param methodName The method name
+     * @param arguments The arguments, each a type and a name separated by
+     * space
+     * @return The code of the method
+     */
+    Code beginCode(int accessFlags, String returnTypeName, String methodName, String... arguments);
+
+    /**
+     * Add a local variable to the current method.
+     * @param name The name of the local variable
+     * @param typeName The type of the local variable
+     * @return The index of the local variable
+     */
+    int addLocalVariable(String name, String typeName);
+
+    /**
+     * Get the index of a local variable or argument of the current method.
+     * @param name The name of the local variable
+     * @return The index, or -1 if it is not defined
+     */
+    int getLocalVariableIndex(String name);
+
+    /**
+     * Get the constant pool index of a class, adding it if needed.
+     * @param className The fully qualified class name
+     * @return The index of the Class constant
+     */
+    int getClassRef(String className);
+
+    /**
+     * Get the constant pool index of a field reference, adding it if needed.
+     * @param fieldClass The fully qualified class name of the field
+     * @param name The name of the field
+     * @param type The type of the field
+     * @return The index of the Fieldref constant
+     */
+    int getFieldRef(String fieldClass, String name, Type type);
+
+    /**
+     * Get the constant pool index of a method reference, adding it if needed.
+     * @param methodClass The fully qualified class name of the method
+     * @param name The name of the method
+     * @param returnType The return type
+     * @param argumentTypes The types of the arguments
+     * @return The index of the Methodref constant
+     */
+    int getMethodRef(String methodClass, String name, Type returnType, Type... argumentTypes);
+
+    String getClassName();
+
+    /**
+     * End the current method. A return is added if the code has none, and
+     * the method is added to the class.
+     */
+    void endMethod();
+
+    /**
+     * Get the class file of the class.
+     * @return The bytes of the class file
+     */
+    byte[] getClassBytes();
+
+}
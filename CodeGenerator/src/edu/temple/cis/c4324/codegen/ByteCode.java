@@ -0,0 +1,390 @@
+package edu.temple.cis.c4324.codegen;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.BasicType;
+import org.apache.bcel.generic.InstructionConstants;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.ReferenceType;
+import org.apache.bcel.generic.Type;
+
+/**
+ * The code of a method written by ClassFileWriter. The instructions are
+ * written as bytes as they are added, and the stack depth is followed so
+ * that the maximum stack size and the number of local variable slots are
+ * known when the method ends. A branch to a label that is not bound yet is
+ * written with a zero offset, which is fixed when the label is bound.
+ * <p>
+ * The depth is followed through the code in the order it is written. A
+ * label carries the depth of the branches to it, which is the depth after
+ * an unconditional branch or a return. Code that no branch reaches starts
+ * at depth zero, as a statement does.
+ */
+final class ByteCode implements Code {
+
+    private final ConstantPool pool;
+    private final ByteVector code;
+    private int stack;
+    private int maxStack;
+    private int maxLocals;
+    private boolean reachable;
+    private boolean returns;
+    private int instructionCount;
+
+    /**
+     * @param pool The constant pool of the class
+     * @param locals The number of slots taken by the arguments
+     */
+    ByteCode(ConstantPool pool, int locals) {
+        this.pool = pool;
+        code = new ByteVector(64);
+        maxLocals = locals;
+        reachable = true;
+    }
+
+    ByteVector bytes() {
+        return code;
+    }
+
+    int length() {
+        return code.length();
+    }
+
+    int getMaxStack() {
+        return maxStack;
+    }
+
+    int getMaxLocals() {
+        return maxLocals;
+    }
+
+    /**
+     * Make room for a local variable added by the method.
+     */
+    void addLocal(int slot, int size) {
+        maxLocals = Math.max(maxLocals, slot + size);
+    }
+
+    int getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * Determine whether the code has an areturn, dreturn, ireturn or return
+     * instruction, the ones CodeGenerator looks for before adding a return.
+     */
+    boolean hasReturn() {
+        return returns;
+    }
+
+    /**
+     * Write the opcode of an instruction whose operands follow.
+     */
+    private void begin(int opcode) {
+        if (!reachable) {
+            stack = 0;
+            reachable = true;
+        }
+        instructionCount++;
+        code.putByte(opcode);
+    }
+
+    private void stack(int consumed, int produced) {
+        stack -= consumed;
+        if (stack < 0) {
+            throw new IllegalStateException("Operand stack underflow at " + code.length());
+        }
+        stack += produced;
+        if (stack > maxStack) {
+            maxStack = stack;
+        }
+    }
+
+    /**
+     * Write an instruction whose stack effect does not depend on its
+     * operands.
+     */
+    private void op(short opcode) {
+        begin(opcode);
+        stack(Constants.CONSUME_STACK[opcode], Constants.PRODUCE_STACK[opcode]);
+        if (opcode >= Constants.IRETURN && opcode <= Constants.RETURN || opcode == Constants.ATHROW) {
+            reachable = false;
+            returns |= opcode != Constants.LRETURN && opcode != Constants.FRETURN && opcode != Constants.ATHROW;
+        }
+    }
+
+    @Override
+    public void addInstruction(short opcode) {
+        if (InstructionConstants.INSTRUCTIONS[opcode] == null) {
+            throw new RuntimeException(Constants.OPCODE_NAMES[opcode] + " has operands");
+        }
+        op(opcode);
+    }
+
+    private void ldc(int index, int words) {
+        if (words == 2) {
+            begin(Constants.LDC2_W);
+            code.putShort(index);
+        } else if (index <= 0xff) {
+            begin(Constants.LDC);
+            code.putByte(index);
+        } else {
+            begin(Constants.LDC_W);
+            code.putShort(index);
+        }
+        stack(0, words);
+    }
+
+    @Override
+    public void addConstant(int value) {
+        if (value >= -1 && value <= 5) {
+            op((short) (Constants.ICONST_0 + value));
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            begin(Constants.BIPUSH);
+            code.putByte(value);
+            stack(0, 1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            begin(Constants.SIPUSH);
+            code.putShort(value);
+            stack(0, 1);
+        } else {
+            ldc(pool.integer(value), 1);
+        }
+    }
+
+    @Override
+    public void addConstant(long value) {
+        if (value == 0 || value == 1) {
+            op((short) (Constants.LCONST_0 + value));
+        } else {
+            ldc(pool.longConstant(value), 2);
+        }
+    }
+
+    @Override
+    public void addConstant(float value) {
+        if (Float.floatToIntBits(value) == 0) {
+            op(Constants.FCONST_0);
+        } else if (value == 1.0f) {
+            op(Constants.FCONST_1);
+        } else if (value == 2.0f) {
+            op(Constants.FCONST_2);
+        } else {
+            ldc(pool.floatConstant(value), 1);
+        }
+    }
+
+    @Override
+    public void addConstant(double value) {
+        if (Double.doubleToLongBits(value) == 0L) {
+            op(Constants.DCONST_0);
+        } else if (value == 1.0) {
+            op(Constants.DCONST_1);
+        } else {
+            ldc(pool.doubleConstant(value), 2);
+        }
+    }
+
+    @Override
+    public void addConstant(String value) {
+        ldc(pool.string(value), 1);
+    }
+
+    @Override
+    public void addArithmetic(short opcode, Type type) {
+        op(Opcodes.arithmetic(opcode, type));
+    }
+
+    /**
+     * Get the constant pool index of the class of a reference type.
+     */
+    private int classRef(Type type) {
+        if (type instanceof ArrayType) {
+            return pool.classRef(type.getSignature());
+        }
+        return pool.classRef(((ObjectType) type).getClassName().replace('.', '/'));
+    }
+
+    @Override
+    public void addCast(Type from, Type to) {
+        if (from instanceof ReferenceType && to instanceof ReferenceType) {
+            begin(Constants.CHECKCAST);
+            code.putShort(classRef(to));
+            stack(1, 1);
+        } else {
+            op(Opcodes.conversion(from, to));
+        }
+    }
+
+    @Override
+    public void addArrayLoad(Type type) {
+        op(Opcodes.arrayElement(Constants.IALOAD, type));
+    }
+
+    @Override
+    public void addArrayStore(Type type) {
+        op(Opcodes.arrayElement(Constants.IASTORE, type));
+    }
+
+    @Override
+    public void addNewArray(Type type, int dimensions) {
+        if (dimensions > 1) {
+            int classRef = classRef(new ArrayType(type, dimensions));
+            begin(Constants.MULTIANEWARRAY);
+            code.putShort(classRef);
+            code.putByte(dimensions);
+            stack(dimensions, 1);
+        } else if (type instanceof BasicType) {
+            begin(Constants.NEWARRAY);
+            code.putByte(type.getType());
+            stack(1, 1);
+        } else {
+            int classRef = classRef(type);
+            begin(Constants.ANEWARRAY);
+            code.putShort(classRef);
+            stack(1, 1);
+        }
+    }
+
+    @Override
+    public void addNew(int classRef) {
+        begin(Constants.NEW);
+        code.putShort(classRef);
+        stack(0, 1);
+    }
+
+    @Override
+    public void addReturn(Type type) {
+        op(Opcodes.typed(Constants.IRETURN, type));
+    }
+
+    @Override
+    public void addInvoke(short kind, int methodRef) {
+        if (kind != Constants.INVOKESTATIC && kind != Constants.INVOKEVIRTUAL && kind != Constants.INVOKESPECIAL) {
+            throw new RuntimeException("Unsupported invoke instruction " + Constants.OPCODE_NAMES[kind]);
+        }
+        int words = pool.stackWords(methodRef);
+        begin(kind);
+        code.putShort(methodRef);
+        stack((words >> 8) + (kind == Constants.INVOKESTATIC ? 0 : 1), words & 0xff);
+    }
+
+    /**
+     * Write a branch instruction and its offset, or remember it until the
+     * label is bound.
+     */
+    private void branch(short opcode, Label target) {
+        int site = code.length();
+        begin(opcode);
+        stack(Constants.CONSUME_STACK[opcode], 0);
+        if (target.stack < 0) {
+            target.stack = stack;
+        }
+        if (target.offset >= 0) {
+            code.putShort(offset(site, target.offset));
+        } else {
+            target.addSite(site);
+            code.putShort(0);
+        }
+    }
+
+    private static int offset(int site, int target) {
+        int offset = target - site;
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new RuntimeException("Branch offset " + offset + " out of range");
+        }
+        return offset;
+    }
+
+    @Override
+    public void addIf(short opcode, Type type, Label trueTarget) {
+        int branch = Opcodes.branch(opcode, type);
+        if (branch >> 16 != 0) {
+            op((short) (branch >> 16));
+        }
+        branch((short) branch, trueTarget);
+    }
+
+    @Override
+    public void addIfNot(short opcode, Type type, Label falseTarget) {
+        int branch = Opcodes.branch(opcode, type);
+        if (branch >> 16 != 0) {
+            op((short) (branch >> 16));
+        }
+        branch(Opcodes.negate((short) branch), falseTarget);
+    }
+
+    @Override
+    public void addGoTo(Label target) {
+        branch(Constants.GOTO, target);
+        reachable = false;
+    }
+
+    /**
+     * Write a load or store of a local variable.
+     * @param opcode The instruction for the type, such as ILOAD or DSTORE
+     * @param shortForm The opcode of its form for slot 0
+     */
+    private void local(short opcode, int shortForm, Type type, int index) {
+        if (index < 0 || index > 0xffff) {
+            throw new RuntimeException("Illegal local variable index " + index);
+        }
+        if (index <= 3) {
+            begin(shortForm + index);
+        } else if (index <= 0xff) {
+            begin(opcode);
+            code.putByte(index);
+        } else {
+            begin(Constants.WIDE);
+            code.putByte(opcode);
+            code.putShort(index);
+        }
+        stack(Constants.CONSUME_STACK[opcode], Constants.PRODUCE_STACK[opcode]);
+        maxLocals = Math.max(maxLocals, index + type.getSize());
+    }
+
+    @Override
+    public void addLoad(Type type, int index) {
+        local(Opcodes.typed(Constants.ILOAD, type), Constants.ILOAD_0 + Opcodes.typeIndex(type) * 4, type, index);
+    }
+
+    @Override
+    public void addStore(Type type, int index) {
+        local(Opcodes.typed(Constants.ISTORE, type), Constants.ISTORE_0 + Opcodes.typeIndex(type) * 4, type, index);
+    }
+
+    @Override
+    public void addGetStatic(int fieldRef) {
+        begin(Constants.GETSTATIC);
+        code.putShort(fieldRef);
+        stack(0, pool.stackWords(fieldRef));
+    }
+
+    @Override
+    public void addPutStatic(int fieldRef) {
+        begin(Constants.PUTSTATIC);
+        code.putShort(fieldRef);
+        stack(pool.stackWords(fieldRef), 0);
+    }
+
+    @Override
+    public void bind(Label label) {
+        if (label.isBound()) {
+            throw new IllegalStateException("Label is already bound");
+        }
+        int offset = code.length();
+        label.offset = offset;
+        for (int i = 0; i < label.siteCount; i++) {
+            int site = label.sites[i];
+            code.setShort(site + 1, offset(site, offset));
+        }
+        label.siteCount = 0;
+        if (!reachable) {
+            stack = label.stack >= 0 ? label.stack : 0;
+            reachable = true;
+        } else if (label.stack < 0) {
+            label.stack = stack;
+        }
+    }
+
+}
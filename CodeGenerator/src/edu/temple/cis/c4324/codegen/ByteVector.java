@@ -0,0 +1,107 @@
+package edu.temple.cis.c4324.codegen;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of bytes, written in the big-endian order of a class
+ * file.
+ */
+final class ByteVector {
+
+    private byte[] data;
+    private int length;
+
+    ByteVector(int capacity) {
+        data = new byte[capacity];
+    }
+
+    int length() {
+        return length;
+    }
+
+    private void ensure(int size) {
+        if (length + size > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + size));
+        }
+    }
+
+    void putByte(int value) {
+        ensure(1);
+        data[length++] = (byte) value;
+    }
+
+    void putShort(int value) {
+        ensure(2);
+        data[length++] = (byte) (value >>> 8);
+        data[length++] = (byte) value;
+    }
+
+    void putInt(int value) {
+        ensure(4);
+        data[length++] = (byte) (value >>> 24);
+        data[length++] = (byte) (value >>> 16);
+        data[length++] = (byte) (value >>> 8);
+        data[length++] = (byte) value;
+    }
+
+    void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    void putBytes(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, data, length, bytes.length);
+        length += bytes.length;
+    }
+
+    void putBytes(ByteVector other) {
+        ensure(other.length);
+        System.arraycopy(other.data, 0, data, length, other.length);
+        length += other.length;
+    }
+
+    /**
+     * Write a string in the modified UTF-8 form of a class file, preceded
+     * by its length.
+     */
+    void putUtf8(String s) {
+        int n = s.length();
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            size += c >= 1 && c <= 0x7f ? 1 : c <= 0x7ff ? 2 : 3;
+        }
+        if (size > 0xffff) {
+            throw new RuntimeException("String constant too long");
+        }
+        putShort(size);
+        ensure(size);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 1 && c <= 0x7f) {
+                data[length++] = (byte) c;
+            } else if (c <= 0x7ff) {
+                data[length++] = (byte) (0xc0 | c >> 6);
+                data[length++] = (byte) (0x80 | c & 0x3f);
+            } else {
+                data[length++] = (byte) (0xe0 | c >> 12);
+                data[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                data[length++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    /**
+     * Overwrite two bytes already written.
+     */
+    void setShort(int offset, int value) {
+        data[offset] = (byte) (value >>> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(data, length);
+    }
+
+}
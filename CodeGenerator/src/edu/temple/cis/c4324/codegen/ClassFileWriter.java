@@ -0,0 +1,249 @@
+package edu.temple.cis.c4324.codegen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.apache.bcel.Constants.ACC_PRIVATE;
+import static org.apache.bcel.Constants.ACC_PUBLIC;
+import static org.apache.bcel.Constants.ACC_STATIC;
+import static org.apache.bcel.Constants.ACC_SUPER;
+import static org.apache.bcel.Constants.RETURN;
+import org.apache.bcel.generic.Type;
+
+/**
+ * Backend that writes the class file bytes directly, without building the
+ * BCEL class, method and instruction objects. The constant pool and the
+ * code of each method are written as they are generated, and the maximum
+ * stack size and number of locals are followed as each instruction is
+ * written rather than computed when the method ends. The class has the
+ * same form as one from CodeGenerator.
+ */
+public class ClassFileWriter implements Backend {
+
+    private ConstantPool pool;
+    private String className;
+    private String internalName;
+    private int sourceFile;
+    private int fieldCount;
+    private ByteVector fields;
+    private int methodCount;
+    private ByteVector methods;
+    private CodeGenerator.MethodListener methodListener;
+
+    // The method being written.
+    private String methodName;
+    private int methodAccess;
+    private String methodDescriptor;
+    private ByteCode code;
+    private Map<String, Integer> localVariables;
+    private List<String> localNames;
+    private List<Type> localTypes;
+    private List<Integer> localSlots;
+    private int nextSlot;
+
+    public ClassFileWriter() {
+    }
+
+    @Override
+    public void setMethodListener(CodeGenerator.MethodListener methodListener) {
+        this.methodListener = methodListener;
+    }
+
+    @Override
+    public void beginClass(String sourceFileName, String className) {
+        this.className = className;
+        internalName = className.replace('.', '/');
+        pool = new ConstantPool();
+        pool.classRef(internalName);
+        pool.classRef("java/lang/Object");
+        sourceFile = pool.utf8(sourceFileName);
+        fields = new ByteVector(64);
+        methods = new ByteVector(1024);
+        fieldCount = 0;
+        methodCount = 0;
+    }
+
+    @Override
+    public void addStaticField(String name, String typeName) {
+        Type type = InstructionList.getTypeFromName(typeName);
+        fields.putShort(ACC_PRIVATE | ACC_STATIC);
+        fields.putShort(pool.utf8(name));
+        fields.putShort(pool.utf8(type.getSignature()));
+        fields.putShort(0);
+        fieldCount++;
+    }
+
+    @Override
+    public Code beginCode(int accessFlags, String returnTypeName, String methodName, String... arguments) {
+        if (code != null) {
+            endMethod();
+        }
+        this.methodName = methodName;
+        methodAccess = accessFlags;
+        localVariables = new HashMap<>();
+        localNames = new ArrayList<>();
+        localTypes = new ArrayList<>();
+        localSlots = new ArrayList<>();
+        // Slot 0 holds this in an instance method, and a double argument
+        // takes two slots.
+        nextSlot = (accessFlags & ACC_STATIC) != 0 ? 0 : 1;
+        Type[] argTypes = Type.NO_ARGS;
+        if (arguments != null) {
+            argTypes = new Type[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                String[] arg = arguments[i].split("\\s+");
+                argTypes[i] = InstructionList.getTypeFromName(arg[0]);
+                addLocal(arg[1], argTypes[i]);
+            }
+        }
+        Type returnType = InstructionList.getTypeFromName(returnTypeName);
+        methodDescriptor = Type.getMethodSignature(returnType, argTypes);
+        code = new ByteCode(pool, nextSlot);
+        return code;
+    }
+
+    private int addLocal(String name, Type type) {
+        int slot = nextSlot;
+        localVariables.put(name, slot);
+        localNames.add(name);
+        localTypes.add(type);
+        localSlots.add(slot);
+        nextSlot += type.getSize();
+        return slot;
+    }
+
+    @Override
+    public int addLocalVariable(String name, String typeName) {
+        Integer index = localVariables.get(name);
+        if (index == null) {
+            Type type = InstructionList.getTypeFromName(typeName);
+            index = addLocal(name, type);
+            code.addLocal(index, type.getSize());
+        }
+        return index;
+    }
+
+    @Override
+    public int getLocalVariableIndex(String name) {
+        Integer index = localVariables.get(name);
+        return index != null ? index : -1;
+    }
+
+    @Override
+    public int getClassRef(String className) {
+        return pool.classRef(className.replace('.', '/'));
+    }
+
+    @Override
+    public int getFieldRef(String fieldClass, String name, Type type) {
+        return pool.fieldRef(fieldClass.replace('.', '/'), name, type.getSignature(), type.getSize());
+    }
+
+    @Override
+    public int getMethodRef(String methodClass, String name, Type returnType, Type... argumentTypes) {
+        int words = 0;
+        for (Type argumentType : argumentTypes) {
+            words += argumentType.getSize();
+        }
+        return pool.methodRef(methodClass.replace('.', '/'), name,
+                Type.getMethodSignature(returnType, argumentTypes), words << 8 | returnType.getSize());
+    }
+
+    @Override
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * End the current method. A return is added if the code has none, and
+     * the method is written with its Code attribute and stack map frames.
+     */
+    @Override
+    public void endMethod() {
+        if (methodListener != null) {
+            methodListener.endingMethod(methodName);
+        }
+        if (!code.hasReturn()) {
+            code.addInstruction(RETURN);
+        }
+        int length = code.length();
+        if (length > 0xffff) {
+            throw new RuntimeException("Code of method " + methodName + " is too long");
+        }
+        byte[] bytes = code.bytes().toByteArray();
+        StackMapBuilder builder = new StackMapBuilder(pool, internalName);
+        byte[] frames = builder.build(bytes, (methodAccess & ACC_STATIC) != 0, methodName.equals("<init>"),
+                methodDescriptor, code.getMaxLocals(), code.getMaxStack());
+        int maxStack = builder.hasDeadCode() ? Math.max(code.getMaxStack(), 1) : code.getMaxStack();
+        int localCount = localNames.size();
+        methods.putShort(methodAccess);
+        methods.putShort(pool.utf8(methodName));
+        methods.putShort(pool.utf8(methodDescriptor));
+        methods.putShort(1);
+        methods.putShort(pool.utf8("Code"));
+        // As in a BCEL method, there is no LocalVariableTable if there are no
+        // local variables.
+        int tableLength = localCount > 0 ? 2 + 10 * localCount : 0;
+        int attributeCount = (localCount > 0 ? 1 : 0) + (frames != null ? 1 : 0);
+        methods.putInt(12 + length + (localCount > 0 ? 6 + tableLength : 0)
+                + (frames != null ? 6 + frames.length : 0));
+        methods.putShort(maxStack);
+        methods.putShort(code.getMaxLocals());
+        methods.putInt(length);
+        methods.putBytes(bytes);
+        methods.putShort(0);
+        methods.putShort(attributeCount);
+        if (localCount > 0) {
+            methods.putShort(pool.utf8("LocalVariableTable"));
+            methods.putInt(tableLength);
+            methods.putShort(localCount);
+        }
+        for (int i = 0; i < localCount; i++) {
+            methods.putShort(0);
+            methods.putShort(length);
+            methods.putShort(pool.utf8(localNames.get(i)));
+            methods.putShort(pool.utf8(localTypes.get(i).getSignature()));
+            methods.putShort(localSlots.get(i));
+        }
+        if (frames != null) {
+            methods.putShort(pool.utf8("StackMapTable"));
+            methods.putInt(frames.length);
+            methods.putBytes(frames);
+        }
+        methodCount++;
+        if (methodListener != null) {
+            methodListener.methodEnded(methodName, code.getInstructionCount());
+        }
+        code = null;
+    }
+
+    /**
+     * Get the class file of the class written so far.
+     * @return The bytes of the class file
+     */
+    @Override
+    public byte[] getClassBytes() {
+        int sourceFileName = pool.utf8("SourceFile");
+        ByteVector out = new ByteVector(24 + pool.bytes().length() + fields.length() + methods.length());
+        out.putInt(0xCAFEBABE);
+        out.putShort(0);
+        out.putShort(CodeGenerator.MAJOR_VERSION);
+        out.putShort(pool.count());
+        out.putBytes(pool.bytes());
+        out.putShort(ACC_PUBLIC | ACC_SUPER);
+        out.putShort(pool.classRef(internalName));
+        out.putShort(pool.classRef("java/lang/Object"));
+        out.putShort(0);
+        out.putShort(fieldCount);
+        out.putBytes(fields);
+        out.putShort(methodCount);
+        out.putBytes(methods);
+        out.putShort(1);
+        out.putShort(sourceFileName);
+        out.putInt(2);
+        out.putShort(sourceFile);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,116 @@
+package edu.temple.cis.c4324.codegen;
+
+import org.apache.bcel.generic.Type;
+
+/**
+ * The code of the method being generated by a Backend. Instructions are
+ * added to the end of the code. Branches go to labels, which are bound to
+ * the next instruction added, so that a branch may come before its target.
+ * The opcodes are the constants in org.apache.bcel.Constants, and the types
+ * are BCEL types, whichever backend writes the code.
+ */
+public interface Code {
+
+    /**
+     * Add an instruction that has no operands, such as nop, dup, pop or i2d.
+     * @param opcode The opcode
+     */
+    void addInstruction(short opcode);
+
+    /**
+     * Add an instruction to push an int constant, using the shortest form.
+     * A char or boolean constant is pushed as an int.
+     * @param value The value
+     */
+    void addConstant(int value);
+
+    void addConstant(long value);
+
+    void addConstant(float value);
+
+    void addConstant(double value);
+
+    void addConstant(String value);
+
+    /**
+     * Add an arithmetic, shift or bitwise instruction for operands of a
+     * given type.
+     * @param opcode The int form of the instruction, such as IADD or INEG
+     * @param type The type of the operands
+     */
+    void addArithmetic(short opcode, Type type);
+
+    /**
+     * Add an instruction to convert between two primitive types, or to cast
+     * between two reference types.
+     * @param from The type of the value
+     * @param to The type to convert it to
+     */
+    void addCast(Type from, Type to);
+
+    void addArrayLoad(Type type);
+
+    void addArrayStore(Type type);
+
+    /**
+     * Add an instruction to create an array.
+     * @param type The type of the elements
+     * @param dimensions The number of dimensions whose lengths are on the stack
+     */
+    void addNewArray(Type type, int dimensions);
+
+    /**
+     * Add an instruction to create an object, which is not initialized.
+     * @param classRef The index of the Class constant
+     */
+    void addNew(int classRef);
+
+    /**
+     * Add a return instruction.
+     * @param type The type of the returned value, or VOID
+     */
+    void addReturn(Type type);
+
+    /**
+     * Add an invoke instruction.
+     * @param kind INVOKESTATIC, INVOKEVIRTUAL or INVOKESPECIAL
+     * @param methodRef The index of the Methodref constant
+     */
+    void addInvoke(short kind, int methodRef);
+
+    /**
+     * Add a conditional branch. For long, float and double operands a
+     * compare instruction is added first.
+     * @param opcode The branch, as for InstructionList.addIf
+     * @param type The type of the operands
+     * @param trueTarget The destination if the condition is true
+     */
+    void addIf(short opcode, Type type, Label trueTarget);
+
+    /**
+     * Add a conditional branch that is taken when the condition is false.
+     * The compare instruction is the one addIf adds, so the branch is taken
+     * exactly when the branch of addIf would not be.
+     * @param opcode The branch, as for InstructionList.addIf
+     * @param type The type of the operands
+     * @param falseTarget The destination if the condition is false
+     */
+    void addIfNot(short opcode, Type type, Label falseTarget);
+
+    void addGoTo(Label target);
+
+    void addLoad(Type type, int index);
+
+    void addStore(Type type, int index);
+
+    void addGetStatic(int fieldRef);
+
+    void addPutStatic(int fieldRef);
+
+    /**
+     * Bind a label to the next instruction added.
+     * @param label The label, which must not be bound
+     */
+    void bind(Label label);
+
+}
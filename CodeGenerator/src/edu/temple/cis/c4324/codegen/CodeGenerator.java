@@ -2,43 +2,77 @@ package edu.temple.cis.c4324.codegen;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import static org.apache.bcel.Constants.ACC_PRIVATE;
 import static org.apache.bcel.Constants.ACC_PUBLIC;
 import static org.apache.bcel.Constants.ACC_STATIC;
 import static org.apache.bcel.Constants.ACC_SUPER;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantDouble;
+import org.apache.bcel.classfile.ConstantFloat;
+import org.apache.bcel.classfile.ConstantInteger;
+import org.apache.bcel.classfile.ConstantLong;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantString;
 import org.apache.bcel.classfile.InnerClass;
 import org.apache.bcel.classfile.InnerClasses;
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.Unknown;
 import org.apache.bcel.generic.BranchHandle;
 import org.apache.bcel.generic.ClassGen;
 import org.apache.bcel.generic.ConstantPoolGen;
 import org.apache.bcel.generic.FieldGen;
-import org.apache.bcel.generic.GOTO;
-import org.apache.bcel.generic.IfInstruction;
 import static org.apache.bcel.generic.InstructionConstants.ARETURN;
 import static org.apache.bcel.generic.InstructionConstants.DRETURN;
 import static org.apache.bcel.generic.InstructionConstants.IRETURN;
 import static org.apache.bcel.generic.InstructionConstants.RETURN;
 import org.apache.bcel.generic.InstructionFactory;
-import org.apache.bcel.generic.InstructionHandle;
-import org.apache.bcel.generic.InstructionTargeter;
 import org.apache.bcel.generic.LocalVariableGen;
 import org.apache.bcel.generic.MethodGen;
-import org.apache.bcel.generic.TargetLostException;
 import org.apache.bcel.generic.Type;
 import static org.apache.bcel.generic.Type.NO_ARGS;
-import org.apache.bcel.util.InstructionFinder;
-import org.apache.bcel.util.InstructionFinder.CodeConstraint;
 
 /**
- * Class to generate Java classes. Uses Apache BECL.
+ * Class to generate Java classes. Uses Apache BECL. It is the BCEL Backend
+ * of the compiler.
  * @author Paul
  */
-public class CodeGenerator {
+public class CodeGenerator implements Backend {
+
+    /**
+     * Interface to be notified as each method is finished. It allows the
+     * time spent in BCEL and the size of each method to be measured.
+     */
+    public interface MethodListener {
+
+        /**
+         * Called at the start of endMethod, before the maximum stack size
+         * and number of locals are computed.
+         * @param methodName The name of the method
+         */
+        void endingMethod(String methodName);
+
+        /**
+         * Called once the method has been added to the class.
+         * @param methodName The name of the method
+         * @param instructionCount The number of instructions in the method
+         */
+        void methodEnded(String methodName, int instructionCount);
+    }
+
+    /**
+     * The class file version of the generated classes. Java 8 classes have
+     * StackMapTable frames, so the JVM checks the given types rather than
+     * inferring them when it verifies a class.
+     */
+    public static final int MAJOR_VERSION = 52;
 
     // fields are pachage private to facilitate unit tests.
     ClassGen cg;
@@ -51,8 +85,32 @@ public class CodeGenerator {
     CodeGenerator parent;
     List<InnerClass> innerClassesList;
     Map<String, Integer> localVariables;
+    MethodListener methodListener;
+    Optimizer optimizer;
 
     public CodeGenerator() {
+        optimizer = new Optimizer(0);
+    }
+
+    /**
+     * Set the optimizer run on the code of each method. The default
+     * optimizer is at level 0, which leaves the code as it was generated.
+     * @param optimizer The optimizer
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    /**
+     * Set the listener notified as each method is finished.
+     * @param methodListener The listener, or null for none
+     */
+    public void setMethodListener(MethodListener methodListener) {
+        this.methodListener = methodListener;
     }
 
     /**
@@ -69,6 +127,8 @@ public class CodeGenerator {
         this.className = className;
         modifiers |= ACC_SUPER; // JVM Spec says should always be set. Ignored in Java 8 and above.
         cg = new ClassGen(className, superClassName, sourceFileName, modifiers, interfaces);
+        cg.setMajor(MAJOR_VERSION);
+        cg.setMinor(0);
         cp = cg.getConstantPool();
         factory = new InstructionFactory(cp);
     }
@@ -99,6 +159,7 @@ public class CodeGenerator {
         addInnerClass(innerClassName, this.className, className, modifiers);
         innerClassCodeGenerator.addInnerClass(innerClassName, this.className, className, modifiers);
         innerClassCodeGenerator.parent = this;
+        innerClassCodeGenerator.optimizer = optimizer;
         return innerClassCodeGenerator;
     }
 
@@ -162,13 +223,27 @@ public class CodeGenerator {
         il = newInstructionList();
         mg = new MethodGen(accessFlags, returnType, argTypes, argNames, methodName, className, il, cp);
         if (arguments != null) {
+            // Slot 0 holds this in an instance method, and a double argument
+            // takes two slots.
+            int slot = (accessFlags & ACC_STATIC) != 0 ? 0 : 1;
             for (int i = 0; i < arguments.length; i++) {
-                localVariables.put(argNames[i], i);
+                localVariables.put(argNames[i], slot);
+                slot += argTypes[i].getSize();
             }
         }
         return mg;
     }
 
+    /**
+     * Begin a method and get its code, to which instructions are added as
+     * to its instruction list.
+     */
+    @Override
+    public Code beginCode(int accessFlags, String returnTypeName, String methodName, String... arguments) {
+        beginMethod(accessFlags, returnTypeName, methodName, arguments);
+        return new InstructionListCode(il);
+    }
+
     /**
      * Method to begin a main method
      * @return a MethodGen for this method
@@ -206,121 +281,182 @@ public class CodeGenerator {
      *
      * @param name Name of the local variable
      * @param typeName Type of the local variable
+     * @return The index of the local variable
      */
-    public void addLocalVariable(String name, String typeName) {
-        if (!localVariables.containsKey(name)) {
+    public int addLocalVariable(String name, String typeName) {
+        Integer index = localVariables.get(name);
+        if (index == null) {
             Type type = InstructionList.getTypeFromName(typeName);
             LocalVariableGen lg = mg.addLocalVariable(name, type, null, null);
-            localVariables.put(name, lg.getIndex());
+            index = lg.getIndex();
+            localVariables.put(name, index);
         }
+        return index;
     }
 
+    /**
+     * Get the index of a local variable or argument of the current method.
+     *
+     * @param name Name of the local variable
+     * @return The index of the local variable, or -1 if it is not defined
+     */
+    public int getLocalVariableIndex(String name) {
+        Integer index = localVariables.get(name);
+        return index != null ? index : -1;
+    }
 
     /**
-     * End a method. The method code is optimized and the
-     * method is then added to the class.
+     * Get the constant pool index of a class, adding it to the constant
+     * pool the first time it is requested.
+     *
+     * @param className The fully qualified class name
+     * @return The index of the Class constant
+     */
+    @Override
+    public int getClassRef(String className) {
+        return cp.addClass(className);
+    }
+
+    /**
+     * Get the constant pool index of a field reference. The reference is
+     * added to the constant pool the first time it is requested, so it may
+     * be kept and used by getstatic and putstatic instructions without
+     * building the reference again.
+     *
+     * @param fieldClass The fully qualified class name of the field
+     * @param name The name of the field
+     * @param type The type of the field
+     * @return The index of the Fieldref constant
+     */
+    public int getFieldRef(String fieldClass, String name, Type type) {
+        return cp.addFieldref(fieldClass, name, type.getSignature());
+    }
+
+    /**
+     * Get the constant pool index of a method reference, to be kept and used
+     * by invoke instructions in the same way as a field reference.
+     *
+     * @param methodClass The fully qualified class name of the method
+     * @param name The name of the method
+     * @param returnType The return type
+     * @param argumentTypes The types of the arguments
+     * @return The index of the Methodref constant
+     */
+    public int getMethodRef(String methodClass, String name, Type returnType, Type... argumentTypes) {
+        return cp.addMethodref(methodClass, name, Type.getMethodSignature(returnType, argumentTypes));
+    }
+
+    /**
+     * Get the type from the type name.
+     *
+     * @param typeName A string representing the type. Note that other than
+     * String all object types must be fully qualified.
+     * @return the Type object
+     */
+    public static Type getType(String typeName) {
+        return InstructionList.getTypeFromName(typeName);
+    }
+
+
+    /**
+     * End a method. The method code is optimized, its stack map frames are
+     * computed and the method is then added to the class.
      */
     public void endMethod() {
-//        optimizeIfStatements(il);
-//        removeNops(il);
-//        removeRedundantGoTo(il);
-        mg.setMaxStack();
-        mg.setMaxLocals();
+        if (methodListener != null) {
+            methodListener.endingMethod(mg.getName());
+        }
         if (!(il.contains(ARETURN) || il.contains(DRETURN) || il.contains(IRETURN) || il.contains(RETURN))) {
             il.addInstruction("return");
         }
-        cg.addMethod(mg.getMethod());
+        optimizer.optimize(il);
+        mg.setMaxStack();
+        mg.setMaxLocals();
+        Method method = mg.getMethod();
+        addStackMapTable(method);
+        cg.addMethod(method);
+        if (methodListener != null) {
+            methodListener.methodEnded(mg.getName(), il.getLength());
+        }
         il.dispose();
         mg = null;
     }
 
     /**
-     * Optimize If Statements by removing redundant constant loads.
-     * @param il The instruction list.
+     * Add the StackMapTable attribute to the code of a method. Unreachable
+     * code is replaced by the frame computation, so the code and its maximum
+     * stack size are set again.
+     * @param method The method
      */
-    private void optimizeIfStatements(InstructionList il) {
-        InstructionFinder f = new InstructionFinder(il);
-        String pat = "IfInstruction ICONST_0 GOTO ICONST_1 NOP (IFEQ|IFNE)";
-        CodeConstraint constraint = (match -> {
-            IfInstruction if1 = (IfInstruction) match[0].getInstruction();
-            GOTO g = (GOTO) match[2].getInstruction();
-            return (if1.getTarget() == match[3] && g.getTarget() == match[4]);
-        });
-        boolean removed;
-        do {
-            removed = false;
-            for (Iterator<InstructionHandle[]> e = f.search(pat, constraint); e.hasNext();) {
-                InstructionHandle[] match = e.next();
-                ((BranchHandle) match[0]).setTarget(((BranchHandle) match[5]).getTarget());
-                removed = true;
-                try {
-                    il.delete(match[1], match[5]);
-                } catch (TargetLostException ex) {
-                    for (InstructionHandle target : ex.getTargets()) {
-                        for (InstructionTargeter targeter : target.getTargeters()) {
-                            targeter.updateTarget(target, match[5].getNext());
-                        }
-                    }
-                }
-            }
-            if (removed) {
-                f.reread();
-            }
-        } while (removed);
+    private void addStackMapTable(Method method) {
+        org.apache.bcel.classfile.Code code = method.getCode();
+        if (code == null) {
+            return;
+        }
+        if (code.getExceptionTable().length > 0) {
+            throw new RuntimeException("Frames of exception handlers are not supported");
+        }
+        byte[] bytes = code.getCode();
+        StackMapBuilder builder = new StackMapBuilder(new Pool(cp), className.replace('.', '/'));
+        byte[] table = builder.build(bytes, mg.isStatic(), mg.getName().equals("<init>"), mg.getSignature(),
+                code.getMaxLocals(), code.getMaxStack());
+        if (table == null) {
+            return;
+        }
+        if (builder.hasDeadCode()) {
+            code.setCode(bytes);
+            code.setMaxStack(Math.max(code.getMaxStack(), 1));
+        }
+        Attribute[] attributes = code.getAttributes();
+        Attribute[] newAttributes = Arrays.copyOf(attributes, attributes.length + 1);
+        newAttributes[attributes.length] = new Unknown(cp.addUtf8("StackMapTable"), table.length, table,
+                cp.getConstantPool());
+        code.setAttributes(newAttributes);
     }
 
     /**
-     * Remove nop instructions
-     * @param il The instruction list
+     * The constant pool of the class, as the frame computation uses it.
      */
-    private void removeNops(InstructionList il) {
-        InstructionFinder f = new InstructionFinder(il);
-        String pat = "NOP+";
-        InstructionHandle next;
-        for (Iterator<InstructionHandle[]> iter = f.search(pat); iter.hasNext();) {
-            InstructionHandle[] match = iter.next();
-            InstructionHandle first = match[0];
-            InstructionHandle last = match[match.length - 1];
-            next = last.getNext();
-            if (next == null) {
-                break;
-            }
-            try {
-                il.delete(first, last);
-            } catch (TargetLostException ex) {
-                for (InstructionHandle target : ex.getTargets()) {
-                    for (InstructionTargeter targeter : target.getTargeters()) {
-                        targeter.updateTarget(target, next);
-                    }
-                }
-            }
+    private static class Pool implements StackMapBuilder.Pool {
+
+        private final ConstantPoolGen cp;
+
+        Pool(ConstantPoolGen cp) {
+            this.cp = cp;
         }
-    }
 
-    /**
-     * Remove redundant goto instructions. A redundant goto is one that jumps
-     * to the immediately following instruction.
-     * @param il 
-     */
-    private void removeRedundantGoTo(InstructionList il) {
-        InstructionFinder f = new InstructionFinder(il);
-        String pat = "GOTO";
-        InstructionHandle next;
-        for (Iterator<InstructionHandle[]> iter = f.search(pat); iter.hasNext();) {
-            InstructionHandle[] match = iter.next();
-            BranchHandle gotoInstruction = (BranchHandle) match[0];
-            next = gotoInstruction.getNext();
-            if (gotoInstruction.getTarget() == next) {
-                try {
-                    il.delete(gotoInstruction);
-                } catch (TargetLostException ex) {
-                    for (InstructionHandle target : ex.getTargets()) {
-                        for (InstructionTargeter targeter : target.getTargeters()) {
-                            targeter.updateTarget(target, next);
-                        }
-                    }
-                }
+        @Override
+        public String getConstantType(int index) {
+            Constant constant = cp.getConstant(index);
+            if (constant instanceof ConstantInteger) {
+                return "I";
+            } else if (constant instanceof ConstantFloat) {
+                return "F";
+            } else if (constant instanceof ConstantLong) {
+                return "J";
+            } else if (constant instanceof ConstantDouble) {
+                return "D";
+            } else if (constant instanceof ConstantString) {
+                return "Ljava/lang/String;";
             }
+            return "Ljava/lang/Class;";
+        }
+
+        @Override
+        public String getMemberDescriptor(int index) {
+            ConstantCP member = (ConstantCP) cp.getConstant(index);
+            ConstantNameAndType nameAndType = (ConstantNameAndType) cp.getConstant(member.getNameAndTypeIndex());
+            return nameAndType.getSignature(cp.getConstantPool());
+        }
+
+        @Override
+        public String getClassName(int index) {
+            return ((ConstantClass) cp.getConstant(index)).getBytes(cp.getConstantPool());
+        }
+
+        @Override
+        public int addClass(String internalName) {
+            return cp.addClass(internalName);
         }
     }
 
@@ -332,6 +468,15 @@ public class CodeGenerator {
         return cg.getJavaClass();
     }
 
+    /**
+     * Get the class file of the class built so far.
+     * @return The bytes of the class file
+     */
+    @Override
+    public byte[] getClassBytes() {
+        return cg.getJavaClass().getBytes();
+    }
+
     /**
      * Method to end a class. Adds am inner classes attribute if this is an
      * inner class or if it contains inner classes. The class is then written
@@ -366,6 +511,15 @@ public class CodeGenerator {
         return className;
     }
        
+    /**
+     * Get the instruction list of the current method, so that code may be
+     * added to it directly instead of through lists that are appended.
+     * @return The instruction list of the current method
+     */
+    public InstructionList getInstructionList() {
+        return il;
+    }
+
     /**
      * Get a new InstructionList
      * @return a new InstrucitonList
@@ -0,0 +1,215 @@
+package edu.temple.cis.c4324.codegen;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.bcel.Constants;
+
+/**
+ * The constant pool of a class written by ClassFileWriter. Each constant is
+ * written to the pool bytes when it is first added; a second request for
+ * the same constant returns the same index. For a Fieldref or Methodref the
+ * pool also records the change it makes to the operand stack, so the
+ * maximum stack size can be computed as the code is written. The type of
+ * each constant is kept as well, for the stack map frames.
+ */
+final class ConstantPool implements StackMapBuilder.Pool {
+
+    private final ByteVector bytes;
+    private final Map<String, Integer> indexes;
+    private int count;
+    private int[] stackWords;
+    private String[] descriptors;
+
+    ConstantPool() {
+        bytes = new ByteVector(512);
+        indexes = new HashMap<>();
+        count = 1;
+        stackWords = new int[64];
+        descriptors = new String[64];
+    }
+
+    /**
+     * Get the number of constant pool entries plus one, as written in the
+     * class file.
+     */
+    int count() {
+        return count;
+    }
+
+    ByteVector bytes() {
+        return bytes;
+    }
+
+    /**
+     * Find a constant, or reserve an index and write its tag if it is new.
+     * @return The index, negated if the constant is new
+     */
+    private int add(String key, int tag, int size) {
+        Integer index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (count + size > 0xffff) {
+            throw new RuntimeException("Too many constants");
+        }
+        int newIndex = count;
+        indexes.put(key, newIndex);
+        count += size;
+        bytes.putByte(tag);
+        return -newIndex;
+    }
+
+    /**
+     * Record the descriptor of a new constant: the type of the value of a
+     * loadable constant, the name of a class, or the descriptor of a field or
+     * method.
+     */
+    private void describe(int index, String descriptor) {
+        if (index >= descriptors.length) {
+            descriptors = Arrays.copyOf(descriptors, Math.max(descriptors.length * 2, index + 1));
+        }
+        descriptors[index] = descriptor;
+    }
+
+    int utf8(String value) {
+        int index = add("U" + value, Constants.CONSTANT_Utf8, 1);
+        if (index < 0) {
+            bytes.putUtf8(value);
+        }
+        return Math.abs(index);
+    }
+
+    int integer(int value) {
+        int index = add("I" + value, Constants.CONSTANT_Integer, 1);
+        if (index < 0) {
+            bytes.putInt(value);
+            describe(-index, "I");
+        }
+        return Math.abs(index);
+    }
+
+    int floatConstant(float value) {
+        int bits = Float.floatToIntBits(value);
+        int index = add("F" + bits, Constants.CONSTANT_Float, 1);
+        if (index < 0) {
+            bytes.putInt(bits);
+            describe(-index, "F");
+        }
+        return Math.abs(index);
+    }
+
+    int longConstant(long value) {
+        int index = add("J" + value, Constants.CONSTANT_Long, 2);
+        if (index < 0) {
+            bytes.putLong(value);
+            describe(-index, "J");
+        }
+        return Math.abs(index);
+    }
+
+    int doubleConstant(double value) {
+        long bits = Double.doubleToLongBits(value);
+        int index = add("D" + bits, Constants.CONSTANT_Double, 2);
+        if (index < 0) {
+            bytes.putLong(bits);
+            describe(-index, "D");
+        }
+        return Math.abs(index);
+    }
+
+    int string(String value) {
+        int utf8 = utf8(value);
+        int index = add("S" + value, Constants.CONSTANT_String, 1);
+        if (index < 0) {
+            bytes.putShort(utf8);
+            describe(-index, "Ljava/lang/String;");
+        }
+        return Math.abs(index);
+    }
+
+    /**
+     * @param internalName The class name with slashes, or the descriptor of
+     * an array class
+     */
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        int index = add("C" + internalName, Constants.CONSTANT_Class, 1);
+        if (index < 0) {
+            bytes.putShort(name);
+            describe(-index, internalName);
+        }
+        return Math.abs(index);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int index = add("N" + name + ' ' + descriptor, Constants.CONSTANT_NameAndType, 1);
+        if (index < 0) {
+            bytes.putShort(nameIndex);
+            bytes.putShort(descriptorIndex);
+        }
+        return Math.abs(index);
+    }
+
+    /**
+     * @param words The number of stack words of the field's value
+     */
+    int fieldRef(String owner, String name, String descriptor, int words) {
+        return memberRef(Constants.CONSTANT_Fieldref, owner, name, descriptor, words);
+    }
+
+    /**
+     * @param words The stack words of the arguments in the upper bits and
+     * of the result in the lower 8 bits
+     */
+    int methodRef(String owner, String name, String descriptor, int words) {
+        return memberRef(Constants.CONSTANT_Methodref, owner, name, descriptor, words);
+    }
+
+    private int memberRef(byte tag, String owner, String name, String descriptor, int words) {
+        int classIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        int index = add((char) tag + owner + '.' + name + ' ' + descriptor, tag, 1);
+        if (index < 0) {
+            bytes.putShort(classIndex);
+            bytes.putShort(nameAndType);
+            index = -index;
+            if (index >= stackWords.length) {
+                stackWords = Arrays.copyOf(stackWords, Math.max(stackWords.length * 2, index + 1));
+            }
+            stackWords[index] = words;
+            describe(index, descriptor);
+        }
+        return index;
+    }
+
+    /**
+     * Get the stack words recorded for a Fieldref or Methodref.
+     */
+    int stackWords(int index) {
+        return stackWords[index];
+    }
+
+    @Override
+    public String getConstantType(int index) {
+        return descriptors[index];
+    }
+
+    @Override
+    public String getMemberDescriptor(int index) {
+        return descriptors[index];
+    }
+
+    @Override
+    public String getClassName(int index) {
+        return descriptors[index];
+    }
+
+    @Override
+    public int addClass(String internalName) {
+        return classRef(internalName);
+    }
+
+}
@@ -10,39 +10,33 @@ import org.apache.bcel.generic.ARRAYLENGTH;
 import org.apache.bcel.generic.ASTORE;
 import org.apache.bcel.generic.ATHROW;
 import org.apache.bcel.generic.ArrayType;
-import org.apache.bcel.generic.BasicType;
+import org.apache.bcel.generic.BIPUSH;
+import org.apache.bcel.generic.BranchHandle;
+import org.apache.bcel.generic.ConstantPoolGen;
 import org.apache.bcel.generic.DLOAD;
 import org.apache.bcel.generic.DSTORE;
 import org.apache.bcel.generic.FLOAD;
 import org.apache.bcel.generic.FSTORE;
+import org.apache.bcel.generic.GETSTATIC;
 import org.apache.bcel.generic.GOTO;
-import org.apache.bcel.generic.IFEQ;
-import org.apache.bcel.generic.IFGE;
-import org.apache.bcel.generic.IFGT;
-import org.apache.bcel.generic.IFLE;
-import org.apache.bcel.generic.IFLT;
-import org.apache.bcel.generic.IFNE;
-import org.apache.bcel.generic.IFNONNULL;
-import org.apache.bcel.generic.IFNULL;
-import org.apache.bcel.generic.IF_ACMPEQ;
-import org.apache.bcel.generic.IF_ACMPNE;
-import org.apache.bcel.generic.IF_ICMPEQ;
-import org.apache.bcel.generic.IF_ICMPGE;
-import org.apache.bcel.generic.IF_ICMPGT;
-import org.apache.bcel.generic.IF_ICMPLE;
-import org.apache.bcel.generic.IF_ICMPLT;
-import org.apache.bcel.generic.IF_ICMPNE;
 import org.apache.bcel.generic.IINC;
 import org.apache.bcel.generic.ILOAD;
+import org.apache.bcel.generic.INVOKESPECIAL;
+import org.apache.bcel.generic.INVOKESTATIC;
+import org.apache.bcel.generic.INVOKEVIRTUAL;
 import org.apache.bcel.generic.ISTORE;
+import org.apache.bcel.generic.Instruction;
 import org.apache.bcel.generic.InstructionConstants;
 import org.apache.bcel.generic.InstructionFactory;
-import static org.apache.bcel.generic.InstructionFactory.createBinaryOperation;
 import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.LDC;
+import org.apache.bcel.generic.LDC2_W;
 import org.apache.bcel.generic.LLOAD;
 import org.apache.bcel.generic.LSTORE;
 import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.PUTSTATIC;
 import org.apache.bcel.generic.ReferenceType;
+import org.apache.bcel.generic.SIPUSH;
 import org.apache.bcel.generic.Type;
 
 /** 
@@ -99,10 +93,12 @@ public class InstructionList extends org.apache.bcel.generic.InstructionList {
     }
     
     private final InstructionFactory factory;
+    private final ConstantPoolGen cp;
     private final Map<String, Integer> localVariables;
     
     public InstructionList(InstructionFactory factory, Map<String, Integer> localVariables) {
         this.factory = factory;
+        this.cp = factory.getConstantPool();
         this.localVariables = localVariables;
     }
 
@@ -205,21 +201,18 @@ public class InstructionList extends org.apache.bcel.generic.InstructionList {
             case "invokeinterface":
                 return addInvoke(Constants.INVOKEINTERFACE, args);
             case "op":
-                String op = args[0];
-                type = getTypeFromName(args[1]);
-                return append(createBinaryOperation(op, type));
+                return addArithmetic(arithmeticOpcode(args[0]), getTypeFromName(args[1]));
             case "return":
                 if (args == null || args.length == 0) {
                     type = Type.VOID;
                 } else {
                     type = getTypeFromName(args[0]);
                 }
-                return append(InstructionFactory.createReturn(type));
+                return addReturn(type);
             case "nop":
-                return append(InstructionConstants.NOP);
+                return addInstruction(Constants.NOP);
             case "const":
-                Object o = parseString(args[0]);
-                return append(factory.createConstant(o));
+                return addConstant(parseString(args[0]));
             case "this":
                 return append(InstructionConstants.THIS); // Push `this'
             case "lload":
@@ -236,40 +229,34 @@ public class InstructionList extends org.apache.bcel.generic.InstructionList {
             case "dstore":
                 return append(new DSTORE(localVariables.get(args[0])));
             case "arrayLoad":
-                return append(InstructionFactory.createArrayLoad(getTypeFromName(args[0])));
+                return addArrayLoad(getTypeFromName(args[0]));
             case "arrayStore":
-                return append(InstructionFactory.createArrayStore(getTypeFromName(args[0])));
+                return addArrayStore(getTypeFromName(args[0]));
             case "pop":
-                return append(InstructionConstants.POP);
+                return addInstruction(Constants.POP);
             case "pop2":
-                return append(InstructionConstants.POP2);
+                return addInstruction(Constants.POP2);
             case "swap":
-                return append(InstructionConstants.SWAP);
+                return addInstruction(Constants.SWAP);
             case "neg":
                 type = getTypeFromName(args[0]);
-                byte typeCode = type.getType();
-                switch (typeCode) {
+                switch (type.getType()) {
                     case Constants.T_INT:
-                        return append(InstructionConstants.INEG);
                     case Constants.T_LONG:
-                        return append(InstructionConstants.LNEG);
                     case Constants.T_FLOAT:
-                        return append(InstructionConstants.FNEG);
                     case Constants.T_DOUBLE:
-                        return append(InstructionConstants.DNEG);
+                        return addArithmetic(Constants.INEG, type);
                     default:
                         throw new RuntimeException("Invalid Type Code " + args[0]);
                 }
             case "iinc":
                 return append(new IINC(localVariables.get(args[0]), Integer.parseInt(args[1])));
             case "cast":
-                return append(factory.createCast(getTypeFromName(args[0]), getTypeFromName(args[1])));
+                return addCast(getTypeFromName(args[0]), getTypeFromName(args[1]));
             case "switch":
                 throw new RuntimeException("Switch instruction not supported");
             case "newarray":
-                type = getTypeFromName(args[0]);
-                Short dim = (short) Integer.parseInt(args[1]);
-                return append(factory.createNewArray(type, dim));
+                return addNewArray(getTypeFromName(args[0]), Integer.parseInt(args[1]));
             case "arraylength":
                 return append(new ARRAYLENGTH());
             case "throw":
@@ -284,6 +271,285 @@ public class InstructionList extends org.apache.bcel.generic.InstructionList {
         throw new RuntimeException("Unrecognized instruction " + instruction);
     }
     
+    /**
+     * Add an instruction that has no operands, such as nop, dup, pop, swap,
+     * iadd or i2d. The instruction is shared rather than created.
+     * @param opcode The opcode, one of the constants in org.apache.bcel.Constants
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addInstruction(short opcode) {
+        Instruction instruction = InstructionConstants.INSTRUCTIONS[opcode];
+        if (instruction == null) {
+            throw new RuntimeException(Constants.OPCODE_NAMES[opcode] + " has operands");
+        }
+        return append(instruction);
+    }
+
+    /**
+     * Add an instruction to push an int constant, using the shortest form.
+     * A char or boolean constant is pushed as an int.
+     * @param value The value
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addConstant(int value) {
+        if (value >= -1 && value <= 5) {
+            return append(InstructionConstants.INSTRUCTIONS[Constants.ICONST_0 + value]);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            return append(new BIPUSH((byte) value));
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            return append(new SIPUSH((short) value));
+        } else {
+            return append(new LDC(cp.addInteger(value)));
+        }
+    }
+
+    /**
+     * Add an instruction to push a long constant.
+     * @param value The value
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addConstant(long value) {
+        if (value == 0) {
+            return append(InstructionConstants.LCONST_0);
+        } else if (value == 1) {
+            return append(InstructionConstants.LCONST_1);
+        } else {
+            return append(new LDC2_W(cp.addLong(value)));
+        }
+    }
+
+    /**
+     * Add an instruction to push a float constant.
+     * @param value The value
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addConstant(float value) {
+        // -0.0f == 0.0f, so the bits are compared to keep the sign of -0.0f.
+        if (Float.floatToIntBits(value) == 0) {
+            return append(InstructionConstants.FCONST_0);
+        } else if (value == 1.0f) {
+            return append(InstructionConstants.FCONST_1);
+        } else if (value == 2.0f) {
+            return append(InstructionConstants.FCONST_2);
+        } else {
+            return append(new LDC(cp.addFloat(value)));
+        }
+    }
+
+    /**
+     * Add an instruction to push a double constant.
+     * @param value The value
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addConstant(double value) {
+        // -0.0 == 0.0, so the bits are compared to keep the sign of -0.0.
+        if (Double.doubleToLongBits(value) == 0L) {
+            return append(InstructionConstants.DCONST_0);
+        } else if (value == 1.0) {
+            return append(InstructionConstants.DCONST_1);
+        } else {
+            return append(new LDC2_W(cp.addDouble(value)));
+        }
+    }
+
+    /**
+     * Add an instruction to push a String constant.
+     * @param value The value
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addConstant(String value) {
+        return append(new LDC(cp.addString(value)));
+    }
+
+    /**
+     * Add an instruction to push a constant given as an object, as returned
+     * by parseString.
+     */
+    private InstructionHandle addConstant(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return addConstant(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            return addConstant(((Long) value).longValue());
+        } else if (value instanceof Float) {
+            return addConstant(((Float) value).floatValue());
+        } else if (value instanceof Double) {
+            return addConstant(((Double) value).doubleValue());
+        } else if (value instanceof Character) {
+            return addConstant((int) (Character) value);
+        } else if (value instanceof Boolean) {
+            return addConstant((Boolean) value ? 1 : 0);
+        } else {
+            return addConstant((String) value);
+        }
+    }
+
+    /**
+     * Add an arithmetic, shift or bitwise instruction for operands of a
+     * given type.
+     * @param opcode The int form of the instruction: IADD, ISUB, IMUL, IDIV,
+     * IREM, INEG, ISHL, ISHR, IUSHR, IAND, IOR or IXOR
+     * @param type The type of the operands
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addArithmetic(short opcode, Type type) {
+        return addInstruction(Opcodes.arithmetic(opcode, type));
+    }
+
+    /**
+     * Get the int form of the instruction for an arithmetic operator.
+     * @param op The operator: + - * / % &amp; | ^ &lt;&lt; &gt;&gt; or &gt;&gt;&gt;
+     * @return The opcode to give to addArithmetic
+     */
+    public static short arithmeticOpcode(String op) {
+        switch (op) {
+            case "+": return Constants.IADD;
+            case "-": return Constants.ISUB;
+            case "*": return Constants.IMUL;
+            case "/": return Constants.IDIV;
+            case "%": return Constants.IREM;
+            case "&": return Constants.IAND;
+            case "|": return Constants.IOR;
+            case "^": return Constants.IXOR;
+            case "<<": return Constants.ISHL;
+            case ">>": return Constants.ISHR;
+            case ">>>": return Constants.IUSHR;
+            default:
+                throw new RuntimeException("Invalid operand " + op);
+        }
+    }
+
+    /**
+     * Add an instruction to convert between two types. Only conversions
+     * between the primitive types that the JVM has an instruction for, and
+     * casts between reference types, are supported.
+     * @param from The type of the value
+     * @param to The type to convert it to
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addCast(Type from, Type to) {
+        if (from instanceof ReferenceType && to instanceof ReferenceType) {
+            return append(factory.createCast(from, to));
+        }
+        return addInstruction(Opcodes.conversion(from, to));
+    }
+
+    /**
+     * Add an instruction to load an element of an array.
+     * @param type The type of the element
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addArrayLoad(Type type) {
+        return append(InstructionFactory.createArrayLoad(type));
+    }
+
+    /**
+     * Add an instruction to store into an element of an array.
+     * @param type The type of the element
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addArrayStore(Type type) {
+        return append(InstructionFactory.createArrayStore(type));
+    }
+
+    /**
+     * Add an instruction to create an array.
+     * @param type The type of the elements
+     * @param dimensions The number of dimensions whose lengths are on the stack
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addNewArray(Type type, int dimensions) {
+        return append(factory.createNewArray(type, (short) dimensions));
+    }
+
+    /**
+     * Add a return instruction.
+     * @param type The type of the returned value, or VOID
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addReturn(Type type) {
+        return append(InstructionFactory.createReturn(type));
+    }
+
+    /**
+     * Add an invoke instruction for a method reference already in the
+     * constant pool.
+     * @param kind INVOKESTATIC, INVOKEVIRTUAL or INVOKESPECIAL
+     * @param methodRef The index of the Methodref constant
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addInvoke(short kind, int methodRef) {
+        switch (kind) {
+            case Constants.INVOKESTATIC:
+                return append(new INVOKESTATIC(methodRef));
+            case Constants.INVOKEVIRTUAL:
+                return append(new INVOKEVIRTUAL(methodRef));
+            case Constants.INVOKESPECIAL:
+                return append(new INVOKESPECIAL(methodRef));
+            default:
+                throw new RuntimeException("Unsupported invoke instruction " + Constants.OPCODE_NAMES[kind]);
+        }
+    }
+
+    /**
+     * Add a conditional branch. A comparison of two operands is given by
+     * its int form; for long, float and double operands a compare
+     * instruction is added first, and for references the reference form
+     * is used.
+     * @param opcode IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE (compare with zero),
+     * IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE
+     * (compare two operands), IFNULL or IFNONNULL
+     * @param type The type of the operands
+     * @param trueTarget The destination if the condition is true
+     * @return InstructionHandle of the inserted branch
+     */
+    public InstructionHandle addIf(short opcode, Type type, InstructionHandle trueTarget) {
+        int branch = Opcodes.branch(opcode, type);
+        if (branch >> 16 != 0) {
+            addInstruction((short) (branch >> 16));
+        }
+        return append(InstructionFactory.createBranchInstruction((short) branch, trueTarget));
+    }
+
+    /**
+     * Add an instruction to load a local variable whose index is known.
+     * @param type The type of the local variable
+     * @param index The index of the local variable
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addLoad(Type type, int index) {
+        return append(InstructionFactory.createLoad(type, index));
+    }
+
+    /**
+     * Add an instruction to store into a local variable whose index is known.
+     * @param type The type of the local variable
+     * @param index The index of the local variable
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addStore(Type type, int index) {
+        return append(InstructionFactory.createStore(type, index));
+    }
+
+    /**
+     * Add a getstatic instruction for a field reference already in the
+     * constant pool.
+     * @param fieldRef The index of the Fieldref constant
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addGetStatic(int fieldRef) {
+        return append(new GETSTATIC(fieldRef));
+    }
+
+    /**
+     * Add a putstatic instruction for a field reference already in the
+     * constant pool.
+     * @param fieldRef The index of the Fieldref constant
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addPutStatic(int fieldRef) {
+        return append(new PUTSTATIC(fieldRef));
+    }
+
     /**
      * Add a goto instruction to the instruction list
      * @param target InstructionHandle of the target
@@ -292,6 +558,58 @@ public class InstructionList extends org.apache.bcel.generic.InstructionList {
     public InstructionHandle createGoTo(InstructionHandle target) {
         return append(new GOTO(target));
     }
+
+    /**
+     * Add a goto instruction to a label, which may not be bound yet.
+     * @param target The label of the target
+     * @return InstructionHandle of the inserted instruction
+     */
+    public InstructionHandle addGoTo(Label target) {
+        return branchTo(target, append(new GOTO(target.getTarget())));
+    }
+
+    /**
+     * Add a conditional branch to a label, which may not be bound yet. The
+     * operands and their comparison are the same as those of the addIf with
+     * an InstructionHandle target.
+     * @param opcode The branch opcode
+     * @param type The type of the values compared
+     * @param trueTarget The label of the target when the condition is true
+     * @return InstructionHandle of the inserted branch
+     */
+    public InstructionHandle addIf(short opcode, Type type, Label trueTarget) {
+        return branchTo(trueTarget, addIf(opcode, type, trueTarget.getTarget()));
+    }
+
+    /**
+     * Add a conditional branch to a label that is taken when the condition
+     * is false. The compare instruction is the one addIf adds, so for
+     * floating point operands the branch is taken exactly when that of
+     * addIf is not, NaN included.
+     * @param opcode The branch opcode, as for addIf
+     * @param type The type of the values compared
+     * @param falseTarget The label of the target when the condition is false
+     * @return InstructionHandle of the inserted branch
+     */
+    public InstructionHandle addIfNot(short opcode, Type type, Label falseTarget) {
+        int branch = Opcodes.branch(opcode, type);
+        if (branch >> 16 != 0) {
+            addInstruction((short) (branch >> 16));
+        }
+        short negated = Opcodes.negate((short) branch);
+        return branchTo(falseTarget, append(InstructionFactory.createBranchInstruction(negated,
+                falseTarget.getTarget())));
+    }
+
+    /**
+     * Remember a branch to a label that is not bound yet.
+     */
+    private static InstructionHandle branchTo(Label target, InstructionHandle branch) {
+        if (!target.isBound()) {
+            target.addBranch((BranchHandle) branch);
+        }
+        return branch;
+    }
     
     /**
      * Create a field access
@@ -346,92 +664,26 @@ public class InstructionList extends org.apache.bcel.generic.InstructionList {
      * @return InstructionHandle to inserted instruction
      */
     private InstructionHandle createIf(String op, Type type, InstructionHandle trueTarget) {
-        if (type instanceof BasicType) {
-            byte typeCode = type.getType();
-            switch (typeCode) {
-                case Constants.T_DOUBLE:
-                    if (op.startsWith(">")) {
-                        append(InstructionConstants.DCMPG);
-                    } else {
-                        append(InstructionConstants.DCMPL);
-                    }
-                    return insertCompareOp(op, trueTarget);
-                case Constants.T_FLOAT:
-                    if (op.startsWith(">")) {
-                        append(InstructionConstants.FCMPG);
-                    } else {
-                        append(InstructionConstants.FCMPL);
-                    }
-                    return insertCompareOp(op, trueTarget);
-                case Constants.T_LONG:
-                    append(InstructionConstants.LCMP);
-                    return insertCompareOp(op, trueTarget);
-                default:
-                    switch (op) {
-                        case "<0":
-                            return append(new IFLT(trueTarget));
-                        case "<=0":
-                            return append(new IFLE(trueTarget));
-                        case "==0":
-                            return append(new IFEQ(trueTarget));
-                        case "!=0":
-                            return append(new IFNE(trueTarget));
-                        case ">=0":
-                            return append(new IFGE(trueTarget));
-                        case ">0":
-                            return append(new IFGT(trueTarget));
-                        case "<":
-                            return append(new IF_ICMPLT(trueTarget));
-                        case "<=":
-                            return append(new IF_ICMPLE(trueTarget));
-                        case "==":
-                            return append(new IF_ICMPEQ(trueTarget));
-                        case "!=":
-                            return append(new IF_ICMPNE(trueTarget));
-                        case ">=":
-                            return append(new IF_ICMPGE(trueTarget));
-                        case ">":
-                            return append(new IF_ICMPGT(trueTarget));
-                        default:
-                            throw new RuntimeException("Unrecognized compare operator " + op);
-                    }
-            }
-        } else {
-            switch (op) {
-                case "==null":
-                    return append(new IFNULL(trueTarget));
-                case "!=null":
-                    return append(new IFNONNULL(trueTarget));
-                case "==":
-                    return append(new IF_ACMPEQ(trueTarget));
-                case "!=":
-                    return append(new IF_ACMPNE(trueTarget));
-            }
-            throw new RuntimeException("Unrecognized comparison operator " + op);
-        }
-    }
-
-    /**
-     * Method to insert a compare operation
-     * @param op The op code.
-     */
-    private InstructionHandle insertCompareOp(String op, InstructionHandle trueTarget) {
+        short opcode;
         switch (op) {
-            case "==":
-                return append(new IFEQ(trueTarget));
-            case "!=":
-                return append(new IFNE(trueTarget));
-            case "<":
-                return append(new IFLT(trueTarget));
-            case "<=":
-                return append(new IFLE(trueTarget));
-            case ">":
-                return append(new IFGT(trueTarget));
-            case ">=":
-                return append(new IFGE(trueTarget));
+            case "<0": opcode = Constants.IFLT; break;
+            case "<=0": opcode = Constants.IFLE; break;
+            case "==0": opcode = Constants.IFEQ; break;
+            case "!=0": opcode = Constants.IFNE; break;
+            case ">=0": opcode = Constants.IFGE; break;
+            case ">0": opcode = Constants.IFGT; break;
+            case "<": opcode = Constants.IF_ICMPLT; break;
+            case "<=": opcode = Constants.IF_ICMPLE; break;
+            case "==": opcode = Constants.IF_ICMPEQ; break;
+            case "!=": opcode = Constants.IF_ICMPNE; break;
+            case ">=": opcode = Constants.IF_ICMPGE; break;
+            case ">": opcode = Constants.IF_ICMPGT; break;
+            case "==null": opcode = Constants.IFNULL; break;
+            case "!=null": opcode = Constants.IFNONNULL; break;
             default:
                 throw new RuntimeException("Unrecognized comparison operator " + op);
         }
+        return addIf(opcode, type, trueTarget);
     }
 
     /**
@@ -463,6 +715,19 @@ public class InstructionList extends org.apache.bcel.generic.InstructionList {
     private static final Pattern intPattern = Pattern.compile("([+-]?\\d+)([Ll]?)");
     private static final Pattern floatPattern = Pattern.compile("([+-]?)(\\d*)(\\.)?(\\d*)?([eE][+-]?\\d+)?([fFdD])?");
 
+    /**
+     * Get the value of a char literal, decoding its escape sequence.
+     * @param literal The literal, including its quotes
+     * @return The value
+     */
+    public static char charValue(String literal) {
+        Object value = parseString(literal);
+        if (!(value instanceof Character)) {
+            throw new RuntimeException("Invalid char literal " + literal);
+        }
+        return (Character) value;
+    }
+
     /**
      * Method to parse a string and return the appropriate constant type.
      *
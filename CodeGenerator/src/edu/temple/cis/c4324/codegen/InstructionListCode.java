@@ -0,0 +1,153 @@
+package edu.temple.cis.c4324.codegen;
+
+import java.util.Arrays;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.NEW;
+import org.apache.bcel.generic.Type;
+
+/**
+ * The code of a method generated by CodeGenerator. Each instruction is
+ * appended to the method's instruction list, and the labels bound since
+ * the last instruction are bound to its handle.
+ */
+class InstructionListCode implements Code {
+
+    private final InstructionList il;
+    private Label[] pending;
+    private int pendingCount;
+
+    InstructionListCode(InstructionList il) {
+        this.il = il;
+        pending = new Label[2];
+    }
+
+    /**
+     * Bind the pending labels to the instruction just added.
+     */
+    private void added(InstructionHandle ih) {
+        for (int i = 0; i < pendingCount; i++) {
+            pending[i].bind(ih);
+            pending[i] = null;
+        }
+        pendingCount = 0;
+    }
+
+    @Override
+    public void addInstruction(short opcode) {
+        added(il.addInstruction(opcode));
+    }
+
+    @Override
+    public void addConstant(int value) {
+        added(il.addConstant(value));
+    }
+
+    @Override
+    public void addConstant(long value) {
+        added(il.addConstant(value));
+    }
+
+    @Override
+    public void addConstant(float value) {
+        added(il.addConstant(value));
+    }
+
+    @Override
+    public void addConstant(double value) {
+        added(il.addConstant(value));
+    }
+
+    @Override
+    public void addConstant(String value) {
+        added(il.addConstant(value));
+    }
+
+    @Override
+    public void addArithmetic(short opcode, Type type) {
+        added(il.addArithmetic(opcode, type));
+    }
+
+    @Override
+    public void addCast(Type from, Type to) {
+        added(il.addCast(from, to));
+    }
+
+    @Override
+    public void addArrayLoad(Type type) {
+        added(il.addArrayLoad(type));
+    }
+
+    @Override
+    public void addArrayStore(Type type) {
+        added(il.addArrayStore(type));
+    }
+
+    @Override
+    public void addNewArray(Type type, int dimensions) {
+        added(il.addNewArray(type, dimensions));
+    }
+
+    @Override
+    public void addNew(int classRef) {
+        added(il.append(new NEW(classRef)));
+    }
+
+    @Override
+    public void addReturn(Type type) {
+        added(il.addReturn(type));
+    }
+
+    @Override
+    public void addInvoke(short kind, int methodRef) {
+        added(il.addInvoke(kind, methodRef));
+    }
+
+    @Override
+    public void addIf(short opcode, Type type, Label trueTarget) {
+        InstructionHandle last = il.getEnd();
+        il.addIf(opcode, type, trueTarget);
+        // The compare instruction, if there is one, is the first added.
+        added(last == null ? il.getStart() : last.getNext());
+    }
+
+    @Override
+    public void addIfNot(short opcode, Type type, Label falseTarget) {
+        InstructionHandle last = il.getEnd();
+        il.addIfNot(opcode, type, falseTarget);
+        added(last == null ? il.getStart() : last.getNext());
+    }
+
+    @Override
+    public void addGoTo(Label target) {
+        added(il.addGoTo(target));
+    }
+
+    @Override
+    public void addLoad(Type type, int index) {
+        added(il.addLoad(type, index));
+    }
+
+    @Override
+    public void addStore(Type type, int index) {
+        added(il.addStore(type, index));
+    }
+
+    @Override
+    public void addGetStatic(int fieldRef) {
+        added(il.addGetStatic(fieldRef));
+    }
+
+    @Override
+    public void addPutStatic(int fieldRef) {
+        added(il.addPutStatic(fieldRef));
+    }
+
+    @Override
+    public void bind(Label label) {
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = label;
+    }
+
+}
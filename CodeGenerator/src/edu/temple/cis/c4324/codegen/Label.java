@@ -0,0 +1,109 @@
+package edu.temple.cis.c4324.codegen;
+
+import java.util.Arrays;
+import org.apache.bcel.generic.BranchHandle;
+import org.apache.bcel.generic.InstructionHandle;
+
+/**
+ * The target of branches that may be emitted before the target itself. A
+ * branch to a label that is not yet bound is emitted without a target and
+ * remembered; binding the label to an instruction sets the target of the
+ * remembered branches. A label may be reset and reused once it is bound.
+ * <p>
+ * In an instruction list the label is bound to an instruction handle. In
+ * the code written by a ClassFileWriter it is bound to a code offset, and
+ * the remembered branches are the offsets of the branch instructions.
+ */
+public class Label {
+
+    private InstructionHandle target;
+    private BranchHandle[] branches;
+    private int branchCount;
+
+    /** The code offset the label is bound to, or -1. */
+    int offset;
+    /** The stack depth at the branches to the label, or -1 if there are none. */
+    int stack;
+    /** The offsets of the branch instructions waiting for the label. */
+    int[] sites;
+    int siteCount;
+
+    public Label() {
+        offset = -1;
+        stack = -1;
+    }
+
+    /**
+     * Get the instruction the label is bound to.
+     * @return The instruction, or null if the label is not bound to one
+     */
+    public InstructionHandle getTarget() {
+        return target;
+    }
+
+    /**
+     * Determine whether the label is bound.
+     * @return true if the label is bound to an instruction or an offset
+     */
+    public boolean isBound() {
+        return target != null || offset >= 0;
+    }
+
+    /**
+     * Bind the label to an instruction, which becomes the target of the
+     * branches to the label.
+     * @param target The instruction
+     * @return The instruction
+     */
+    public InstructionHandle bind(InstructionHandle target) {
+        if (isBound()) {
+            throw new IllegalStateException("Label is already bound");
+        }
+        this.target = target;
+        for (int i = 0; i < branchCount; i++) {
+            branches[i].setTarget(target);
+            branches[i] = null;
+        }
+        branchCount = 0;
+        return target;
+    }
+
+    /**
+     * Remember a branch emitted before the label was bound.
+     * @param branch The branch
+     */
+    void addBranch(BranchHandle branch) {
+        if (branches == null) {
+            branches = new BranchHandle[2];
+        } else if (branchCount == branches.length) {
+            branches = Arrays.copyOf(branches, branchCount * 2);
+        }
+        branches[branchCount++] = branch;
+    }
+
+    /**
+     * Remember the offset of a branch written before the label was bound.
+     * @param site The offset of the branch instruction
+     */
+    void addSite(int site) {
+        if (sites == null) {
+            sites = new int[2];
+        } else if (siteCount == sites.length) {
+            sites = Arrays.copyOf(sites, siteCount * 2);
+        }
+        sites[siteCount++] = site;
+    }
+
+    /**
+     * Unbind the label so that it may be used again.
+     */
+    public void reset() {
+        if (branchCount != 0 || siteCount != 0) {
+            throw new IllegalStateException("Label has unresolved branches");
+        }
+        target = null;
+        offset = -1;
+        stack = -1;
+    }
+
+}
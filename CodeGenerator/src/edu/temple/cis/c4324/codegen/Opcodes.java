@@ -0,0 +1,200 @@
+package edu.temple.cis.c4324.codegen;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.generic.BasicType;
+import org.apache.bcel.generic.Type;
+
+/**
+ * The choice of opcode for an operation on values of a given type. The
+ * instruction list and the class file writer both use it, so they accept
+ * the same operations and generate the same instructions.
+ */
+final class Opcodes {
+
+    private Opcodes() {
+    }
+
+    /**
+     * Get the position of a type in the int, long, float, double, reference
+     * order that the typed forms of an instruction follow.
+     * @return The position, or -1 for void
+     */
+    static int typeIndex(Type type) {
+        switch (type.getType()) {
+            case Constants.T_INT:
+            case Constants.T_SHORT:
+            case Constants.T_BYTE:
+            case Constants.T_CHAR:
+            case Constants.T_BOOLEAN:
+                return 0;
+            case Constants.T_LONG:
+                return 1;
+            case Constants.T_FLOAT:
+                return 2;
+            case Constants.T_DOUBLE:
+                return 3;
+            case Constants.T_OBJECT:
+            case Constants.T_ARRAY:
+                return 4;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Get the opcode of an arithmetic, shift or bitwise instruction.
+     * @param opcode The int form of the instruction
+     * @param type The type of the operands
+     */
+    static short arithmetic(short opcode, Type type) {
+        int offset = typeIndex(type);
+        if (offset < 0 || offset > 3 || opcode >= Constants.ISHL && offset > 1) {
+            throw new RuntimeException("Invalid type " + type + " for " + Constants.OPCODE_NAMES[opcode]);
+        }
+        return (short) (opcode + offset);
+    }
+
+    /**
+     * Get the opcode of the instruction that converts between two
+     * primitive types.
+     */
+    static short conversion(Type from, Type to) {
+        int fromIndex = conversionIndex(from);
+        int toIndex = conversionIndex(to);
+        if (fromIndex >= 0 && toIndex >= 0 && fromIndex != toIndex) {
+            // I2L, I2F, I2D, L2I, L2F, L2D, F2I, F2L, F2D, D2I, D2L, D2F
+            return (short) (Constants.I2L + fromIndex * 3 + (toIndex < fromIndex ? toIndex : toIndex - 1));
+        }
+        if (fromIndex == 0) {
+            switch (to.getType()) {
+                case Constants.T_BYTE:
+                    return Constants.I2B;
+                case Constants.T_CHAR:
+                    return Constants.I2C;
+                case Constants.T_SHORT:
+                    return Constants.I2S;
+            }
+        }
+        throw new RuntimeException("No instruction to convert " + from + " to " + to);
+    }
+
+    private static int conversionIndex(Type type) {
+        switch (type.getType()) {
+            case Constants.T_INT:
+                return 0;
+            case Constants.T_LONG:
+                return 1;
+            case Constants.T_FLOAT:
+                return 2;
+            case Constants.T_DOUBLE:
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Get the instructions of a conditional branch.
+     * @param opcode The branch as given to addIf
+     * @param type The type of the operands
+     * @return The opcode of the branch, with the opcode of the compare
+     * instruction that comes first, if there is one, in the upper 16 bits
+     */
+    static int branch(short opcode, Type type) {
+        String op = Constants.OPCODE_NAMES[opcode];
+        if (opcode == Constants.IFNULL || opcode == Constants.IFNONNULL) {
+            if (type instanceof BasicType) {
+                throw new RuntimeException("Unrecognized compare operator " + op);
+            }
+            return opcode;
+        }
+        if (opcode < Constants.IFEQ || opcode > Constants.IF_ICMPLE) {
+            throw new RuntimeException("Unrecognized compare operator " + op);
+        }
+        boolean zero = opcode <= Constants.IFLE;
+        if (!(type instanceof BasicType)) {
+            if (opcode != Constants.IF_ICMPEQ && opcode != Constants.IF_ICMPNE) {
+                throw new RuntimeException("Unrecognized comparison operator " + op);
+            }
+            // IF_ACMPEQ and IF_ACMPNE
+            return opcode + 6;
+        }
+        boolean greater = opcode == Constants.IF_ICMPGT || opcode == Constants.IF_ICMPGE;
+        short compare;
+        switch (type.getType()) {
+            case Constants.T_DOUBLE:
+                compare = greater ? Constants.DCMPG : Constants.DCMPL;
+                break;
+            case Constants.T_FLOAT:
+                compare = greater ? Constants.FCMPG : Constants.FCMPL;
+                break;
+            case Constants.T_LONG:
+                compare = Constants.LCMP;
+                break;
+            default:
+                return opcode;
+        }
+        if (zero) {
+            throw new RuntimeException("Unrecognized comparison operator " + op);
+        }
+        // IF_ICMPxx - 6 is the IFxx with the same condition.
+        return compare << 16 | opcode - 6;
+    }
+
+    /**
+     * Get the branch whose condition is the negation of that of another.
+     * @param opcode A conditional branch
+     */
+    static short negate(short opcode) {
+        // The branches come in pairs, ifeq and ifne, iflt and ifge, and so
+        // on, of which the first has an odd opcode below ifnull.
+        if (opcode == Constants.IFNULL || opcode == Constants.IFNONNULL) {
+            return (short) (Constants.IFNULL + Constants.IFNONNULL - opcode);
+        }
+        if (opcode < Constants.IFEQ || opcode > Constants.IF_ACMPNE) {
+            throw new RuntimeException("Unrecognized compare operator " + Constants.OPCODE_NAMES[opcode]);
+        }
+        return (short) ((opcode & 1) != 0 ? opcode + 1 : opcode - 1);
+    }
+
+    /**
+     * Get the opcode that loads or stores an element of an array.
+     * @param opcode IALOAD or IASTORE
+     * @param type The type of the element
+     */
+    static short arrayElement(short opcode, Type type) {
+        switch (type.getType()) {
+            case Constants.T_BOOLEAN:
+            case Constants.T_BYTE:
+                return (short) (opcode + 5);
+            case Constants.T_CHAR:
+                return (short) (opcode + 6);
+            case Constants.T_SHORT:
+                return (short) (opcode + 7);
+            default:
+                int index = typeIndex(type);
+                if (index < 0) {
+                    throw new RuntimeException("Invalid array element type " + type);
+                }
+                return (short) (opcode + index);
+        }
+    }
+
+    /**
+     * Get the opcode that loads or stores a local variable or returns a
+     * value.
+     * @param opcode ILOAD, ISTORE or IRETURN
+     * @param type The type of the value
+     */
+    static short typed(short opcode, Type type) {
+        int index = typeIndex(type);
+        if (index < 0) {
+            if (opcode == Constants.IRETURN) {
+                return Constants.RETURN;
+            }
+            throw new RuntimeException("Invalid type " + type + " for " + Constants.OPCODE_NAMES[opcode]);
+        }
+        return (short) (opcode + index);
+    }
+
+}
@@ -0,0 +1,31 @@
+package edu.temple.cis.c4324.codegen;
+
+import org.apache.bcel.generic.InstructionList;
+
+/**
+ * Interface of a pass of the Optimizer. A pass rewrites the instruction
+ * list of a method in place, keeping the branches pointing at instructions
+ * that are still in the list.
+ */
+public interface OptimizationPass {
+
+    /**
+     * Get the name that selects the pass on the command line and in the
+     * reported statistics.
+     * @return The name of the pass
+     */
+    String getName();
+
+    /**
+     * Get the lowest optimization level that runs the pass.
+     * @return The level
+     */
+    int getLevel();
+
+    /**
+     * Run the pass once over a method.
+     * @param il The instruction list of the method
+     * @return true if the code was changed
+     */
+    boolean run(InstructionList il);
+}
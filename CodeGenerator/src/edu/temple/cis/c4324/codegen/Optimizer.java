@@ -0,0 +1,543 @@
+package edu.temple.cis.c4324.codegen;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.bcel.Constants;
+import org.apache.bcel.generic.BranchHandle;
+import org.apache.bcel.generic.BranchInstruction;
+import org.apache.bcel.generic.GotoInstruction;
+import org.apache.bcel.generic.IfInstruction;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.InstructionTargeter;
+import org.apache.bcel.generic.ReturnInstruction;
+import org.apache.bcel.generic.Select;
+import org.apache.bcel.generic.TargetLostException;
+import org.apache.bcel.util.InstructionFinder;
+import org.apache.bcel.util.InstructionFinder.CodeConstraint;
+
+/**
+ * Class to run the optimization passes over the code of each method before
+ * it is added to the class. The passes enabled at the optimization level are
+ * run in turn, and the round is repeated until none of them changes the
+ * code, since one pass often leaves work for another. The change each pass
+ * makes to the number of instructions is added up over all of the methods.
+ * <p>
+ * Level 0 runs no passes. Level 1 runs the peephole passes:
+ * <ul>
+ * <li>conditions: branch on a comparison directly instead of
+ * materializing its boolean and testing that;</li>
+ * <li>nops: remove the nop instructions that labels are bound to;</li>
+ * <li>goto-next: remove a goto to the next instruction.</li>
+ * </ul>
+ * Level 2 adds:
+ * <ul>
+ * <li>jump-threading: point a branch to a goto at the goto's target;</li>
+ * <li>unreachable-code: remove the instructions no path reaches.</li>
+ * </ul>
+ * Any pass may be enabled or disabled regardless of the level.
+ */
+public class Optimizer {
+
+    /**
+     * The highest optimization level.
+     */
+    public static final int MAX_LEVEL = 2;
+
+    // The passes keep no state, so they are shared by all optimizers.
+    private static final List<OptimizationPass> PASSES = Collections.unmodifiableList(Arrays.asList(
+            new ConditionPass(), new NopPass(), new GoToNextPass(),
+            new JumpThreadingPass(), new UnreachableCodePass()));
+
+    private final int level;
+    private final Map<String, Boolean> toggles;
+    private final Map<String, Integer> instructionDeltas;
+
+    /**
+     * Create an optimizer running the passes of a level.
+     * @param level The optimization level, from 0 to MAX_LEVEL
+     */
+    public Optimizer(int level) {
+        if (level < 0 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("The optimization level must be 0 to " + MAX_LEVEL);
+        }
+        this.level = level;
+        toggles = new HashMap<>();
+        instructionDeltas = new HashMap<>();
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the passes in the order they are run.
+     * @return The passes
+     */
+    public static List<OptimizationPass> getPasses() {
+        return PASSES;
+    }
+
+    /**
+     * Determine if there is a pass with a name.
+     * @param name The name
+     * @return true if the name is that of a pass
+     */
+    public static boolean isPass(String name) {
+        return PASSES.stream().anyMatch(pass -> pass.getName().equals(name));
+    }
+
+    /**
+     * Enable or disable a pass, whatever the level.
+     * @param name The name of the pass
+     * @param enabled true to run the pass
+     */
+    public void setEnabled(String name, boolean enabled) {
+        if (!isPass(name)) {
+            throw new IllegalArgumentException("Unknown optimization pass " + name);
+        }
+        toggles.put(name, enabled);
+    }
+
+    /**
+     * Determine if a pass is run, either because the level includes it or
+     * because it was enabled.
+     * @param name The name of the pass
+     * @return true if the pass is run
+     */
+    public boolean isEnabled(String name) {
+        Boolean enabled = toggles.get(name);
+        if (enabled != null) {
+            return enabled;
+        }
+        for (OptimizationPass pass : PASSES) {
+            if (pass.getName().equals(name)) {
+                return pass.getLevel() <= level;
+            }
+        }
+        throw new IllegalArgumentException("Unknown optimization pass " + name);
+    }
+
+    /**
+     * Optimize the code of a method.
+     * @param il The instruction list of the method
+     */
+    public void optimize(InstructionList il) {
+        boolean changed;
+        do {
+            changed = false;
+            for (OptimizationPass pass : PASSES) {
+                if (isEnabled(pass.getName())) {
+                    int before = il.getLength();
+                    if (pass.run(il)) {
+                        changed = true;
+                        instructionDeltas.merge(pass.getName(), il.getLength() - before, Integer::sum);
+                    }
+                }
+            }
+        } while (changed);
+    }
+
+    /**
+     * Get the change each enabled pass has made to the number of
+     * instructions, over all of the methods optimized so far. A pass that
+     * removes instructions has a negative delta.
+     * @return The deltas by pass name, in the order the passes are run
+     */
+    public Map<String, Integer> getInstructionDeltas() {
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        for (OptimizationPass pass : PASSES) {
+            if (isEnabled(pass.getName())) {
+                deltas.put(pass.getName(), instructionDeltas.getOrDefault(pass.getName(), 0));
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * The branches to each instruction of a method. An instruction handle
+     * keeps its targeters in a hash set, and BCEL compares instructions by
+     * value, so when one of two gotos to the same handle is moved or
+     * deleted the set may forget the other one instead. The passes
+     * therefore find the branches to an instruction here, and keep this up
+     * to date as they change the targets of branches.
+     */
+    private static class Branches {
+
+        private final Map<InstructionHandle, Set<InstructionHandle>> branches = new HashMap<>();
+
+        Branches(InstructionList il) {
+            for (InstructionHandle handle = il.getStart(); handle != null; handle = handle.getNext()) {
+                for (InstructionHandle target : targets(handle)) {
+                    add(target, handle);
+                }
+            }
+        }
+
+        private static List<InstructionHandle> targets(InstructionHandle handle) {
+            Instruction instruction = handle.getInstruction();
+            if (instruction instanceof Select) {
+                List<InstructionHandle> targets = new ArrayList<>(Arrays.asList(((Select) instruction).getTargets()));
+                targets.add(((Select) instruction).getTarget());
+                return targets;
+            } else if (instruction instanceof BranchInstruction) {
+                return Collections.singletonList(((BranchInstruction) instruction).getTarget());
+            }
+            return Collections.emptyList();
+        }
+
+        private void add(InstructionHandle target, InstructionHandle branch) {
+            if (target != null) {
+                branches.computeIfAbsent(target, key -> new LinkedHashSet<>()).add(branch);
+            }
+        }
+
+        private void remove(InstructionHandle target, InstructionHandle branch) {
+            Set<InstructionHandle> to = branches.get(target);
+            if (to != null) {
+                to.remove(branch);
+            }
+        }
+
+        /**
+         * Determine if anything targets an instruction: a branch, or a line
+         * number or local variable range.
+         */
+        boolean isTargeted(InstructionHandle handle) {
+            Set<InstructionHandle> to = branches.get(handle);
+            return (to != null && !to.isEmpty()) || handle.hasTargeters();
+        }
+
+        /**
+         * Determine if an instruction is the target of nothing but one
+         * branch.
+         */
+        boolean isTargetedOnlyBy(InstructionHandle handle, InstructionHandle branch) {
+            for (InstructionTargeter targeter : handle.getTargeters()) {
+                if (!(targeter instanceof BranchInstruction)) {
+                    return false;
+                }
+            }
+            for (InstructionHandle other : branches.getOrDefault(handle, Collections.emptySet())) {
+                if (other != branch) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Change the target of a branch that is not a select.
+         */
+        void setTarget(BranchHandle branch, InstructionHandle target) {
+            remove(branch.getTarget(), branch);
+            branch.setTarget(target);
+            add(target, branch);
+        }
+
+        /**
+         * Delete a range of instructions. The branches to a deleted
+         * instruction from outside the range are pointed at the instruction
+         * that follows the range.
+         * @param il The instruction list
+         * @param first The first instruction deleted
+         * @param last The last instruction deleted
+         */
+        void delete(InstructionList il, InstructionHandle first, InstructionHandle last) {
+            InstructionHandle next = last.getNext();
+            Set<InstructionHandle> deleted = new HashSet<>();
+            for (InstructionHandle handle = first; handle != next; handle = handle.getNext()) {
+                deleted.add(handle);
+            }
+            for (InstructionHandle handle : deleted) {
+                for (InstructionHandle target : targets(handle)) {
+                    remove(target, handle);
+                }
+            }
+            for (InstructionHandle handle : deleted) {
+                Set<InstructionHandle> to = branches.remove(handle);
+                if (to != null) {
+                    for (InstructionHandle branch : to) {
+                        ((BranchInstruction) branch.getInstruction()).updateTarget(handle, next);
+                        add(next, branch);
+                    }
+                }
+            }
+            try {
+                il.delete(first, last);
+            } catch (TargetLostException ex) {
+                // The branches have been moved already, so what is left are
+                // line numbers and local variable ranges.
+                for (InstructionHandle target : ex.getTargets()) {
+                    for (InstructionTargeter targeter : target.getTargeters()) {
+                        if (!(targeter instanceof BranchInstruction)) {
+                            targeter.updateTarget(target, next);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Branch on a comparison directly. A condition is compiled to a boolean
+     * that an if or while statement then tests:
+     * <pre>
+     *     if&lt;cond&gt; T
+     *     iconst_0
+     *     goto E
+     * T:  iconst_1
+     * E:  nop
+     *     ifeq F
+     * </pre>
+     * which becomes if&lt;!cond&gt; F, or if&lt;cond&gt; F for an ifne.
+     * The nop may already have been removed.
+     */
+    private static class ConditionPass implements OptimizationPass {
+
+        private static final String PATTERN = "IfInstruction ICONST_0 GOTO ICONST_1 (NOP)? (IFEQ|IFNE)";
+
+        private static CodeConstraint constraint(Branches branches) {
+            return match -> {
+                IfInstruction if1 = (IfInstruction) match[0].getInstruction();
+                GotoInstruction g = (GotoInstruction) match[2].getInstruction();
+                InstructionHandle last = match[match.length - 1];
+                // Nothing else may branch into the pattern, or it would lose
+                // the boolean it expects on the stack.
+                return if1.getTarget() == match[3] && g.getTarget() == match[4]
+                        && !branches.isTargeted(match[1]) && !branches.isTargeted(match[2])
+                        && branches.isTargetedOnlyBy(match[3], match[0])
+                        && branches.isTargetedOnlyBy(match[4], match[2])
+                        && (last == match[4] || !branches.isTargeted(last));
+            };
+        }
+
+        @Override
+        public String getName() {
+            return "conditions";
+        }
+
+        @Override
+        public int getLevel() {
+            return 1;
+        }
+
+        @Override
+        public boolean run(InstructionList il) {
+            InstructionFinder f = new InstructionFinder(il);
+            Branches branches = new Branches(il);
+            boolean changed = false;
+            for (Iterator<InstructionHandle[]> e = f.search(PATTERN, constraint(branches)); e.hasNext();) {
+                InstructionHandle[] match = e.next();
+                BranchHandle branch = (BranchHandle) match[0];
+                InstructionHandle last = match[match.length - 1];
+                InstructionHandle target = ((BranchHandle) last).getTarget();
+                if (last.getInstruction().getOpcode() == Constants.IFEQ) {
+                    branch.setInstruction(((IfInstruction) branch.getInstruction()).negate());
+                }
+                branches.setTarget(branch, target);
+                branches.delete(il, match[1], last);
+                changed = true;
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Remove nop instructions. Branches to a nop go to the instruction after
+     * it instead; a nop at the end of the code is kept, as there is no
+     * instruction to branch to.
+     */
+    private static class NopPass implements OptimizationPass {
+
+        @Override
+        public String getName() {
+            return "nops";
+        }
+
+        @Override
+        public int getLevel() {
+            return 1;
+        }
+
+        @Override
+        public boolean run(InstructionList il) {
+            InstructionFinder f = new InstructionFinder(il);
+            Branches branches = new Branches(il);
+            boolean changed = false;
+            for (Iterator<InstructionHandle[]> iter = f.search("NOP+"); iter.hasNext();) {
+                InstructionHandle[] match = iter.next();
+                InstructionHandle last = match[match.length - 1];
+                if (last.getNext() != null) {
+                    branches.delete(il, match[0], last);
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Remove goto instructions that jump to the immediately following
+     * instruction.
+     */
+    private static class GoToNextPass implements OptimizationPass {
+
+        @Override
+        public String getName() {
+            return "goto-next";
+        }
+
+        @Override
+        public int getLevel() {
+            return 1;
+        }
+
+        @Override
+        public boolean run(InstructionList il) {
+            InstructionFinder f = new InstructionFinder(il);
+            Branches branches = new Branches(il);
+            boolean changed = false;
+            for (Iterator<InstructionHandle[]> iter = f.search("GotoInstruction"); iter.hasNext();) {
+                BranchHandle gotoInstruction = (BranchHandle) iter.next()[0];
+                if (gotoInstruction.getTarget() == gotoInstruction.getNext()) {
+                    branches.delete(il, gotoInstruction, gotoInstruction);
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Point each branch whose target is a goto at the end of the chain of
+     * gotos, so that the branch is taken in one jump. The gotos themselves
+     * may then be unreachable.
+     */
+    private static class JumpThreadingPass implements OptimizationPass {
+
+        @Override
+        public String getName() {
+            return "jump-threading";
+        }
+
+        @Override
+        public int getLevel() {
+            return 2;
+        }
+
+        @Override
+        public boolean run(InstructionList il) {
+            boolean changed = false;
+            for (InstructionHandle handle = il.getStart(); handle != null; handle = handle.getNext()) {
+                if (!(handle instanceof BranchHandle) || handle.getInstruction() instanceof Select) {
+                    continue;
+                }
+                BranchHandle branch = (BranchHandle) handle;
+                InstructionHandle target = branch.getTarget();
+                // A chain of gotos may loop, so it is followed at most as far
+                // as there are instructions.
+                for (int hops = il.getLength(); hops > 0 && target.getInstruction() instanceof GotoInstruction
+                        && target != branch; hops--) {
+                    target = ((BranchInstruction) target.getInstruction()).getTarget();
+                }
+                if (target != branch.getTarget()) {
+                    branch.setTarget(target);
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Remove the instructions that cannot be reached from the start of the
+     * method, such as the code after a goto that nothing branches to.
+     */
+    private static class UnreachableCodePass implements OptimizationPass {
+
+        @Override
+        public String getName() {
+            return "unreachable-code";
+        }
+
+        @Override
+        public int getLevel() {
+            return 2;
+        }
+
+        @Override
+        public boolean run(InstructionList il) {
+            Set<InstructionHandle> reached = new HashSet<>();
+            Deque<InstructionHandle> work = new ArrayDeque<>();
+            work.push(il.getStart());
+            while (!work.isEmpty()) {
+                InstructionHandle handle = work.pop();
+                if (handle == null || !reached.add(handle)) {
+                    continue;
+                }
+                Instruction instruction = handle.getInstruction();
+                if (instruction instanceof BranchInstruction) {
+                    work.push(((BranchInstruction) instruction).getTarget());
+                }
+                if (instruction instanceof Select) {
+                    for (InstructionHandle target : ((Select) instruction).getTargets()) {
+                        work.push(target);
+                    }
+                }
+                if (!(instruction instanceof GotoInstruction || instruction instanceof ReturnInstruction
+                        || instruction instanceof Select || instruction.getOpcode() == Constants.ATHROW)) {
+                    work.push(handle.getNext());
+                }
+            }
+            if (reached.size() == il.getLength()) {
+                return false;
+            }
+            // Release the targets of the unreachable branches first, since
+            // they may point into another unreachable range.
+            for (InstructionHandle handle = il.getStart(); handle != null; handle = handle.getNext()) {
+                if (!reached.contains(handle) && handle instanceof BranchHandle) {
+                    BranchHandle branch = (BranchHandle) handle;
+                    branch.setTarget(null);
+                    if (branch.getInstruction() instanceof Select) {
+                        Select select = (Select) branch.getInstruction();
+                        for (int i = 0; i < select.getTargets().length; i++) {
+                            select.setTarget(i, null);
+                        }
+                    }
+                }
+            }
+            // Only unreachable code branches into unreachable code, so once
+            // those branches are released nothing needs to be redirected.
+            Branches branches = new Branches(il);
+            InstructionHandle handle = il.getStart();
+            while (handle != null) {
+                if (reached.contains(handle)) {
+                    handle = handle.getNext();
+                    continue;
+                }
+                InstructionHandle last = handle;
+                while (last.getNext() != null && !reached.contains(last.getNext())) {
+                    last = last.getNext();
+                }
+                InstructionHandle next = last.getNext();
+                branches.delete(il, handle, last);
+                handle = next;
+            }
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,948 @@
+package edu.temple.cis.c4324.codegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bcel.Constants;
+
+/**
+ * Class to compute the StackMapTable attribute of a method from its code.
+ * The types of the locals and the operand stack are found by following the
+ * code from its start to a fixed point. A frame is written for each branch
+ * target and for each instruction that follows a goto, a return or a throw,
+ * which are the places the type checking verifier of a version 50 or later
+ * class requires one.
+ * <p>
+ * Code that cannot be reached has no types to describe. As other class
+ * writers do, it is replaced by nop instructions ending in athrow, and its
+ * frame has no locals and a Throwable on the stack. The instructions keep
+ * their offsets, so the code is only changed in place.
+ * <p>
+ * Exception handlers and the jsr and ret instructions are not supported.
+ */
+final class StackMapBuilder {
+
+    /**
+     * The constant pool entries the code refers to.
+     */
+    interface Pool {
+
+        /**
+         * @return The descriptor of the value an ldc, ldc_w or ldc2_w of the
+         * constant pushes
+         */
+        String getConstantType(int index);
+
+        /**
+         * @return The descriptor of a Fieldref, Methodref or
+         * InterfaceMethodref
+         */
+        String getMemberDescriptor(int index);
+
+        /**
+         * @return The internal name of a Class constant
+         */
+        String getClassName(int index);
+
+        /**
+         * Add a Class constant, if it is not already in the pool.
+         * @param internalName The class name with slashes, or the descriptor
+         * of an array class
+         * @return The index of the constant
+         */
+        int addClass(String internalName);
+    }
+
+    // The verification types have the tags of the StackMapTable entries.
+    // An object type keeps the number of its class name in the upper bits,
+    // and an uninitialized type the offset of its new instruction.
+    private static final int TOP = Constants.ITEM_Bogus;
+    private static final int INTEGER = Constants.ITEM_Integer;
+    private static final int FLOAT = Constants.ITEM_Float;
+    private static final int DOUBLE = Constants.ITEM_Double;
+    private static final int LONG = Constants.ITEM_Long;
+    private static final int NULL = Constants.ITEM_Null;
+    private static final int UNINITIALIZED_THIS = Constants.ITEM_InitObject;
+    private static final int OBJECT = Constants.ITEM_Object;
+    private static final int UNINITIALIZED = Constants.ITEM_NewObject;
+
+    private static final int SAME_LOCALS_1_STACK_ITEM = 64;
+    private static final int SAME_LOCALS_1_STACK_ITEM_EXTENDED = 247;
+    private static final int CHOP = 251;
+    private static final int SAME_FRAME_EXTENDED = 251;
+    private static final int APPEND = 251;
+    private static final int FULL_FRAME = 255;
+
+    private final Pool pool;
+    private final String className;
+    private final List<String> names;
+    private final Map<String, Integer> nameNumbers;
+
+    private byte[] code;
+    private int maxLocals;
+    private int[][] entryLocals;
+    private int[][] entryStacks;
+    private int[] worklist;
+    private int worklistSize;
+    private boolean[] queued;
+    private boolean deadCode;
+
+    // The state of the instruction being followed.
+    private int[] locals;
+    private int[] stack;
+    private int top;
+
+    /**
+     * @param pool The constant pool of the class
+     * @param className The internal name of the class
+     */
+    StackMapBuilder(Pool pool, String className) {
+        this.pool = pool;
+        this.className = className;
+        names = new ArrayList<>();
+        nameNumbers = new HashMap<>();
+    }
+
+    /**
+     * Determine whether the last code had unreachable instructions that
+     * were replaced. The replacement needs a stack of at least one word.
+     */
+    boolean hasDeadCode() {
+        return deadCode;
+    }
+
+    /**
+     * Compute the frames of a method.
+     * @param code The code, in which unreachable instructions are replaced
+     * @param isStatic true if the method is static
+     * @param isConstructor true if the method is an instance initializer
+     * @param descriptor The method descriptor
+     * @param maxLocals The number of local variable slots
+     * @param maxStack The maximum number of stack words
+     * @return The contents of the StackMapTable attribute, or null if the
+     * method needs no frames
+     */
+    byte[] build(byte[] code, boolean isStatic, boolean isConstructor, String descriptor,
+            int maxLocals, int maxStack) {
+        this.code = code;
+        this.maxLocals = maxLocals;
+        int n = code.length;
+        deadCode = false;
+        boolean[] blockStart = new boolean[n + 1];
+        boolean[] needsFrame = new boolean[n + 1];
+        findBlocks(blockStart, needsFrame);
+        entryLocals = new int[n][];
+        entryStacks = new int[n][];
+        worklist = new int[8];
+        worklistSize = 0;
+        queued = new boolean[n];
+        locals = new int[maxLocals];
+        stack = new int[maxStack];
+
+        int[] initialLocals = initialLocals(isStatic, isConstructor, descriptor);
+        entryLocals[0] = initialLocals;
+        entryStacks[0] = new int[0];
+        enqueue(0);
+        while (worklistSize > 0) {
+            int start = worklist[--worklistSize];
+            queued[start] = false;
+            follow(start, blockStart);
+        }
+        return frames(initialLocals, blockStart, needsFrame);
+    }
+
+    /**
+     * Mark the first instruction of each basic block, and the instructions
+     * that need a frame.
+     */
+    private void findBlocks(boolean[] blockStart, boolean[] needsFrame) {
+        int n = code.length;
+        blockStart[0] = true;
+        for (int pc = 0; pc < n; pc += length(pc)) {
+            int opcode = code[pc] & 0xff;
+            int next = pc + length(pc);
+            if (opcode >= Constants.IFEQ && opcode <= Constants.IF_ACMPNE
+                    || opcode == Constants.IFNULL || opcode == Constants.IFNONNULL) {
+                mark(pc + s2(pc + 1), blockStart, needsFrame);
+                blockStart[next] = true;
+            } else if (opcode == Constants.GOTO || opcode == Constants.GOTO_W) {
+                mark(pc + (opcode == Constants.GOTO ? s2(pc + 1) : s4(pc + 1)), blockStart, needsFrame);
+                mark(next, blockStart, needsFrame);
+            } else if (opcode == Constants.TABLESWITCH || opcode == Constants.LOOKUPSWITCH) {
+                for (int target : switchTargets(pc)) {
+                    mark(target, blockStart, needsFrame);
+                }
+                mark(next, blockStart, needsFrame);
+            } else if (opcode >= Constants.IRETURN && opcode <= Constants.RETURN || opcode == Constants.ATHROW) {
+                mark(next, blockStart, needsFrame);
+            } else if (opcode == Constants.JSR || opcode == Constants.JSR_W || opcode == Constants.RET) {
+                throw new RuntimeException(Constants.OPCODE_NAMES[opcode] + " is not supported");
+            }
+        }
+    }
+
+    private static void mark(int offset, boolean[] blockStart, boolean[] needsFrame) {
+        blockStart[offset] = true;
+        needsFrame[offset] = true;
+    }
+
+    private int[] initialLocals(boolean isStatic, boolean isConstructor, String descriptor) {
+        int[] result = new int[maxLocals];
+        int slot = 0;
+        if (!isStatic) {
+            result[slot++] = isConstructor ? UNINITIALIZED_THIS : object(className);
+        }
+        for (int i = 1; descriptor.charAt(i) != ')'; i = next(descriptor, i)) {
+            int type = type(descriptor, i);
+            result[slot++] = type;
+            if (type == LONG || type == DOUBLE) {
+                result[slot++] = TOP;
+            }
+        }
+        return result;
+    }
+
+    private void enqueue(int offset) {
+        if (queued[offset]) {
+            return;
+        }
+        if (worklistSize == worklist.length) {
+            worklist = Arrays.copyOf(worklist, worklistSize * 2);
+        }
+        worklist[worklistSize++] = offset;
+        queued[offset] = true;
+    }
+
+    /**
+     * Follow a basic block from the types at its start, and merge the types
+     * at its end into its successors.
+     */
+    private void follow(int start, boolean[] blockStart) {
+        System.arraycopy(entryLocals[start], 0, locals, 0, maxLocals);
+        int[] entryStack = entryStacks[start];
+        System.arraycopy(entryStack, 0, stack, 0, entryStack.length);
+        top = entryStack.length;
+        int pc = start;
+        while (true) {
+            int opcode = code[pc] & 0xff;
+            execute(pc, opcode);
+            int next = pc + length(pc);
+            if (opcode >= Constants.IFEQ && opcode <= Constants.IF_ACMPNE
+                    || opcode == Constants.IFNULL || opcode == Constants.IFNONNULL) {
+                merge(pc + s2(pc + 1));
+            } else if (opcode == Constants.GOTO) {
+                merge(pc + s2(pc + 1));
+                return;
+            } else if (opcode == Constants.GOTO_W) {
+                merge(pc + s4(pc + 1));
+                return;
+            } else if (opcode == Constants.TABLESWITCH || opcode == Constants.LOOKUPSWITCH) {
+                for (int target : switchTargets(pc)) {
+                    merge(target);
+                }
+                return;
+            } else if (opcode >= Constants.IRETURN && opcode <= Constants.RETURN || opcode == Constants.ATHROW) {
+                return;
+            }
+            if (next >= code.length) {
+                throw new RuntimeException("Code falls off its end at " + pc);
+            }
+            if (blockStart[next]) {
+                merge(next);
+                return;
+            }
+            pc = next;
+        }
+    }
+
+    /**
+     * Merge the current types into those at the start of a block.
+     */
+    private void merge(int target) {
+        int[] targetLocals = entryLocals[target];
+        if (targetLocals == null) {
+            entryLocals[target] = Arrays.copyOf(locals, maxLocals);
+            entryStacks[target] = Arrays.copyOf(stack, top);
+            enqueue(target);
+            return;
+        }
+        int[] targetStack = entryStacks[target];
+        if (targetStack.length != top) {
+            throw new RuntimeException("Inconsistent stack height at " + target);
+        }
+        boolean changed = false;
+        for (int i = 0; i < maxLocals; i++) {
+            int merged = merge(targetLocals[i], locals[i]);
+            if (merged != targetLocals[i]) {
+                targetLocals[i] = merged;
+                changed = true;
+            }
+        }
+        for (int i = 0; i < top; i++) {
+            int merged = merge(targetStack[i], stack[i]);
+            if (merged != targetStack[i]) {
+                targetStack[i] = merged;
+                changed = true;
+            }
+        }
+        if (changed) {
+            enqueue(target);
+        }
+    }
+
+    private int merge(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        boolean aReference = a == NULL || (a & 0xf) == OBJECT;
+        boolean bReference = b == NULL || (b & 0xf) == OBJECT;
+        if (aReference && bReference) {
+            return a == NULL ? b : b == NULL ? a : object("java/lang/Object");
+        }
+        return TOP;
+    }
+
+    /**
+     * Write the frames of the code, replacing any unreachable code.
+     */
+    private byte[] frames(int[] initialLocals, boolean[] blockStart, boolean[] needsFrame) {
+        ByteVector table = new ByteVector(64);
+        int count = 0;
+        int[] previous = frameLocals(initialLocals);
+        int previousOffset = -1;
+        int n = code.length;
+        for (int pc = 0; pc < n;) {
+            int next = pc + length(pc);
+            if (!blockStart[pc]) {
+                pc = next;
+                continue;
+            }
+            if (entryLocals[pc] == null) {
+                // Unreachable code, up to the next block that is reached.
+                int end = next;
+                while (end < n && !(blockStart[end] && entryLocals[end] != null)) {
+                    end += length(end);
+                }
+                Arrays.fill(code, pc, end - 1, (byte) Constants.NOP);
+                code[end - 1] = (byte) Constants.ATHROW;
+                deadCode = true;
+                table.putByte(FULL_FRAME);
+                table.putShort(pc - previousOffset - 1);
+                table.putShort(0);
+                table.putShort(1);
+                writeType(table, object("java/lang/Throwable"));
+                previous = new int[0];
+                previousOffset = pc;
+                count++;
+                pc = end;
+                continue;
+            }
+            if (needsFrame[pc]) {
+                int[] current = frameLocals(entryLocals[pc]);
+                writeFrame(table, pc - previousOffset - 1, previous, current, frameStack(entryStacks[pc]));
+                previous = current;
+                previousOffset = pc;
+                count++;
+            }
+            pc = next;
+        }
+        if (count == 0) {
+            return null;
+        }
+        ByteVector attribute = new ByteVector(2 + table.length());
+        attribute.putShort(count);
+        attribute.putBytes(table);
+        return attribute.toByteArray();
+    }
+
+    private void writeFrame(ByteVector table, int delta, int[] previous, int[] current, int[] stackTypes) {
+        int common = Math.min(previous.length, current.length);
+        boolean samePrefix = true;
+        for (int i = 0; i < common && samePrefix; i++) {
+            samePrefix = previous[i] == current[i];
+        }
+        int added = current.length - previous.length;
+        if (samePrefix && added == 0 && stackTypes.length == 0) {
+            if (delta < 64) {
+                table.putByte(delta);
+            } else {
+                table.putByte(SAME_FRAME_EXTENDED);
+                table.putShort(delta);
+            }
+        } else if (samePrefix && added == 0 && stackTypes.length == 1) {
+            if (delta < 64) {
+                table.putByte(SAME_LOCALS_1_STACK_ITEM + delta);
+            } else {
+                table.putByte(SAME_LOCALS_1_STACK_ITEM_EXTENDED);
+                table.putShort(delta);
+            }
+            writeType(table, stackTypes[0]);
+        } else if (samePrefix && added < 0 && added >= -3 && stackTypes.length == 0) {
+            table.putByte(CHOP + added);
+            table.putShort(delta);
+        } else if (samePrefix && added > 0 && added <= 3 && stackTypes.length == 0) {
+            table.putByte(APPEND + added);
+            table.putShort(delta);
+            for (int i = previous.length; i < current.length; i++) {
+                writeType(table, current[i]);
+            }
+        } else {
+            table.putByte(FULL_FRAME);
+            table.putShort(delta);
+            table.putShort(current.length);
+            for (int type : current) {
+                writeType(table, type);
+            }
+            table.putShort(stackTypes.length);
+            for (int type : stackTypes) {
+                writeType(table, type);
+            }
+        }
+    }
+
+    private void writeType(ByteVector table, int type) {
+        int tag = type & 0xf;
+        table.putByte(tag);
+        if (tag == OBJECT) {
+            table.putShort(pool.addClass(names.get(type >>> 4)));
+        } else if (tag == UNINITIALIZED) {
+            table.putShort(type >>> 4);
+        }
+    }
+
+    /**
+     * Get the types of the locals as a frame lists them: a long or double
+     * is one entry, and the unused slots at the end are left out.
+     */
+    private static int[] frameLocals(int[] slots) {
+        int[] types = new int[slots.length];
+        int count = 0;
+        int used = 0;
+        for (int i = 0; i < slots.length; i++) {
+            types[count++] = slots[i];
+            if (slots[i] != TOP) {
+                used = count;
+            }
+            if (slots[i] == LONG || slots[i] == DOUBLE) {
+                i++;
+            }
+        }
+        return Arrays.copyOf(types, used);
+    }
+
+    private static int[] frameStack(int[] words) {
+        int[] types = new int[words.length];
+        int count = 0;
+        for (int i = 0; i < words.length; i++) {
+            types[count++] = words[i];
+            if (words[i] == LONG || words[i] == DOUBLE) {
+                i++;
+            }
+        }
+        return Arrays.copyOf(types, count);
+    }
+
+    private int object(String internalName) {
+        Integer number = nameNumbers.get(internalName);
+        if (number == null) {
+            number = names.size();
+            names.add(internalName);
+            nameNumbers.put(internalName, number);
+        }
+        return OBJECT | number << 4;
+    }
+
+    /**
+     * Get the type of the value of a field descriptor that starts at an
+     * index of a descriptor.
+     */
+    private int type(String descriptor, int i) {
+        switch (descriptor.charAt(i)) {
+            case 'Z':
+            case 'B':
+            case 'C':
+            case 'S':
+            case 'I':
+                return INTEGER;
+            case 'F':
+                return FLOAT;
+            case 'J':
+                return LONG;
+            case 'D':
+                return DOUBLE;
+            case 'L':
+                return object(descriptor.substring(i + 1, descriptor.indexOf(';', i)));
+            case '[':
+                return object(descriptor.substring(i, next(descriptor, i)));
+            default:
+                return TOP;
+        }
+    }
+
+    /**
+     * Get the index of the end of the field descriptor that starts at an
+     * index of a descriptor.
+     */
+    private static int next(String descriptor, int i) {
+        while (descriptor.charAt(i) == '[') {
+            i++;
+        }
+        return descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+    }
+
+    private void push(int type) {
+        stack[top++] = type;
+        if (type == LONG || type == DOUBLE) {
+            stack[top++] = TOP;
+        }
+    }
+
+    /**
+     * Push the type of the value of a field or method descriptor.
+     */
+    private void pushDescriptor(String descriptor) {
+        if (descriptor.charAt(0) != 'V') {
+            push(type(descriptor, 0));
+        }
+    }
+
+    private int pop() {
+        return stack[--top];
+    }
+
+    private void pop(int words) {
+        top -= words;
+        if (top < 0) {
+            throw new RuntimeException("Operand stack underflow");
+        }
+    }
+
+    private void load(int type, int index) {
+        push(type == OBJECT ? locals[index] : type);
+    }
+
+    private void store(int index, int words) {
+        int type = stack[top - words];
+        pop(words);
+        if (index > 0 && (locals[index - 1] == LONG || locals[index - 1] == DOUBLE)) {
+            locals[index - 1] = TOP;
+        }
+        locals[index] = type;
+        if (words == 2) {
+            locals[index + 1] = TOP;
+        }
+    }
+
+    // The types of the loads, stores and array elements in opcode order.
+    private static final int[] TYPES = {INTEGER, LONG, FLOAT, DOUBLE, OBJECT, INTEGER, INTEGER, INTEGER};
+    // The result types of i2l to i2s.
+    private static final int[] CONVERSIONS = {LONG, FLOAT, DOUBLE, INTEGER, FLOAT, DOUBLE, INTEGER, LONG,
+        DOUBLE, INTEGER, LONG, FLOAT, INTEGER, INTEGER, INTEGER};
+
+    private static int words(int type) {
+        return type == LONG || type == DOUBLE ? 2 : 1;
+    }
+
+    /**
+     * Change the types by the effect of an instruction.
+     */
+    private void execute(int pc, int opcode) {
+        switch (opcode) {
+            case Constants.NOP:
+                break;
+            case Constants.ACONST_NULL:
+                push(NULL);
+                break;
+            case Constants.ICONST_M1:
+            case Constants.ICONST_0:
+            case Constants.ICONST_1:
+            case Constants.ICONST_2:
+            case Constants.ICONST_3:
+            case Constants.ICONST_4:
+            case Constants.ICONST_5:
+            case Constants.BIPUSH:
+            case Constants.SIPUSH:
+                push(INTEGER);
+                break;
+            case Constants.LCONST_0:
+            case Constants.LCONST_1:
+                push(LONG);
+                break;
+            case Constants.FCONST_0:
+            case Constants.FCONST_1:
+            case Constants.FCONST_2:
+                push(FLOAT);
+                break;
+            case Constants.DCONST_0:
+            case Constants.DCONST_1:
+                push(DOUBLE);
+                break;
+            case Constants.LDC:
+                push(type(pool.getConstantType(code[pc + 1] & 0xff), 0));
+                break;
+            case Constants.LDC_W:
+            case Constants.LDC2_W:
+                push(type(pool.getConstantType(u2(pc + 1)), 0));
+                break;
+            case Constants.ILOAD:
+            case Constants.LLOAD:
+            case Constants.FLOAD:
+            case Constants.DLOAD:
+            case Constants.ALOAD:
+                load(TYPES[opcode - Constants.ILOAD], code[pc + 1] & 0xff);
+                break;
+            case Constants.IALOAD:
+            case Constants.LALOAD:
+            case Constants.FALOAD:
+            case Constants.DALOAD:
+            case Constants.BALOAD:
+            case Constants.CALOAD:
+            case Constants.SALOAD:
+                pop(2);
+                push(TYPES[opcode - Constants.IALOAD]);
+                break;
+            case Constants.AALOAD: {
+                pop();
+                int array = pop();
+                if (array == NULL) {
+                    push(NULL);
+                } else {
+                    String name = names.get(array >>> 4);
+                    push(type(name, 1));
+                }
+                break;
+            }
+            case Constants.ISTORE:
+            case Constants.FSTORE:
+            case Constants.ASTORE:
+                store(code[pc + 1] & 0xff, 1);
+                break;
+            case Constants.LSTORE:
+            case Constants.DSTORE:
+                store(code[pc + 1] & 0xff, 2);
+                break;
+            case Constants.IASTORE:
+            case Constants.FASTORE:
+            case Constants.AASTORE:
+            case Constants.BASTORE:
+            case Constants.CASTORE:
+            case Constants.SASTORE:
+                pop(3);
+                break;
+            case Constants.LASTORE:
+            case Constants.DASTORE:
+                pop(4);
+                break;
+            case Constants.POP:
+            case Constants.MONITORENTER:
+            case Constants.MONITOREXIT:
+            case Constants.IFEQ:
+            case Constants.IFNE:
+            case Constants.IFLT:
+            case Constants.IFGE:
+            case Constants.IFGT:
+            case Constants.IFLE:
+            case Constants.IFNULL:
+            case Constants.IFNONNULL:
+            case Constants.TABLESWITCH:
+            case Constants.LOOKUPSWITCH:
+                pop(1);
+                break;
+            case Constants.POP2:
+            case Constants.IF_ICMPEQ:
+            case Constants.IF_ICMPNE:
+            case Constants.IF_ICMPLT:
+            case Constants.IF_ICMPGE:
+            case Constants.IF_ICMPGT:
+            case Constants.IF_ICMPLE:
+            case Constants.IF_ACMPEQ:
+            case Constants.IF_ACMPNE:
+                pop(2);
+                break;
+            case Constants.DUP:
+                stack[top] = stack[top - 1];
+                top++;
+                break;
+            case Constants.DUP_X1:
+                duplicate(1, 1);
+                break;
+            case Constants.DUP_X2:
+                duplicate(1, 2);
+                break;
+            case Constants.DUP2:
+                duplicate(2, 0);
+                break;
+            case Constants.DUP2_X1:
+                duplicate(2, 1);
+                break;
+            case Constants.DUP2_X2:
+                duplicate(2, 2);
+                break;
+            case Constants.SWAP: {
+                int t = stack[top - 1];
+                stack[top - 1] = stack[top - 2];
+                stack[top - 2] = t;
+                break;
+            }
+            case Constants.IINC:
+            case Constants.GOTO:
+            case Constants.GOTO_W:
+            case Constants.RETURN:
+                break;
+            case Constants.LCMP:
+                pop(4);
+                push(INTEGER);
+                break;
+            case Constants.FCMPL:
+            case Constants.FCMPG:
+                pop(2);
+                push(INTEGER);
+                break;
+            case Constants.DCMPL:
+            case Constants.DCMPG:
+                pop(4);
+                push(INTEGER);
+                break;
+            case Constants.IRETURN:
+            case Constants.FRETURN:
+            case Constants.ARETURN:
+            case Constants.ATHROW:
+                pop(1);
+                break;
+            case Constants.LRETURN:
+            case Constants.DRETURN:
+                pop(2);
+                break;
+            case Constants.GETSTATIC:
+                pushDescriptor(pool.getMemberDescriptor(u2(pc + 1)));
+                break;
+            case Constants.PUTSTATIC:
+                pop(words(type(pool.getMemberDescriptor(u2(pc + 1)), 0)));
+                break;
+            case Constants.GETFIELD:
+                pop(1);
+                pushDescriptor(pool.getMemberDescriptor(u2(pc + 1)));
+                break;
+            case Constants.PUTFIELD:
+                pop(words(type(pool.getMemberDescriptor(u2(pc + 1)), 0)) + 1);
+                break;
+            case Constants.INVOKEVIRTUAL:
+            case Constants.INVOKESPECIAL:
+            case Constants.INVOKESTATIC:
+            case Constants.INVOKEINTERFACE:
+            case Constants.INVOKEDYNAMIC:
+                invoke(opcode, pool.getMemberDescriptor(u2(pc + 1)));
+                break;
+            case Constants.NEW:
+                push(UNINITIALIZED | pc << 4);
+                break;
+            case Constants.NEWARRAY:
+                pop(1);
+                push(object("[" + "    ZCFDBSIJ".charAt(code[pc + 1])));
+                break;
+            case Constants.ANEWARRAY: {
+                pop(1);
+                String name = pool.getClassName(u2(pc + 1));
+                push(object(name.charAt(0) == '[' ? "[" + name : "[L" + name + ";"));
+                break;
+            }
+            case Constants.ARRAYLENGTH:
+            case Constants.INSTANCEOF:
+                pop(1);
+                push(INTEGER);
+                break;
+            case Constants.CHECKCAST:
+                pop(1);
+                push(object(pool.getClassName(u2(pc + 1))));
+                break;
+            case Constants.WIDE:
+                executeWide(pc);
+                break;
+            case Constants.MULTIANEWARRAY:
+                pop(code[pc + 3] & 0xff);
+                push(object(pool.getClassName(u2(pc + 1))));
+                break;
+            default:
+                if (opcode >= Constants.ILOAD_0 && opcode <= Constants.ALOAD_3) {
+                    int i = opcode - Constants.ILOAD_0;
+                    load(TYPES[i / 4], i % 4);
+                } else if (opcode >= Constants.ISTORE_0 && opcode <= Constants.ASTORE_3) {
+                    int i = opcode - Constants.ISTORE_0;
+                    store(i % 4, words(TYPES[i / 4]));
+                } else if (opcode >= Constants.IADD && opcode <= Constants.DREM) {
+                    int type = TYPES[(opcode - Constants.IADD) % 4];
+                    pop(2 * words(type));
+                    push(type);
+                } else if (opcode >= Constants.INEG && opcode <= Constants.DNEG) {
+                    int type = TYPES[opcode - Constants.INEG];
+                    pop(words(type));
+                    push(type);
+                } else if (opcode >= Constants.ISHL && opcode <= Constants.LXOR) {
+                    boolean isLong = (opcode - Constants.ISHL) % 2 == 1;
+                    boolean isShift = opcode <= Constants.LUSHR;
+                    pop(isLong ? (isShift ? 3 : 4) : 2);
+                    push(isLong ? LONG : INTEGER);
+                } else if (opcode >= Constants.I2L && opcode <= Constants.I2S) {
+                    // The first three conversions are from int, then three
+                    // each from long, float and double, then to byte, char
+                    // and short from int.
+                    int from = opcode <= Constants.I2D ? INTEGER
+                            : opcode <= Constants.L2D ? LONG
+                            : opcode <= Constants.F2D ? FLOAT
+                            : opcode <= Constants.D2F ? DOUBLE : INTEGER;
+                    pop(words(from));
+                    push(CONVERSIONS[opcode - Constants.I2L]);
+                } else {
+                    throw new RuntimeException(Constants.OPCODE_NAMES[opcode] + " is not supported");
+                }
+        }
+    }
+
+    private void executeWide(int pc) {
+        int opcode = code[pc + 1] & 0xff;
+        int index = u2(pc + 2);
+        if (opcode >= Constants.ILOAD && opcode <= Constants.ALOAD) {
+            load(TYPES[opcode - Constants.ILOAD], index);
+        } else if (opcode >= Constants.ISTORE && opcode <= Constants.ASTORE) {
+            store(index, words(TYPES[opcode - Constants.ISTORE]));
+        } else if (opcode != Constants.IINC) {
+            throw new RuntimeException("wide " + Constants.OPCODE_NAMES[opcode] + " is not supported");
+        }
+    }
+
+    /**
+     * Duplicate the top words of the stack, inserting the copy below the
+     * words under them.
+     * @param words The number of words copied
+     * @param under The number of words the copy is inserted below
+     */
+    private void duplicate(int words, int under) {
+        System.arraycopy(stack, top - words - under, stack, top - under, words + under);
+        System.arraycopy(stack, top, stack, top - words - under, words);
+        top += words;
+    }
+
+    private void invoke(int opcode, String descriptor) {
+        int words = 0;
+        for (int i = 1; descriptor.charAt(i) != ')'; i = next(descriptor, i)) {
+            words += words(type(descriptor, i));
+        }
+        pop(words);
+        if (opcode != Constants.INVOKESTATIC && opcode != Constants.INVOKEDYNAMIC) {
+            int receiver = pop();
+            int tag = receiver & 0xf;
+            if (opcode == Constants.INVOKESPECIAL && (tag == UNINITIALIZED || tag == UNINITIALIZED_THIS)) {
+                // A constructor call initializes every copy of the object.
+                int initialized = tag == UNINITIALIZED_THIS ? object(className)
+                        : object(pool.getClassName(u2((receiver >>> 4) + 1)));
+                for (int i = 0; i < maxLocals; i++) {
+                    if (locals[i] == receiver) {
+                        locals[i] = initialized;
+                    }
+                }
+                for (int i = 0; i < top; i++) {
+                    if (stack[i] == receiver) {
+                        stack[i] = initialized;
+                    }
+                }
+            }
+        }
+        pushDescriptor(descriptor.substring(descriptor.indexOf(')') + 1));
+    }
+
+    /**
+     * Get the length of the instruction at an offset.
+     */
+    private int length(int pc) {
+        int opcode = code[pc] & 0xff;
+        switch (opcode) {
+            case Constants.BIPUSH:
+            case Constants.LDC:
+            case Constants.ILOAD:
+            case Constants.LLOAD:
+            case Constants.FLOAD:
+            case Constants.DLOAD:
+            case Constants.ALOAD:
+            case Constants.ISTORE:
+            case Constants.LSTORE:
+            case Constants.FSTORE:
+            case Constants.DSTORE:
+            case Constants.ASTORE:
+            case Constants.RET:
+            case Constants.NEWARRAY:
+                return 2;
+            case Constants.SIPUSH:
+            case Constants.LDC_W:
+            case Constants.LDC2_W:
+            case Constants.IINC:
+            case Constants.GETSTATIC:
+            case Constants.PUTSTATIC:
+            case Constants.GETFIELD:
+            case Constants.PUTFIELD:
+            case Constants.INVOKEVIRTUAL:
+            case Constants.INVOKESPECIAL:
+            case Constants.INVOKESTATIC:
+            case Constants.NEW:
+            case Constants.ANEWARRAY:
+            case Constants.CHECKCAST:
+            case Constants.INSTANCEOF:
+            case Constants.IFNULL:
+            case Constants.IFNONNULL:
+                return 3;
+            case Constants.MULTIANEWARRAY:
+                return 4;
+            case Constants.INVOKEINTERFACE:
+            case Constants.INVOKEDYNAMIC:
+            case Constants.GOTO_W:
+            case Constants.JSR_W:
+                return 5;
+            case Constants.WIDE:
+                return (code[pc + 1] & 0xff) == Constants.IINC ? 6 : 4;
+            case Constants.TABLESWITCH: {
+                int base = pc + 4 - pc % 4;
+                return base - pc + 12 + 4 * (s4(base + 8) - s4(base + 4) + 1);
+            }
+            case Constants.LOOKUPSWITCH: {
+                int base = pc + 4 - pc % 4;
+                return base - pc + 8 + 8 * s4(base + 4);
+            }
+            default:
+                return opcode >= Constants.IFEQ && opcode <= Constants.JSR ? 3 : 1;
+        }
+    }
+
+    private int[] switchTargets(int pc) {
+        int base = pc + 4 - pc % 4;
+        int[] targets;
+        if ((code[pc] & 0xff) == Constants.TABLESWITCH) {
+            int count = s4(base + 8) - s4(base + 4) + 1;
+            targets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                targets[i + 1] = pc + s4(base + 12 + 4 * i);
+            }
+        } else {
+            int count = s4(base + 4);
+            targets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                targets[i + 1] = pc + s4(base + 12 + 8 * i);
+            }
+        }
+        targets[0] = pc + s4(base);
+        return targets;
+    }
+
+    private int u2(int i) {
+        return (code[i] & 0xff) << 8 | code[i + 1] & 0xff;
+    }
+
+    private int s2(int i) {
+        return (short) u2(i);
+    }
+
+    private int s4(int i) {
+        return code[i] << 24 | (code[i + 1] & 0xff) << 16 | (code[i + 2] & 0xff) << 8 | code[i + 3] & 0xff;
+    }
+
+}
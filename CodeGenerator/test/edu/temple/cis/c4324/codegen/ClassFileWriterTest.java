@@ -0,0 +1,271 @@
+package edu.temple.cis.c4324.codegen;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import static org.apache.bcel.Constants.ACC_PUBLIC;
+import static org.apache.bcel.Constants.ACC_STATIC;
+import static org.apache.bcel.Constants.IADD;
+import static org.apache.bcel.Constants.IFEQ;
+import static org.apache.bcel.Constants.IFNULL;
+import static org.apache.bcel.Constants.IF_ICMPGE;
+import static org.apache.bcel.Constants.IF_ICMPGT;
+import static org.apache.bcel.Constants.IF_ICMPLT;
+import static org.apache.bcel.Constants.IMUL;
+import static org.apache.bcel.Constants.INVOKESTATIC;
+import static org.apache.bcel.Constants.ISUB;
+import static org.apache.bcel.Constants.NOP;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.Type;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that ClassFileWriter writes a class that loads, verifies and runs
+ * as the one CodeGenerator builds from the same calls, with the same code
+ * and the same maximum stack size and number of locals.
+ */
+public class ClassFileWriterTest {
+
+    private static class Loader extends ClassLoader {
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Generate a class with the methods used by the tests.
+     */
+    private static byte[] generate(Backend backend) {
+        backend.beginClass("<generated>", "test.Generated");
+        backend.addStaticField("table", "double[]");
+        backend.addStaticField("count", "int");
+        int table = backend.getFieldRef("test.Generated", "table", new ArrayType(Type.DOUBLE, 1));
+        int count = backend.getFieldRef("test.Generated", "count", Type.INT);
+
+        Code clinit = backend.beginCode(ACC_STATIC, "void", "<clinit>");
+        clinit.addConstant(10);
+        clinit.addNewArray(Type.DOUBLE, 1);
+        clinit.addPutStatic(table);
+
+        // Sum the numbers below n in a loop with a forward and a backward
+        // branch.
+        Code code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "int", "sum", "int n");
+        int i = backend.addLocalVariable("i", "int");
+        int total = backend.addLocalVariable("total", "int");
+        code.addConstant(0);
+        code.addStore(Type.INT, i);
+        code.addConstant(0);
+        code.addStore(Type.INT, total);
+        Label top = new Label();
+        Label done = new Label();
+        code.bind(top);
+        code.addInstruction(NOP);
+        code.addLoad(Type.INT, i);
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("n"));
+        code.addIf(IF_ICMPGE, Type.INT, done);
+        code.addLoad(Type.INT, total);
+        code.addLoad(Type.INT, i);
+        code.addArithmetic(IADD, Type.INT);
+        code.addStore(Type.INT, total);
+        code.addLoad(Type.INT, i);
+        code.addConstant(1);
+        code.addArithmetic(IADD, Type.INT);
+        code.addStore(Type.INT, i);
+        code.addGoTo(top);
+        code.bind(done);
+        code.addLoad(Type.INT, total);
+        code.addReturn(Type.INT);
+
+        // Compute with doubles, constants of every size, a comparison of
+        // doubles and locals beyond slot 255.
+        code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "double", "mix", "double x", "int k");
+        for (int v = 0; v < 130; v++) {
+            backend.addLocalVariable("d" + v, "double");
+        }
+        int wide = backend.addLocalVariable("wide", "double");
+        code.addLoad(Type.DOUBLE, backend.getLocalVariableIndex("x"));
+        code.addConstant(2.5);
+        code.addArithmetic(IMUL, Type.DOUBLE);
+        code.addStore(Type.DOUBLE, wide);
+        code.addGetStatic(table);
+        code.addConstant(3);
+        code.addLoad(Type.DOUBLE, wide);
+        code.addArrayStore(Type.DOUBLE);
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("k"));
+        code.addConstant(100000);
+        code.addArithmetic(IADD, Type.INT);
+        code.addConstant(-1000);
+        code.addArithmetic(ISUB, Type.INT);
+        code.addConstant(200);
+        code.addArithmetic(ISUB, Type.INT);
+        code.addPutStatic(count);
+        Label small = new Label();
+        code.addLoad(Type.DOUBLE, wide);
+        code.addConstant(1.0);
+        code.addIf(IF_ICMPLT, Type.DOUBLE, small);
+        code.addGetStatic(table);
+        code.addConstant(3);
+        code.addArrayLoad(Type.DOUBLE);
+        code.addGetStatic(count);
+        code.addCast(Type.INT, Type.DOUBLE);
+        code.addArithmetic(IADD, Type.DOUBLE);
+        code.addReturn(Type.DOUBLE);
+        code.bind(small);
+        code.addConstant(-1.0);
+        code.addReturn(Type.DOUBLE);
+
+        // Call the other methods and print, with no return of its own.
+        code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "void", "run", "boolean b");
+        Label skip = new Label();
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("b"));
+        code.addIf(IFEQ, Type.INT, skip);
+        code.addConstant(4);
+        code.addInvoke(INVOKESTATIC, backend.getMethodRef("test.Generated", "sum", Type.INT, Type.INT));
+        code.addPutStatic(count);
+        code.bind(skip);
+        code.addInstruction(NOP);
+        backend.endMethod();
+        return backend.getClassBytes();
+    }
+
+    private static Class<?> load(String name, byte[] bytes) {
+        return new Loader().define(name, bytes);
+    }
+
+    private static JavaClass parse(byte[] bytes) throws IOException {
+        return new ClassParser(new ByteArrayInputStream(bytes), "Generated.class").parse();
+    }
+
+    @Test
+    public void testSameCode() throws IOException {
+        JavaClass expected = parse(generate(new CodeGenerator()));
+        JavaClass actual = parse(generate(new ClassFileWriter()));
+        assertEquals(expected.getClassName(), actual.getClassName());
+        assertEquals(expected.getSourceFileName(), actual.getSourceFileName());
+        assertEquals(expected.getAccessFlags(), actual.getAccessFlags());
+        assertEquals(expected.getFields().length, actual.getFields().length);
+        assertEquals(expected.getMethods().length, actual.getMethods().length);
+        for (int i = 0; i < expected.getMethods().length; i++) {
+            org.apache.bcel.classfile.Method e = expected.getMethods()[i];
+            org.apache.bcel.classfile.Method a = actual.getMethods()[i];
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getSignature(), a.getSignature());
+            assertEquals(e.getName(), e.getCode().getMaxStack(), a.getCode().getMaxStack());
+            assertEquals(e.getName(), e.getCode().getMaxLocals(), a.getCode().getMaxLocals());
+            assertEquals(e.getName(), e.getCode().getCode().length, a.getCode().getCode().length);
+            if (e.getLocalVariableTable() == null) {
+                assertNull(e.getName(), a.getLocalVariableTable());
+            } else {
+                assertEquals(e.getName(), e.getLocalVariableTable().toString(),
+                        a.getLocalVariableTable().toString());
+            }
+        }
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        Class<?> expected = load("test.Generated", generate(new CodeGenerator()));
+        Class<?> actual = load("test.Generated", generate(new ClassFileWriter()));
+        for (Class<?> c : new Class<?>[]{expected, actual}) {
+            Method sum = c.getMethod("sum", int.class);
+            assertEquals(45, sum.invoke(null, 10));
+            assertEquals(0, sum.invoke(null, 0));
+            Method mix = c.getMethod("mix", double.class, int.class);
+            assertEquals(100810.0, (Double) mix.invoke(null, 2.0, 5), 0.0);
+            assertEquals(-1.0, (Double) mix.invoke(null, 0.2, 5), 0.0);
+            c.getMethod("run", boolean.class).invoke(null, true);
+        }
+    }
+
+    @Test
+    public void testMethodListener() {
+        StringBuilder events = new StringBuilder();
+        Backend backend = new ClassFileWriter();
+        backend.setMethodListener(new CodeGenerator.MethodListener() {
+            @Override
+            public void endingMethod(String methodName) {
+                events.append("ending ").append(methodName).append(';');
+            }
+
+            @Override
+            public void methodEnded(String methodName, int instructionCount) {
+                events.append(methodName).append(' ').append(instructionCount).append(';');
+            }
+        });
+        backend.beginClass("<generated>", "test.Listened");
+        Code code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "void", "f");
+        code.addInstruction(NOP);
+        backend.endMethod();
+        // The return that endMethod adds is counted.
+        assertEquals("ending f;f 2;", events.toString());
+    }
+
+    /**
+     * Generate a method that returns 1 if the operands are not compared as
+     * given by addIf, by branching with addIfNot, and 0 if they are.
+     */
+    private static void ifNot(Backend backend, String name, short opcode, Type type) {
+        Code code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "int", name, type + " a", type + " b");
+        Label isFalse = new Label();
+        code.addLoad(type, backend.getLocalVariableIndex("a"));
+        if (opcode != IFNULL) {
+            code.addLoad(type, backend.getLocalVariableIndex("b"));
+        }
+        code.addIfNot(opcode, type, isFalse);
+        code.addConstant(0);
+        code.addReturn(Type.INT);
+        code.bind(isFalse);
+        code.addConstant(1);
+        code.addReturn(Type.INT);
+    }
+
+    @Test
+    public void testIfNot() throws Exception {
+        for (Backend backend : new Backend[]{new CodeGenerator(), new ClassFileWriter()}) {
+            backend.beginClass("<generated>", "test.IfNot");
+            ifNot(backend, "notLess", IF_ICMPLT, Type.INT);
+            ifNot(backend, "notLessReal", IF_ICMPLT, Type.DOUBLE);
+            ifNot(backend, "notGreaterReal", IF_ICMPGT, Type.DOUBLE);
+            ifNot(backend, "notNull", IFNULL, Type.STRING);
+            backend.endMethod();
+            Class<?> c = load("test.IfNot", backend.getClassBytes());
+            Method notLess = c.getMethod("notLess", int.class, int.class);
+            assertEquals(0, notLess.invoke(null, 1, 2));
+            assertEquals(1, notLess.invoke(null, 2, 2));
+            Method notLessReal = c.getMethod("notLessReal", double.class, double.class);
+            Method notGreaterReal = c.getMethod("notGreaterReal", double.class, double.class);
+            assertEquals(0, notLessReal.invoke(null, 1.0, 2.0));
+            assertEquals(1, notLessReal.invoke(null, 2.0, 1.0));
+            assertEquals(0, notGreaterReal.invoke(null, 2.0, 1.0));
+            // addIf compares with dcmpl for < and dcmpg for >, so both hold
+            // for NaN, and the negated branches are not taken.
+            assertEquals(0, notLessReal.invoke(null, Double.NaN, 1.0));
+            assertEquals(0, notGreaterReal.invoke(null, Double.NaN, 1.0));
+            Method notNull = c.getMethod("notNull", String.class, String.class);
+            assertEquals(1, notNull.invoke(null, "", null));
+            assertEquals(0, notNull.invoke(null, null, null));
+        }
+    }
+
+    @Test
+    public void testBackwardBranchToBoundLabel() {
+        ClassFileWriter backend = new ClassFileWriter();
+        backend.beginClass("<generated>", "test.Loop");
+        Code code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "void", "f");
+        Label top = new Label();
+        code.bind(top);
+        code.addInstruction(NOP);
+        code.addGoTo(top);
+        backend.endMethod();
+        byte[] bytes = backend.getClassBytes();
+        assertTrue(bytes.length > 0);
+        load("test.Loop", bytes);
+    }
+
+}
@@ -6,18 +6,31 @@ import static org.apache.bcel.Constants.ASTORE;
 import static org.apache.bcel.Constants.ASTORE_1;
 import static org.apache.bcel.Constants.ASTORE_2;
 import static org.apache.bcel.Constants.ASTORE_3;
+import static org.apache.bcel.Constants.DLOAD_3;
 import static org.apache.bcel.Constants.DUP;
 import static org.apache.bcel.Constants.GETSTATIC;
 import static org.apache.bcel.Constants.IADD;
+import static org.apache.bcel.Constants.IFEQ;
+import static org.apache.bcel.Constants.IFNE;
+import static org.apache.bcel.Constants.IF_ICMPEQ;
+import static org.apache.bcel.Constants.IF_ICMPGE;
+import static org.apache.bcel.Constants.IF_ICMPLT;
+import static org.apache.bcel.Constants.INEG;
 import static org.apache.bcel.Constants.INVOKESPECIAL;
+import static org.apache.bcel.Constants.INVOKESTATIC;
 import static org.apache.bcel.Constants.INVOKEVIRTUAL;
 import static org.apache.bcel.Constants.ISTORE;
+import static org.apache.bcel.Constants.ISTORE_0;
 import static org.apache.bcel.Constants.ISTORE_1;
 import static org.apache.bcel.Constants.ISTORE_2;
 import static org.apache.bcel.Constants.ISTORE_3;
+import static org.apache.bcel.Constants.IUSHR;
 import static org.apache.bcel.Constants.NEW;
+import static org.apache.bcel.Constants.NOP;
+import static org.apache.bcel.Constants.PUTSTATIC;
 import static org.apache.bcel.Constants.RETURN;
 import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.BranchHandle;
 import org.apache.bcel.generic.Instruction;
 import org.apache.bcel.generic.InstructionHandle;
 import org.apache.bcel.generic.LocalVariableGen;
@@ -67,6 +80,21 @@ public class CodeGeneratorTest {
         assertEquals(ACC_PUBLIC|ACC_STATIC, instance.mg.getAccessFlags());
     }
     
+    @Test
+    public void testParameterSlots() {
+        CodeGenerator instance = new CodeGenerator();
+        instance.beginClass("<generated>", "add.Add");
+        instance.beginMethod(ACC_PUBLIC | ACC_STATIC, "void", "f", "double a", "int b", "double c", "int d");
+        assertEquals(0, instance.getLocalVariableIndex("a"));
+        assertEquals(2, instance.getLocalVariableIndex("b"));
+        assertEquals(3, instance.getLocalVariableIndex("c"));
+        assertEquals(5, instance.getLocalVariableIndex("d"));
+        instance.beginMethod(ACC_PUBLIC, "void", "g", "int a", "double b", "int c");
+        assertEquals(1, instance.getLocalVariableIndex("a"));
+        assertEquals(2, instance.getLocalVariableIndex("b"));
+        assertEquals(4, instance.getLocalVariableIndex("c"));
+    }
+    
     @Test 
     public void testBeginMain() {
         CodeGenerator instance = new CodeGenerator();
@@ -255,6 +283,153 @@ public class CodeGeneratorTest {
         assertEquals(RETURN, lastInstruction.getOpcode());
     }
     
+
+    @Test
+    public void testAddLoadAndStoreBySlot() {
+        CodeGenerator instance = new CodeGenerator();
+        instance.beginClass("<generated>", "add.Add");
+        instance.beginMethod(ACC_PUBLIC | ACC_STATIC, "void", "f", "int a", "double b");
+        assertEquals(0, instance.getLocalVariableIndex("a"));
+        assertEquals(1, instance.getLocalVariableIndex("b"));
+        assertEquals(-1, instance.getLocalVariableIndex("c"));
+        int x = instance.addLocalVariable("x", "double");
+        assertEquals(3, x);
+        assertEquals(x, instance.addLocalVariable("x", "double"));
+        InstructionList il = instance.newInstructionList();
+        InstructionHandle end = il.addLoad(CodeGenerator.getType("double"), x);
+        assertEquals(DLOAD_3, end.getInstruction().getOpcode());
+        assertEquals("dload_3", end.getInstruction().toString(instance.cp.getConstantPool()));
+        end = il.addStore(CodeGenerator.getType("int"), 0);
+        assertEquals(ISTORE_0, end.getInstruction().getOpcode());
+    }
+
+    @Test
+    public void testAddStaticFieldAccessByReference() {
+        CodeGenerator instance = new CodeGenerator();
+        instance.beginClass("<generated>", "add.Add");
+        instance.addStaticField("x", "int");
+        instance.beginMain();
+        int fieldRef = instance.getFieldRef("add.Add", "x", Type.INT);
+        assertEquals(fieldRef, instance.getFieldRef("add.Add", "x", Type.INT));
+        InstructionList il = instance.newInstructionList();
+        InstructionHandle end = il.addGetStatic(fieldRef);
+        assertEquals(GETSTATIC, end.getInstruction().getOpcode());
+        assertEquals("getstatic add.Add.x I", end.getInstruction().toString(instance.cp.getConstantPool()));
+        end = il.addPutStatic(fieldRef);
+        assertEquals(PUTSTATIC, end.getInstruction().getOpcode());
+        InstructionHandle byName = il.addInstruction("putstatic", "add.Add.x", "int");
+        assertEquals(end.getInstruction(), byName.getInstruction());
+    }
+
+    private static String describe(CodeGenerator instance, InstructionList il) {
+        StringBuilder s = new StringBuilder();
+        for (Instruction instruction : il.getInstructions()) {
+            s.append(instruction.toString(instance.cp.getConstantPool())).append('\n');
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void testTypedEmissionMatchesStrings() {
+        CodeGenerator instance = new CodeGenerator();
+        instance.beginClass("<generated>", "add.Add");
+        instance.beginMain();
+        InstructionList byName = instance.newInstructionList();
+        InstructionList typed = instance.newInstructionList();
+        InstructionHandle nameTarget = byName.addInstruction("nop");
+        InstructionHandle typedTarget = typed.addInstruction(NOP);
+        for (String value : new String[] {"-1", "5", "6", "-128", "1000", "-40000", "100000"}) {
+            byName.addInstruction("const", value);
+            typed.addConstant(Integer.parseInt(value));
+        }
+        byName.addInstruction("const", "0.");
+        typed.addConstant(0.0);
+        byName.addInstruction("const", "2.5");
+        typed.addConstant(2.5);
+        byName.addInstruction("const", "7L");
+        typed.addConstant(7L);
+        byName.addInstruction("const", "'\\n'");
+        typed.addConstant('\n');
+        byName.addInstruction("const", "true");
+        typed.addConstant(1);
+        byName.addInstruction("op", "%", "double");
+        typed.addArithmetic(InstructionList.arithmeticOpcode("%"), Type.DOUBLE);
+        byName.addInstruction("op", ">>>", "int");
+        typed.addArithmetic(IUSHR, Type.INT);
+        byName.addInstruction("neg", "double");
+        typed.addArithmetic(INEG, Type.DOUBLE);
+        byName.addInstruction("cast", "int", "double");
+        typed.addCast(Type.INT, Type.DOUBLE);
+        byName.addInstruction("cast", "double", "int");
+        typed.addCast(Type.DOUBLE, Type.INT);
+        byName.addInstruction("cast", "long", "double");
+        typed.addCast(Type.LONG, Type.DOUBLE);
+        byName.addInstruction("arrayLoad", "double");
+        typed.addArrayLoad(Type.DOUBLE);
+        byName.addInstruction("newarray", "int", "1");
+        typed.addNewArray(Type.INT, 1);
+        byName.createIf(">=", "double", nameTarget);
+        typed.addIf(IF_ICMPGE, Type.DOUBLE, typedTarget);
+        byName.createIf("<", "double", nameTarget);
+        typed.addIf(IF_ICMPLT, Type.DOUBLE, typedTarget);
+        byName.createIf("!=0", "int", nameTarget);
+        typed.addIf(IFNE, Type.INT, typedTarget);
+        byName.createIf("==", "java.lang.Object", nameTarget);
+        typed.addIf(IF_ICMPEQ, Type.OBJECT, typedTarget);
+        byName.addInstruction("invokestatic", "java.lang.Math.pow", "double", "double", "double");
+        typed.addInvoke(INVOKESTATIC, instance.getMethodRef("java.lang.Math", "pow", Type.DOUBLE, Type.DOUBLE, Type.DOUBLE));
+        byName.addInstruction("return", "int");
+        typed.addReturn(Type.INT);
+        assertEquals(describe(instance, byName), describe(instance, typed));
+    }
+
+    @Test
+    public void testBranchesToLabels() {
+        CodeGenerator instance = new CodeGenerator();
+        instance.beginClass("<generated>", "add.Add");
+        instance.beginMain();
+        InstructionList il = instance.getInstructionList();
+        Label top = new Label();
+        Label out = new Label();
+        top.bind(il.addInstruction(NOP));
+        il.addConstant(1);
+        InstructionHandle forward = il.addIf(IFEQ, Type.INT, out);
+        InstructionHandle forwardGoTo = il.addGoTo(out);
+        InstructionHandle backward = il.addGoTo(top);
+        assertTrue(top.isBound());
+        assertFalse(out.isBound());
+        assertEquals(top.getTarget(), ((BranchHandle) backward).getTarget());
+        InstructionHandle end = out.bind(il.addInstruction(NOP));
+        assertEquals(end, ((BranchHandle) forward).getTarget());
+        assertEquals(end, ((BranchHandle) forwardGoTo).getTarget());
+        out.reset();
+        assertFalse(out.isBound());
+        assertEquals(il, instance.mg.getInstructionList());
+        instance.endMethod();
+    }
+
+    @Test
+    public void testMethodListener() {
+        CodeGenerator instance = new CodeGenerator();
+        StringBuilder events = new StringBuilder();
+        instance.setMethodListener(new CodeGenerator.MethodListener() {
+            @Override
+            public void endingMethod(String methodName) {
+                events.append("ending ").append(methodName).append(";");
+            }
+
+            @Override
+            public void methodEnded(String methodName, int instructionCount) {
+                events.append("ended ").append(methodName).append(" ").append(instructionCount).append(";");
+            }
+        });
+        instance.beginClass("<generated>", "add.Add");
+        instance.beginMain();
+        instance.il.addInstruction("const", "1");
+        instance.il.addInstruction("pop");
+        instance.endMethod();
+        assertEquals("ending main;ended main 3;", events.toString());
+    }
         
         
 }
@@ -0,0 +1,277 @@
+package edu.temple.cis.c4324.codegen;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import static org.apache.bcel.Constants.ACC_PUBLIC;
+import static org.apache.bcel.Constants.ACC_STATIC;
+import static org.apache.bcel.Constants.GOTO;
+import static org.apache.bcel.Constants.ICONST_0;
+import static org.apache.bcel.Constants.ICONST_1;
+import static org.apache.bcel.Constants.ICONST_5;
+import static org.apache.bcel.Constants.IFEQ;
+import static org.apache.bcel.Constants.IFNE;
+import static org.apache.bcel.Constants.IF_ICMPGT;
+import static org.apache.bcel.Constants.NOP;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.Type;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that each optimization pass rewrites the code it is meant to, that
+ * the passes can be switched on and off, and that the optimized class
+ * verifies and computes the same results.
+ */
+public class OptimizerTest {
+
+    private static class Loader extends ClassLoader {
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Compile a comparison to a boolean and test it, as the compiler does
+     * for the condition of an if statement.
+     */
+    private static void condition(Backend backend, String name, short test) {
+        Code code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "int", name, "int a", "int b");
+        Label isTrue = new Label();
+        Label end = new Label();
+        Label isFalse = new Label();
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("a"));
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("b"));
+        code.addIf(IF_ICMPGT, Type.INT, isTrue);
+        code.addInstruction(ICONST_0);
+        code.addGoTo(end);
+        code.bind(isTrue);
+        code.addInstruction(ICONST_1);
+        code.bind(end);
+        code.addInstruction(NOP);
+        code.addIf(test, Type.INT, isFalse);
+        code.addConstant(1);
+        code.addReturn(Type.INT);
+        code.bind(isFalse);
+        code.addInstruction(NOP);
+        code.addConstant(0);
+        code.addReturn(Type.INT);
+    }
+
+    /**
+     * Generate a class with a condition tested by ifeq, one tested by ifne,
+     * and a method whose branch goes through a chain of gotos past
+     * unreachable code.
+     */
+    private static byte[] generate(CodeGenerator backend) {
+        backend.beginClass("<generated>", "test.Optimized");
+        condition(backend, "gt", IFEQ);
+        condition(backend, "notGt", IFNE);
+
+        Code code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "int", "chain", "int a");
+        Label first = new Label();
+        Label second = new Label();
+        Label last = new Label();
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("a"));
+        code.addIf(IFEQ, Type.INT, first);
+        code.addConstant(1);
+        code.addReturn(Type.INT);
+        code.bind(first);
+        code.addGoTo(second);
+        code.addConstant(5);
+        code.addReturn(Type.INT);
+        code.bind(second);
+        code.addGoTo(last);
+        code.bind(last);
+        code.addConstant(2);
+        code.addReturn(Type.INT);
+        backend.endMethod();
+        return backend.getClassBytes();
+    }
+
+    private static byte[] generate(Optimizer optimizer) {
+        CodeGenerator backend = new CodeGenerator();
+        backend.setOptimizer(optimizer);
+        return generate(backend);
+    }
+
+    private static Instruction[] instructions(byte[] bytes, String methodName) throws IOException {
+        JavaClass parsed = new ClassParser(new ByteArrayInputStream(bytes), "Optimized.class").parse();
+        for (org.apache.bcel.classfile.Method method : parsed.getMethods()) {
+            if (method.getName().equals(methodName)) {
+                return new org.apache.bcel.generic.InstructionList(method.getCode().getCode()).getInstructions();
+            }
+        }
+        throw new AssertionError(methodName);
+    }
+
+    private static boolean contains(Instruction[] instructions, short opcode) {
+        return Arrays.stream(instructions).anyMatch(instruction -> instruction.getOpcode() == opcode);
+    }
+
+    private static void assertResults(byte[] bytes) throws Exception {
+        Class<?> c = new Loader().define("test.Optimized", bytes);
+        Method gt = c.getMethod("gt", int.class, int.class);
+        Method notGt = c.getMethod("notGt", int.class, int.class);
+        for (int[] args : new int[][]{{3, 2}, {2, 3}, {2, 2}, {-1, Integer.MIN_VALUE}}) {
+            int expected = args[0] > args[1] ? 1 : 0;
+            assertEquals(expected, gt.invoke(null, args[0], args[1]));
+            assertEquals(1 - expected, notGt.invoke(null, args[0], args[1]));
+        }
+        Method chain = c.getMethod("chain", int.class);
+        assertEquals(1, chain.invoke(null, 7));
+        assertEquals(2, chain.invoke(null, 0));
+    }
+
+    @Test
+    public void testLevelZero() throws Exception {
+        byte[] bytes = generate(new Optimizer(0));
+        assertEquals(Arrays.toString(instructions(generate(new CodeGenerator()), "gt")),
+                Arrays.toString(instructions(bytes, "gt")));
+        assertEquals(13, instructions(bytes, "gt").length);
+        assertResults(bytes);
+    }
+
+    @Test
+    public void testConditions() throws Exception {
+        byte[] bytes = generate(new Optimizer(1));
+        // iload, iload, if_icmple, iconst_1, ireturn, iconst_0, ireturn
+        Instruction[] gt = instructions(bytes, "gt");
+        assertEquals(7, gt.length);
+        assertEquals("if_icmple", gt[2].getName());
+        assertEquals("if_icmpgt", instructions(bytes, "notGt")[2].getName());
+        assertFalse(contains(gt, NOP));
+        assertResults(bytes);
+    }
+
+    @Test
+    public void testJumpThreadingAndUnreachableCode() throws Exception {
+        byte[] level1 = generate(new Optimizer(1));
+        assertTrue(contains(instructions(level1, "chain"), GOTO));
+        assertResults(level1);
+        byte[] level2 = generate(new Optimizer(2));
+        // The ifeq goes straight to the last return, and the gotos and the
+        // code between them are gone.
+        Instruction[] chain = instructions(level2, "chain");
+        assertEquals(6, chain.length);
+        assertFalse(contains(chain, GOTO));
+        assertResults(level2);
+    }
+
+    @Test
+    public void testToggles() throws Exception {
+        Optimizer optimizer = new Optimizer(1);
+        optimizer.setEnabled("nops", false);
+        optimizer.setEnabled("unreachable-code", true);
+        assertFalse(optimizer.isEnabled("nops"));
+        assertTrue(optimizer.isEnabled("conditions"));
+        assertFalse(optimizer.isEnabled("jump-threading"));
+        byte[] bytes = generate(optimizer);
+        assertTrue(contains(instructions(bytes, "gt"), NOP));
+        assertFalse(contains(instructions(bytes, "chain"), ICONST_5));
+        assertResults(bytes);
+        assertEquals(Arrays.asList("conditions", "goto-next", "unreachable-code"),
+                Arrays.asList(optimizer.getInstructionDeltas().keySet().toArray()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownPass() {
+        new Optimizer(1).setEnabled("no-such-pass", true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelOutOfRange() {
+        new Optimizer(Optimizer.MAX_LEVEL + 1);
+    }
+
+    @Test
+    public void testInstructionDeltas() throws Exception {
+        int before = 0;
+        int after = 0;
+        Optimizer optimizer = new Optimizer(2);
+        byte[] optimized = generate(optimizer);
+        byte[] unoptimized = generate(new Optimizer(0));
+        for (String name : new String[]{"gt", "notGt", "chain"}) {
+            before += instructions(unoptimized, name).length;
+            after += instructions(optimized, name).length;
+        }
+        Map<String, Integer> deltas = optimizer.getInstructionDeltas();
+        assertEquals(Optimizer.getPasses().size(), deltas.size());
+        assertEquals(after - before, deltas.values().stream().mapToInt(Integer::intValue).sum());
+        assertTrue(deltas.get("conditions") < 0);
+        assertTrue(deltas.get("unreachable-code") < 0);
+    }
+
+    @Test
+    public void testBranchIntoConditionIsKept() throws Exception {
+        // A second branch to the iconst_1 of the condition means the boolean
+        // is needed, so the pattern must not be folded.
+        CodeGenerator backend = new CodeGenerator();
+        backend.setOptimizer(new Optimizer(1));
+        backend.beginClass("<generated>", "test.Optimized");
+        Code code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "int", "gt", "int a", "int b");
+        Label isTrue = new Label();
+        Label end = new Label();
+        Label isFalse = new Label();
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("a"));
+        code.addIf(IFNE, Type.INT, isTrue);
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("a"));
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("b"));
+        code.addIf(IF_ICMPGT, Type.INT, isTrue);
+        code.addInstruction(ICONST_0);
+        code.addGoTo(end);
+        code.bind(isTrue);
+        code.addInstruction(ICONST_1);
+        code.bind(end);
+        code.addIf(IFEQ, Type.INT, isFalse);
+        code.addConstant(1);
+        code.addReturn(Type.INT);
+        code.bind(isFalse);
+        code.addConstant(0);
+        code.addReturn(Type.INT);
+        backend.endMethod();
+        byte[] bytes = backend.getClassBytes();
+        assertEquals(13, instructions(bytes, "gt").length);
+        Method gt = new Loader().define("test.Optimized", bytes).getMethod("gt", int.class, int.class);
+        assertEquals(1, gt.invoke(null, 5, 9));
+        assertEquals(0, gt.invoke(null, 0, 9));
+        assertEquals(1, gt.invoke(null, 0, -9));
+    }
+
+    @Test
+    public void testEqualBranchesToOneTarget() throws Exception {
+        // The two gotos to skip are equal instructions once both are bound,
+        // so removing the second, which goes to the next instruction, must
+        // not make skip forget the first before skip is removed in turn.
+        CodeGenerator backend = new CodeGenerator();
+        backend.setOptimizer(new Optimizer(1));
+        backend.beginClass("<generated>", "test.Optimized");
+        Code code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "int", "twice", "int a");
+        Label second = new Label();
+        Label skip = new Label();
+        Label end = new Label();
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("a"));
+        code.addIf(IFEQ, Type.INT, second);
+        code.addGoTo(skip);
+        code.bind(second);
+        code.addGoTo(skip);
+        code.bind(skip);
+        code.addGoTo(end);
+        code.bind(end);
+        code.addConstant(2);
+        code.addReturn(Type.INT);
+        backend.endMethod();
+        byte[] bytes = backend.getClassBytes();
+        Method twice = new Loader().define("test.Optimized", bytes).getMethod("twice", int.class);
+        assertEquals(2, twice.invoke(null, 0));
+        assertEquals(2, twice.invoke(null, 1));
+    }
+
+}
@@ -0,0 +1,182 @@
+package edu.temple.cis.c4324.codegen;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import static org.apache.bcel.Constants.ACC_PUBLIC;
+import static org.apache.bcel.Constants.ACC_STATIC;
+import static org.apache.bcel.Constants.ACONST_NULL;
+import static org.apache.bcel.Constants.ATHROW;
+import static org.apache.bcel.Constants.DUP;
+import static org.apache.bcel.Constants.IADD;
+import static org.apache.bcel.Constants.IFEQ;
+import static org.apache.bcel.Constants.IF_ICMPGE;
+import static org.apache.bcel.Constants.IF_ICMPLE;
+import static org.apache.bcel.Constants.INVOKESPECIAL;
+import static org.apache.bcel.Constants.INVOKEVIRTUAL;
+import static org.apache.bcel.Constants.NOP;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.Type;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that both backends write Java 8 classes whose stack map frames pass
+ * the type checking verifier, which classes defined by a class loader other
+ * than the boot loader go through.
+ */
+public class StackMapBuilderTest {
+
+    private static class Loader extends ClassLoader {
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Generate a class whose methods have branches that merge locals of
+     * different types, a loop with a value on the stack at its branch, and
+     * unreachable code.
+     */
+    private static byte[] generate(Backend backend) {
+        backend.beginClass("<generated>", "test.Frames");
+
+        // The local s holds a string on one path and null on the other, and
+        // d is only set on one path, so it is unusable after they join.
+        Code code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "int", "merge", "boolean b", "long n");
+        int s = backend.addLocalVariable("s", "String");
+        int d = backend.addLocalVariable("d", "double");
+        Label other = new Label();
+        Label join = new Label();
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("b"));
+        code.addIf(IFEQ, Type.INT, other);
+        code.addConstant("text");
+        code.addStore(Type.STRING, s);
+        code.addConstant(1.5);
+        code.addStore(Type.DOUBLE, d);
+        code.addGoTo(join);
+        code.bind(other);
+        code.addInstruction(ACONST_NULL);
+        code.addStore(Type.STRING, s);
+        code.bind(join);
+        code.addInstruction(NOP);
+        code.addLoad(Type.LONG, backend.getLocalVariableIndex("n"));
+        code.addCast(Type.LONG, Type.INT);
+        code.addReturn(Type.INT);
+
+        // Count down with the running total kept on the operand stack
+        // across the backward branch.
+        code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "int", "count", "int n");
+        Label top = new Label();
+        Label done = new Label();
+        int n = backend.getLocalVariableIndex("n");
+        code.addConstant(0);
+        code.bind(top);
+        code.addInstruction(NOP);
+        code.addLoad(Type.INT, n);
+        code.addConstant(0);
+        code.addIf(IF_ICMPLE, Type.INT, done);
+        code.addLoad(Type.INT, n);
+        code.addArithmetic(IADD, Type.INT);
+        code.addLoad(Type.INT, n);
+        code.addConstant(-1);
+        code.addArithmetic(IADD, Type.INT);
+        code.addStore(Type.INT, n);
+        code.addGoTo(top);
+        code.bind(done);
+        code.addReturn(Type.INT);
+
+        // A goto followed by code no branch reaches.
+        code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "int", "dead", "int n");
+        Label end = new Label();
+        code.addGoTo(end);
+        code.addConstant(7);
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("n"));
+        code.addIf(IF_ICMPGE, Type.INT, end);
+        code.addInstruction(NOP);
+        code.bind(end);
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("n"));
+        code.addReturn(Type.INT);
+
+        // A new object, whose type changes when its constructor is called.
+        code = backend.beginCode(ACC_PUBLIC | ACC_STATIC, "String", "make", "boolean b");
+        ObjectType builder = new ObjectType("java.lang.StringBuilder");
+        Label empty = new Label();
+        code.addNew(backend.getClassRef("java.lang.StringBuilder"));
+        code.addInstruction(DUP);
+        code.addInvoke(INVOKESPECIAL, backend.getMethodRef("java.lang.StringBuilder", "<init>", Type.VOID));
+        code.addLoad(Type.INT, backend.getLocalVariableIndex("b"));
+        code.addIf(IFEQ, Type.INT, empty);
+        code.addConstant("yes");
+        code.addInvoke(INVOKEVIRTUAL,
+                backend.getMethodRef("java.lang.StringBuilder", "append", builder, Type.STRING));
+        code.bind(empty);
+        code.addInvoke(INVOKEVIRTUAL, backend.getMethodRef("java.lang.StringBuilder", "toString", Type.STRING));
+        code.addReturn(Type.STRING);
+        backend.endMethod();
+        return backend.getClassBytes();
+    }
+
+    private static JavaClass parse(byte[] bytes) throws IOException {
+        return new ClassParser(new ByteArrayInputStream(bytes), "Frames.class").parse();
+    }
+
+    private static boolean hasStackMapTable(org.apache.bcel.classfile.Method method) {
+        for (Attribute attribute : method.getCode().getAttributes()) {
+            if (attribute.getName().equals("StackMapTable")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testFrames() throws Exception {
+        for (Backend backend : new Backend[]{new CodeGenerator(), new ClassFileWriter()}) {
+            byte[] bytes = generate(backend);
+            JavaClass parsed = parse(bytes);
+            assertEquals(CodeGenerator.MAJOR_VERSION, parsed.getMajor());
+            for (org.apache.bcel.classfile.Method method : parsed.getMethods()) {
+                assertTrue(method.getName(), hasStackMapTable(method));
+            }
+            Class<?> c = new Loader().define("test.Frames", bytes);
+            Method merge = c.getMethod("merge", boolean.class, long.class);
+            assertEquals(42, merge.invoke(null, true, 42L));
+            assertEquals(43, merge.invoke(null, false, 43L));
+            assertEquals(15, c.getMethod("count", int.class).invoke(null, 5));
+            assertEquals(9, c.getMethod("dead", int.class).invoke(null, 9));
+            Method make = c.getMethod("make", boolean.class);
+            assertEquals("yes", make.invoke(null, true));
+            assertEquals("", make.invoke(null, false));
+        }
+    }
+
+    @Test
+    public void testDeadCodeReplaced() throws IOException {
+        for (Backend backend : new Backend[]{new CodeGenerator(), new ClassFileWriter()}) {
+            JavaClass parsed = parse(generate(backend));
+            byte[] code = parsed.getMethods()[2].getCode().getCode();
+            // goto, then nops up to an athrow before the reached code.
+            assertEquals(NOP, code[3]);
+            assertEquals(NOP, code[8]);
+            assertEquals((byte) ATHROW, code[9]);
+        }
+    }
+
+    @Test
+    public void testNoBranches() throws IOException {
+        Backend backend = new ClassFileWriter();
+        backend.beginClass("<generated>", "test.Straight");
+        backend.beginCode(ACC_PUBLIC | ACC_STATIC, "void", "f").addInstruction(NOP);
+        backend.endMethod();
+        JavaClass parsed = parse(backend.getClassBytes());
+        // Straight code needs no frames, so the attribute is left out.
+        assertTrue(!hasStackMapTable(parsed.getMethods()[0]));
+    }
+
+}
@@ -0,0 +1,84 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.microcompilerv1.Ast;
+import edu.temple.cis.c4324.microcompilerv1.AstBuilder;
+import edu.temple.cis.c4324.microcompilerv1.FrontEnd;
+import edu.temple.cis.c4324.microcompilerv1.ProgramGenerator;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the two ways from source text to an Ast on large generated
+ * programs: the ANTLR lexer and parser followed by lowering the parse tree,
+ * and the hand written scanner and recursive descent parser.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AstParseBenchmark {
+
+    @Param({"1000", "10000"})
+    public int lines;
+
+    @Param({"4", "16"})
+    public int expressionLength;
+
+    private String text;
+    private char[] chars;
+    private FrontEnd frontEnd;
+    private AstBuilder astBuilder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setTargetLines(lines);
+        generator.setExpressionLength(expressionLength);
+        text = generator.generate("AstParse" + lines);
+        chars = text.toCharArray();
+        frontEnd = new FrontEnd();
+        astBuilder = new AstBuilder();
+        if (descent() == null) {
+            throw new IllegalStateException("The recursive descent parser gave up on a valid program");
+        }
+    }
+
+    /**
+     * Lex, parse and lower the program with the ANTLR front end.
+     * @return The Ast
+     */
+    @Benchmark
+    public Ast antlr() {
+        CommonTokenStream tokens = frontEnd.tokenize(new ANTLRInputStream(text), ConsoleErrorListener.INSTANCE);
+        ParseTree tree = frontEnd.parse(tokens, ConsoleErrorListener.INSTANCE);
+        return astBuilder.lower(tree, tokens.size());
+    }
+
+    /**
+     * Scan and parse the program with the recursive descent parser.
+     * @return The Ast
+     */
+    @Benchmark
+    public Ast descent() {
+        frontEnd.scan(chars, chars.length);
+        return frontEnd.parseAst();
+    }
+
+}
@@ -0,0 +1,67 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.codegen.Backend;
+import edu.temple.cis.c4324.codegen.ClassFileWriter;
+import edu.temple.cis.c4324.codegen.CodeGenerator;
+import edu.temple.cis.c4324.microcompilerv1.Ast;
+import edu.temple.cis.c4324.microcompilerv1.AstBuilder;
+import edu.temple.cis.c4324.microcompilerv1.CompileVisitor;
+import edu.temple.cis.c4324.microcompilerv1.DefinitionVisitor;
+import edu.temple.cis.c4324.microcompilerv1.FrontEnd;
+import edu.temple.cis.c4324.microcompilerv1.ReferenceVisitor;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the two backends. The program is parsed and checked once;
+ * each operation runs the CompileVisitor into a new backend and gets the
+ * class file bytes, so it covers everything from the first instruction to
+ * the finished class file.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackendBenchmark extends SampleState {
+
+    @Param({"bcel", "direct"})
+    public String backend;
+
+    private Ast ast;
+
+    @Setup(Level.Trial)
+    public void analyze() {
+        loadSample();
+        ast = new AstBuilder().lower(
+                new FrontEnd().parse(new ANTLRInputStream(text), ConsoleErrorListener.INSTANCE), 1024);
+        new DefinitionVisitor().visit(ast);
+        new ReferenceVisitor(ast).visit();
+    }
+
+    /**
+     * Generate the class file.
+     * @return The class file bytes
+     */
+    @Benchmark
+    public byte[] classFile() {
+        Backend cg = backend.equals("direct") ? new ClassFileWriter() : new CodeGenerator();
+        CompileVisitor visitor = new CompileVisitor(ast, sample + ".mic", cg);
+        visitor.visit();
+        return cg.getClassBytes();
+    }
+
+}
@@ -0,0 +1,53 @@
+package edu.temple.cis.c4324.benchmark;
+
+import java.io.IOException;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the compiler benchmarks. The arguments are the usual JMH command line
+ * options, including -h and the -l, -lp, -lprof and -lrf listings; with no
+ * benchmark pattern every benchmark in this project is run or listed. The GC profiler is always added so that the allocation per
+ * operation (gc.alloc.rate.norm, in bytes) is reported next to the
+ * throughput.
+ */
+public class BenchmarkMain {
+
+    /**
+     * @param args the command line arguments
+     * @throws CommandLineOptionException if the options are not valid
+     * @throws RunnerException if a benchmark fails
+     * @throws IOException if the help cannot be written
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(BenchmarkMain.class.getPackage().getName() + ".*");
+        }
+        Runner runner = new Runner(options.build());
+        // The same informational options as org.openjdk.jmh.Main, which
+        // only print and do not run anything.
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+        } else if (commandLine.shouldList()) {
+            runner.list();
+        } else if (commandLine.shouldListWithParams()) {
+            runner.listWithParams(commandLine);
+        } else if (commandLine.shouldListProfilers()) {
+            commandLine.listProfilers();
+        } else if (commandLine.shouldListResultFormats()) {
+            commandLine.listResultFormats();
+        } else {
+            runner.run();
+        }
+    }
+
+}
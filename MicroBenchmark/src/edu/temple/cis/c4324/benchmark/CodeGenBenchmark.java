@@ -0,0 +1,60 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.codegen.CodeGenerator;
+import edu.temple.cis.c4324.microcompilerv1.Ast;
+import edu.temple.cis.c4324.microcompilerv1.AstBuilder;
+import edu.temple.cis.c4324.microcompilerv1.CompileVisitor;
+import edu.temple.cis.c4324.microcompilerv1.DefinitionVisitor;
+import edu.temple.cis.c4324.microcompilerv1.FrontEnd;
+import edu.temple.cis.c4324.microcompilerv1.ReferenceVisitor;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of code generation. The program is parsed and checked once;
+ * each operation runs the CompileVisitor into a new CodeGenerator, which
+ * includes finishing every method but not building the JavaClass.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeGenBenchmark extends SampleState {
+
+    private Ast ast;
+
+    @Setup(Level.Trial)
+    public void analyze() {
+        loadSample();
+        ast = new AstBuilder().lower(
+                new FrontEnd().parse(new ANTLRInputStream(text), ConsoleErrorListener.INSTANCE), 1024);
+        new DefinitionVisitor().visit(ast);
+        new ReferenceVisitor(ast).visit();
+    }
+
+    /**
+     * Run the CompileVisitor.
+     * @return The code generator holding the generated class
+     */
+    @Benchmark
+    public CodeGenerator compileVisitor() {
+        CodeGenerator cg = new CodeGenerator();
+        CompileVisitor visitor = new CompileVisitor(ast, sample + ".mic", cg);
+        visitor.visit();
+        return cg;
+    }
+
+}
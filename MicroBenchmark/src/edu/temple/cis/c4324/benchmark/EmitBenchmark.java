@@ -0,0 +1,155 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.codegen.CodeGenerator;
+import edu.temple.cis.c4324.codegen.InstructionList;
+import java.util.concurrent.TimeUnit;
+import static org.apache.bcel.Constants.ACC_PUBLIC;
+import static org.apache.bcel.Constants.ACC_STATIC;
+import static org.apache.bcel.Constants.IADD;
+import static org.apache.bcel.Constants.IF_ICMPGT;
+import static org.apache.bcel.Constants.IMUL;
+import static org.apache.bcel.Constants.INEG;
+import static org.apache.bcel.Constants.INVOKESTATIC;
+import static org.apache.bcel.Constants.IREM;
+import static org.apache.bcel.Constants.ISUB;
+import static org.apache.bcel.Constants.NOP;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.Type;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of emitting instructions through the string form of
+ * InstructionList.addInstruction against the typed methods, with the
+ * same mix of instructions as the code of Micro expressions. Besides the
+ * operations per second, the instructions counter reports instructions per
+ * second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmitBenchmark {
+
+    /**
+     * The number of instructions emitted, reported by JMH as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Instructions {
+
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+
+    }
+
+    /** The number of instructions in each block. */
+    private static final int BLOCK = 17;
+
+    @Param({"1000"})
+    public int blocks;
+
+    private CodeGenerator cg;
+    private int x;
+    private int d;
+    private int fieldRef;
+    private int powRef;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cg = new CodeGenerator();
+        cg.beginClass("Emit.mic", "Emit");
+        cg.addStaticField("g", "int");
+        cg.beginMethod(ACC_PUBLIC | ACC_STATIC, "int", "f", "int x", "double d");
+        x = cg.getLocalVariableIndex("x");
+        d = cg.getLocalVariableIndex("d");
+        fieldRef = cg.getFieldRef("Emit", "g", Type.INT);
+        powRef = cg.getMethodRef("java.lang.Math", "pow", Type.DOUBLE, Type.DOUBLE, Type.DOUBLE);
+    }
+
+    /**
+     * Emit the blocks with the string form.
+     * @param counter The instruction counter
+     * @return The number of instructions
+     */
+    @Benchmark
+    public int strings(Instructions counter) {
+        InstructionList il = cg.newInstructionList();
+        for (int i = 0; i < blocks; i++) {
+            InstructionHandle target = il.addInstruction("nop");
+            il.addInstruction("iload", "x");
+            il.addInstruction("const", "3");
+            il.addInstruction("op", "+", "int");
+            il.addInstruction("getstatic", "Emit.g", "int");
+            il.addInstruction("const", "1000");
+            il.addInstruction("op", "%", "int");
+            il.addInstruction("op", "*", "int");
+            il.addInstruction("cast", "int", "double");
+            il.addInstruction("dload", "d");
+            il.addInstruction("invokestatic", "java.lang.Math.pow", "double", "double", "double");
+            il.addInstruction("const", "2.5");
+            il.addInstruction("op", "-", "double");
+            il.addInstruction("neg", "double");
+            il.addInstruction("const", "0.");
+            il.createIf(">", "double", target);
+        }
+        return count(il, counter);
+    }
+
+    /**
+     * Emit the blocks with the typed methods.
+     * @param counter The instruction counter
+     * @return The number of instructions
+     */
+    @Benchmark
+    public int typed(Instructions counter) {
+        InstructionList il = cg.newInstructionList();
+        for (int i = 0; i < blocks; i++) {
+            InstructionHandle target = il.addInstruction(NOP);
+            il.addLoad(Type.INT, x);
+            il.addConstant(3);
+            il.addArithmetic(IADD, Type.INT);
+            il.addGetStatic(fieldRef);
+            il.addConstant(1000);
+            il.addArithmetic(IREM, Type.INT);
+            il.addArithmetic(IMUL, Type.INT);
+            il.addCast(Type.INT, Type.DOUBLE);
+            il.addLoad(Type.DOUBLE, d);
+            il.addInvoke(INVOKESTATIC, powRef);
+            il.addConstant(2.5);
+            il.addArithmetic(ISUB, Type.DOUBLE);
+            il.addArithmetic(INEG, Type.DOUBLE);
+            il.addConstant(0.0);
+            il.addIf(IF_ICMPGT, Type.DOUBLE, target);
+        }
+        return count(il, counter);
+    }
+
+    private int count(InstructionList il, Instructions counter) {
+        int length = il.getLength();
+        if (length != blocks * BLOCK) {
+            throw new IllegalStateException(length + " instructions emitted");
+        }
+        counter.instructions += length;
+        il.dispose();
+        return length;
+    }
+
+}
@@ -0,0 +1,69 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.codegen.Backend;
+import edu.temple.cis.c4324.microcompilerv1.Compilation;
+import edu.temple.cis.c4324.microcompilerv1.CompileResult;
+import edu.temple.cis.c4324.microcompilerv1.CompilerOptions;
+import edu.temple.cis.c4324.microcompilerv1.FrontEnd;
+import edu.temple.cis.c4324.microcompilerv1.MicroCompiler;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of a whole compilation, from the program text to the
+ * generated class and to the class file bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark extends SampleState {
+
+    private CompilerOptions options;
+    private FrontEnd frontEnd;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        loadSample();
+        options = new CompilerOptions();
+        options.setSourceFileName(sample + ".mic");
+        frontEnd = new FrontEnd();
+    }
+
+    /**
+     * Compile the program, without writing the class file.
+     * @return The backend holding the generated class
+     */
+    @Benchmark
+    public Backend generate() {
+        Backend backend = new Compilation(options).compile(new ANTLRInputStream(text), frontEnd);
+        if (backend == null) {
+            throw new IllegalStateException(sample + " did not compile");
+        }
+        return backend;
+    }
+
+    /**
+     * Compile the program to class file bytes through the library
+     * interface.
+     * @return The compile result
+     */
+    @Benchmark
+    public CompileResult classBytes() {
+        return MicroCompiler.compile(text, options);
+    }
+
+}
@@ -0,0 +1,62 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.microcompilerv1.FrontEnd;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the lexer and parser generated from Micro.g4. The lexer and
+ * parser are reused from one operation to the next, as they are by the
+ * compiler, so their construction is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark extends SampleState {
+
+    private FrontEnd frontEnd;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        loadSample();
+        frontEnd = new FrontEnd();
+    }
+
+    /**
+     * Convert the program text into tokens.
+     * @return The token stream
+     */
+    @Benchmark
+    public CommonTokenStream lex() {
+        CommonTokenStream tokens = frontEnd.tokenize(new ANTLRInputStream(text), ConsoleErrorListener.INSTANCE);
+        tokens.fill();
+        return tokens;
+    }
+
+    /**
+     * Convert the program text into a parse tree.
+     * @return The parse tree
+     */
+    @Benchmark
+    public ParseTree lexAndParse() {
+        return frontEnd.parse(new ANTLRInputStream(text), ConsoleErrorListener.INSTANCE);
+    }
+
+}
@@ -0,0 +1,71 @@
+package edu.temple.cis.c4324.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the Gcd function of Gcd2 without any input or output. The
+ * loop condition of the generated function computes a boolean and then
+ * tests it, where the hand-written function branches on the comparison, so
+ * this isolates the cost of materializing conditions. Both functions are
+ * called through a method handle so that neither can be inlined into the
+ * benchmark with its arguments folded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GcdBenchmark {
+
+    private static final MethodType GCD_TYPE = MethodType.methodType(int.class, int.class, int.class);
+
+    private MethodHandle generatedGcd;
+    private MethodHandle javaGcd;
+    private int x;
+    private int y;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        generatedGcd = lookup.findStatic(RuntimeBenchmark.compileSample("Gcd2"), "Gcd", GCD_TYPE);
+        javaGcd = lookup.findStatic(JavaPrograms.Gcd2.class, "gcd", GCD_TYPE);
+        x = 1134903170;
+        y = 701408733;
+    }
+
+    /**
+     * Call the function generated by the compiler.
+     * @return The greatest common divisor
+     * @throws Throwable if the function fails
+     */
+    @Benchmark
+    public int generated() throws Throwable {
+        return (int) generatedGcd.invokeExact(x, y);
+    }
+
+    /**
+     * Call the hand-written function.
+     * @return The greatest common divisor
+     * @throws Throwable if the function fails
+     */
+    @Benchmark
+    public int java() throws Throwable {
+        return (int) javaGcd.invokeExact(x, y);
+    }
+
+}
@@ -0,0 +1,110 @@
+package edu.temple.cis.c4324.benchmark;
+
+import java.util.Scanner;
+
+/**
+ * Hand-written Java versions of the sample programs used by the runtime
+ * benchmarks. Each one reads and writes exactly what the Micro program does,
+ * through a Scanner on System.in and System.out.print, but is written the
+ * way a Java programmer would: the variables of the main body are locals,
+ * conditions branch directly instead of computing a boolean first, and
+ * exponentiation is not done with Math.pow.
+ */
+public final class JavaPrograms {
+
+    private JavaPrograms() {
+    }
+
+    public static class Gcd2 {
+
+        public static int gcd(int x, int y) {
+            while (y > 0) {
+                int t = x % y;
+                x = y;
+                y = t;
+            }
+            return x;
+        }
+
+        public static void main(String[] args) {
+            Scanner in = new Scanner(System.in);
+            int x = in.nextInt();
+            int y = in.nextInt();
+            System.out.print(gcd(x, y));
+        }
+
+    }
+
+    public static class Fact {
+
+        public static void main(String[] args) {
+            Scanner in = new Scanner(System.in);
+            int n = in.nextInt();
+            int nFact = 1;
+            while (n > 0) {
+                nFact = nFact * n;
+                n = n - 1;
+            }
+            System.out.print(nFact);
+        }
+
+    }
+
+    public static class DoubleLoop {
+
+        public static void main(String[] args) {
+            for (int x = 3; x > 0; x--) {
+                for (int y = 4; y > 0; y--) {
+                    System.out.print(x * y);
+                }
+            }
+        }
+
+    }
+
+    public static class EuclidDistance {
+
+        public static void main(String[] args) {
+            Scanner in = new Scanner(System.in);
+            double x = in.nextDouble();
+            double y = in.nextDouble();
+            System.out.print(Math.sqrt(x * x + y * y));
+        }
+
+    }
+
+    public static class PowTest {
+
+        public static void main(String[] args) {
+            // 2 ** 31 does not fit in an int; converting Micro's real
+            // result saturates to Integer.MAX_VALUE.
+            long power = 1L << 31;
+            int x = power > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) power;
+            System.out.print(x);
+        }
+
+    }
+
+    public static class ArrayTest {
+
+        public static void proc(int[] x, int[] w) {
+            double[] y = new double[10];
+            x[5] = 9;
+            y[6] = 12;
+            double z = x[5];
+            int i = (int) y[6];
+            x[6] = (int) y[6];
+            y[5] = x[5];
+            w[1] = (int) y[1];
+            x[9] = w[1];
+            System.out.print(z);
+        }
+
+        public static void main(String[] args) {
+            int[] x = new int[10];
+            proc(x, x);
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.micro.MicroLexer;
+import edu.temple.cis.c4324.microcompilerv1.MicroScanner;
+import edu.temple.cis.c4324.microcompilerv1.ProgramGenerator;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the hand written MicroScanner against the lexer generated
+ * from Micro.g4 on large generated programs. Besides the operations per
+ * second, the tokens counter reports tokens per second. Both scanners are
+ * reused from one operation to the next, as they are by the compiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexBenchmark {
+
+    /**
+     * The number of tokens scanned, reported by JMH as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+
+    }
+
+    @Param({"1000", "10000"})
+    public int lines;
+
+    private String text;
+    private char[] chars;
+    private ByteBuffer bytes;
+    private MicroLexer lexer;
+    private MicroScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setTargetLines(lines);
+        text = generator.generate("Lex" + lines);
+        chars = text.toCharArray();
+        bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        lexer = new MicroLexer(null);
+        lexer.removeErrorListeners();
+        scanner = new MicroScanner();
+    }
+
+    /**
+     * Scan the program with the generated lexer, creating a token object
+     * for each token.
+     * @param counter The token counter
+     * @return The last token
+     */
+    @Benchmark
+    public Token antlr(Tokens counter) {
+        lexer.setInputStream(new ANTLRInputStream(text));
+        int count = 0;
+        Token token;
+        do {
+            token = lexer.nextToken();
+            count++;
+        } while (token.getType() != Token.EOF);
+        counter.tokens += count;
+        return token;
+    }
+
+    /**
+     * Scan the characters of the program with MicroScanner.
+     * @param counter The token counter
+     * @return The number of tokens
+     */
+    @Benchmark
+    public int scanner(Tokens counter) {
+        int count = scanner.scan(chars, chars.length, ConsoleErrorListener.INSTANCE);
+        counter.tokens += count;
+        return count;
+    }
+
+    /**
+     * Decode the UTF-8 bytes of the program and scan them with MicroScanner.
+     * @param counter The token counter
+     * @return The number of tokens
+     */
+    @Benchmark
+    public int scannerBytes(Tokens counter) {
+        int count = scanner.scan(bytes, ConsoleErrorListener.INSTANCE);
+        counter.tokens += count;
+        return count;
+    }
+
+}
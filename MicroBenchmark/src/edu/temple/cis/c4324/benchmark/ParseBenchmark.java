@@ -0,0 +1,83 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.microcompilerv1.FrontEnd;
+import edu.temple.cis.c4324.microcompilerv1.ProgramGenerator;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of two stage (SLL, then LL on failure) parsing against LL
+ * parsing alone on large generated programs. The tokens are read once in
+ * setup, so only the parser is measured. Long expressions are where SLL
+ * prediction gains the most.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"1000", "10000"})
+    public int lines;
+
+    @Param({"4", "16"})
+    public int expressionLength;
+
+    @Param({"true", "false"})
+    public boolean twoStage;
+
+    private FrontEnd frontEnd;
+    private CommonTokenStream tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setTargetLines(lines);
+        generator.setExpressionLength(expressionLength);
+        String text = generator.generate("Parse" + lines);
+        frontEnd = new FrontEnd();
+        frontEnd.setTwoStage(twoStage);
+        tokens = frontEnd.tokenize(new ANTLRInputStream(text), ConsoleErrorListener.INSTANCE);
+        tokens.fill();
+    }
+
+    /**
+     * Parse the program.
+     * @return The parse tree
+     */
+    @Benchmark
+    public ParseTree parse() {
+        tokens.seek(0);
+        return frontEnd.parse(tokens, ConsoleErrorListener.INSTANCE);
+    }
+
+    /**
+     * Check after each iteration that the SLL stage did not give up, which
+     * would mean both stages were measured.
+     */
+    @TearDown(Level.Iteration)
+    public void checkFallback() {
+        if (frontEnd.fellBack()) {
+            throw new IllegalStateException("The SLL stage gave up on a valid program");
+        }
+    }
+
+}
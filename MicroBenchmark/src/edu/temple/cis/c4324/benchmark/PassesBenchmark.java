@@ -0,0 +1,80 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.microcompilerv1.Ast;
+import edu.temple.cis.c4324.microcompilerv1.AstBuilder;
+import edu.temple.cis.c4324.microcompilerv1.DefinitionVisitor;
+import edu.temple.cis.c4324.microcompilerv1.FrontEnd;
+import edu.temple.cis.c4324.microcompilerv1.ReferenceVisitor;
+import edu.temple.cis.c4324.microcompilerv1.Scope;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the lowering, definition and reference passes. The program
+ * is parsed and lowered once; each operation runs one pass, over the same
+ * parse tree for lowering and over the same Ast for the others.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PassesBenchmark extends SampleState {
+
+    private ParseTree tree;
+    private Ast ast;
+
+    @Setup(Level.Trial)
+    public void parse() {
+        loadSample();
+        tree = new FrontEnd().parse(new ANTLRInputStream(text), ConsoleErrorListener.INSTANCE);
+        ast = lower();
+        definition();
+    }
+
+    /**
+     * Lower the parse tree into an Ast.
+     * @return The Ast
+     */
+    @Benchmark
+    public Ast lower() {
+        return new AstBuilder().lower(tree, 1024);
+    }
+
+    /**
+     * Run the DefinitionVisitor.
+     * @return The global scope
+     */
+    @Benchmark
+    public Scope definition() {
+        DefinitionVisitor defVisitor = new DefinitionVisitor();
+        defVisitor.visit(ast);
+        return defVisitor.getGlobalScope();
+    }
+
+    /**
+     * Run the ReferenceVisitor using the scopes of a previous definition
+     * pass.
+     * @return The Ast holding the types
+     */
+    @Benchmark
+    public Ast reference() {
+        ReferenceVisitor refVisitor = new ReferenceVisitor(ast);
+        refVisitor.visit();
+        return ast;
+    }
+
+}
@@ -0,0 +1,72 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.microcompilerv1.Ast;
+import edu.temple.cis.c4324.microcompilerv1.DefinitionVisitor;
+import edu.temple.cis.c4324.microcompilerv1.FrontEnd;
+import edu.temple.cis.c4324.microcompilerv1.ProgramGenerator;
+import edu.temple.cis.c4324.microcompilerv1.ReferenceVisitor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the reference pass, checking the routines of a generated
+ * program one at a time or concurrently on the common fork/join pool. The
+ * program is parsed and defined once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReferenceBenchmark {
+
+    @Param({"100", "1000"})
+    public int routines;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Ast ast;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setProcedures(routines / 2);
+        generator.setFunctions(routines / 2);
+        generator.setStatements(20);
+        String text = generator.generate("Reference" + routines);
+        FrontEnd frontEnd = new FrontEnd();
+        char[] chars = text.toCharArray();
+        frontEnd.scan(chars, chars.length);
+        ast = frontEnd.parseAst();
+        new DefinitionVisitor().visit(ast);
+    }
+
+    /**
+     * Run the reference pass over the whole program.
+     * @return The Ast holding the types
+     */
+    @Benchmark
+    public Ast reference() {
+        ReferenceVisitor refVisitor = new ReferenceVisitor(ast);
+        if (parallel) {
+            refVisitor.setPool(ForkJoinPool.commonPool());
+        }
+        refVisitor.visit();
+        return ast;
+    }
+
+}
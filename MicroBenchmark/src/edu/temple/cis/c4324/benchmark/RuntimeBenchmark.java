@@ -0,0 +1,152 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.microcompilerv1.CompileResult;
+import edu.temple.cis.c4324.microcompilerv1.CompilerOptions;
+import edu.temple.cis.c4324.microcompilerv1.MicroClassLoader;
+import edu.temple.cis.c4324.microcompilerv1.MicroCompiler;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the code generated by the compiler. Each sample program is
+ * compiled in memory and its main method is run against the main method of
+ * the hand-written version in JavaPrograms. System.in and System.out are
+ * redirected to in-memory buffers that are rewound before every operation,
+ * so each run reads the same input and no output reaches the console.
+ * Before measuring, the two versions are run once and must write the same
+ * output. The main methods are called by reflection rather than through a
+ * method handle; with JDK 17, inlining a method handle to the main method of
+ * a generated class crashed the server compiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuntimeBenchmark {
+
+    private static final Object[] NO_ARGS = {new String[0]};
+
+    @Param({"Gcd2", "Fact", "DoubleLoop", "EuclidDistance", "PowTest", "ArrayTest"})
+    public String program;
+
+    private Method generatedMain;
+    private Method javaMain;
+    private ByteArrayInputStream input;
+    private ByteArrayOutputStream output;
+    private InputStream savedIn;
+    private PrintStream savedOut;
+
+    /**
+     * Get the input read by a sample program.
+     * @param program The program name
+     * @return The text supplied on System.in
+     */
+    static String inputFor(String program) {
+        switch (program) {
+            case "Gcd2":
+                // Consecutive Fibonacci numbers take the most iterations.
+                return "1134903170 701408733";
+            case "Fact":
+                return "12";
+            case "EuclidDistance":
+                return "3 4";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Compile a sample program in memory and load it.
+     * @param program The program name
+     * @return The generated class
+     */
+    static Class<?> compileSample(String program) {
+        CompilerOptions options = new CompilerOptions();
+        options.setSourceFileName(program + ".mic");
+        CompileResult result = MicroCompiler.compile(Samples.load(program), options);
+        if (!result.isSuccess()) {
+            throw new IllegalStateException(program + " did not compile: " + result.getDiagnostics());
+        }
+        return new MicroClassLoader().define(result);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        generatedMain = compileSample(program).getMethod("main", String[].class);
+        Class<?> javaClass = Class.forName(JavaPrograms.class.getName() + "$" + program);
+        javaMain = javaClass.getMethod("main", String[].class);
+        input = new ByteArrayInputStream(inputFor(program).getBytes(StandardCharsets.UTF_8));
+        output = new ByteArrayOutputStream();
+        savedIn = System.in;
+        savedOut = System.out;
+        System.setIn(input);
+        System.setOut(new PrintStream(output, false));
+        String expected = run(generatedMain);
+        String actual = run(javaMain);
+        if (!expected.equals(actual)) {
+            tearDown();
+            throw new IllegalStateException(program + " wrote \"" + expected
+                    + "\" but the Java version wrote \"" + actual + "\"");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setIn(savedIn);
+        System.setOut(savedOut);
+    }
+
+    private String run(Method main) throws ReflectiveOperationException {
+        invoke(main);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private int invoke(Method main) throws IllegalAccessException, InvocationTargetException {
+        input.reset();
+        output.reset();
+        main.invoke(null, NO_ARGS);
+        return output.size();
+    }
+
+    /**
+     * Run the main method generated by the compiler.
+     * @return The number of bytes written
+     * @throws ReflectiveOperationException if the program fails
+     */
+    @Benchmark
+    public int generated() throws ReflectiveOperationException {
+        return invoke(generatedMain);
+    }
+
+    /**
+     * Run the main method of the hand-written program.
+     * @return The number of bytes written
+     * @throws ReflectiveOperationException if the program fails
+     */
+    @Benchmark
+    public int java() throws ReflectiveOperationException {
+        return invoke(javaMain);
+    }
+
+}
@@ -0,0 +1,32 @@
+package edu.temple.cis.c4324.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Base class of the compiler benchmarks. It holds the program being
+ * compiled: one of the sample programs, with its main body repeated scale
+ * times. Each benchmark runs for every combination of the parameters.
+ * The state is per thread because the lexer and parser are not thread safe.
+ */
+@State(Scope.Thread)
+public abstract class SampleState {
+
+    @Param({"Gcd2", "SuperTest", "ArrayTest", "IfTest", "EuclidDistance"})
+    public String sample;
+
+    @Param({"1", "10", "100"})
+    public int scale;
+
+    protected String text;
+
+    /**
+     * Read the program. JMH does not order the setup methods of a class and
+     * its superclass, so each benchmark calls this from its own setup.
+     */
+    protected void loadSample() {
+        text = Samples.load(sample, scale);
+    }
+
+}
@@ -0,0 +1,97 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.micro.MicroParser.ProgramContext;
+import edu.temple.cis.c4324.micro.MicroParser.Statement_listContext;
+import edu.temple.cis.c4324.microcompilerv1.FrontEnd;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+
+/**
+ * Class to load the sample programs used as benchmark inputs. The samples
+ * are read from the MicroCompilerV1 project directory, or from the directory
+ * named by the micro.samples system property.
+ */
+public final class Samples {
+
+    public static final String DIRECTORY_PROPERTY = "micro.samples";
+
+    private Samples() {
+    }
+
+    /**
+     * Get the directory that holds the sample programs.
+     * @return The sample directory
+     */
+    public static Path directory() {
+        String dir = System.getProperty(DIRECTORY_PROPERTY);
+        if (dir != null) {
+            return Paths.get(dir);
+        }
+        Path sibling = Paths.get("..", "MicroCompilerV1");
+        if (Files.isDirectory(sibling)) {
+            return sibling;
+        }
+        return Paths.get("MicroCompilerV1");
+    }
+
+    /**
+     * Read a sample program.
+     * @param name The program name without the .mic extension
+     * @return The program text
+     */
+    public static String load(String name) {
+        Path file = directory().resolve(name + ".mic");
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read sample " + file, ex);
+        }
+    }
+
+    /**
+     * Read a sample program and scale it up. The statements of the main
+     * body are repeated factor times, so the program still compiles but
+     * the main method grows in proportion.
+     * @param name The program name without the .mic extension
+     * @param factor The number of copies of the main body
+     * @return The program text
+     */
+    public static String load(String name, int factor) {
+        return scale(load(name), factor);
+    }
+
+    /**
+     * Repeat the statements of the main body of a program.
+     * @param text The program text
+     * @param factor The number of copies of the main body
+     * @return The scaled program text
+     */
+    public static String scale(String text, int factor) {
+        if (factor <= 1) {
+            return text;
+        }
+        ProgramContext program = (ProgramContext) new FrontEnd()
+                .parse(new ANTLRInputStream(text), ConsoleErrorListener.INSTANCE);
+        Statement_listContext statements = program.body().statement_list();
+        if (statements.statement().isEmpty()) {
+            return text;
+        }
+        int start = statements.getStart().getStartIndex();
+        int stop = statements.getStop().getStopIndex() + 1;
+        String body = text.substring(start, stop);
+        StringBuilder sb = new StringBuilder(text.length() + (factor - 1) * (body.length() + 1));
+        sb.append(text, 0, start);
+        for (int i = 0; i < factor; i++) {
+            sb.append(body).append('\n');
+        }
+        sb.append(text, stop, text.length());
+        return sb.toString();
+    }
+
+}
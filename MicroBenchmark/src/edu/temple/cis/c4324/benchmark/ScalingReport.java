@@ -0,0 +1,192 @@
+package edu.temple.cis.c4324.benchmark;
+
+import edu.temple.cis.c4324.microcompilerv1.CompileProfile;
+import edu.temple.cis.c4324.microcompilerv1.CompileResult;
+import edu.temple.cis.c4324.microcompilerv1.CompilerOptions;
+import edu.temple.cis.c4324.microcompilerv1.MicroCompiler;
+import edu.temple.cis.c4324.microcompilerv1.ProgramGenerator;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compile generated programs of 1k, 10k and 100k lines, or of the sizes
+ * given on the command line, and print how the time of each phase and the
+ * heap grow with the program size. The time and allocation of each phase
+ * are shown per thousand lines, so a phase whose cost is linear in the
+ * program size shows about the same number in every column, and a phase
+ * that grows faster is flagged as superlinear. The programs are compiled in
+ * memory and again in streaming mode, whose peak heap should not grow with
+ * the program size. This is a measurement to run by hand, not a test: it
+ * takes minutes and its numbers depend on the machine.
+ */
+public class ScalingReport {
+
+    private static final int[] SIZES = {1000, 10000, 100000};
+
+    /**
+     * A phase is reported as superlinear if its cost per line grows by more
+     * than this factor from the smallest to the largest program.
+     */
+    private static final double SUPERLINEAR = 2.0;
+
+    private static class Measurement {
+
+        private final int lines;
+        private final CompileProfile profile;
+        private final long wallNanos;
+        private final long peakHeap;
+
+        Measurement(int lines, CompileProfile profile, long wallNanos, long peakHeap) {
+            this.lines = lines;
+            this.profile = profile;
+            this.wallNanos = wallNanos;
+            this.peakHeap = peakHeap;
+        }
+    }
+
+    /**
+     * Print the scaling report.
+     * <pre>
+     * ScalingReport [&lt;lines&gt;...]
+     * </pre>
+     * @param args the command line arguments
+     * @throws IOException if a temporary source file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int[] sizes = SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        // Warm up the compiler so that the small program is not measured
+        // in the interpreter.
+        for (int i = 0; i < 5; i++) {
+            compile(1000, false);
+            compile(1000, true);
+        }
+        List<Measurement> measurements = new ArrayList<>();
+        for (int size : sizes) {
+            measurements.add(compile(size, false));
+        }
+        report("in memory", measurements);
+        measurements.clear();
+        for (int size : sizes) {
+            measurements.add(compile(size, true));
+        }
+        report("streaming", measurements);
+    }
+
+    private static Measurement compile(int size, boolean streaming) throws IOException {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setTargetLines(size);
+        String text = generator.generate("Scaling" + size);
+        int lines = ProgramGenerator.lineCount(text);
+        CompilerOptions options = new CompilerOptions();
+        options.setSourceFileName("Scaling" + size + ".mic");
+        options.setProfiling(true);
+        options.setStreaming(streaming);
+        Path source = null;
+        if (streaming) {
+            source = Files.createTempFile("Scaling" + size, ".mic");
+            Files.write(source, text.getBytes(StandardCharsets.UTF_8));
+            text = null;
+        }
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        long baseline = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+            baseline += pool.getUsage().getUsed();
+        }
+        long start = System.nanoTime();
+        CompileResult result = streaming
+                ? MicroCompiler.compile(source, options)
+                : MicroCompiler.compile(text, options);
+        long wallNanos = System.nanoTime() - start;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        if (source != null) {
+            Files.delete(source);
+        }
+        if (!result.isSuccess()) {
+            throw new IllegalStateException(size + " lines: " + result.getDiagnostics());
+        }
+        return new Measurement(lines, result.getProfile(), wallNanos, Math.max(0, peak - baseline));
+    }
+
+    private static void report(String title, List<Measurement> measurements) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(title).append(String.format("%n%-22s", "lines"));
+        for (Measurement m : measurements) {
+            sb.append(String.format("%14d", m.lines));
+        }
+        sb.append(String.format("%n%-22s", "total ms"));
+        for (Measurement m : measurements) {
+            sb.append(String.format("%14.1f", m.wallNanos / 1e6));
+        }
+        sb.append(String.format("%n%-22s", "peak heap MB"));
+        for (Measurement m : measurements) {
+            sb.append(String.format("%14.1f", m.peakHeap / 1048576.0));
+        }
+        sb.append(String.format("%n%-22s", "peak heap KB/kline"));
+        for (Measurement m : measurements) {
+            sb.append(String.format("%14.1f", m.peakHeap / 1024.0 / (m.lines / 1000.0)));
+        }
+        sb.append(String.format("%n"));
+        Set<String> phases = new LinkedHashSet<>();
+        for (Measurement m : measurements) {
+            phases.addAll(m.profile.getPhases().keySet());
+        }
+        List<String> superlinear = new ArrayList<>();
+        for (String phase : phases) {
+            double first = 0;
+            double last = 0;
+            sb.append(String.format("%-22s", phase + " ms/kline"));
+            for (Measurement m : measurements) {
+                double perKiloLine = wallNanos(m.profile.getPhases(), phase) / 1e6 / (m.lines / 1000.0);
+                sb.append(String.format("%14.3f", perKiloLine));
+                if (m == measurements.get(0)) {
+                    first = perKiloLine;
+                }
+                last = perKiloLine;
+            }
+            sb.append(String.format("%n%-22s", phase + " MB/kline"));
+            for (Measurement m : measurements) {
+                CompileProfile.Phase p = m.profile.getPhases().get(phase);
+                long allocated = p == null ? 0 : p.getAllocatedBytes();
+                sb.append(String.format("%14.3f", allocated / 1048576.0 / (m.lines / 1000.0)));
+            }
+            sb.append(String.format("%n"));
+            if (first > 0 && last / first > SUPERLINEAR) {
+                superlinear.add(String.format("%s (%.1fx per line)", phase, last / first));
+            }
+        }
+        sb.append("superlinear phases: ").append(superlinear.isEmpty() ? "none" : String.join(", ", superlinear));
+        System.out.println(sb);
+    }
+
+    private static long wallNanos(Map<String, CompileProfile.Phase> phases, String phase) {
+        CompileProfile.Phase p = phases.get(phase);
+        return p == null ? 0 : p.getWallNanos();
+    }
+
+}
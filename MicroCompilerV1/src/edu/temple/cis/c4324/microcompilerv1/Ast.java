@@ -0,0 +1,342 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.util.Arrays;
+
+/**
+ * A compact abstract syntax tree. The parse tree is lowered into an Ast as
+ * soon as it is parsed, so that the parse tree and the tokens can be
+ * dropped. A node is identified by an int id. Its kind, operator, text,
+ * source position and children are kept in parallel arrays, and so are the
+ * scope, type and identifier annotations added by the definition and
+ * reference passes.
+ * Nodes are numbered in post order, so the children of a node always have
+ * smaller ids than the node itself.
+ * <p>
+ * The children of each kind of node are:</p>
+ * <pre>
+ * PROGRAM          declarations..., STATEMENTS (text: program name)
+ * VARIABLE         none (text: name, op: type)
+ * ARRAY_VARIABLE   INT_LITERAL length (text: name, op: component type)
+ * PARAMETER        none (text: name, op: type)
+ * ARRAY_PARAMETER  none (text: name, op: component type)
+ * PROCEDURE        parameters..., variables..., STATEMENTS (text: name)
+ * FUNCTION         parameters..., variables..., STATEMENTS (text: name,
+ *                  op: return type)
+ * STATEMENTS       statements...
+ * READ             lvalues...
+ * WRITE            expressions...
+ * ASSIGN           lvalue, expression
+ * CALL             arguments... (text: name)
+ * IF               guard, STATEMENTS, ELSIF..., ELSE?
+ * ELSIF            guard, STATEMENTS
+ * ELSE             STATEMENTS
+ * WHILE            guard, STATEMENTS
+ * DO_UNTIL         STATEMENTS, guard
+ * RETURN           expression?
+ * ID_LVALUE        none (text: name)
+ * ARRAY_LVALUE     index (text: name)
+ * FUNCTION_CALL    arguments... (text: name)
+ * ARRAY_ACCESS     index (text: name)
+ * UNARY            operand (op: operator)
+ * POWER            base, exponent
+ * ARITHMETIC       left, right (op: operator)
+ * COMPARISON       left, right (op: operator)
+ * LOGICAL          left, right (op: operator)
+ * ID               none (text: name)
+ * *_LITERAL        none (text: the literal as written)
+ * </pre>
+ * Types are the ordinal of a PrimitiveType. Parentheses are not kept; the
+ * position of an expression is that of its first token, as in the parse
+ * tree.
+ */
+public class Ast {
+
+    public static final int PROGRAM = 0;
+    public static final int VARIABLE = 1;
+    public static final int ARRAY_VARIABLE = 2;
+    public static final int PARAMETER = 3;
+    public static final int ARRAY_PARAMETER = 4;
+    public static final int PROCEDURE = 5;
+    public static final int FUNCTION = 6;
+    public static final int STATEMENTS = 7;
+    public static final int READ = 8;
+    public static final int WRITE = 9;
+    public static final int ASSIGN = 10;
+    public static final int CALL = 11;
+    public static final int IF = 12;
+    public static final int ELSIF = 13;
+    public static final int ELSE = 14;
+    public static final int WHILE = 15;
+    public static final int DO_UNTIL = 16;
+    public static final int RETURN = 17;
+    public static final int ID_LVALUE = 18;
+    public static final int ARRAY_LVALUE = 19;
+    public static final int FUNCTION_CALL = 20;
+    public static final int ARRAY_ACCESS = 21;
+    public static final int UNARY = 22;
+    public static final int POWER = 23;
+    public static final int ARITHMETIC = 24;
+    public static final int COMPARISON = 25;
+    public static final int LOGICAL = 26;
+    public static final int ID = 27;
+    public static final int INT_LITERAL = 28;
+    public static final int REAL_LITERAL = 29;
+    public static final int CHAR_LITERAL = 30;
+    public static final int BOOL_LITERAL = 31;
+
+    public static final int PLUS = 0;
+    public static final int MINUS = 1;
+    public static final int COMPLEMENT = 2;
+    public static final int NOT = 3;
+    public static final int TIMES = 4;
+    public static final int DIVIDE = 5;
+    public static final int REMAINDER = 6;
+    public static final int SHIFT_LEFT = 7;
+    public static final int SHIFT_RIGHT = 8;
+    public static final int UNSIGNED_SHIFT_RIGHT = 9;
+    public static final int LESS = 10;
+    public static final int LESS_EQUAL = 11;
+    public static final int GREATER_EQUAL = 12;
+    public static final int GREATER = 13;
+    public static final int EQUAL = 14;
+    public static final int NOT_EQUAL = 15;
+    public static final int BITWISE_AND = 16;
+    public static final int BITWISE_XOR = 17;
+    public static final int BITWISE_OR = 18;
+    public static final int AND = 19;
+    public static final int OR = 20;
+
+    private static final String[] OPERATORS = {
+        "+", "-", "~", "\u00ac", "*", "/", "%", "<<", ">>", ">>>",
+        "<", "<=", ">=", ">", "=", "!=", "&", "^", "|", "\u2227", "\u2228"
+    };
+
+    private static final PrimitiveType[] PRIMITIVE_TYPES = PrimitiveType.values();
+
+    private byte[] kinds;
+    private byte[] ops;
+    private String[] texts;
+    private int[] lines;
+    private int[] columns;
+    private int[] firstChild;
+    private int[] childCounts;
+    private int[] children;
+    private Type[] types;
+    private Scope[] scopes;
+    private Identifier[] identifiers;
+    private int size;
+    private int childrenSize;
+    private int root;
+
+    /**
+     * Construct an empty Ast.
+     * @param capacity The expected number of nodes
+     */
+    public Ast(int capacity) {
+        capacity = Math.max(capacity, 16);
+        kinds = new byte[capacity];
+        ops = new byte[capacity];
+        texts = new String[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+        firstChild = new int[capacity];
+        childCounts = new int[capacity];
+        children = new int[capacity];
+        types = new Type[capacity];
+        scopes = new Scope[capacity];
+        identifiers = new Identifier[capacity];
+        root = -1;
+    }
+
+    /**
+     * Add a node. Its children must already have been added.
+     * @param kind The node kind
+     * @param op The operator or type, or 0
+     * @param text The name or literal, or null
+     * @param line The line of the first token
+     * @param column The column of the first token
+     * @param childIds An array holding the ids of the children
+     * @param offset The index in childIds of the first child
+     * @param count The number of children
+     * @return The id of the new node
+     */
+    public int add(int kind, int op, String text, int line, int column,
+            int[] childIds, int offset, int count) {
+        if (size == kinds.length) {
+            grow();
+        }
+        if (childrenSize + count > children.length) {
+            children = Arrays.copyOf(children, Math.max(children.length * 2, childrenSize + count));
+        }
+        int node = size++;
+        kinds[node] = (byte) kind;
+        ops[node] = (byte) op;
+        texts[node] = text;
+        lines[node] = line;
+        columns[node] = column;
+        firstChild[node] = childrenSize;
+        childCounts[node] = count;
+        System.arraycopy(childIds, offset, children, childrenSize, count);
+        childrenSize += count;
+        return node;
+    }
+
+    /**
+     * Replace a node in place by a node of another kind, keeping its id,
+     * source position and annotations. The new children must be nodes
+     * below it, so that the ids remain in post order.
+     * @param node The node
+     * @param kind The new node kind
+     * @param childIds An array holding the ids of the new children
+     * @param offset The index in childIds of the first child
+     * @param count The number of children
+     */
+    public void replace(int node, int kind, int[] childIds, int offset, int count) {
+        if (childrenSize + count > children.length) {
+            children = Arrays.copyOf(children, Math.max(children.length * 2, childrenSize + count));
+        }
+        kinds[node] = (byte) kind;
+        firstChild[node] = childrenSize;
+        childCounts[node] = count;
+        System.arraycopy(childIds, offset, children, childrenSize, count);
+        childrenSize += count;
+    }
+
+    /**
+     * Replace an expression in place by a literal, keeping its id and
+     * source position. Its children are dropped.
+     * @param node The expression
+     * @param kind The kind of literal
+     * @param text The literal as it would be written
+     * @param type The type of the literal
+     */
+    public void replaceByLiteral(int node, int kind, String text, Type type) {
+        kinds[node] = (byte) kind;
+        ops[node] = 0;
+        texts[node] = text;
+        childCounts[node] = 0;
+        types[node] = type;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        ops = Arrays.copyOf(ops, capacity);
+        texts = Arrays.copyOf(texts, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        childCounts = Arrays.copyOf(childCounts, capacity);
+        types = Arrays.copyOf(types, capacity);
+        scopes = Arrays.copyOf(scopes, capacity);
+        identifiers = Arrays.copyOf(identifiers, capacity);
+    }
+
+    public int getRoot() {return root;}
+
+    public void setRoot(int root) {
+        this.root = root;
+    }
+
+    /**
+     * Get the number of nodes.
+     * @return The number of nodes
+     */
+    public int size() {return size;}
+
+    public int getKind(int node) {return kinds[node];}
+
+    public int getOp(int node) {return ops[node];}
+
+    public String getText(int node) {return texts[node];}
+
+    public int getLine(int node) {return lines[node];}
+
+    public int getColumn(int node) {return columns[node];}
+
+    public int getChildCount(int node) {return childCounts[node];}
+
+    /**
+     * Get a child of a node.
+     * @param node The node
+     * @param i The index of the child
+     * @return The id of the child
+     */
+    public int getChild(int node, int i) {return children[firstChild[node] + i];}
+
+    /**
+     * Get the last child of a node, which is the statements of a program,
+     * procedure or function.
+     * @param node The node
+     * @return The id of the last child
+     */
+    public int getLastChild(int node) {
+        return children[firstChild[node] + childCounts[node] - 1];
+    }
+
+    /**
+     * Get the type given by the op of a declaration.
+     * @param node The declaration
+     * @return The declared type
+     */
+    public PrimitiveType getDeclaredType(int node) {return PRIMITIVE_TYPES[ops[node]];}
+
+    /**
+     * Get the type of a node found by the reference pass.
+     * @param node The node
+     * @return The type, or null if it has not been set
+     */
+    public Type getType(int node) {return types[node];}
+
+    public void setType(int node, Type type) {
+        types[node] = type;
+    }
+
+    /**
+     * Get the scope of a program, procedure or function created by the
+     * definition pass.
+     * @param node The node
+     * @return The scope, or null if it has not been set
+     */
+    public Scope getScope(int node) {return scopes[node];}
+
+    public void setScope(int node, Scope scope) {
+        scopes[node] = scope;
+    }
+
+    /**
+     * Get the identifier that a declaration defines or that a use of a name
+     * refers to, as bound by the reference pass.
+     * @param node The node
+     * @return The identifier, or null if it has not been bound
+     */
+    public Identifier getIdentifier(int node) {return identifiers[node];}
+
+    public void setIdentifier(int node, Identifier identifier) {
+        identifiers[node] = identifier;
+    }
+
+    /**
+     * Get the text of an operator.
+     * @param op The operator
+     * @return The operator as written in the source
+     */
+    public static String operatorText(int op) {
+        return OPERATORS[op];
+    }
+
+    /**
+     * Find the operator written as text.
+     * @param text The operator as written in the source
+     * @return The operator, or -1 if there is none
+     */
+    public static int operator(String text) {
+        for (int op = 0; op < OPERATORS.length; op++) {
+            if (OPERATORS[op].equals(text)) {
+                return op;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,428 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import edu.temple.cis.c4324.micro.MicroBaseVisitor;
+import edu.temple.cis.c4324.micro.MicroParser;
+import edu.temple.cis.c4324.micro.MicroParser.ArithopContext;
+import edu.temple.cis.c4324.micro.MicroParser.ArrayAccessContext;
+import edu.temple.cis.c4324.micro.MicroParser.ArrayLvalueContext;
+import edu.temple.cis.c4324.micro.MicroParser.Assignment_statementContext;
+import edu.temple.cis.c4324.micro.MicroParser.BodyContext;
+import edu.temple.cis.c4324.micro.MicroParser.BoolContext;
+import edu.temple.cis.c4324.micro.MicroParser.Call_statementContext;
+import edu.temple.cis.c4324.micro.MicroParser.CharContext;
+import edu.temple.cis.c4324.micro.MicroParser.CompopContext;
+import edu.temple.cis.c4324.micro.MicroParser.Do_until_statementContext;
+import edu.temple.cis.c4324.micro.MicroParser.Else_partContext;
+import edu.temple.cis.c4324.micro.MicroParser.Elsif_partContext;
+import edu.temple.cis.c4324.micro.MicroParser.ExprContext;
+import edu.temple.cis.c4324.micro.MicroParser.FcnCallContext;
+import edu.temple.cis.c4324.micro.MicroParser.FloatContext;
+import edu.temple.cis.c4324.micro.MicroParser.IdContext;
+import edu.temple.cis.c4324.micro.MicroParser.IdLvalueContext;
+import edu.temple.cis.c4324.micro.MicroParser.If_statementContext;
+import edu.temple.cis.c4324.micro.MicroParser.IntContext;
+import edu.temple.cis.c4324.micro.MicroParser.LogicalopContext;
+import edu.temple.cis.c4324.micro.MicroParser.ParensContext;
+import edu.temple.cis.c4324.micro.MicroParser.PowopContext;
+import edu.temple.cis.c4324.micro.MicroParser.ProgramContext;
+import edu.temple.cis.c4324.micro.MicroParser.Read_statementContext;
+import edu.temple.cis.c4324.micro.MicroParser.Return_statementContext;
+import edu.temple.cis.c4324.micro.MicroParser.Statement_listContext;
+import edu.temple.cis.c4324.micro.MicroParser.UnaryopContext;
+import edu.temple.cis.c4324.micro.MicroParser.While_statementContext;
+import edu.temple.cis.c4324.micro.MicroParser.Write_statementContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * The lowering phase converts a parse tree into an Ast. Each visit method
+ * adds the node for its parse tree node and pushes its id on a stack, from
+ * which the enclosing node takes the ids of its children.
+ */
+public class AstBuilder extends MicroBaseVisitor<Void> {
+
+    private Ast ast;
+    private int[] stack;
+    private int top;
+    private Operator[] operators;
+    private int pending;
+
+    public AstBuilder() {
+        stack = new int[64];
+        operators = new Operator[16];
+    }
+
+    /**
+     * An expression node whose operands are being lowered.
+     */
+    private static final class Operator {
+        int kind;
+        int op;
+        String text;
+        ParserRuleContext ctx;
+        List<ExprContext> operands;
+        int next;
+        int mark;
+    }
+
+    /**
+     * Lower a parse tree. The tree may be a whole program, a single
+     * declaration or the body of the program.
+     * @param tree The parse tree
+     * @param capacity The expected number of nodes
+     * @return The Ast, whose root is the node of the tree
+     */
+    public Ast lower(ParseTree tree, int capacity) {
+        ast = new Ast(capacity);
+        top = 0;
+        pending = 0;
+        visit(tree);
+        ast.setRoot(stack[top - 1]);
+        Ast result = ast;
+        ast = null;
+        return result;
+    }
+
+    private void push(int node) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = node;
+    }
+
+    /**
+     * Add a node whose children are the nodes pushed since mark, and push
+     * it in their place.
+     */
+    private void add(int kind, int op, String text, Token start, int mark) {
+        int node = ast.add(kind, op, text, start.getLine(), start.getCharPositionInLine(),
+                stack, mark, top - mark);
+        top = mark;
+        push(node);
+    }
+
+    private void add(int kind, int op, String text, ParserRuleContext ctx, int mark) {
+        add(kind, op, text, ctx.getStart(), mark);
+    }
+
+    private static int primitiveType(ParseTree type) {
+        switch (type.getText()) {
+            case "int":
+                return PrimitiveType.INT.ordinal();
+            case "real":
+                return PrimitiveType.REAL.ordinal();
+            case "char":
+                return PrimitiveType.CHAR.ordinal();
+            case "bool":
+                return PrimitiveType.BOOL.ordinal();
+        }
+        return PrimitiveType.VOID.ordinal();
+    }
+
+    private void visitAll(List<? extends ParseTree> trees) {
+        for (ParseTree tree : trees) {
+            visit(tree);
+        }
+    }
+
+    @Override
+    public Void visitProgram(ProgramContext ctx) {
+        int mark = top;
+        visitAll(ctx.decleration());
+        visit(ctx.body());
+        add(Ast.PROGRAM, 0, ctx.ID().getText(), ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitProcedureDeclaration(MicroParser.ProcedureDeclarationContext ctx) {
+        int mark = top;
+        visitAll(ctx.parameterList().parameterDeclaration());
+        visitAll(ctx.variableDeclaration());
+        visit(ctx.body());
+        add(Ast.PROCEDURE, 0, ctx.ID().getText(), ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionDeclaration(MicroParser.FunctionDeclarationContext ctx) {
+        int mark = top;
+        visitAll(ctx.parameterList().parameterDeclaration());
+        visitAll(ctx.variableDeclaration());
+        visit(ctx.body());
+        add(Ast.FUNCTION, primitiveType(ctx.type()), ctx.ID().getText(), ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitBody(BodyContext ctx) {
+        return visit(ctx.statement_list());
+    }
+
+    @Override
+    public Void visitSimpleVariableDecl(MicroParser.SimpleVariableDeclContext ctx) {
+        add(Ast.VARIABLE, primitiveType(ctx.type()), ctx.ID().getText(), ctx, top);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayVariableDecl(MicroParser.ArrayVariableDeclContext ctx) {
+        int mark = top;
+        Token length = ctx.INT().getSymbol();
+        add(Ast.INT_LITERAL, 0, length.getText(), length, mark);
+        add(Ast.ARRAY_VARIABLE, primitiveType(ctx.primitiveType()), ctx.ID().getText(), ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitSimpleParamDecl(MicroParser.SimpleParamDeclContext ctx) {
+        add(Ast.PARAMETER, primitiveType(ctx.type()), ctx.ID().getText(), ctx, top);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayParamDecl(MicroParser.ArrayParamDeclContext ctx) {
+        add(Ast.ARRAY_PARAMETER, primitiveType(ctx.primitiveType()), ctx.ID().getText(), ctx, top);
+        return null;
+    }
+
+    @Override
+    public Void visitStatement_list(Statement_listContext ctx) {
+        int mark = top;
+        visitAll(ctx.statement());
+        add(Ast.STATEMENTS, 0, null, ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitRead_statement(Read_statementContext ctx) {
+        int mark = top;
+        visitAll(ctx.lvalue_list().lvalue());
+        add(Ast.READ, 0, null, ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitWrite_statement(Write_statementContext ctx) {
+        int mark = top;
+        visitAll(ctx.expr_list().expr());
+        add(Ast.WRITE, 0, null, ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignment_statement(Assignment_statementContext ctx) {
+        int mark = top;
+        visit(ctx.lvalue());
+        visit(ctx.expr());
+        add(Ast.ASSIGN, 0, null, ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitCall_statement(Call_statementContext ctx) {
+        int mark = top;
+        visitAll(ctx.expr_list().expr());
+        add(Ast.CALL, 0, ctx.ID().getText(), ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitIf_statement(If_statementContext ctx) {
+        int mark = top;
+        visit(ctx.expr());
+        visit(ctx.statement_list());
+        visitAll(ctx.elsif_part());
+        if (ctx.else_part() != null) {
+            visit(ctx.else_part());
+        }
+        add(Ast.IF, 0, null, ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitElsif_part(Elsif_partContext ctx) {
+        int mark = top;
+        visit(ctx.expr());
+        visit(ctx.statement_list());
+        add(Ast.ELSIF, 0, null, ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitElse_part(Else_partContext ctx) {
+        int mark = top;
+        visit(ctx.statement_list());
+        add(Ast.ELSE, 0, null, ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitWhile_statement(While_statementContext ctx) {
+        int mark = top;
+        visit(ctx.expr());
+        visit(ctx.statement_list());
+        add(Ast.WHILE, 0, null, ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitDo_until_statement(Do_until_statementContext ctx) {
+        int mark = top;
+        visit(ctx.statement_list());
+        visit(ctx.expr());
+        add(Ast.DO_UNTIL, 0, null, ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitReturn_statement(Return_statementContext ctx) {
+        int mark = top;
+        if (ctx.expr() != null) {
+            visit(ctx.expr());
+        }
+        add(Ast.RETURN, 0, null, ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitIdLvalue(IdLvalueContext ctx) {
+        add(Ast.ID_LVALUE, 0, ctx.ID().getText(), ctx, top);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayLvalue(ArrayLvalueContext ctx) {
+        int mark = top;
+        visit(ctx.expr());
+        add(Ast.ARRAY_LVALUE, 0, ctx.ID().getText(), ctx, mark);
+        return null;
+    }
+
+    @Override
+    public Void visitFcnCall(FcnCallContext ctx) {
+        return operator(Ast.FUNCTION_CALL, 0, ctx.ID().getText(), ctx, ctx.expr_list().expr());
+    }
+
+    @Override
+    public Void visitArrayAccess(ArrayAccessContext ctx) {
+        return operator(Ast.ARRAY_ACCESS, 0, ctx.ID().getText(), ctx, Collections.singletonList(ctx.expr()));
+    }
+
+    @Override
+    public Void visitUnaryop(UnaryopContext ctx) {
+        return operator(Ast.UNARY, Ast.operator(ctx.op.getText()), null, ctx, Collections.singletonList(ctx.expr()));
+    }
+
+    @Override
+    public Void visitPowop(PowopContext ctx) {
+        return binary(Ast.POWER, 0, ctx, ctx.expr());
+    }
+
+    @Override
+    public Void visitArithop(ArithopContext ctx) {
+        return binary(Ast.ARITHMETIC, Ast.operator(ctx.op.getText()), ctx, ctx.expr());
+    }
+
+    @Override
+    public Void visitCompop(CompopContext ctx) {
+        return binary(Ast.COMPARISON, Ast.operator(ctx.op.getText()), ctx, ctx.expr());
+    }
+
+    @Override
+    public Void visitLogicalop(LogicalopContext ctx) {
+        return binary(Ast.LOGICAL, Ast.operator(ctx.op.getText()), ctx, ctx.expr());
+    }
+
+    private Void binary(int kind, int op, ParserRuleContext ctx, List<ExprContext> operands) {
+        if (operands.size() != 2) {
+            // The grammar accepts & ^ and | without a right operand.
+            MicroCompilerV1.error(ctx, Ast.operatorText(op) + " needs a right operand");
+        }
+        return operator(kind, op, null, ctx, operands);
+    }
+
+    /**
+     * Lower an expression node with operands. The operands are not visited
+     * by recursion, since the parse tree of a long chain of operators is as
+     * deep as the chain is long. Instead the node is put on a stack of
+     * pending operators, and the outermost operator visits the operands of
+     * the pending operators in order and adds each one after its last
+     * operand.
+     */
+    private Void operator(int kind, int op, String text, ParserRuleContext ctx, List<ExprContext> operands) {
+        if (pending == operators.length) {
+            operators = Arrays.copyOf(operators, pending * 2);
+        }
+        Operator operator = operators[pending];
+        if (operator == null) {
+            operator = new Operator();
+            operators[pending] = operator;
+        }
+        pending++;
+        operator.kind = kind;
+        operator.op = op;
+        operator.text = text;
+        operator.ctx = ctx;
+        operator.operands = operands;
+        operator.next = 0;
+        operator.mark = top;
+        if (pending > 1) {
+            return null;
+        }
+        while (pending > 0) {
+            operator = operators[pending - 1];
+            if (operator.next < operator.operands.size()) {
+                visit(operator.operands.get(operator.next++));
+            } else {
+                pending--;
+                add(operator.kind, operator.op, operator.text, operator.ctx, operator.mark);
+                operator.ctx = null;
+                operator.operands = null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitId(IdContext ctx) {
+        add(Ast.ID, 0, ctx.ID().getText(), ctx, top);
+        return null;
+    }
+
+    @Override
+    public Void visitInt(IntContext ctx) {
+        add(Ast.INT_LITERAL, 0, ctx.getText(), ctx, top);
+        return null;
+    }
+
+    @Override
+    public Void visitFloat(FloatContext ctx) {
+        add(Ast.REAL_LITERAL, 0, ctx.getText(), ctx, top);
+        return null;
+    }
+
+    @Override
+    public Void visitChar(CharContext ctx) {
+        add(Ast.CHAR_LITERAL, 0, ctx.getText(), ctx, top);
+        return null;
+    }
+
+    @Override
+    public Void visitBool(BoolContext ctx) {
+        add(Ast.BOOL_LITERAL, 0, ctx.getText(), ctx, top);
+        return null;
+    }
+
+    @Override
+    public Void visitParens(ParensContext ctx) {
+        // The operand keeps the position of its own first token; the
+        // enclosing node records the position of the parenthesis.
+        return visit(ctx.expr());
+    }
+
+}
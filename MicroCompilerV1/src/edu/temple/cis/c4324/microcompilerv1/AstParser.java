@@ -0,0 +1,527 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.util.Arrays;
+
+/**
+ * A recursive descent parser that builds an Ast directly from the tokens of
+ * a MicroScanner, without a parse tree. Expressions are parsed by
+ * precedence climbing (Pratt parsing) with the precedences and
+ * associativity that ANTLR gives the left recursive expr rule of Micro.g4,
+ * so the Ast is node for node the one AstBuilder lowers from the parse
+ * tree, with the same positions.
+ * <p>
+ * The parser does no error recovery. It gives up on the first syntax error,
+ * and also on an &amp; ^ or | without a right operand, which the grammar
+ * accepts but the compiler rejects. The caller is expected to parse the
+ * program again with the ANTLR parser, which reports the same diagnostics
+ * it always has.</p>
+ * The stack is reused from one program to the next, so a parser may only be
+ * used by one thread at a time.
+ */
+public class AstParser {
+
+    /**
+     * The precedence of the operand of a unary operator. It is higher than
+     * that of any binary operator, so the operand is a primary expression.
+     */
+    private static final int UNARY_PRECEDENCE = 15;
+
+    /**
+     * The precedence of the postfix &amp; ^ and | alternative.
+     */
+    private static final int POSTFIX_PRECEDENCE = 8;
+
+    private static final int[] PRECEDENCE = new int[MicroScanner.CHAR + 1];
+    private static final int[] NODE_KIND = new int[MicroScanner.CHAR + 1];
+    private static final int[] OPERATOR = new int[MicroScanner.CHAR + 1];
+
+    static {
+        binary(MicroScanner.POWER, 14, Ast.POWER, 0);
+        binary(MicroScanner.TIMES, 13, Ast.ARITHMETIC, Ast.TIMES);
+        binary(MicroScanner.DIVIDE, 13, Ast.ARITHMETIC, Ast.DIVIDE);
+        binary(MicroScanner.REMAINDER, 13, Ast.ARITHMETIC, Ast.REMAINDER);
+        binary(MicroScanner.PLUS, 12, Ast.ARITHMETIC, Ast.PLUS);
+        binary(MicroScanner.MINUS, 12, Ast.ARITHMETIC, Ast.MINUS);
+        binary(MicroScanner.SHIFT_LEFT, 11, Ast.ARITHMETIC, Ast.SHIFT_LEFT);
+        binary(MicroScanner.SHIFT_RIGHT, 11, Ast.ARITHMETIC, Ast.SHIFT_RIGHT);
+        binary(MicroScanner.UNSIGNED_SHIFT_RIGHT, 11, Ast.ARITHMETIC, Ast.UNSIGNED_SHIFT_RIGHT);
+        binary(MicroScanner.LESS, 10, Ast.COMPARISON, Ast.LESS);
+        binary(MicroScanner.LESS_EQUAL, 10, Ast.COMPARISON, Ast.LESS_EQUAL);
+        binary(MicroScanner.GREATER_EQUAL, 10, Ast.COMPARISON, Ast.GREATER_EQUAL);
+        binary(MicroScanner.GREATER, 10, Ast.COMPARISON, Ast.GREATER);
+        binary(MicroScanner.EQUAL, 9, Ast.COMPARISON, Ast.EQUAL);
+        binary(MicroScanner.NOT_EQUAL, 9, Ast.COMPARISON, Ast.NOT_EQUAL);
+        binary(MicroScanner.BITWISE_AND, POSTFIX_PRECEDENCE, Ast.ARITHMETIC, Ast.BITWISE_AND);
+        binary(MicroScanner.BITWISE_XOR, POSTFIX_PRECEDENCE, Ast.ARITHMETIC, Ast.BITWISE_XOR);
+        binary(MicroScanner.BITWISE_OR, POSTFIX_PRECEDENCE, Ast.ARITHMETIC, Ast.BITWISE_OR);
+        binary(MicroScanner.AND, 7, Ast.LOGICAL, Ast.AND);
+        binary(MicroScanner.OR, 7, Ast.LOGICAL, Ast.OR);
+        OPERATOR[MicroScanner.COMPLEMENT] = Ast.COMPLEMENT;
+        OPERATOR[MicroScanner.NOT] = Ast.NOT;
+    }
+
+    private static void binary(int token, int precedence, int kind, int op) {
+        PRECEDENCE[token] = precedence;
+        NODE_KIND[token] = kind;
+        OPERATOR[token] = op;
+    }
+
+    /**
+     * Thrown to abandon the parse. It carries no stack trace since it is
+     * always caught by parse.
+     */
+    private static class GiveUp extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        GiveUp() {
+            super(null, null, false, false);
+        }
+
+    }
+
+    private static final GiveUp GIVE_UP = new GiveUp();
+
+    private MicroScanner tokens;
+    private char[] chars;
+    private Ast ast;
+    private int[] stack;
+    private int top;
+    private int pos;
+    private int kind;
+
+    public AstParser() {
+        stack = new int[64];
+    }
+
+    /**
+     * Parse a program from the tokens of a scanner. As with the ANTLR
+     * parser, any tokens after the end of the main body are ignored.
+     * @param tokens The scanner holding the tokens of the program
+     * @return The Ast, or null if the parser gave up
+     */
+    public Ast parse(MicroScanner tokens) {
+        this.tokens = tokens;
+        chars = tokens.getChars();
+        ast = new Ast(tokens.size());
+        top = 0;
+        pos = 0;
+        kind = tokens.getKind(0);
+        try {
+            program();
+            ast.setRoot(stack[top - 1]);
+            return ast;
+        } catch (GiveUp ex) {
+            return null;
+        } finally {
+            this.tokens = null;
+            chars = null;
+            ast = null;
+        }
+    }
+
+    private void next() {
+        kind = tokens.getKind(++pos);
+    }
+
+    /**
+     * Match a token of the given kind.
+     * @return The index of the token
+     */
+    private int expect(int expected) {
+        if (kind != expected) {
+            throw GIVE_UP;
+        }
+        int token = pos;
+        next();
+        return token;
+    }
+
+    private String text(int token) {
+        int start = tokens.getStart(token);
+        return new String(chars, start, tokens.getEnd(token) - start);
+    }
+
+    /**
+     * Add a node whose children are the nodes pushed since mark, and push
+     * it in their place.
+     */
+    private void add(int nodeKind, int op, String text, int token, int mark) {
+        int node = ast.add(nodeKind, op, text, tokens.getLine(token), tokens.getColumn(token),
+                stack, mark, top - mark);
+        top = mark;
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = node;
+    }
+
+    private static boolean isType(int kind) {
+        return kind >= MicroScanner.INT_TYPE && kind <= MicroScanner.BOOL_TYPE;
+    }
+
+    private static boolean startsStatement(int kind) {
+        switch (kind) {
+            case MicroScanner.READ:
+            case MicroScanner.WRITE:
+            case MicroScanner.ID:
+            case MicroScanner.CALL:
+            case MicroScanner.IF:
+            case MicroScanner.WHILE:
+            case MicroScanner.DO:
+            case MicroScanner.RETURN:
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean startsExpression(int kind) {
+        switch (kind) {
+            case MicroScanner.ID:
+            case MicroScanner.PLUS:
+            case MicroScanner.MINUS:
+            case MicroScanner.COMPLEMENT:
+            case MicroScanner.NOT:
+            case MicroScanner.INT:
+            case MicroScanner.FLOAT:
+            case MicroScanner.CHAR:
+            case MicroScanner.BOOL:
+            case MicroScanner.LPAREN:
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Match a type keyword.
+     * @return The ordinal of the PrimitiveType
+     */
+    private int primitiveType() {
+        int type;
+        switch (kind) {
+            case MicroScanner.INT_TYPE:
+                type = PrimitiveType.INT.ordinal();
+                break;
+            case MicroScanner.REAL_TYPE:
+                type = PrimitiveType.REAL.ordinal();
+                break;
+            case MicroScanner.CHAR_TYPE:
+                type = PrimitiveType.CHAR.ordinal();
+                break;
+            case MicroScanner.BOOL_TYPE:
+                type = PrimitiveType.BOOL.ordinal();
+                break;
+            default:
+                throw GIVE_UP;
+        }
+        next();
+        return type;
+    }
+
+    private void program() {
+        int start = expect(MicroScanner.PROGRAM);
+        String name = text(expect(MicroScanner.ID));
+        int mark = top;
+        while (true) {
+            if (isType(kind)) {
+                variableDeclaration();
+                expect(MicroScanner.SEMI);
+            } else if (kind == MicroScanner.PROCEDURE || kind == MicroScanner.FUNCTION) {
+                routine();
+            } else {
+                break;
+            }
+        }
+        body();
+        add(Ast.PROGRAM, 0, name, start, mark);
+    }
+
+    private void variableDeclaration() {
+        int start = pos;
+        int type = primitiveType();
+        String name = text(expect(MicroScanner.ID));
+        int mark = top;
+        if (kind == MicroScanner.LBRACKET) {
+            next();
+            int length = expect(MicroScanner.INT);
+            expect(MicroScanner.RBRACKET);
+            add(Ast.INT_LITERAL, 0, text(length), length, mark);
+            add(Ast.ARRAY_VARIABLE, type, name, start, mark);
+        } else {
+            add(Ast.VARIABLE, type, name, start, mark);
+        }
+    }
+
+    private void parameterDeclaration() {
+        int start = pos;
+        int type = primitiveType();
+        String name = text(expect(MicroScanner.ID));
+        if (kind == MicroScanner.LBRACKET) {
+            next();
+            expect(MicroScanner.RBRACKET);
+            add(Ast.ARRAY_PARAMETER, type, name, start, top);
+        } else {
+            add(Ast.PARAMETER, type, name, start, top);
+        }
+    }
+
+    /**
+     * Parse a procedure or function declaration.
+     */
+    private void routine() {
+        int start = pos;
+        int nodeKind;
+        int type = 0;
+        if (kind == MicroScanner.FUNCTION) {
+            nodeKind = Ast.FUNCTION;
+            next();
+            type = primitiveType();
+        } else {
+            nodeKind = Ast.PROCEDURE;
+            next();
+        }
+        String name = text(expect(MicroScanner.ID));
+        expect(MicroScanner.LPAREN);
+        int mark = top;
+        if (isType(kind)) {
+            parameterDeclaration();
+            while (kind == MicroScanner.COMMA) {
+                next();
+                parameterDeclaration();
+            }
+        }
+        expect(MicroScanner.RPAREN);
+        while (isType(kind)) {
+            variableDeclaration();
+            expect(MicroScanner.SEMI);
+        }
+        body();
+        add(nodeKind, type, name, start, mark);
+    }
+
+    private void body() {
+        expect(MicroScanner.BEGIN);
+        statements();
+        expect(MicroScanner.END);
+        expect(MicroScanner.SEMI);
+    }
+
+    private void statements() {
+        int start = pos;
+        int mark = top;
+        while (startsStatement(kind)) {
+            statement();
+        }
+        add(Ast.STATEMENTS, 0, null, start, mark);
+    }
+
+    private void statement() {
+        int start = pos;
+        int mark = top;
+        switch (kind) {
+            case MicroScanner.READ:
+                next();
+                expect(MicroScanner.LPAREN);
+                if (kind == MicroScanner.ID) {
+                    lvalue();
+                    while (kind == MicroScanner.COMMA) {
+                        next();
+                        lvalue();
+                    }
+                }
+                expect(MicroScanner.RPAREN);
+                expect(MicroScanner.SEMI);
+                add(Ast.READ, 0, null, start, mark);
+                break;
+            case MicroScanner.WRITE:
+                next();
+                expect(MicroScanner.LPAREN);
+                expressionList();
+                expect(MicroScanner.RPAREN);
+                expect(MicroScanner.SEMI);
+                add(Ast.WRITE, 0, null, start, mark);
+                break;
+            case MicroScanner.ID:
+                lvalue();
+                expect(MicroScanner.ASSIGN);
+                expression(0);
+                expect(MicroScanner.SEMI);
+                add(Ast.ASSIGN, 0, null, start, mark);
+                break;
+            case MicroScanner.CALL: {
+                next();
+                String name = text(expect(MicroScanner.ID));
+                expect(MicroScanner.LPAREN);
+                expressionList();
+                expect(MicroScanner.RPAREN);
+                expect(MicroScanner.SEMI);
+                add(Ast.CALL, 0, name, start, mark);
+                break;
+            }
+            case MicroScanner.IF:
+                next();
+                expression(0);
+                expect(MicroScanner.THEN);
+                statements();
+                while (kind == MicroScanner.ELIF) {
+                    int elif = pos;
+                    int elifMark = top;
+                    next();
+                    expression(0);
+                    expect(MicroScanner.THEN);
+                    statements();
+                    add(Ast.ELSIF, 0, null, elif, elifMark);
+                }
+                if (kind == MicroScanner.ELSE) {
+                    int otherwise = pos;
+                    int elseMark = top;
+                    next();
+                    statements();
+                    add(Ast.ELSE, 0, null, otherwise, elseMark);
+                }
+                expect(MicroScanner.FI);
+                expect(MicroScanner.SEMI);
+                add(Ast.IF, 0, null, start, mark);
+                break;
+            case MicroScanner.WHILE:
+                next();
+                expression(0);
+                expect(MicroScanner.DO);
+                statements();
+                expect(MicroScanner.OD);
+                expect(MicroScanner.SEMI);
+                add(Ast.WHILE, 0, null, start, mark);
+                break;
+            case MicroScanner.DO:
+                next();
+                statements();
+                expect(MicroScanner.OD);
+                expect(MicroScanner.UNTIL);
+                expression(0);
+                expect(MicroScanner.SEMI);
+                add(Ast.DO_UNTIL, 0, null, start, mark);
+                break;
+            case MicroScanner.RETURN:
+                next();
+                if (kind != MicroScanner.SEMI) {
+                    expression(0);
+                }
+                expect(MicroScanner.SEMI);
+                add(Ast.RETURN, 0, null, start, mark);
+                break;
+            default:
+                throw GIVE_UP;
+        }
+    }
+
+    private void lvalue() {
+        int start = pos;
+        String name = text(expect(MicroScanner.ID));
+        int mark = top;
+        if (kind == MicroScanner.LBRACKET) {
+            next();
+            expression(0);
+            expect(MicroScanner.RBRACKET);
+            add(Ast.ARRAY_LVALUE, 0, name, start, mark);
+        } else {
+            add(Ast.ID_LVALUE, 0, name, start, mark);
+        }
+    }
+
+    private void expressionList() {
+        if (startsExpression(kind)) {
+            expression(0);
+            while (kind == MicroScanner.COMMA) {
+                next();
+                expression(0);
+            }
+        }
+    }
+
+    /**
+     * Parse an expression whose operators all have at least the given
+     * precedence. As in the parser ANTLR generates for expr, the right
+     * operand of a left associative operator must bind more tightly than
+     * the operator, and that of the right associative ** as tightly. A
+     * binary node is positioned at the first token of its left operand,
+     * which may be a parenthesis.
+     */
+    private void expression(int precedence) {
+        int start = pos;
+        int mark = top;
+        primary();
+        while (true) {
+            int operator = kind;
+            int operatorPrecedence = operator > 0 ? PRECEDENCE[operator] : 0;
+            if (operatorPrecedence == 0 || operatorPrecedence < precedence) {
+                return;
+            }
+            if (operatorPrecedence == POSTFIX_PRECEDENCE) {
+                throw GIVE_UP;
+            }
+            next();
+            expression(operator == MicroScanner.POWER ? operatorPrecedence : operatorPrecedence + 1);
+            add(NODE_KIND[operator], OPERATOR[operator], null, start, mark);
+        }
+    }
+
+    private void primary() {
+        int start = pos;
+        int mark = top;
+        switch (kind) {
+            case MicroScanner.ID: {
+                String name = text(start);
+                next();
+                if (kind == MicroScanner.LPAREN) {
+                    next();
+                    expressionList();
+                    expect(MicroScanner.RPAREN);
+                    add(Ast.FUNCTION_CALL, 0, name, start, mark);
+                } else if (kind == MicroScanner.LBRACKET) {
+                    next();
+                    expression(0);
+                    expect(MicroScanner.RBRACKET);
+                    add(Ast.ARRAY_ACCESS, 0, name, start, mark);
+                } else {
+                    add(Ast.ID, 0, name, start, mark);
+                }
+                break;
+            }
+            case MicroScanner.PLUS:
+            case MicroScanner.MINUS:
+            case MicroScanner.COMPLEMENT:
+            case MicroScanner.NOT: {
+                int op = OPERATOR[kind];
+                next();
+                expression(UNARY_PRECEDENCE);
+                add(Ast.UNARY, op, null, start, mark);
+                break;
+            }
+            case MicroScanner.INT:
+                next();
+                add(Ast.INT_LITERAL, 0, text(start), start, mark);
+                break;
+            case MicroScanner.FLOAT:
+                next();
+                add(Ast.REAL_LITERAL, 0, text(start), start, mark);
+                break;
+            case MicroScanner.CHAR:
+                next();
+                add(Ast.CHAR_LITERAL, 0, text(start), start, mark);
+                break;
+            case MicroScanner.BOOL:
+                next();
+                add(Ast.BOOL_LITERAL, 0, text(start), start, mark);
+                break;
+            case MicroScanner.LPAREN:
+                // The operand keeps the position of its own first token.
+                next();
+                expression(0);
+                expect(MicroScanner.RPAREN);
+                break;
+            default:
+                throw GIVE_UP;
+        }
+    }
+
+}
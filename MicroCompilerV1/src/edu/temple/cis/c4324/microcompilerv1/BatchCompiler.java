@@ -0,0 +1,214 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Class to compile many source files concurrently. Each file is compiled
+ * by its own Compilation on a work-stealing pool.
+ */
+public class BatchCompiler {
+
+    /**
+     * The outcome of compiling one file.
+     */
+    public static class Result {
+
+        private final String inputFileName;
+        private final List<Diagnostic> diagnostics;
+        private final boolean success;
+        private final long elapsedNanos;
+        private final CompileProfile profile;
+
+        Result(String inputFileName, List<Diagnostic> diagnostics, boolean success,
+                long elapsedNanos, CompileProfile profile) {
+            this.inputFileName = inputFileName;
+            this.diagnostics = diagnostics;
+            this.success = success;
+            this.elapsedNanos = elapsedNanos;
+            this.profile = profile;
+        }
+
+        public String getInputFileName() {return inputFileName;}
+        public List<Diagnostic> getDiagnostics() {return diagnostics;}
+        public boolean isSuccess() {return success;}
+        public long getElapsedNanos() {return elapsedNanos;}
+        public CompileProfile getProfile() {return profile;}
+
+    }
+
+    private final int parallelism;
+    private final CompilerOptions options;
+    private final CompileCache cache;
+
+    /**
+     * Construct a BatchCompiler
+     * @param parallelism The number of worker threads
+     * @param options The options used for every file
+     * @param cache The compile cache, or null
+     */
+    public BatchCompiler(int parallelism, CompilerOptions options, CompileCache cache) {
+        this.parallelism = parallelism;
+        this.options = options;
+        this.cache = cache;
+    }
+
+    /**
+     * Expand the command line arguments into a list of source files.
+     * Directories are searched recursively for .mic files.
+     * @param paths Files or directories
+     * @return The source files in a stable order
+     */
+    public static List<String> collectSources(List<String> paths) {
+        List<String> sources = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                collectDirectory(file, sources);
+            } else {
+                sources.add(path);
+            }
+        }
+        return sources;
+    }
+
+    private static void collectDirectory(File dir, List<String> sources) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectDirectory(child, sources);
+            } else if (child.getName().endsWith(".mic")) {
+                sources.add(child.getPath());
+            }
+        }
+    }
+
+    /**
+     * Compile all of the source files. The results are returned in the
+     * same order as the input.
+     * @param inputFileNames The source files
+     * @return One result per source file
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<Result> compileAll(List<String> inputFileNames) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (String inputFileName : inputFileNames) {
+                futures.add(pool.submit(() -> compileFile(inputFileName, options, cache)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    throw new RuntimeException(ex.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Compile a single file and write the class file next to it. If a cache
+     * is given and holds the class for this source text, the cached class is
+     * written without compiling. The cache is not used in streaming mode.
+     * @param inputFileName The source file
+     * @param baseOptions The options; the source file name is replaced
+     * @param cache The compile cache, or null
+     * @return The result
+     */
+    static Result compileFile(String inputFileName, CompilerOptions baseOptions, CompileCache cache) {
+        long start = System.nanoTime();
+        CompilerOptions options = new CompilerOptions(baseOptions);
+        options.setSourceFileName(inputFileName);
+        CompileProfile profile = null;
+        List<Diagnostic> diagnostics;
+        boolean success;
+        try {
+            byte[] classBytes = null;
+            diagnostics = Collections.emptyList();
+            if (options.isStreaming()) {
+                // The source text is never held in memory, so it cannot be
+                // hashed for the cache.
+                CompileResult result = MicroCompiler.compile(Paths.get(inputFileName), options);
+                diagnostics = result.getDiagnostics();
+                profile = result.getProfile();
+                classBytes = result.getClassBytes();
+            } else {
+                String text = new String(Files.readAllBytes(Paths.get(inputFileName)), StandardCharsets.UTF_8);
+                String key = null;
+                if (cache != null) {
+                    key = CompileCache.key(options, text);
+                    classBytes = cache.get(key);
+                }
+                if (classBytes == null) {
+                    CompileResult result = MicroCompiler.compile(text, options);
+                    diagnostics = result.getDiagnostics();
+                    profile = result.getProfile();
+                    classBytes = result.getClassBytes();
+                    if (classBytes != null && cache != null) {
+                        cache.put(key, classBytes);
+                    }
+                }
+            }
+            if (classBytes != null) {
+                Files.write(Paths.get(Compilation.outputFileName(inputFileName)), classBytes);
+            }
+            success = classBytes != null;
+        } catch (IOException ex) {
+            diagnostics = Collections.singletonList(new Diagnostic(0, 0, ex.toString()));
+            success = false;
+        }
+        return new Result(inputFileName, diagnostics, success, System.nanoTime() - start, profile);
+    }
+
+    /**
+     * Print the per-file outcome and the totals.
+     * @param results The results of compileAll
+     * @param wallNanos The wall time of the whole batch
+     * @param out The output stream
+     */
+    public static void printSummary(List<Result> results, long wallNanos, PrintStream out) {
+        int failed = 0;
+        for (Result result : results) {
+            out.printf("%-6s %s (%.1f ms)%n", result.isSuccess() ? "OK" : "FAILED",
+                    result.getInputFileName(), result.getElapsedNanos() / 1e6);
+            for (Diagnostic diagnostic : result.getDiagnostics()) {
+                out.printf("       %s%n", diagnostic);
+            }
+            if (!result.isSuccess()) {
+                failed++;
+            }
+        }
+        out.printf("%d files: %d succeeded, %d failed in %.1f ms wall time%n",
+                results.size(), results.size() - failed, failed, wallNanos / 1e6);
+    }
+
+    /**
+     * Get the exit status of a batch.
+     * @param results The results of compileAll
+     * @return 0 if every file compiled, 1 if not
+     */
+    public static int exitStatus(List<Result> results) {
+        return results.stream().allMatch(Result::isSuccess) ? 0 : 1;
+    }
+
+}
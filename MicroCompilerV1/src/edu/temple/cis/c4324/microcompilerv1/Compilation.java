@@ -0,0 +1,536 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import edu.temple.cis.c4324.codegen.Backend;
+import edu.temple.cis.c4324.codegen.ClassFileWriter;
+import edu.temple.cis.c4324.codegen.CodeGenerator;
+import edu.temple.cis.c4324.micro.MicroParser;
+import edu.temple.cis.c4324.micro.MicroParser.BodyContext;
+import edu.temple.cis.c4324.micro.MicroParser.DeclerationContext;
+import edu.temple.cis.c4324.micro.MicroParser.ProgramContext;
+import edu.temple.cis.c4324.micro.MicroParser.StatementContext;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.Vocabulary;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.apache.bcel.util.SyntheticRepository;
+
+/**
+ * Class to compile a single Micro source file. All of the state of one
+ * compilation (the error flag and the diagnostics) is kept here, so that
+ * several compilations may run at the same time on different threads.
+ */
+public class Compilation {
+
+    static {
+        // JavaClass objects register with a shared BCEL repository that is
+        // kept in an unsynchronized map. Creating it here means concurrent
+        // compilations only ever read that map.
+        SyntheticRepository.getInstance();
+    }
+
+    private static final int BEGIN = literalTokenType("'begin'");
+
+    private final CompilerOptions options;
+    private final List<Diagnostic> diagnostics;
+    private final CompileProfile profile;
+    private boolean errorOccured;
+
+    /**
+     * Construct a Compilation
+     * @param options The compiler options
+     */
+    public Compilation(CompilerOptions options) {
+        this.options = options;
+        profile = options.isProfiling() ? new CompileProfile(options.getSourceFileName()) : null;
+        diagnostics = new ArrayList<>();
+        errorOccured = false;
+    }
+
+    /**
+     * Run the parser, the definition, reference and compile passes.
+     * @param input The source text
+     * @return The backend holding the generated class, or null if an error
+     * occured.
+     */
+    public Backend compile(CharStream input) {
+        return compile(input, new FrontEnd());
+    }
+
+    /**
+     * Run the parser, the definition, reference and compile passes using
+     * a lexer and parser that may have been used before. The parse tree is
+     * lowered into an Ast as soon as it is parsed, and the parse tree and
+     * tokens are released before the other passes run.
+     * @param input The source text
+     * @param frontEnd The lexer and parser to use
+     * @return The backend holding the generated class, or null if an error
+     * occured.
+     */
+    public Backend compile(CharStream input, FrontEnd frontEnd) {
+        CommonTokenStream tokens = frontEnd.tokenize(input, syntaxErrorListener);
+        if (profile != null) {
+            profile.begin(CompileProfile.LEX);
+            try {
+                tokens.fill();
+            } finally {
+                profile.end();
+            }
+            profile.setTokens(tokens.size() - 1);
+        }
+        ParseTree tree;
+        begin(CompileProfile.PARSE);
+        try {
+            tree = frontEnd.parse(tokens, syntaxErrorListener);
+        } finally {
+            end();
+        }
+        if (profile != null) {
+            profile.countParseTree(tree);
+            profile.setLlFallback(frontEnd.fellBack());
+        }
+        if (errorOccured) {
+            frontEnd.release();
+            return null;
+        }
+        Ast ast;
+        begin(CompileProfile.LOWER);
+        try {
+            ast = new AstBuilder().lower(tree, tokens.size());
+        } catch (CompileError ex) {
+            frontEnd.release();
+            report(ex.getDiagnostic());
+            return null;
+        } finally {
+            end();
+        }
+        tree = null;
+        tokens = null;
+        frontEnd.release();
+        return compile(ast);
+    }
+
+    /**
+     * Run the parser, the definition, reference and compile passes on
+     * source text, using the parser selected by the options. The recursive
+     * descent parser builds the Ast directly from the tokens. If it gives
+     * up, the text is compiled with the ANTLR parser instead, which reports
+     * the syntax errors.
+     * @param text The source text
+     * @param frontEnd The lexer and parser to use
+     * @return The backend holding the generated class, or null if an error
+     * occured.
+     */
+    public Backend compile(String text, FrontEnd frontEnd) {
+        if (!options.isRecursiveDescent()) {
+            return compile(new ANTLRInputStream(text), frontEnd);
+        }
+        char[] chars = text.toCharArray();
+        MicroScanner scanner;
+        begin(CompileProfile.LEX);
+        try {
+            scanner = frontEnd.scan(chars, chars.length);
+        } finally {
+            end();
+        }
+        if (profile != null) {
+            profile.setTokens(scanner.size() - 1);
+        }
+        Ast ast;
+        begin(CompileProfile.PARSE);
+        try {
+            ast = frontEnd.parseAst();
+        } finally {
+            end();
+        }
+        frontEnd.release();
+        if (ast == null) {
+            return compile(new ANTLRInputStream(chars, chars.length), frontEnd);
+        }
+        return compile(ast);
+    }
+
+    /**
+     * Create the backend selected by the options. The class file writer
+     * generates the same code as CodeGenerator without building the BCEL
+     * objects, but does not run the instruction list passes on it. The
+     * profile, if any, is given the optimizer so that it can report what
+     * each pass did.
+     */
+    private Backend newBackend() {
+        if (options.isDirectWriter()) {
+            return new ClassFileWriter();
+        }
+        CodeGenerator cg = new CodeGenerator();
+        cg.setOptimizer(options.newOptimizer());
+        if (profile != null) {
+            profile.setOptimizer(cg.getOptimizer());
+        }
+        return cg;
+    }
+
+    /**
+     * Run the definition, reference and compile passes on a program.
+     * @param ast The Ast of the program
+     * @return The backend holding the generated class, or null if an error
+     * occured.
+     */
+    private Backend compile(Ast ast) {
+        try {
+            if (profile != null) {
+                profile.countAst(ast);
+            }
+            begin(CompileProfile.DEFINITION);
+            try {
+                new DefinitionVisitor().visit(ast);
+            } finally {
+                end();
+            }
+            begin(CompileProfile.REFERENCE);
+            try {
+                ReferenceVisitor refVisitor = new ReferenceVisitor(ast);
+                if (options.isParallelChecking()) {
+                    refVisitor.setPool(ForkJoinPool.commonPool());
+                }
+                refVisitor.visit();
+            } finally {
+                end();
+            }
+            fold(ast);
+            begin(CompileProfile.COMPILE);
+            try {
+                Backend cg = newBackend();
+                cg.setMethodListener(profile);
+                CompileVisitor visitor = new CompileVisitor(ast, options.getSourceFileName(), cg);
+                visitor.setSsa(options.isSsa());
+                visitor.visit();
+                return cg;
+            } finally {
+                end();
+            }
+        } catch (CompileError ex) {
+            report(ex.getDiagnostic());
+            return null;
+        }
+    }
+
+    /**
+     * Compile a source file one routine at a time. The file is read twice
+     * through unbuffered streams. The first pass parses the whole program
+     * and reports any syntax errors, but each statement is dropped from the
+     * parse tree as soon as it is parsed, and each declaration is dropped
+     * once its global variable, procedure or function has been defined.
+     * The second pass parses, lowers, type checks and compiles each
+     * declaration and then the main body, dropping the Ast of each one when
+     * its method is finished. Memory use is therefore
+     * proportional to the largest routine rather than to the whole file.
+     * The generated class is the same as compile generates, although if
+     * several routines have semantic errors a different one may be the
+     * error reported.
+     * @param source The source file
+     * @param frontEnd The lexer and parser to use
+     * @return The backend holding the generated class, or null if an error
+     * occured.
+     * @throws IOException if the source file cannot be read
+     */
+    public Backend compileStreaming(Path source, FrontEnd frontEnd) throws IOException {
+        DefinitionVisitor defVisitor = new DefinitionVisitor();
+        AstBuilder astBuilder = new AstBuilder();
+        DeclarationCollector collector = new DeclarationCollector(defVisitor, astBuilder);
+        begin(CompileProfile.SCAN);
+        try (Reader reader = open(source)) {
+            TokenStream tokens = frontEnd.tokenize(reader, syntaxErrorListener);
+            MicroParser parser = frontEnd.parser(tokens, syntaxErrorListener);
+            parser.addParseListener(collector);
+            try {
+                collector.finish(parser.program());
+            } finally {
+                parser.removeParseListeners();
+            }
+            if (profile != null) {
+                profile.setTokens(tokens.index());
+            }
+        } finally {
+            end();
+        }
+        if (errorOccured) {
+            return null;
+        }
+        try {
+            if (collector.error != null) {
+                throw collector.error;
+            }
+            Backend cg = newBackend();
+            cg.setMethodListener(profile);
+            CompileVisitor visitor = new CompileVisitor(null, options.getSourceFileName(), cg);
+            visitor.setSsa(options.isSsa());
+            visitor.beginProgram(defVisitor.getGlobalScope(), collector.programName);
+            try (Reader reader = open(source)) {
+                TokenStream tokens = frontEnd.tokenize(reader, syntaxErrorListener);
+                MicroParser parser = frontEnd.parser(tokens, syntaxErrorListener);
+                // The first pass found no syntax errors, so the program
+                // begins with 'program' ID.
+                tokens.consume();
+                tokens.consume();
+                while (tokens.LA(1) != BEGIN) {
+                    DeclerationContext decl;
+                    begin(CompileProfile.PARSE);
+                    try {
+                        decl = parser.decleration();
+                    } finally {
+                        end();
+                    }
+                    compileRoutine(decl, astBuilder, defVisitor, visitor);
+                }
+                BodyContext body;
+                begin(CompileProfile.PARSE);
+                try {
+                    body = parser.body();
+                } finally {
+                    end();
+                }
+                compileRoutine(body, astBuilder, defVisitor, visitor);
+            }
+            return cg;
+        } catch (CompileError ex) {
+            report(ex.getDiagnostic());
+            return null;
+        }
+    }
+
+    /**
+     * Lower, type check and compile a declaration or the main body. The
+     * Ast of the routine, with its scope and types, is dropped once its
+     * method is finished.
+     * @param routine The declaration or the main body
+     * @param astBuilder The lowering pass
+     * @param defVisitor The definition visitor holding the global scope
+     * @param visitor The compile visitor
+     */
+    private void compileRoutine(ParserRuleContext routine, AstBuilder astBuilder,
+            DefinitionVisitor defVisitor, CompileVisitor visitor) {
+        if (profile != null) {
+            profile.countParseTree(routine);
+        }
+        Ast ast;
+        begin(CompileProfile.LOWER);
+        try {
+            ast = astBuilder.lower(routine, 64);
+        } finally {
+            end();
+        }
+        if (profile != null) {
+            profile.countAst(ast);
+        }
+        int kind = ast.getKind(ast.getRoot());
+        if (kind == Ast.PROCEDURE || kind == Ast.FUNCTION) {
+            // Defines the parameters and local variables again; the routine
+            // itself was defined by the first pass.
+            begin(CompileProfile.DEFINITION);
+            try {
+                defVisitor.visit(ast);
+            } finally {
+                end();
+            }
+        }
+        begin(CompileProfile.REFERENCE);
+        try {
+            ReferenceVisitor refVisitor = new ReferenceVisitor(ast);
+            refVisitor.setGlobalScope(defVisitor.getGlobalScope());
+            refVisitor.visit();
+        } finally {
+            end();
+        }
+        fold(ast);
+        begin(CompileProfile.COMPILE);
+        try {
+            visitor.setAst(ast);
+            if (kind == Ast.STATEMENTS) {
+                visitor.compileMain(ast.getRoot());
+            } else {
+                visitor.visit();
+            }
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Fold the constant expressions of a type checked Ast, if the options
+     * ask for it.
+     * @param ast The Ast of the program or routine
+     */
+    private void fold(Ast ast) {
+        if (options.isFoldingConstants()) {
+            begin(CompileProfile.FOLD);
+            try {
+                new ConstantFolder(ast).visit();
+            } finally {
+                end();
+            }
+        }
+    }
+
+    private static Reader open(Path source) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(source), StandardCharsets.UTF_8));
+    }
+
+    private static int literalTokenType(String literal) {
+        Vocabulary vocabulary = MicroParser.VOCABULARY;
+        for (int type = 1; type <= MicroParser._ATN.maxTokenType; type++) {
+            if (literal.equals(vocabulary.getLiteralName(type))) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException(literal + " is not a token of the Micro grammar");
+    }
+
+    /**
+     * Parse listener for the first pass of a streaming compilation. It keeps
+     * the parse tree small by removing each statement as soon as it has been
+     * parsed, and lowers and defines each declaration in the global scope
+     * before removing it. Definition errors are kept until the parse is over, since
+     * syntax errors are reported first.
+     */
+    private class DeclarationCollector implements ParseTreeListener {
+
+        private final DefinitionVisitor defVisitor;
+        private final AstBuilder astBuilder;
+        private String programName;
+        private CompileError error;
+
+        DeclarationCollector(DefinitionVisitor defVisitor, AstBuilder astBuilder) {
+            this.defVisitor = defVisitor;
+            this.astBuilder = astBuilder;
+        }
+
+        @Override
+        public void exitEveryRule(ParserRuleContext ctx) {
+            if (ctx instanceof StatementContext) {
+                ctx.getParent().removeLastChild();
+            } else if (ctx instanceof DeclerationContext) {
+                if (!errorOccured && error == null) {
+                    if (programName == null) {
+                        beginProgram((ProgramContext) ctx.getParent());
+                    }
+                    define(ctx);
+                }
+                ctx.getParent().removeLastChild();
+            }
+        }
+
+        private void beginProgram(ProgramContext program) {
+            programName = program.ID().getText();
+            defVisitor.beginProgram(programName);
+        }
+
+        private void define(ParserRuleContext decl) {
+            begin(CompileProfile.DEFINITION);
+            try {
+                defVisitor.visit(astBuilder.lower(decl, 16));
+            } catch (CompileError ex) {
+                error = ex;
+            } finally {
+                end();
+            }
+        }
+
+        /**
+         * Called when the parse is over.
+         * @param program The program with its statements and declarations
+         * removed
+         */
+        void finish(ProgramContext program) {
+            if (programName == null && !errorOccured) {
+                beginProgram(program);
+            }
+        }
+
+        @Override
+        public void enterEveryRule(ParserRuleContext ctx) {
+        }
+
+        @Override
+        public void visitTerminal(TerminalNode node) {
+        }
+
+        @Override
+        public void visitErrorNode(ErrorNode node) {
+        }
+
+    }
+
+    private void begin(String phase) {
+        if (profile != null) {
+            profile.begin(phase);
+        }
+    }
+
+    private void end() {
+        if (profile != null) {
+            profile.end();
+        }
+    }
+
+    private void report(Diagnostic diagnostic) {
+        errorOccured = true;
+        diagnostics.add(diagnostic);
+    }
+
+    private final BaseErrorListener syntaxErrorListener = new BaseErrorListener() {
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                int line, int charPositionInLine, String msg, RecognitionException e) {
+            report(new Diagnostic(line, charPositionInLine, msg));
+        }
+    };
+
+    public CompilerOptions getOptions() {return options;}
+
+    /**
+     * Get the profile of this compilation.
+     * @return The profile, or null if profiling is not enabled
+     */
+    public CompileProfile getProfile() {return profile;}
+
+    public boolean errorOccured() {return errorOccured;}
+
+    public List<Diagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    /**
+     * Determine the output file name. The extension of the input file is
+     * replaced by .class
+     * @param inputFileName The input file name
+     * @return The output file name
+     */
+    public static String outputFileName(String inputFileName) {
+        int lastDot = inputFileName.lastIndexOf(".");
+        if (lastDot != -1) {
+            return inputFileName.substring(0, lastDot) + ".class";
+        } else {
+            return inputFileName + ".class";
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A content addressed cache of compiled classes kept in a local directory.
+ * Each entry is stored in a file named by the SHA-256 hash of the compiler
+ * version, the options that affect the generated code (including the source
+ * file name, which is recorded in the class file) and the source text.
+ * The total size of the entries is bounded; the least recently used
+ * entries are evicted first. The file modification time records the last
+ * use, so the order survives from one run to the next.
+ */
+public class CompileCache {
+
+    private final File directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Open a cache directory, creating it if necessary.
+     * @param directory The cache directory
+     * @param maxBytes The maximum total size of the cached classes
+     * @throws IOException if the directory cannot be created
+     */
+    public CompileCache(File directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        Files.createDirectories(directory.toPath());
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".class"));
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            String name = file.getName();
+            entries.put(name.substring(0, name.length() - ".class".length()), file.length());
+            totalBytes += file.length();
+        }
+    }
+
+    /**
+     * Compute the cache key of a source file.
+     * @param options The compiler options
+     * @param text The source text
+     * @return The key as a hexadecimal string
+     */
+    public static String key(CompilerOptions options, String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        digest.update(MicroCompilerV1.VERSION.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(options.fingerprint().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Look up a compiled class.
+     * @param key The cache key
+     * @return The class file bytes, or null if not cached
+     * @throws IOException if the entry cannot be read
+     */
+    public byte[] get(String key) throws IOException {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses++;
+                return null;
+            }
+        }
+        // The file is read without the lock, so that other threads can use
+        // the cache meanwhile. Since put moves each file into place, an
+        // entry that is replaced meanwhile is read whole.
+        File file = entryFile(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException ex) {
+            synchronized (this) {
+                // The entry may have been put again since the file was
+                // deleted.
+                if (!file.exists()) {
+                    Long size = entries.remove(key);
+                    if (size != null) {
+                        totalBytes -= size;
+                    }
+                }
+                misses++;
+            }
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        synchronized (this) {
+            hits++;
+        }
+        return bytes;
+    }
+
+    /**
+     * Add a compiled class, evicting the least recently used entries if the
+     * cache becomes too large.
+     * @param key The cache key
+     * @param classBytes The class file bytes
+     * @throws IOException if the entry cannot be written
+     */
+    public synchronized void put(String key, byte[] classBytes) throws IOException {
+        Path target = entryFile(key).toPath();
+        Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+        Files.write(temp, classBytes);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Long previous = entries.put(key, (long) classBytes.length);
+        if (previous != null) {
+            totalBytes -= previous;
+        }
+        totalBytes += classBytes.length;
+        Iterator<Map.Entry<String, Long>> iter = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iter.hasNext()) {
+            Map.Entry<String, Long> eldest = iter.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            Files.deleteIfExists(entryFile(eldest.getKey()).toPath());
+            totalBytes -= eldest.getValue();
+            iter.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized long getHits() {return hits;}
+    public synchronized long getMisses() {return misses;}
+    public synchronized long getEvictions() {return evictions;}
+    public synchronized int getEntryCount() {return entries.size();}
+    public synchronized long getTotalBytes() {return totalBytes;}
+
+    private File entryFile(String key) {
+        return new File(directory, key + ".class");
+    }
+
+    /**
+     * Format the hit and miss statistics.
+     * @return The statistics as a single line
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("cache %s: hits=%d misses=%d evictions=%d entries=%d size=%d bytes",
+                directory, hits, misses, evictions, entries.size(), totalBytes);
+    }
+
+}
@@ -0,0 +1,183 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Client for the CompileServer. One connection is kept open for all of the
+ * requests made through a client.
+ */
+public class CompileClient implements AutoCloseable {
+
+    /**
+     * The server's answer to a compile request.
+     */
+    public static class Response {
+
+        private final boolean success;
+        private final List<String> diagnostics;
+        private final String className;
+        private final byte[] classBytes;
+
+        Response(boolean success, List<String> diagnostics, String className, byte[] classBytes) {
+            this.success = success;
+            this.diagnostics = diagnostics;
+            this.className = className;
+            this.classBytes = classBytes;
+        }
+
+        public boolean isSuccess() {return success;}
+        public List<String> getDiagnostics() {return diagnostics;}
+        public String getClassName() {return className;}
+        public byte[] getClassBytes() {return classBytes;}
+
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Connect to a server on the loopback interface.
+     * @param port The server port
+     * @throws IOException if the connection cannot be made
+     */
+    public CompileClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Ask the server to compile a file that it can read.
+     * @param path The path of the source file
+     * @return The server response
+     * @throws IOException if the request fails
+     */
+    public Response compileFile(String path) throws IOException {
+        out.writeByte(CompileServer.COMPILE_FILE);
+        CompileServer.writeString(out, new File(path).getAbsolutePath());
+        out.flush();
+        return readResponse();
+    }
+
+    /**
+     * Send source text to the server to be compiled.
+     * @param sourceFileName The source file name recorded in the class file
+     * @param text The program text
+     * @return The server response
+     * @throws IOException if the request fails
+     */
+    public Response compileSource(String sourceFileName, String text) throws IOException {
+        out.writeByte(CompileServer.COMPILE_SOURCE);
+        CompileServer.writeString(out, sourceFileName);
+        CompileServer.writeString(out, text);
+        out.flush();
+        return readResponse();
+    }
+
+    /**
+     * Get the server's latency and throughput counters.
+     * @return The counters as a single line
+     * @throws IOException if the request fails
+     */
+    public String statistics() throws IOException {
+        out.writeByte(CompileServer.STATISTICS);
+        out.flush();
+        return CompileServer.readString(in);
+    }
+
+    /**
+     * Ask the server to stop.
+     * @throws IOException if the request fails
+     */
+    public void shutdown() throws IOException {
+        out.writeByte(CompileServer.SHUTDOWN);
+        out.flush();
+    }
+
+    private Response readResponse() throws IOException {
+        boolean success = in.readBoolean();
+        int numDiagnostics = in.readInt();
+        List<String> diagnostics = new ArrayList<>();
+        for (int i = 0; i < numDiagnostics; i++) {
+            diagnostics.add(CompileServer.readString(in));
+        }
+        String className = CompileServer.readString(in);
+        byte[] classBytes = new byte[in.readInt()];
+        in.readFully(classBytes);
+        return new Response(success, diagnostics, className, classBytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Compile files through a running server and write the class files
+     * next to the sources.
+     * <pre>
+     * CompileClient [-p &lt;port&gt;] [-stats] [-shutdown] &lt;file&gt;...
+     * </pre>
+     * @param args the command line arguments
+     * @throws IOException if the server cannot be reached
+     */
+    public static void main(String[] args) throws IOException {
+        int port = CompileServer.DEFAULT_PORT;
+        boolean printStatistics = false;
+        boolean shutdown = false;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-stats":
+                    printStatistics = true;
+                    break;
+                case "-shutdown":
+                    shutdown = true;
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        boolean errorOccured = false;
+        try (CompileClient client = new CompileClient(port)) {
+            for (String file : files) {
+                Response response = client.compileFile(file);
+                for (String diagnostic : response.getDiagnostics()) {
+                    System.err.println(file + ": " + diagnostic);
+                }
+                if (response.isSuccess()) {
+                    try (OutputStream classFile = new FileOutputStream(Compilation.outputFileName(file))) {
+                        classFile.write(response.getClassBytes());
+                    }
+                } else {
+                    errorOccured = true;
+                }
+            }
+            if (printStatistics) {
+                System.out.println(client.statistics());
+            }
+            if (shutdown) {
+                client.shutdown();
+            }
+        }
+        if (errorOccured) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+/**
+ * Exception thrown by the visitors when a semantic error is found. It
+ * aborts the compilation of the current source file only.
+ */
+@SuppressWarnings("serial")
+public class CompileError extends RuntimeException {
+
+    private final Diagnostic diagnostic;
+
+    public CompileError(Diagnostic diagnostic) {
+        super(diagnostic.getMessage());
+        this.diagnostic = diagnostic;
+    }
+
+    public Diagnostic getDiagnostic() {return diagnostic;}
+
+}
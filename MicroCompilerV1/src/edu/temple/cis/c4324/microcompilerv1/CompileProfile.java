@@ -0,0 +1,326 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import edu.temple.cis.c4324.codegen.CodeGenerator;
+import edu.temple.cis.c4324.codegen.Optimizer;
+import java.util.Collections;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Class to record where the time of a compilation goes. For each phase the
+ * wall time, the CPU time and the bytes allocated by the compiling thread
+ * are accumulated. Phases may be nested; the time of an inner phase is not
+ * counted in the enclosing phase. A profile also records the token count,
+ * the parse tree and Ast sizes, whether the parser fell back to LL prediction,
+ * the number of instructions in each method and the change in the number of
+ * instructions made by each optimization pass.
+ * A profile must only be used by the thread running the compilation.
+ */
+public class CompileProfile implements CodeGenerator.MethodListener {
+
+    public static final String LEX = "lex";
+    public static final String SCAN = "scan";
+    public static final String PARSE = "parse";
+    public static final String LOWER = "lower";
+    public static final String DEFINITION = "definition";
+    public static final String REFERENCE = "reference";
+    public static final String FOLD = "fold";
+    public static final String COMPILE = "compile";
+    public static final String FINISH_METHOD = "finishMethod";
+    public static final String DUMP = "dump";
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The totals of one phase.
+     */
+    public static class Phase {
+
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+
+        public long getWallNanos() {return wallNanos;}
+        public long getCpuNanos() {return cpuNanos;}
+        public long getAllocatedBytes() {return allocatedBytes;}
+
+        void add(Phase other) {
+            wallNanos += other.wallNanos;
+            cpuNanos += other.cpuNanos;
+            allocatedBytes += other.allocatedBytes;
+        }
+
+    }
+
+    private final String sourceFileName;
+    private final Map<String, Phase> phases;
+    private final Map<String, Integer> methodInstructions;
+    private final Deque<String> running;
+    private long tokens;
+    private long parseTreeNodes;
+    private long astNodes;
+    private boolean llFallback;
+    private Optimizer optimizer;
+    private long startWall;
+    private long startCpu;
+    private long startAllocated;
+
+    public CompileProfile(String sourceFileName) {
+        this.sourceFileName = sourceFileName;
+        phases = new LinkedHashMap<>();
+        methodInstructions = new LinkedHashMap<>();
+        running = new ArrayDeque<>();
+    }
+
+    /**
+     * Start a phase. If another phase is running it is suspended until this
+     * phase ends.
+     * @param phase The phase name
+     */
+    public void begin(String phase) {
+        if (!running.isEmpty()) {
+            stopClock(running.peek());
+        }
+        running.push(phase);
+        startClock();
+    }
+
+    /**
+     * End the most recently started phase and resume the enclosing one.
+     */
+    public void end() {
+        stopClock(running.pop());
+        if (!running.isEmpty()) {
+            startClock();
+        }
+    }
+
+    private void startClock() {
+        startWall = System.nanoTime();
+        startCpu = threadBean.getCurrentThreadCpuTime();
+        startAllocated = allocatedBytes();
+    }
+
+    private void stopClock(String phaseName) {
+        Phase phase = phases.get(phaseName);
+        if (phase == null) {
+            phase = new Phase();
+            phases.put(phaseName, phase);
+        }
+        phase.wallNanos += System.nanoTime() - startWall;
+        phase.cpuNanos += threadBean.getCurrentThreadCpuTime() - startCpu;
+        phase.allocatedBytes += allocatedBytes() - startAllocated;
+    }
+
+    private static long allocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    @Override
+    public void endingMethod(String methodName) {
+        begin(FINISH_METHOD);
+    }
+
+    @Override
+    public void methodEnded(String methodName, int instructionCount) {
+        end();
+        methodInstructions.put(methodName, instructionCount);
+    }
+
+    public void setTokens(long tokens) {this.tokens = tokens;}
+    public void setLlFallback(boolean llFallback) {this.llFallback = llFallback;}
+
+    /**
+     * Set the optimizer of the compilation, whose instruction deltas are
+     * reported.
+     * @param optimizer The optimizer
+     */
+    public void setOptimizer(Optimizer optimizer) {this.optimizer = optimizer;}
+
+    /**
+     * Count the nodes of the parse tree, including the terminals. A
+     * streaming compilation builds a tree for each routine; the size of the
+     * largest one is kept.
+     * @param tree The parse tree
+     */
+    public void countParseTree(ParseTree tree) {
+        Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(tree);
+        long count = 0;
+        while (!stack.isEmpty()) {
+            ParseTree node = stack.pop();
+            count++;
+            for (int i = 0; i < node.getChildCount(); i++) {
+                stack.push(node.getChild(i));
+            }
+        }
+        parseTreeNodes = Math.max(parseTreeNodes, count);
+    }
+
+    /**
+     * Record the number of nodes of an Ast. As with the parse tree, the
+     * size of the largest one is kept.
+     * @param ast The Ast
+     */
+    public void countAst(Ast ast) {
+        astNodes = Math.max(astNodes, ast.size());
+    }
+
+    public String getSourceFileName() {return sourceFileName;}
+    public Map<String, Phase> getPhases() {return phases;}
+    public Map<String, Integer> getMethodInstructions() {return methodInstructions;}
+    public long getTokens() {return tokens;}
+    public long getParseTreeNodes() {return parseTreeNodes;}
+    public long getAstNodes() {return astNodes;}
+    public boolean isLlFallback() {return llFallback;}
+
+    /**
+     * Get the change each enabled optimization pass made to the number of
+     * instructions.
+     * @return The deltas by pass name, empty if no pass was enabled
+     */
+    public Map<String, Integer> getPassDeltas() {
+        return optimizer != null ? optimizer.getInstructionDeltas() : Collections.emptyMap();
+    }
+
+    /**
+     * Format the profile as a JSON object.
+     * @return The JSON text
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"file\": ").append(quote(sourceFileName));
+        sb.append(", \"tokens\": ").append(tokens);
+        sb.append(", \"parseTreeNodes\": ").append(parseTreeNodes);
+        sb.append(", \"astNodes\": ").append(astNodes);
+        sb.append(", \"llFallback\": ").append(llFallback);
+        sb.append(", \"phases\": ");
+        appendPhases(sb, phases);
+        sb.append(", \"methodInstructions\": {");
+        String sep = "";
+        for (Map.Entry<String, Integer> entry : methodInstructions.entrySet()) {
+            sb.append(sep).append(quote(entry.getKey())).append(": ").append(entry.getValue());
+            sep = ", ";
+        }
+        sb.append("}");
+        appendPassDeltas(sb, getPassDeltas());
+        sb.append("}");
+        return sb.toString();
+    }
+
+    /**
+     * Format the profiles of a batch as a JSON object holding each file's
+     * profile and the totals over all of the files.
+     * @param profiles The profiles of the files
+     * @return The JSON text
+     */
+    public static String toJson(List<CompileProfile> profiles) {
+        Map<String, Phase> totals = new LinkedHashMap<>();
+        long tokens = 0;
+        long parseTreeNodes = 0;
+        long astNodes = 0;
+        long llFallbacks = 0;
+        long methods = 0;
+        long instructions = 0;
+        Map<String, Integer> passDeltas = new LinkedHashMap<>();
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"files\": [");
+        String sep = "\n  ";
+        for (CompileProfile profile : profiles) {
+            sb.append(sep).append(profile.toJson());
+            sep = ",\n  ";
+            for (Map.Entry<String, Phase> entry : profile.phases.entrySet()) {
+                Phase total = totals.get(entry.getKey());
+                if (total == null) {
+                    total = new Phase();
+                    totals.put(entry.getKey(), total);
+                }
+                total.add(entry.getValue());
+            }
+            tokens += profile.tokens;
+            parseTreeNodes += profile.parseTreeNodes;
+            astNodes += profile.astNodes;
+            if (profile.llFallback) {
+                llFallbacks++;
+            }
+            methods += profile.methodInstructions.size();
+            for (int count : profile.methodInstructions.values()) {
+                instructions += count;
+            }
+            profile.getPassDeltas().forEach((pass, delta) -> passDeltas.merge(pass, delta, Integer::sum));
+        }
+        sb.append("],\n \"aggregate\": {\"files\": ").append(profiles.size());
+        sb.append(", \"tokens\": ").append(tokens);
+        sb.append(", \"parseTreeNodes\": ").append(parseTreeNodes);
+        sb.append(", \"astNodes\": ").append(astNodes);
+        sb.append(", \"llFallbacks\": ").append(llFallbacks);
+        sb.append(", \"methods\": ").append(methods);
+        sb.append(", \"instructions\": ").append(instructions);
+        sb.append(", \"phases\": ");
+        appendPhases(sb, totals);
+        appendPassDeltas(sb, passDeltas);
+        sb.append("}}\n");
+        return sb.toString();
+    }
+
+    private static void appendPhases(StringBuilder sb, Map<String, Phase> phases) {
+        sb.append("{");
+        String sep = "";
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            sb.append(sep).append(quote(entry.getKey()));
+            sb.append(": {\"wallNanos\": ").append(phase.wallNanos);
+            sb.append(", \"cpuNanos\": ").append(phase.cpuNanos);
+            sb.append(", \"allocatedBytes\": ").append(phase.allocatedBytes).append("}");
+            sep = ", ";
+        }
+        sb.append("}");
+    }
+
+    /**
+     * Append the deltas of the optimization passes, if any pass was run.
+     */
+    private static void appendPassDeltas(StringBuilder sb, Map<String, Integer> passDeltas) {
+        if (passDeltas.isEmpty()) {
+            return;
+        }
+        sb.append(", \"passDeltas\": {");
+        String sep = "";
+        for (Map.Entry<String, Integer> entry : passDeltas.entrySet()) {
+            sb.append(sep).append(quote(entry.getKey())).append(": ").append(entry.getValue());
+            sep = ", ";
+        }
+        sb.append("}");
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < ' ') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+}
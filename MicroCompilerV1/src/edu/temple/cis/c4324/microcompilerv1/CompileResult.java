@@ -0,0 +1,50 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.util.List;
+
+/**
+ * The outcome of an in-memory compilation: the class file bytes if the
+ * compilation succeeded and the diagnostics in the order they were found.
+ */
+public class CompileResult {
+
+    private final String className;
+    private final byte[] classBytes;
+    private final List<Diagnostic> diagnostics;
+    private final CompileProfile profile;
+
+    public CompileResult(String className, byte[] classBytes, List<Diagnostic> diagnostics) {
+        this(className, classBytes, diagnostics, null);
+    }
+
+    public CompileResult(String className, byte[] classBytes, List<Diagnostic> diagnostics,
+            CompileProfile profile) {
+        this.className = className;
+        this.classBytes = classBytes;
+        this.diagnostics = diagnostics;
+        this.profile = profile;
+    }
+
+    public boolean isSuccess() {return classBytes != null;}
+
+    /**
+     * Get the name of the generated class.
+     * @return The class name, or null if the compilation failed
+     */
+    public String getClassName() {return className;}
+
+    /**
+     * Get the generated class file.
+     * @return The class file bytes, or null if the compilation failed
+     */
+    public byte[] getClassBytes() {return classBytes;}
+
+    public List<Diagnostic> getDiagnostics() {return diagnostics;}
+
+    /**
+     * Get the profile of the compilation.
+     * @return The profile, or null if profiling was not enabled
+     */
+    public CompileProfile getProfile() {return profile;}
+
+}
@@ -0,0 +1,236 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A long running compile daemon. Clients connect on the loopback interface
+ * and send requests; each request is compiled by MicroCompiler on one of a
+ * fixed number of compile threads, with the lexer and parser of that
+ * thread, so the ANTLR caches and the JIT stay warm between requests. Each
+ * connection has a thread of its own that reads the requests and writes the
+ * responses, so when there are more clients than compile threads their
+ * requests wait for a compile thread instead of their connections waiting
+ * for a thread. The protocol uses DataInputStream and DataOutputStream:
+ * <pre>
+ * request:  COMPILE_FILE path
+ *           COMPILE_SOURCE sourceFileName text
+ *           STATISTICS
+ *           SHUTDOWN
+ * response: success diagnosticCount diagnostic... className byteCount bytes
+ *           (STATISTICS responds with a single string)
+ * </pre>
+ * Strings are sent as an int byte count followed by UTF-8 bytes.
+ */
+public class CompileServer {
+
+    public static final int DEFAULT_PORT = 4324;
+
+    public static final byte COMPILE_FILE = 1;
+    public static final byte COMPILE_SOURCE = 2;
+    public static final byte STATISTICS = 3;
+    public static final byte SHUTDOWN = 4;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final ExecutorService compilers;
+    private final ServerStatistics statistics;
+
+    /**
+     * Construct a CompileServer listening on the loopback interface.
+     * @param port The port number, or 0 to choose a free port
+     * @param threads The number of compile threads
+     * @throws IOException if the port cannot be opened
+     */
+    public CompileServer(int port, int threads) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        connections = Executors.newCachedThreadPool();
+        compilers = Executors.newFixedThreadPool(threads);
+        statistics = new ServerStatistics();
+    }
+
+    public int getPort() {return serverSocket.getLocalPort();}
+
+    public ServerStatistics getStatistics() {return statistics;}
+
+    /**
+     * Accept connections until a SHUTDOWN request is received or the
+     * server is closed.
+     * @throws IOException if accepting a connection fails
+     */
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> handleConnection(socket));
+            }
+        } catch (SocketException ex) {
+            if (!serverSocket.isClosed()) {
+                throw ex;
+            }
+        } finally {
+            connections.shutdown();
+            compilers.shutdown();
+        }
+    }
+
+    /**
+     * Stop accepting connections.
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException ex) {
+            // The socket is being discarded.
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        try (Socket s = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (true) {
+                byte request;
+                try {
+                    request = in.readByte();
+                } catch (EOFException ex) {
+                    return;
+                }
+                switch (request) {
+                    case COMPILE_FILE:
+                        compileFile(readString(in), out);
+                        break;
+                    case COMPILE_SOURCE:
+                        String sourceFileName = readString(in);
+                        compileSource(sourceFileName, readString(in), out, System.nanoTime());
+                        break;
+                    case STATISTICS:
+                        writeString(out, statistics.toString());
+                        break;
+                    case SHUTDOWN:
+                        close();
+                        return;
+                    default:
+                        throw new IOException("Unrecognized request " + request);
+                }
+                out.flush();
+            }
+        } catch (IOException ex) {
+            System.err.println(ex);
+        }
+    }
+
+    private void compileFile(String inputFileName, DataOutputStream out) throws IOException {
+        long start = System.nanoTime();
+        String text;
+        try {
+            text = new String(Files.readAllBytes(Paths.get(inputFileName)), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            List<Diagnostic> diagnostics = Collections.singletonList(new Diagnostic(0, 0, ex.toString()));
+            writeResponse(out, new CompileResult(null, null, diagnostics));
+            statistics.record(System.nanoTime() - start, false);
+            return;
+        }
+        compileSource(inputFileName, text, out, start);
+    }
+
+    private void compileSource(String sourceFileName, String text,
+            DataOutputStream out, long start) throws IOException {
+        CompilerOptions options = new CompilerOptions();
+        options.setSourceFileName(sourceFileName);
+        Future<CompileResult> compiled = compilers.submit(() -> MicroCompiler.compile(text, options));
+        CompileResult result;
+        try {
+            result = compiled.get();
+        } catch (InterruptedException ex) {
+            compiled.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compiling " + sourceFileName);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw (Error) ex.getCause();
+        }
+        writeResponse(out, result);
+        statistics.record(System.nanoTime() - start, result.isSuccess());
+    }
+
+    private static void writeResponse(DataOutputStream out, CompileResult result) throws IOException {
+        List<Diagnostic> diagnostics = result.getDiagnostics();
+        out.writeBoolean(result.isSuccess());
+        out.writeInt(diagnostics.size());
+        for (Diagnostic diagnostic : diagnostics) {
+            writeString(out, diagnostic.toString());
+        }
+        if (result.isSuccess()) {
+            writeString(out, result.getClassName());
+            out.writeInt(result.getClassBytes().length);
+            out.write(result.getClassBytes());
+        } else {
+            writeString(out, "");
+            out.writeInt(0);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Start the compile server.
+     * <pre>
+     * CompileServer [-p &lt;port&gt;] [-j &lt;threads&gt;]
+     * </pre>
+     * @param args the command line arguments
+     * @throws IOException if the server cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-j":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unrecognized option " + args[i]);
+                    System.exit(1);
+            }
+        }
+        CompileServer server = new CompileServer(port, threads);
+        System.err.println("Micro compile server listening on port " + server.getPort());
+        server.serve();
+        System.err.println(server.getStatistics());
+    }
+
+}
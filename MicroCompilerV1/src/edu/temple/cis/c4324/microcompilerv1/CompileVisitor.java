@@ -1,631 +1,1124 @@
 package edu.temple.cis.c4324.microcompilerv1;
 
+import edu.temple.cis.c4324.codegen.Backend;
+import edu.temple.cis.c4324.codegen.Code;
 import edu.temple.cis.c4324.codegen.CodeGenerator;
 import edu.temple.cis.c4324.codegen.InstructionList;
-import edu.temple.cis.c4324.micro.MicroBaseVisitor;
-import edu.temple.cis.c4324.micro.MicroParser;
-import edu.temple.cis.c4324.micro.MicroParser.ArithopContext;
-import edu.temple.cis.c4324.micro.MicroParser.ArrayLvalueContext;
-import edu.temple.cis.c4324.micro.MicroParser.Assignment_statementContext;
-import edu.temple.cis.c4324.micro.MicroParser.BoolContext;
-import edu.temple.cis.c4324.micro.MicroParser.CharContext;
-import edu.temple.cis.c4324.micro.MicroParser.BodyContext;
-import edu.temple.cis.c4324.micro.MicroParser.Call_statementContext;
-import edu.temple.cis.c4324.micro.MicroParser.CompopContext;
-import edu.temple.cis.c4324.micro.MicroParser.Do_until_statementContext;
-import edu.temple.cis.c4324.micro.MicroParser.Else_partContext;
-import edu.temple.cis.c4324.micro.MicroParser.Elsif_partContext;
-import edu.temple.cis.c4324.micro.MicroParser.FloatContext;
-import edu.temple.cis.c4324.micro.MicroParser.IdContext;
-import edu.temple.cis.c4324.micro.MicroParser.IdLvalueContext;
-import edu.temple.cis.c4324.micro.MicroParser.If_statementContext;
-import edu.temple.cis.c4324.micro.MicroParser.IntContext;
-import edu.temple.cis.c4324.micro.MicroParser.LogicalopContext;
-import edu.temple.cis.c4324.micro.MicroParser.LvalueContext;
-import edu.temple.cis.c4324.micro.MicroParser.ParensContext;
-import edu.temple.cis.c4324.micro.MicroParser.PowopContext;
-import edu.temple.cis.c4324.micro.MicroParser.ProgramContext;
-import edu.temple.cis.c4324.micro.MicroParser.Read_statementContext;
-import edu.temple.cis.c4324.micro.MicroParser.Statement_listContext;
-import edu.temple.cis.c4324.micro.MicroParser.UnaryopContext;
-import edu.temple.cis.c4324.micro.MicroParser.While_statementContext;
-import edu.temple.cis.c4324.micro.MicroParser.Write_statementContext;
-import java.util.List;
-import org.antlr.v4.runtime.ParserRuleContext;
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import edu.temple.cis.c4324.codegen.Label;
+import edu.temple.cis.c4324.microcompilerv1.ir.ControlFlowGraph;
+import edu.temple.cis.c4324.microcompilerv1.ir.IrBuilder;
+import edu.temple.cis.c4324.microcompilerv1.ir.IrLowering;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import static org.apache.bcel.Constants.ACC_PRIVATE;
 import static org.apache.bcel.Constants.ACC_PUBLIC;
 import static org.apache.bcel.Constants.ACC_STATIC;
-import org.apache.bcel.generic.InstructionHandle;
-import org.apache.bcel.generic.MethodGen;
+import static org.apache.bcel.Constants.DUP;
+import static org.apache.bcel.Constants.DUP2;
+import static org.apache.bcel.Constants.IADD;
+import static org.apache.bcel.Constants.IAND;
+import static org.apache.bcel.Constants.IDIV;
+import static org.apache.bcel.Constants.IFEQ;
+import static org.apache.bcel.Constants.IFGE;
+import static org.apache.bcel.Constants.IFLT;
+import static org.apache.bcel.Constants.IFNE;
+import static org.apache.bcel.Constants.IF_ICMPEQ;
+import static org.apache.bcel.Constants.IF_ICMPGE;
+import static org.apache.bcel.Constants.IF_ICMPGT;
+import static org.apache.bcel.Constants.IF_ICMPLE;
+import static org.apache.bcel.Constants.IF_ICMPLT;
+import static org.apache.bcel.Constants.IF_ICMPNE;
+import static org.apache.bcel.Constants.IMUL;
+import static org.apache.bcel.Constants.INEG;
+import static org.apache.bcel.Constants.INVOKESPECIAL;
+import static org.apache.bcel.Constants.INVOKESTATIC;
+import static org.apache.bcel.Constants.INVOKEVIRTUAL;
+import static org.apache.bcel.Constants.IOR;
+import static org.apache.bcel.Constants.IREM;
+import static org.apache.bcel.Constants.ISHL;
+import static org.apache.bcel.Constants.ISHR;
+import static org.apache.bcel.Constants.ISUB;
+import static org.apache.bcel.Constants.IUSHR;
+import static org.apache.bcel.Constants.IXOR;
+import static org.apache.bcel.Constants.NOP;
+import static org.apache.bcel.Constants.POP;
+import static org.apache.bcel.Constants.POP2;
+import static org.apache.bcel.Constants.SWAP;
+import org.apache.bcel.generic.ObjectType;
 
-public class CompileVisitor extends MicroBaseVisitor<InstructionList> {
+public class CompileVisitor {
 
-    private final CodeGenerator cg;
+    private final Backend cg;
     private final String sourceFileName;
     private boolean inDefined;
     private boolean clinitDefined;
-    private MethodGen clinit;
-
-    private final ParseTreeProperty<Scope> scopeMap;
-    private final ParseTreeProperty<Type> typeMap;
+    private Code clinit;
+    /**
+     * The code of the method being compiled. The code of every node is
+     * added to its end, so no list is built per node.
+     */
+    private Code code;
+    private Frame[] frames;
+    private int depth;
+    private int powRef;
+    private int sqrtRef;
+    private int powerRef;
+    private int outRef;
+    private final Map<org.apache.bcel.generic.Type, Integer> printRefs;
+    private boolean ssa;
 
-    private Scope globalScope;
-    private Scope currentScope;
+    private static final ObjectType PRINT_STREAM = new ObjectType("java.io.PrintStream");
+    private static final ObjectType SCANNER = new ObjectType("java.util.Scanner");
+    private static final ObjectType INPUT_STREAM = new ObjectType("java.io.InputStream");
 
-    public ParseTreeProperty<Type> getTypeMap() {
-        return typeMap;
-    }
+    private Ast ast;
 
     /**
      * Construct the CompileVisitor
      *
-     * @param scopeMap The scope map created by the Definition Visitor.
-     * @param typeMap Tye type map created by the Reference visitor.
+     * @param ast The Ast, with the scopes created by the Definition Visitor
+     * and the types found by the Reference visitor.
      * @param sourceFileName The source file name for error messages
-     * @param cg The code generator.
+     * @param cg The backend that generates the class.
      */
-    public CompileVisitor(ParseTreeProperty<Scope> scopeMap,
-            ParseTreeProperty<Type> typeMap,
-            String sourceFileName, CodeGenerator cg) {
+    public CompileVisitor(Ast ast, String sourceFileName, Backend cg) {
         this.cg = cg;
         this.sourceFileName = sourceFileName;
         inDefined = false;
         clinitDefined = false;
-        this.scopeMap = scopeMap;
-        this.typeMap = typeMap;
-    }
-
-    @Override
-    public InstructionList visitProgram(ProgramContext ctx) {
-        currentScope = scopeMap.get(ctx);
-        globalScope = currentScope;
-        cg.beginClass(sourceFileName, ctx.ID().getText());
-        ctx.decleration().forEach(decl -> visitDecleration(decl));
-        MethodGen mg = cg.beginMain();
-        InstructionList il = cg.newInstructionList();
-        il.append(visit(ctx.body()));
-        il.addInstruction("return");
-        mg.getInstructionList().append(il);
+        frames = new Frame[16];
+        printRefs = new HashMap<>();
+        this.ast = ast;
+    }
+
+    /**
+     * Replace the Ast. A streaming compilation lowers and type checks one
+     * routine at a time and gives each routine's Ast to the compile visitor
+     * before compiling it.
+     * @param ast The Ast of the routine
+     */
+    void setAst(Ast ast) {
+        this.ast = ast;
+    }
+
+    /**
+     * Select whether routines are compiled through the SSA intermediate
+     * representation. The global variables and the static initializer are
+     * compiled from the Ast either way.
+     * @param ssa true to build and lower an SSA graph for each routine
+     */
+    void setSsa(boolean ssa) {
+        this.ssa = ssa;
+    }
+
+    /**
+     * Compile the root of the Ast, which is either the program or a single
+     * declaration.
+     */
+    public void visit() {
+        visit(ast.getRoot());
+    }
+
+    private void visit(int node) {
+        switch (ast.getKind(node)) {
+            case Ast.PROGRAM:
+                visitProgram(node);
+                break;
+            case Ast.PROCEDURE:
+                visitProcedureDeclaration(node);
+                break;
+            case Ast.FUNCTION:
+                visitFunctionDeclaration(node);
+                break;
+            case Ast.VARIABLE:
+                visitSimpleVariableDecl(node);
+                break;
+            case Ast.ARRAY_VARIABLE:
+                visitArrayVariableDecl(node);
+                break;
+            case Ast.STATEMENTS:
+                visitStatement_list(node);
+                break;
+            case Ast.READ:
+                visitRead_statement(node);
+                break;
+            case Ast.WRITE:
+                visitWrite_statement(node);
+                break;
+            case Ast.ASSIGN:
+                visitAssignment_statement(node);
+                break;
+            case Ast.CALL:
+                visitCall(node);
+                break;
+            case Ast.IF:
+                visitIf_statement(node);
+                break;
+            case Ast.WHILE:
+                visitWhile_statement(node);
+                break;
+            case Ast.DO_UNTIL:
+                visitDo_until_statement(node);
+                break;
+            case Ast.RETURN:
+                visitReturn_statement(node);
+                break;
+            case Ast.ID_LVALUE:
+                visitIdLvalue(node);
+                break;
+            case Ast.ARRAY_LVALUE:
+                visitArrayLvalue(node);
+                break;
+            case Ast.ARRAY_ACCESS:
+            case Ast.FUNCTION_CALL:
+            case Ast.UNARY:
+            case Ast.POWER:
+            case Ast.ARITHMETIC:
+            case Ast.COMPARISON:
+            case Ast.LOGICAL:
+            case Ast.ID:
+            case Ast.INT_LITERAL:
+            case Ast.REAL_LITERAL:
+            case Ast.CHAR_LITERAL:
+            case Ast.BOOL_LITERAL:
+                visitExpression(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void visitProgram(int node) {
+        beginProgram(ast.getScope(node), ast.getText(node));
+        int declarations = ast.getChildCount(node) - 1;
+        for (int i = 0; i < declarations; i++) {
+            visit(ast.getChild(node, i));
+        }
+        compileMain(ast.getLastChild(node));
+    }
+
+    /**
+     * Begin the class of a program. The declarations may then be visited
+     * one at a time, followed by compileMain.
+     * @param globalScope The global scope created by the Definition visitor
+     * @param programName The program name, which is the class name
+     */
+    public void beginProgram(Scope globalScope, String programName) {
+        cg.beginClass(sourceFileName, programName);
+        // Field and method references belong to the constant pool of one class.
+        globalScope.getIdentifiers().forEach(id -> id.setFieldRef(-1));
+        powRef = -1;
+        sqrtRef = -1;
+        powerRef = -1;
+        outRef = -1;
+        printRefs.clear();
+    }
+
+    /**
+     * Compile the body of the program into the main method.
+     * @param body The STATEMENTS node of the body of the program
+     */
+    public void compileMain(int body) {
+        code = cg.beginCode(ACC_PUBLIC | ACC_STATIC, "void", "main", "String[] args");
+        if (ssa) {
+            lower(new IrBuilder(ast).buildMain(body));
+        } else {
+            visit(body);
+            code.addReturn(org.apache.bcel.generic.Type.VOID);
+        }
         cg.endMethod();
-        return null;
+        code = null;
+        // The main method is the last one, so every use of the power
+        // method has been compiled by now.
+        if (powerRef >= 0) {
+            genPowerMethod();
+        }
     }
 
-    @Override
-    public InstructionList visitProcedureDeclaration(MicroParser.ProcedureDeclarationContext ctx) {
-        currentScope = scopeMap.get(ctx);
-        String procedureName = ctx.ID().getText();
-        Identifier procId = currentScope.resolve(procedureName);
+    private void visitProcedureDeclaration(int node) {
+        String procedureName = ast.getText(node);
+        Identifier procId = ast.getIdentifier(node);
         ProcedureOrFunction procType = (ProcedureOrFunction)procId.getType();
-        MethodGen mg = cg.beginMethod(ACC_PUBLIC | ACC_STATIC, "void", procedureName, procType.getTypeParameterPairs());
-        InstructionList il = cg.newInstructionList();
-        ctx.variableDeclaration().forEach(decl -> il.append(visit(decl)));
-        il.append(visit(ctx.body()));
-        il.addInstruction("return");
-        mg.getInstructionList().append(il);
+        code = cg.beginCode(ACC_PUBLIC | ACC_STATIC, "void", procedureName, procType.getTypeParameterPairs());
+        if (ssa) {
+            lower(new IrBuilder(ast).build(node));
+        } else {
+            visitLocalsAndBody(node);
+            code.addReturn(org.apache.bcel.generic.Type.VOID);
+        }
         cg.endMethod();
-        currentScope = currentScope.getParent();
-        return null;
+        code = null;
     }
 
-    @Override
-    public InstructionList visitFunctionDeclaration(MicroParser.FunctionDeclarationContext ctx) {
-        currentScope = scopeMap.get(ctx);
-        String functionName = ctx.ID().getText();
-        Identifier procId = currentScope.resolve(functionName);
+    private void visitFunctionDeclaration(int node) {
+        String functionName = ast.getText(node);
+        Identifier procId = ast.getIdentifier(node);
         ProcedureOrFunction procType = (ProcedureOrFunction)procId.getType();
-        MethodGen mg = cg.beginMethod(ACC_PUBLIC | ACC_STATIC, 
-                procType.getReturnType().getJavaTypeName(), 
-                functionName, 
+        code = cg.beginCode(ACC_PUBLIC | ACC_STATIC,
+                procType.getReturnType().getJavaTypeName(),
+                functionName,
                 procType.getTypeParameterPairs());
-        InstructionList il = cg.newInstructionList();
-        ctx.variableDeclaration().forEach(decl -> il.append(visit(decl)));
-        il.append(visit(ctx.body()));
-        mg.getInstructionList().append(il);
+        if (ssa) {
+            lower(new IrBuilder(ast).build(node));
+        } else {
+            visitLocalsAndBody(node);
+        }
         cg.endMethod();
-        currentScope = currentScope.getParent();
-        return null;
+        code = null;
+    }
+
+    /**
+     * Generate the code of the method being compiled from its SSA graph.
+     */
+    private void lower(ControlFlowGraph cfg) {
+        IrLowering lowering = new IrLowering(cg, code);
+        lowering.lower(cfg);
+        if (lowering.usesPowerMethod() && powerRef < 0) {
+            org.apache.bcel.generic.Type intType = org.apache.bcel.generic.Type.INT;
+            powerRef = cg.getMethodRef(cg.getClassName(), "$power", intType, intType, intType);
+        }
     }
 
-    @Override
-    public InstructionList visitBody(BodyContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        il.append(visit(ctx.statement_list()));
-        return il;
+    /**
+     * Compile the local variables and the body of a procedure or function.
+     * The parameters are defined by beginMethod; their slots are recorded
+     * in their identifiers.
+     */
+    private void visitLocalsAndBody(int node) {
+        int n = ast.getChildCount(node);
+        for (int i = 0; i < n - 1; i++) {
+            int decl = ast.getChild(node, i);
+            int kind = ast.getKind(decl);
+            if (kind == Ast.VARIABLE || kind == Ast.ARRAY_VARIABLE) {
+                visit(decl);
+            } else {
+                Identifier id = ast.getIdentifier(decl);
+                id.setSlot(cg.getLocalVariableIndex(id.getName()));
+            }
+        }
+        visit(ast.getLastChild(node));
     }
 
-    @Override
-    public InstructionList visitSimpleVariableDecl(MicroParser.SimpleVariableDeclContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        Identifier id = currentScope.resolve(ctx.ID().getText());
+    private void visitSimpleVariableDecl(int node) {
+        Identifier id = ast.getIdentifier(node);
         String variableName = id.getName();
         Type variableType = id.getType();
         String variableTypeName = variableType.getJavaTypeName();
-        if (id.getScope().getKind() == Scope.Kind.GLOBAL) {
+        if (id.isStatic()) {
             cg.addStaticField(variableName, variableTypeName);
         } else {
-            cg.addLocalVariable(variableName, variableTypeName);
+            id.setSlot(cg.addLocalVariable(variableName, variableTypeName));
         }
-        return il;
     }
 
-    /**
-     * {@inheritDoc}
-     *
-     * <p>
-     * The default implementation returns the result of calling
-     * {@link #visitChildren} on {@code ctx}.</p>
-     * @param ctx
-     * @return 
-     */
-    @Override
-    public InstructionList visitArrayVariableDecl(MicroParser.ArrayVariableDeclContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        Identifier id = currentScope.resolve(ctx.ID().getText());
+    private void visitArrayVariableDecl(int node) {
+        Identifier id = ast.getIdentifier(node);
         String arrayName = id.getName();
         ArrayType arrayType = (ArrayType) id.getType();
         Type componentType = arrayType.getComponentType();
-        String componentTypeName = componentType.getJavaTypeName();
+        org.apache.bcel.generic.Type componentStorageType = storageType(componentType);
         String javaTypeName = arrayType.getJavaTypeName();
-        String arraySize = ctx.INT().getText();
-        if (id.getScope().getKind() == Scope.Kind.GLOBAL) {
+        int arraySize = Integer.parseInt(ast.getText(ast.getChild(node, 0)));
+        if (id.isStatic()) {
             cg.addStaticField(arrayName, javaTypeName);
             if (!clinitDefined) {
-                clinit = cg.beginMethod(ACC_STATIC, "void", "<clinit>");
+                clinit = cg.beginCode(ACC_STATIC, "void", "<clinit>");
                 clinitDefined = true;
             }
-            il.addInstruction("const", arraySize);
-            il.addInstruction("newarray", componentTypeName, "1");
-            il.addInstruction("putstatic", cg.getClassName() + "." + arrayName, javaTypeName);
-            clinit.getInstructionList().append(il);
+            clinit.addConstant(arraySize);
+            clinit.addNewArray(componentStorageType, 1);
+            clinit.addPutStatic(id.fieldRef(cg));
         } else {
-            cg.addLocalVariable(arrayName, javaTypeName);
-            il.addInstruction("const", arraySize);
-            il.addInstruction("newarray", componentTypeName, "1");
-            il.addInstruction("astore", arrayName);
+            id.setSlot(cg.addLocalVariable(arrayName, javaTypeName));
+            code.addConstant(arraySize);
+            code.addNewArray(componentStorageType, 1);
+            code.addStore(id.getStorageType(), id.getSlot());
         }
-        return il;
     }
 
-    @Override
-    public InstructionList visitStatement_list(Statement_listContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        int numChildren = ctx.getChildCount();
+    private void visitStatement_list(int node) {
+        int numChildren = ast.getChildCount(node);
         for (int i = 0; i < numChildren; i++) {
-            il.append(visit(ctx.getChild(i)));
+            visit(ast.getChild(node, i));
         }
-        return il;
     }
 
-    @Override
-    public InstructionList visitRead_statement(Read_statementContext ctx) {
-        InstructionList il = cg.newInstructionList();
+    private void visitRead_statement(int node) {
         if (!inDefined) {
-            cg.addLocalVariable("$in", "java.util.Scanner");
-            il.addInstruction("new", "java.util.Scanner");
-            il.addInstruction("dup");
-            il.addInstruction("getstatic", "java.lang.System.in", "java.io.InputStream");
-            il.addInstruction("invokespecial", "java.util.Scanner.<init>", "void", "java.io.InputStream");
-            il.addInstruction("astore", "$in");
+            int in = cg.addLocalVariable("$in", "java.util.Scanner");
+            code.addNew(cg.getClassRef("java.util.Scanner"));
+            code.addInstruction(DUP);
+            code.addGetStatic(cg.getFieldRef("java.lang.System", "in", INPUT_STREAM));
+            code.addInvoke(INVOKESPECIAL, cg.getMethodRef("java.util.Scanner", "<init>",
+                    org.apache.bcel.generic.Type.VOID, INPUT_STREAM));
+            code.addStore(SCANNER, in);
             inDefined = true;
         }
-        // CHANGE TO READ INOT LVALUES.
-        /*
-        ctx.id_list().ID().forEach(idCtx -> {
-            Identifier id = currentScope.resolve(idCtx.getText());
+        int n = ast.getChildCount(node);
+        for (int i = 0; i < n; i++) {
+            Identifier id = ast.getIdentifier(ast.getChild(node, i));
             String idTypeName = id.getType().getJavaTypeName();
             String scannerMethodName = "next" + toInitalUc(idTypeName);
-            il.addInstruction("aload", "$in");
-            il.addInstruction("invokevirtual", "java.util.Scanner." + scannerMethodName, idTypeName);
-            genStoreInstruction(il, id, idTypeName, ctx);
-        }); */
-        ctx.lvalue_list().lvalue().forEach(idCtx -> {
-            Identifier id = currentScope.resolve(idCtx.getText());
-            String idTypeName = id.getType().getJavaTypeName();
-            String scannerMethodName = "next" + toInitalUc(idTypeName);
-            il.addInstruction("aload", "$in");
-            il.addInstruction("invokevirtual", "java.util.Scanner." + scannerMethodName, idTypeName);
-            genStoreInstruction(il, id, idTypeName, ctx);
-        });
-        return il;
+            code.addLoad(SCANNER, cg.getLocalVariableIndex("$in"));
+            code.addInvoke(INVOKEVIRTUAL, cg.getMethodRef("java.util.Scanner", scannerMethodName,
+                    CodeGenerator.getType(idTypeName)));
+            genStoreInstruction(id, node);
+        }
     }
 
-    private void genStoreInstruction(InstructionList il, Identifier id, String idTypeName, ParserRuleContext ctx) {
-        if (id.getScope().getKind() == Scope.Kind.GLOBAL) {
-            il.addInstruction("putstatic", cg.getClassName() + "." + id.getName(), idTypeName);
+    private void genStoreInstruction(Identifier id, int node) {
+        if (id.isStatic()) {
+            code.addPutStatic(id.fieldRef(cg));
         } else {
             switch ((PrimitiveType) id.getType()) {
                 case INT:
                 case BOOL:
-                    il.addInstruction("istore", id.getName());
-                    break;
                 case REAL:
-                    il.addInstruction("dstore", id.getName());
+                    code.addStore(id.getStorageType(), id.getSlot());
                     break;
                 default:
-                    MicroCompilerV1.error(ctx, id.getType() + " is not a supported variable type");
+                    MicroCompilerV1.error(ast, node, id.getType() + " is not a supported variable type");
                     break;
             }
         }
     }
 
-    @Override
-    public InstructionList visitAssignment_statement(Assignment_statementContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        LvalueContext lvalueContext = ctx.lvalue();
-        if (lvalueContext instanceof IdLvalueContext) {
-            il.append(visit(ctx.expr()));
-            genCastIfNeeded(il, ctx.lvalue(), ctx.expr());
-            il.append(visit(ctx.lvalue()));
-            return il;
-        } else if (lvalueContext instanceof ArrayLvalueContext) {
-            il.append(visit(ctx.lvalue()));
-            il.append(visit(ctx.expr()));
-            genCastIfNeeded(il, ctx.lvalue(), ctx.expr());
-            il.addInstruction("arrayStore", typeMap.get(lvalueContext).getJavaTypeName());
-            return il;
+    private void visitAssignment_statement(int node) {
+        int lvalue = ast.getChild(node, 0);
+        int expr = ast.getChild(node, 1);
+        if (ast.getKind(lvalue) == Ast.ID_LVALUE) {
+            visit(expr);
+            genCastIfNeeded(lvalue, expr);
+            visit(lvalue);
         } else {
-            MicroCompilerV1.error(ctx, "Invalid target of assignment");
-            return il;
+            visit(lvalue);
+            visit(expr);
+            genCastIfNeeded(lvalue, expr);
+            code.addArrayStore(storageType(ast.getType(lvalue)));
         }
     }
 
-    public void genCastIfNeeded(InstructionList il, ParserRuleContext lhs, ParserRuleContext rhs) {
-        Type lhsType = typeMap.get(lhs);
-        Type rhsType = typeMap.get(rhs);
+    public void genCastIfNeeded(int lhs, int rhs) {
+        Type lhsType = ast.getType(lhs);
+        Type rhsType = ast.getType(rhs);
         if (lhsType == rhsType) {
             return;
         }
-        il.addInstruction("cast", rhsType.getJavaTypeName(), lhsType.getJavaTypeName());
+        code.addCast(storageType(rhsType), storageType(lhsType));
     }
 
-    @Override
-    public InstructionList visitIdLvalue(IdLvalueContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        Identifier id = currentScope.resolve(ctx.ID().getText());
-        String idTypeName = id.getType().getJavaTypeName();
-        genStoreInstruction(il, id, idTypeName, ctx);
-        return il;
+    private void visitIdLvalue(int node) {
+        genStoreInstruction(ast.getIdentifier(node), node);
     }
 
-    @Override
-    public InstructionList visitArrayLvalue(ArrayLvalueContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        Identifier id = currentScope.resolve(ctx.ID().getText());
-        String javaTypeName = id.getType().getJavaTypeName();
-        if (id.getScope().getKind() == Scope.Kind.GLOBAL) {
-            il.addInstruction("getstatic", cg.getClassName() + "." + id.getName(), javaTypeName);
-        } else {
-            il.addInstruction("aload", id.getName());
-        }
-        il.append(visit(ctx.expr()));
-        return il;
-    }
-
-    @Override
-    public InstructionList visitFcnCall(MicroParser.FcnCallContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        
-        ctx.expr_list().expr().forEach(argTypes->{
-            il.append(visit(argTypes));
-        });
-        Identifier fcnId = currentScope.resolve(ctx.ID().getText() );
-        ProcedureOrFunction fcnIdProc = (ProcedureOrFunction) fcnId.getType();
-        String[] procedureInfo = fcnIdProc.getInvocationArgs();
-        il.addInstruction("invokestatic", procedureInfo);
-        return il;
-    }
-
-    @Override
-    public InstructionList visitArrayAccess(MicroParser.ArrayAccessContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        Identifier id = currentScope.resolve(ctx.ID().getText());
-        String javaTypeName = id.getType().getJavaTypeName();
-        if (id.getScope().getKind() == Scope.Kind.GLOBAL) {
-            il.addInstruction("getstatic", cg.getClassName() + "." + id.getName(), javaTypeName);
+    private void visitArrayLvalue(int node) {
+        genArrayReference(node);
+        visit(ast.getChild(node, 0));
+    }
+
+    private void genArrayReference(int node) {
+        Identifier id = ast.getIdentifier(node);
+        if (id.isStatic()) {
+            code.addGetStatic(id.fieldRef(cg));
         } else {
-            il.addInstruction("aload", id.getName());
+            code.addLoad(id.getStorageType(), id.getSlot());
+        }
+    }
+
+    /**
+     * Compile a call statement.
+     */
+    private void visitCall(int node) {
+        int n = ast.getChildCount(node);
+        for (int i = 0; i < n; i++) {
+            visit(ast.getChild(node, i));
+        }
+        genInvocation(node);
+    }
+
+    private void genInvocation(int node) {
+        code.addInvoke(INVOKESTATIC, ast.getIdentifier(node).methodRef(cg));
+    }
+
+    /**
+     * The state of an expression node whose operands are being compiled.
+     * The frames and their labels are kept and reused between expressions.
+     */
+    private static final class Frame {
+        int node;
+        int next;
+        int end;
+        int form;
+        final Label trueLabel = new Label();
+        final Label falseLabel = new Label();
+        final Label endLabel = new Label();
+    }
+
+    /**
+     * Compile an expression. The expression is walked with an explicit stack
+     * of frames instead of by recursion, so that a long chain of operators
+     * does not need a deep thread stack. The code of each node is generated
+     * before, between and after its operands in the same order as a
+     * recursive walk would, so the instructions and the constant pool are
+     * the same.
+     * @param root The root of the expression
+     */
+    private void visitExpression(int root) {
+        int base = depth;
+        enterExpression(root);
+        while (true) {
+            Frame frame = frames[depth - 1];
+            if (frame.next < frame.end) {
+                enterExpression(ast.getChild(frame.node, frame.next++));
+                continue;
+            }
+            depth--;
+            exitExpression(frame);
+            if (depth == base) {
+                return;
+            }
+            Frame parent = frames[depth - 1];
+            afterOperand(parent, parent.next - 1);
+        }
+    }
+
+    private void enterExpression(int node) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        Frame frame = frames[depth];
+        if (frame == null) {
+            frame = new Frame();
+            frames[depth] = frame;
+        }
+        depth++;
+        frame.node = node;
+        frame.next = 0;
+        frame.end = ast.getChildCount(node);
+        frame.trueLabel.reset();
+        frame.falseLabel.reset();
+        frame.endLabel.reset();
+        if (ast.getKind(node) == Ast.ARRAY_ACCESS) {
+            genArrayReference(node);
+        } else if (ast.getKind(node) == Ast.POWER) {
+            frame.form = PowerForm.of(ast, node);
+            if (frame.form == PowerForm.SHIFT) {
+                // The base is the literal 2, which is not pushed.
+                frame.next = 1;
+            } else if (frame.form != PowerForm.POW && frame.form != PowerForm.METHOD) {
+                // The exponent is a literal, which is not pushed.
+                frame.end = 1;
+            }
+        }
+    }
+
+    /**
+     * Generate the code that follows an operand of an expression node.
+     * @param frame The frame of the node
+     * @param operand The index of the operand whose code has just been added
+     */
+    private void afterOperand(Frame frame, int operand) {
+        int node = frame.node;
+        Type operandType = ast.getType(ast.getChild(node, operand));
+        switch (ast.getKind(node)) {
+            case Ast.ARITHMETIC: {
+                Type resultType = ast.getType(node);
+                if (operandType != resultType) {
+                    code.addCast(storageType(operandType), storageType(resultType));
+                }
+                break;
+            }
+            case Ast.COMPARISON: {
+                Type resultType = comparisonType(node);
+                if (operandType != resultType) {
+                    code.addCast(storageType(operandType), storageType(resultType));
+                }
+                break;
+            }
+            case Ast.POWER:
+                if (operandType == PrimitiveType.INT && frame.form != PowerForm.SHIFT && frame.form != PowerForm.METHOD) {
+                    code.addCast(org.apache.bcel.generic.Type.INT, org.apache.bcel.generic.Type.DOUBLE);
+                }
+                break;
+            case Ast.LOGICAL:
+                if (operand == 0) {
+                    switch (ast.getOp(node)) {
+                        case Ast.AND:
+                            code.addIf(IFEQ, org.apache.bcel.generic.Type.INT, frame.falseLabel);
+                            break;
+                        case Ast.OR:
+                            code.addIf(IFNE, org.apache.bcel.generic.Type.INT, frame.trueLabel);
+                            break;
+                    }
+                } else {
+                    code.addGoTo(frame.endLabel);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Generate the code that follows the operands of an expression node.
+     * @param frame The frame of the node
+     */
+    private void exitExpression(Frame frame) {
+        int node = frame.node;
+        switch (ast.getKind(node)) {
+            case Ast.ARRAY_ACCESS:
+                code.addArrayLoad(storageType(ast.getType(node)));
+                break;
+            case Ast.FUNCTION_CALL:
+                genInvocation(node);
+                break;
+            case Ast.UNARY:
+                genUnaryop(node);
+                break;
+            case Ast.POWER:
+                genPower(frame);
+                break;
+            case Ast.ARITHMETIC:
+                code.addArithmetic(arithmeticOpcode(ast.getOp(node)), storageType(ast.getType(node)));
+                break;
+            case Ast.COMPARISON:
+                code.addIf(comparisonOpcode(ast.getOp(node)), storageType(comparisonType(node)), frame.trueLabel);
+                code.addConstant(0);
+                code.addGoTo(frame.endLabel);
+                code.bind(frame.trueLabel);
+                code.addConstant(1);
+                code.bind(frame.endLabel);
+                code.addInstruction(NOP);
+                break;
+            case Ast.LOGICAL:
+                switch (ast.getOp(node)) {
+                    case Ast.AND:
+                        code.bind(frame.falseLabel);
+                        code.addConstant(0);
+                        break;
+                    case Ast.OR:
+                        code.bind(frame.trueLabel);
+                        code.addConstant(1);
+                        break;
+                }
+                code.bind(frame.endLabel);
+                code.addInstruction(NOP);
+                break;
+            case Ast.ID:
+                genId(node);
+                break;
+            case Ast.INT_LITERAL:
+                code.addConstant(Integer.parseInt(ast.getText(node)));
+                break;
+            case Ast.REAL_LITERAL:
+                code.addConstant(Double.parseDouble(ast.getText(node)));
+                break;
+            case Ast.CHAR_LITERAL:
+                code.addConstant(InstructionList.charValue(ast.getText(node)));
+                break;
+            case Ast.BOOL_LITERAL:
+                code.addConstant(ast.getText(node).equals("true") ? 1 : 0);
+                break;
+        }
+    }
+
+    /**
+     * The type in which the operands of a comparison are compared.
+     */
+    private Type comparisonType(int node) {
+        Type lhsType = ast.getType(ast.getChild(node, 0));
+        Type rhsType = ast.getType(ast.getChild(node, 1));
+        return ReferenceVisitor.determineExpressionResult(lhsType, rhsType);
+    }
+
+    /**
+     * Generate the code that follows the operands of a ** node, in the form
+     * chosen by PowerForm.
+     * @param frame The frame of the node
+     */
+    private void genPower(Frame frame) {
+        int node = frame.node;
+        org.apache.bcel.generic.Type intType = org.apache.bcel.generic.Type.INT;
+        org.apache.bcel.generic.Type doubleType = org.apache.bcel.generic.Type.DOUBLE;
+        switch (frame.form) {
+            case PowerForm.CHAIN:
+                switch (PowerForm.chainExponent(ast, node)) {
+                    case 0:
+                        code.addInstruction(POP2);
+                        code.addConstant(1.0);
+                        break;
+                    case 2:
+                        code.addInstruction(DUP2);
+                        code.addArithmetic(IMUL, doubleType);
+                        break;
+                    case 3:
+                        code.addInstruction(DUP2);
+                        code.addInstruction(DUP2);
+                        code.addArithmetic(IMUL, doubleType);
+                        code.addArithmetic(IMUL, doubleType);
+                        break;
+                    case 4:
+                        code.addInstruction(DUP2);
+                        code.addArithmetic(IMUL, doubleType);
+                        code.addInstruction(DUP2);
+                        code.addArithmetic(IMUL, doubleType);
+                        break;
+                }
+                break;
+            case PowerForm.SQRT: {
+                boolean realBase = ast.getType(ast.getChild(node, 0)) == PrimitiveType.REAL;
+                if (realBase) {
+                    // Math.pow gives 0.0 for -0.0, and Infinity for
+                    // -Infinity, where Math.sqrt gives -0.0 and NaN.
+                    code.addConstant(0.0);
+                    code.addArithmetic(IADD, doubleType);
+                    code.addInstruction(DUP2);
+                    code.addConstant(Double.NEGATIVE_INFINITY);
+                    code.addIf(IF_ICMPNE, doubleType, frame.trueLabel);
+                    code.addInstruction(POP2);
+                    code.addConstant(Double.POSITIVE_INFINITY);
+                    code.addGoTo(frame.endLabel);
+                    code.bind(frame.trueLabel);
+                }
+                if (sqrtRef < 0) {
+                    sqrtRef = cg.getMethodRef("java.lang.Math", "sqrt", doubleType, doubleType);
+                }
+                code.addInvoke(INVOKESTATIC, sqrtRef);
+                if (realBase) {
+                    code.bind(frame.endLabel);
+                    code.addInstruction(NOP);
+                }
+                return;
+            }
+            case PowerForm.SHIFT:
+                // A negative exponent gives a fraction, which d2i makes 0,
+                // and one of 31 or more a power past Integer.MAX_VALUE.
+                code.addInstruction(DUP);
+                code.addIf(IFLT, intType, frame.falseLabel);
+                code.addInstruction(DUP);
+                code.addConstant(31);
+                code.addIf(IF_ICMPGE, intType, frame.trueLabel);
+                code.addConstant(1);
+                code.addInstruction(SWAP);
+                code.addArithmetic(ISHL, intType);
+                code.addGoTo(frame.endLabel);
+                code.bind(frame.falseLabel);
+                code.addInstruction(POP);
+                code.addConstant(0);
+                code.addGoTo(frame.endLabel);
+                code.bind(frame.trueLabel);
+                code.addInstruction(POP);
+                code.addConstant(Integer.MAX_VALUE);
+                code.bind(frame.endLabel);
+                code.addInstruction(NOP);
+                return;
+            case PowerForm.METHOD:
+                if (powerRef < 0) {
+                    powerRef = cg.getMethodRef(cg.getClassName(), "$power", intType, intType, intType);
+                }
+                code.addInvoke(INVOKESTATIC, powerRef);
+                return;
+            default:
+                if (powRef < 0) {
+                    powRef = cg.getMethodRef("java.lang.Math", "pow", doubleType, doubleType, doubleType);
+                }
+                code.addInvoke(INVOKESTATIC, powRef);
+                break;
+        }
+        if (ast.getType(node) == PrimitiveType.INT) {
+            code.addCast(doubleType, intType);
+        }
+    }
+
+    /**
+     * Generate the private method $power(int base, int exponent) that
+     * computes an int ** node. It squares and multiplies in long
+     * arithmetic, holding a value past the int range at 2**31 or -2**31,
+     * so it returns what d2i makes of Math.pow: the power when it fits in
+     * an int, and Integer.MAX_VALUE or MIN_VALUE when it does not. The power
+     * of a negative exponent is a fraction that d2i makes 0, unless the base
+     * is 1 or -1, whose power is that of the positive exponent, or 0, whose
+     * power is infinite.
+     */
+    private void genPowerMethod() {
+        org.apache.bcel.generic.Type intType = org.apache.bcel.generic.Type.INT;
+        org.apache.bcel.generic.Type longType = org.apache.bcel.generic.Type.LONG;
+        code = cg.beginCode(ACC_PRIVATE | ACC_STATIC, "int", "$power", "int base", "int exponent");
+        int base = cg.getLocalVariableIndex("base");
+        int exponent = cg.getLocalVariableIndex("exponent");
+        int result = cg.addLocalVariable("result", "long");
+        int square = cg.addLocalVariable("square", "long");
+        Label nonZero = new Label();
+        Label fraction = new Label();
+        Label positive = new Label();
+        Label loop = new Label();
+        Label even = new Label();
+        Label done = new Label();
+        Label inRange = new Label();
+
+        code.addLoad(intType, exponent);
+        code.addIf(IFGE, intType, positive);
+        code.addLoad(intType, base);
+        code.addIf(IFNE, intType, nonZero);
+        code.addConstant(Integer.MAX_VALUE);
+        code.addReturn(intType);
+        code.bind(nonZero);
+        code.addLoad(intType, base);
+        code.addConstant(-1);
+        code.addIf(IF_ICMPLT, intType, fraction);
+        code.addLoad(intType, base);
+        code.addConstant(1);
+        code.addIf(IF_ICMPGT, intType, fraction);
+        // -Integer.MIN_VALUE is itself, which the unsigned shift below takes
+        // as 2**31.
+        code.addLoad(intType, exponent);
+        code.addArithmetic(INEG, intType);
+        code.addStore(intType, exponent);
+        code.addGoTo(positive);
+        code.bind(fraction);
+        code.addConstant(0);
+        code.addReturn(intType);
+
+        code.bind(positive);
+        code.addConstant(1L);
+        code.addStore(longType, result);
+        code.addLoad(intType, base);
+        code.addCast(intType, longType);
+        code.addStore(longType, square);
+        code.bind(loop);
+        code.addLoad(intType, exponent);
+        code.addIf(IFEQ, intType, done);
+        code.addLoad(intType, exponent);
+        code.addConstant(1);
+        code.addArithmetic(IAND, intType);
+        code.addIf(IFEQ, intType, even);
+        code.addLoad(longType, result);
+        code.addLoad(longType, square);
+        code.addArithmetic(IMUL, longType);
+        code.addStore(longType, result);
+        genClamp(result, true);
+        code.bind(even);
+        code.addLoad(intType, exponent);
+        code.addConstant(1);
+        code.addArithmetic(IUSHR, intType);
+        code.addStore(intType, exponent);
+        code.addLoad(longType, square);
+        code.addInstruction(DUP2);
+        code.addArithmetic(IMUL, longType);
+        code.addStore(longType, square);
+        genClamp(square, false);
+        code.addGoTo(loop);
+
+        code.bind(done);
+        code.addLoad(longType, result);
+        code.addConstant((long) Integer.MAX_VALUE);
+        code.addIf(IF_ICMPLE, longType, inRange);
+        code.addConstant(Integer.MAX_VALUE);
+        code.addReturn(intType);
+        code.bind(inRange);
+        code.addLoad(longType, result);
+        code.addCast(longType, intType);
+        code.addReturn(intType);
+        cg.endMethod();
+        code = null;
+    }
+
+    /**
+     * Generate the code that holds a long local variable of the power method
+     * at 2**31 if it is larger, and, if asked, at -2**31 if it is smaller.
+     * Both products of the method then stay within the long range.
+     */
+    private void genClamp(int slot, boolean negative) {
+        org.apache.bcel.generic.Type longType = org.apache.bcel.generic.Type.LONG;
+        long limit = 1L << 31;
+        Label notAbove = new Label();
+        Label end = new Label();
+        code.addLoad(longType, slot);
+        code.addConstant(limit);
+        code.addIf(IF_ICMPLE, longType, notAbove);
+        code.addConstant(limit);
+        code.addStore(longType, slot);
+        code.addGoTo(end);
+        code.bind(notAbove);
+        if (negative) {
+            code.addLoad(longType, slot);
+            code.addConstant(-limit);
+            code.addIf(IF_ICMPGE, longType, end);
+            code.addConstant(-limit);
+            code.addStore(longType, slot);
         }
-        il.append(visit(ctx.expr()));
-        il.addInstruction("arrayLoad", typeMap.get(ctx).getJavaTypeName());
-        return il;
+        code.bind(end);
+        code.addInstruction(NOP);
     }
 
-    @Override
-    public InstructionList visitUnaryop(UnaryopContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        il.append(visit(ctx.expr()));
-        Type exprType = typeMap.get(ctx.expr());
-        String typeName = exprType.getJavaTypeName();
-        switch (ctx.op.getText()) {
-            case "+":
+    private void genUnaryop(int node) {
+        Type exprType = ast.getType(ast.getChild(node, 0));
+        switch (ast.getOp(node)) {
+            case Ast.PLUS:
                 break;  // The + unary operator does nothing.
-            case "-":
-                switch (typeName) {
-                    case "int":
-                    case "double":
-                        il.addInstruction("neg", typeName);
+            case Ast.MINUS:
+                switch ((PrimitiveType) exprType) {
+                    case INT:
+                    case REAL:
+                        code.addArithmetic(INEG, storageType(exprType));
                         break;
                     default:
-                        MicroCompilerV1.error(ctx, "- cannot be applied to " + exprType.toString());
+                        MicroCompilerV1.error(ast, node, "- cannot be applied to " + exprType.toString());
                         break;
                 }
                 break;
-            case "~":
+            case Ast.COMPLEMENT:
                 if (exprType == PrimitiveType.INT) {
-                    il.addInstruction("const", "-1");
-                    il.addInstruction("op", "^", "int");
+                    code.addConstant(-1);
+                    code.addArithmetic(IXOR, org.apache.bcel.generic.Type.INT);
                 } else {
-                    MicroCompilerV1.error(ctx, "~ cannot be applied to " + exprType.toString());
+                    MicroCompilerV1.error(ast, node, "~ cannot be applied to " + exprType.toString());
                 }
                 break;
-            case "\u00ac":
+            case Ast.NOT:
                 if (exprType == PrimitiveType.BOOL) {
-                    il.addInstruction("const", "1");
-                    il.addInstruction("op", "^", "int");
+                    code.addConstant(1);
+                    code.addArithmetic(IXOR, org.apache.bcel.generic.Type.INT);
                 } else {
-                    MicroCompilerV1.error(ctx, "~ cannot be applied to " + exprType.toString());
+                    MicroCompilerV1.error(ast, node, "~ cannot be applied to " + exprType.toString());
                 }
                 break;
         }
-        return il;
-    }
-    
-    @Override
-    public InstructionList visitArithop(ArithopContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        Type lhsType = typeMap.get(ctx.expr(0));
-        Type rhsType = typeMap.get(ctx.expr(1));
-        Type resultType = typeMap.get(ctx);
-        il.append(visit(ctx.expr(0)));
-        if (lhsType != resultType) {
-            il.addInstruction("cast", lhsType.getJavaTypeName(), resultType.getJavaTypeName());
-        }
-        il.append(visit(ctx.expr(1)));
-        if (rhsType != resultType) {
-            il.addInstruction("cast", rhsType.getJavaTypeName(), resultType.getJavaTypeName());
-        }
-        il.addInstruction("op", ctx.op.getText(), resultType.getJavaTypeName());
-        return il;
-    }
-    
-    @Override
-    public InstructionList visitPowop(PowopContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        Type lhsType = typeMap.get(ctx.expr(0));
-        Type rhsType = typeMap.get(ctx.expr(1));
-        Type resultType = typeMap.get(ctx);
-        il.append(visit(ctx.expr(0)));
-        if (lhsType == PrimitiveType.INT) {
-            il.addInstruction("cast", "int", "double");
-        }
-        il.append(visit(ctx.expr(1)));
-        if (rhsType == PrimitiveType.INT) {
-            il.addInstruction("cast", "int", "double");
-        }
-        il.addInstruction("invokestatic", "java.lang.Math.pow", "double", "double", "double");
-        if (resultType == PrimitiveType.INT) {
-            il.addInstruction("cast", "double", "int");
-        }
-        return il;
-    }
-    
-    @Override
-    public InstructionList visitCompop(CompopContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        InstructionList endIl = cg.newInstructionList();
-        InstructionHandle endHandle = endIl.addInstruction("nop");
-        InstructionList trueIl = cg.newInstructionList();
-        InstructionHandle trueHandle = trueIl.addInstruction("const", "1", "boolean");
-        InstructionList falseIl = cg.newInstructionList();
-        InstructionHandle falseHandle = falseIl.addInstruction("const", "0", "boolean");
-        falseIl.createGoTo(endHandle);
-        Type lhsType = typeMap.get(ctx.expr(0));
-        Type rhsType = typeMap.get(ctx.expr(1));
-        Type resultType = ReferenceVisitor.determineExpressionResult(lhsType, rhsType);
-        il.append(visit(ctx.expr(0)));
-        if (lhsType != resultType) {
-            il.addInstruction("cast", lhsType.getJavaTypeName(), resultType.getJavaTypeName());
-        }
-        il.append(visit(ctx.expr(1)));
-        if (rhsType != resultType) {
-            il.addInstruction("cast", rhsType.getJavaTypeName(), resultType.getJavaTypeName());
-        }
-        String cmpop = ctx.op.getText();
-        if (cmpop.equals("=")) {
-            cmpop = "==";
-        }
-        il.createIf(cmpop, resultType.getJavaTypeName(), trueHandle);
-        il.append(falseIl);
-        il.append(trueIl);
-        il.append(endIl);
-        return il;
-    }
-
-    @Override
-    public InstructionList visitLogicalop(LogicalopContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        InstructionList trueIl = cg.newInstructionList();
-        InstructionList falseIl = cg.newInstructionList();
-        InstructionList endIl = cg.newInstructionList();
-        InstructionHandle trueIh = trueIl.addInstruction("const", "1", "boolean");
-        InstructionHandle falseIh = falseIl.addInstruction("const", "0", "boolean");
-        InstructionHandle endIh = endIl.addInstruction("nop");
-        il.append(visit(ctx.expr(0)));
-        switch (ctx.op.getText()) {
-            case "\u2227":  // Logical and
-                il.createIf("==0", "int", falseIh);
-                break;
-            case "\u2228": // Logical or
-                il.createIf("!=0", "int", trueIh);
-                break;
-        }
-        il.append(visit(ctx.expr(1)));
-        il.createGoTo(endIh);
-        switch (ctx.op.getText()) {
-            case "\u2227":  // Logical and
-                il.append(falseIl);
-                break;
-            case "\u2228": // Logical or
-                il.append(trueIl);
-                break;
-        }
-        il.append(endIl);
-        return il;
-    }
-
-    @Override
-    public InstructionList visitId(IdContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        Identifier id = currentScope.resolve(ctx.getText());
-        String javaTypeName = id.getType().getJavaTypeName();
-        if (id.getScope().getKind() == Scope.Kind.GLOBAL) {
-            il.addInstruction("getstatic", cg.getClassName() + "." + id.getName(), javaTypeName);
+    }
+
+    private void genId(int node) {
+        Identifier id = ast.getIdentifier(node);
+        if (id.isStatic()) {
+            code.addGetStatic(id.fieldRef(cg));
         } else {
             switch ((PrimitiveType) id.getType()) {
                 case INT:
                 case BOOL:
                 case CHAR:
-                    il.addInstruction("iload", id.getName());
-                    break;
                 case REAL:
-                    il.addInstruction("dload", id.getName());
+                    code.addLoad(id.getStorageType(), id.getSlot());
                     break;
                 default:
-                    MicroCompilerV1.error(ctx, id.getType() + " is not a supported variable type");
+                    MicroCompilerV1.error(ast, node, id.getType() + " is not a supported variable type");
                     break;
             }
         }
-        return il;
-    }
-
-    @Override
-    public InstructionList visitInt(IntContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        il.addInstruction("const", ctx.getText(), "int");
-        return il;
-    }
-
-    @Override
-    public InstructionList visitFloat(FloatContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        il.addInstruction("const", ctx.getText(), "double");
-        return il;
-    }
-
-    @Override
-    public InstructionList visitChar(CharContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        il.addInstruction("const", ctx.getText(), "char");
-        return il;
-    }
-    
-    @Override
-    public InstructionList visitBool(BoolContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        il.addInstruction("const", ctx.getText(), "boolean");
-        return il;
-    }
-    
-    @Override
-    public InstructionList visitParens(ParensContext ctx) {
-        return visit(ctx.expr());
-    }
-    
-    @Override
-    public InstructionList visitWrite_statement(Write_statementContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        ctx.expr_list().expr().forEach(expr -> {
-            il.addInstruction("getstatic", "java.lang.System.out", "java.io.PrintStream");
-            il.append(visit(expr));
-            Type exprType = typeMap.get(expr);
-            il.addInstruction("invokevirtual", "java.io.PrintStream.print", "void", exprType.getJavaTypeName());
-        });
-        return il;
-    }
-    
-    @Override
-    public InstructionList visitCall_statement(MicroParser.Call_statementContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        
-        ctx.expr_list().expr().forEach(argTypes->{
-            il.append(visit(argTypes));
-        });
-        Identifier fcnId = currentScope.resolve(ctx.ID().getText() );
-        ProcedureOrFunction fcnIdProc = (ProcedureOrFunction) fcnId.getType();
-        String[] procedureInfo = fcnIdProc.getInvocationArgs();
-        il.addInstruction("invokestatic", procedureInfo);
-        return il;
-    }
-
-    @Override
-    public InstructionList visitWhile_statement(While_statementContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        InstructionHandle topOfLoop = il.addInstruction("nop");
-        InstructionHandle endOfLoop = il.createGoTo(topOfLoop);
-        InstructionHandle outOfLoop = il.addInstruction("nop");
-        InstructionList ifStatement = cg.newInstructionList();
-        ifStatement.createIf("==0", "int", outOfLoop);
-        il.append(topOfLoop, ifStatement);
-        il.append(topOfLoop, visit(ctx.expr()));
-        il.insert(endOfLoop, visit(ctx.statement_list()));
-        return il;
-    }
-
-    @Override
-    public InstructionList visitDo_until_statement(Do_until_statementContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        InstructionHandle topOfLoop = il.addInstruction("nop");
-        il.append(visit(ctx.statement_list()));
-        il.append(visit(ctx.expr()));
-        il.createIf("==0", "int", topOfLoop);
-        return il;
-    }
-        
-    @Override
-    public InstructionList visitIf_statement(If_statementContext ctx) {
-        InstructionList il = cg.newInstructionList();
-        il.append(visit(ctx.expr()));
-        InstructionList il1 = cg.newInstructionList();
-        InstructionHandle theEnd = il1.addInstruction("nop");
-        InstructionList il2 = cg.newInstructionList();
-        InstructionHandle falseTarget = il2.addInstruction("nop");
-        il.createIf("==0", "int", falseTarget);
-        il.append(visit(ctx.statement_list()));
-        List<Elsif_partContext> elsifPart = ctx.elsif_part();
-        Else_partContext elsePart = ctx.else_part();
-        if (ctx.else_part() != null || (ctx.elsif_part() != null && !ctx.elsif_part().isEmpty())) {
-            il.createGoTo(theEnd);
-        }
-        il.append(il2);
-        if (ctx.elsif_part() != null && !ctx.elsif_part().isEmpty()) {
-            ctx.elsif_part().forEach(elif -> {
-                InstructionList il3 = cg.newInstructionList();
-                InstructionHandle falseTarget2 = il3.addInstruction("nop");
-                il.append(visit(elif.expr()));
-                il.createIf("==0", "int", falseTarget2);
-                il.append(visit(elif.statement_list()));
-                il.createGoTo(theEnd);
-                il.append(il3);
-            });
-        }
-        if (ctx.else_part() != null) {
-            il.append(visit(ctx.else_part().statement_list()));
-        }
-        if (ctx.else_part() != null || (ctx.elsif_part() != null && !ctx.elsif_part().isEmpty())) {
-            il.append(il1);
-        } else {
-            il1.dispose();
+    }
+
+    private void visitWrite_statement(int node) {
+        int n = ast.getChildCount(node);
+        for (int i = 0; i < n; i++) {
+            int expr = ast.getChild(node, i);
+            if (outRef < 0) {
+                outRef = cg.getFieldRef("java.lang.System", "out", PRINT_STREAM);
+            }
+            code.addGetStatic(outRef);
+            visit(expr);
+            org.apache.bcel.generic.Type exprType = storageType(ast.getType(expr));
+            Integer printRef = printRefs.get(exprType);
+            if (printRef == null) {
+                printRef = cg.getMethodRef("java.io.PrintStream", "print", org.apache.bcel.generic.Type.VOID, exprType);
+                printRefs.put(exprType, printRef);
+            }
+            code.addInvoke(INVOKEVIRTUAL, printRef);
+        }
+    }
+
+    /**
+     * A condition waiting to be compiled, or, when node is -1, the label
+     * past an ∧ or ∨ that is to be bound.
+     */
+    private static final class Condition {
+        final int node;
+        final boolean jumpIf;
+        final Label target;
+
+        Condition(int node, boolean jumpIf, Label target) {
+            this.node = node;
+            this.jumpIf = jumpIf;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Compile a condition as jumping code: instead of leaving the boolean on
+     * the stack to be tested, branch to a label when the condition has a
+     * given value and fall through when it does not. A comparison becomes
+     * a single conditional branch, ¬ swaps the value branched on, and
+     * ∧ and ∨ branch out as soon as their value is known. The operands of
+     * ∧ and ∨ are kept on an explicit stack instead of compiled by
+     * recursion, so that a long chain of them, however its operators mix,
+     * does not need a deep thread stack.
+     * @param root The condition
+     * @param rootJumpIf The value of the condition for which to branch
+     * @param rootTarget The label to branch to
+     */
+    private void visitCondition(int root, boolean rootJumpIf, Label rootTarget) {
+        Deque<Condition> conditions = new ArrayDeque<>();
+        conditions.push(new Condition(root, rootJumpIf, rootTarget));
+        while (!conditions.isEmpty()) {
+            Condition condition = conditions.pop();
+            int node = condition.node;
+            boolean jumpIf = condition.jumpIf;
+            Label target = condition.target;
+            if (node == -1) {
+                code.bind(target);
+                code.addInstruction(NOP);
+                continue;
+            }
+            while (ast.getKind(node) == Ast.UNARY && ast.getOp(node) == Ast.NOT
+                    && ast.getType(ast.getChild(node, 0)) == PrimitiveType.BOOL) {
+                node = ast.getChild(node, 0);
+                jumpIf = !jumpIf;
+            }
+            switch (ast.getKind(node)) {
+                case Ast.COMPARISON: {
+                    Type resultType = comparisonType(node);
+                    for (int i = 0; i < 2; i++) {
+                        int operand = ast.getChild(node, i);
+                        visit(operand);
+                        if (ast.getType(operand) != resultType) {
+                            code.addCast(storageType(ast.getType(operand)), storageType(resultType));
+                        }
+                    }
+                    short opcode = comparisonOpcode(ast.getOp(node));
+                    if (jumpIf) {
+                        code.addIf(opcode, storageType(resultType), target);
+                    } else {
+                        code.addIfNot(opcode, storageType(resultType), target);
+                    }
+                    break;
+                }
+                case Ast.LOGICAL: {
+                    // The operands are pushed in reverse so that the left
+                    // one is compiled first. A ∧ is false, and a ∨ true, as
+                    // soon as one operand is, so that value is branched on
+                    // by both operands. For the other value the left operand
+                    // branches past the right one with the opposite value.
+                    int left = ast.getChild(node, 0);
+                    int right = ast.getChild(node, 1);
+                    if ((ast.getOp(node) == Ast.AND) != jumpIf) {
+                        conditions.push(new Condition(right, jumpIf, target));
+                        conditions.push(new Condition(left, jumpIf, target));
+                    } else {
+                        Label skip = new Label();
+                        conditions.push(new Condition(-1, jumpIf, skip));
+                        conditions.push(new Condition(right, jumpIf, target));
+                        conditions.push(new Condition(left, !jumpIf, skip));
+                    }
+                    break;
+                }
+                case Ast.BOOL_LITERAL:
+                    if (ast.getText(node).equals("true") == jumpIf) {
+                        code.addGoTo(target);
+                    }
+                    break;
+                default:
+                    visit(node);
+                    code.addIf(jumpIf ? IFNE : IFEQ, org.apache.bcel.generic.Type.INT, target);
+                    break;
+            }
+        }
+    }
+
+    private void visitWhile_statement(int node) {
+        Label topOfLoop = new Label();
+        code.bind(topOfLoop);
+        code.addInstruction(NOP);
+        Label outOfLoop = new Label();
+        visitCondition(ast.getChild(node, 0), false, outOfLoop);
+        visit(ast.getChild(node, 1));
+        code.addGoTo(topOfLoop);
+        code.bind(outOfLoop);
+        code.addInstruction(NOP);
+    }
+
+    private void visitDo_until_statement(int node) {
+        Label topOfLoop = new Label();
+        code.bind(topOfLoop);
+        code.addInstruction(NOP);
+        visit(ast.getChild(node, 0));
+        visitCondition(ast.getChild(node, 1), false, topOfLoop);
+    }
+
+    private void visitIf_statement(int node) {
+        Label theEnd = new Label();
+        Label falseTarget = new Label();
+        visitCondition(ast.getChild(node, 0), false, falseTarget);
+        visit(ast.getChild(node, 1));
+        int n = ast.getChildCount(node);
+        boolean hasElse = ast.getKind(ast.getLastChild(node)) == Ast.ELSE;
+        if (n > 2) {
+            code.addGoTo(theEnd);
+        }
+        code.bind(falseTarget);
+        code.addInstruction(NOP);
+        int elsifEnd = hasElse ? n - 1 : n;
+        for (int i = 2; i < elsifEnd; i++) {
+            int elif = ast.getChild(node, i);
+            Label falseTarget2 = new Label();
+            visitCondition(ast.getChild(elif, 0), false, falseTarget2);
+            visit(ast.getChild(elif, 1));
+            code.addGoTo(theEnd);
+            code.bind(falseTarget2);
+            code.addInstruction(NOP);
+        }
+        if (hasElse) {
+            visit(ast.getChild(ast.getLastChild(node), 0));
+        }
+        if (n > 2) {
+            code.bind(theEnd);
+            code.addInstruction(NOP);
+        }
+    }
+
+    private void visitReturn_statement(int node) {
+        if (ast.getChildCount(node) == 0) {
+            code.addReturn(org.apache.bcel.generic.Type.VOID);
+            return;
+        }
+        int expr = ast.getChild(node, 0);
+        Type whateverIWantToCallIt = ast.getType(expr);
+        visit(expr);
+        code.addReturn(storageType(whateverIWantToCallIt));
+    }
+
+    /**
+     * Get the type of the JVM values of a type.
+     */
+    private static org.apache.bcel.generic.Type storageType(Type type) {
+        if (type instanceof PrimitiveType) {
+            return ((PrimitiveType) type).getStorageType();
         }
-        return il;
+        return CodeGenerator.getType(type.getJavaTypeName());
     }
-    
-    @Override 
-    public InstructionList visitReturn_statement(MicroParser.Return_statementContext ctx) { 
-        InstructionList il = cg.newInstructionList();
-        Type whateverIWantToCallIt = typeMap.get(ctx.expr());
-        il.append(visit(ctx.expr()));
-        il.addInstruction("return", whateverIWantToCallIt.getJavaTypeName());
-        return il;
+
+    private static short arithmeticOpcode(int op) {
+        switch (op) {
+            case Ast.PLUS: return IADD;
+            case Ast.MINUS: return ISUB;
+            case Ast.TIMES: return IMUL;
+            case Ast.DIVIDE: return IDIV;
+            case Ast.REMAINDER: return IREM;
+            case Ast.SHIFT_LEFT: return ISHL;
+            case Ast.SHIFT_RIGHT: return ISHR;
+            case Ast.UNSIGNED_SHIFT_RIGHT: return IUSHR;
+            case Ast.BITWISE_AND: return IAND;
+            case Ast.BITWISE_XOR: return IXOR;
+            default: return IOR;
+        }
+    }
+
+    private static short comparisonOpcode(int op) {
+        switch (op) {
+            case Ast.LESS: return IF_ICMPLT;
+            case Ast.LESS_EQUAL: return IF_ICMPLE;
+            case Ast.GREATER_EQUAL: return IF_ICMPGE;
+            case Ast.GREATER: return IF_ICMPGT;
+            case Ast.EQUAL: return IF_ICMPEQ;
+            default: return IF_ICMPNE;
+        }
     }
 
     public String toInitalUc(String s) {
@@ -633,5 +1126,5 @@ public class CompileVisitor extends MicroBaseVisitor<InstructionList> {
         charArray[0] = Character.toUpperCase(charArray[0]);
         return new String(charArray);
     }
-    
+
 }
@@ -0,0 +1,219 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import edu.temple.cis.c4324.codegen.Optimizer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class to hold the options of a compilation. An options object may be
+ * shared by compilations running on different threads as long as it is not
+ * modified while they run.
+ */
+public class CompilerOptions {
+
+    private String sourceFileName;
+    private boolean profiling;
+    private boolean streaming;
+    private boolean recursiveDescent;
+    private boolean parallelChecking;
+    private boolean directWriter;
+    private boolean ssa;
+    private int optimizationLevel;
+    private final Map<String, Boolean> passToggles;
+
+    public CompilerOptions() {
+        sourceFileName = "<source>";
+        passToggles = new TreeMap<>();
+    }
+
+    /**
+     * Construct a copy of another set of options.
+     * @param other The options to copy
+     */
+    public CompilerOptions(CompilerOptions other) {
+        sourceFileName = other.sourceFileName;
+        profiling = other.profiling;
+        streaming = other.streaming;
+        recursiveDescent = other.recursiveDescent;
+        parallelChecking = other.parallelChecking;
+        directWriter = other.directWriter;
+        ssa = other.ssa;
+        optimizationLevel = other.optimizationLevel;
+        passToggles = new TreeMap<>(other.passToggles);
+    }
+
+    /**
+     * Get the source file name. It is recorded in the SourceFile attribute
+     * of the generated class.
+     * @return The source file name
+     */
+    public String getSourceFileName() {return sourceFileName;}
+
+    public void setSourceFileName(String sourceFileName) {
+        this.sourceFileName = sourceFileName;
+    }
+
+    /**
+     * Determine if the time, CPU time and allocation of each phase are
+     * recorded. Profiling does not change the generated code.
+     * @return true if profiling is enabled
+     */
+    public boolean isProfiling() {return profiling;}
+
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    /**
+     * Determine if source files are compiled one routine at a time without
+     * holding the whole file, its tokens or its parse tree in memory.
+     * Streaming does not change the generated code.
+     * @return true if streaming is enabled
+     */
+    public boolean isStreaming() {return streaming;}
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Determine if programs are parsed by the hand written scanner and
+     * recursive descent parser instead of the ANTLR generated ones. Programs
+     * with syntax errors are parsed again by the ANTLR parser, so the
+     * diagnostics are the same either way, as is the generated code.
+     * Streaming compilations always use the ANTLR parser.
+     * @return true if the recursive descent parser is selected
+     */
+    public boolean isRecursiveDescent() {return recursiveDescent;}
+
+    public void setRecursiveDescent(boolean recursiveDescent) {
+        this.recursiveDescent = recursiveDescent;
+    }
+
+    /**
+     * Determine if the procedures and functions of a program are type
+     * checked concurrently on the common fork/join pool. The diagnostics
+     * and the generated code are the same either way. Streaming
+     * compilations check one routine at a time.
+     * @return true if parallel checking is enabled
+     */
+    public boolean isParallelChecking() {return parallelChecking;}
+
+    public void setParallelChecking(boolean parallelChecking) {
+        this.parallelChecking = parallelChecking;
+    }
+
+    /**
+     * Determine if the class file is written directly by ClassFileWriter
+     * instead of being built with BCEL. The instructions are the same either
+     * way, but the constant pool may be in a different order.
+     * @return true if the direct writer is selected
+     */
+    public boolean isDirectWriter() {return directWriter;}
+
+    public void setDirectWriter(boolean directWriter) {
+        this.directWriter = directWriter;
+    }
+
+    /**
+     * Determine if routines are compiled through the SSA intermediate
+     * representation in the ir package instead of straight from the Ast.
+     * The generated code computes the same results, but the local variables
+     * are allocated from the liveness of the SSA values. It works with
+     * either writer and at every optimization level.
+     * @return true if the SSA path is selected
+     */
+    public boolean isSsa() {return ssa;}
+
+    public void setSsa(boolean ssa) {
+        this.ssa = ssa;
+    }
+
+    /**
+     * Get the optimization level of the generated code, from 0, which
+     * leaves the code as it is generated, to Optimizer.MAX_LEVEL. The
+     * optimizer works on the BCEL instruction lists, so with the direct
+     * writer the level only turns on constant folding.
+     * @return The optimization level
+     */
+    public int getOptimizationLevel() {return optimizationLevel;}
+
+    public void setOptimizationLevel(int optimizationLevel) {
+        if (optimizationLevel < 0 || optimizationLevel > Optimizer.MAX_LEVEL) {
+            throw new IllegalArgumentException("The optimization level must be 0 to " + Optimizer.MAX_LEVEL);
+        }
+        this.optimizationLevel = optimizationLevel;
+    }
+
+    /**
+     * Enable or disable an optimization pass, whatever the level.
+     * @param name The name of the pass
+     * @param enabled true to run the pass
+     * @throws IllegalArgumentException if there is no such pass
+     */
+    public void setPassEnabled(String name, boolean enabled) {
+        if (!Optimizer.isPass(name)) {
+            throw new IllegalArgumentException("Unknown optimization pass " + name);
+        }
+        passToggles.put(name, enabled);
+    }
+
+    /**
+     * Get the passes that were enabled or disabled.
+     * @return Whether each pass is enabled, by pass name
+     */
+    public Map<String, Boolean> getPassToggles() {
+        return Collections.unmodifiableMap(passToggles);
+    }
+
+    /**
+     * Determine if any optimization pass is run.
+     * @return true if the level or the toggles enable a pass
+     */
+    public boolean isOptimizing() {
+        Optimizer optimizer = newOptimizer();
+        return Optimizer.getPasses().stream().anyMatch(pass -> optimizer.isEnabled(pass.getName()));
+    }
+
+    /**
+     * Determine if constant expressions are folded before the code is
+     * generated, which is done from level 1. The folding rewrites the Ast
+     * rather than the instruction lists, so it is done for either backend.
+     * @return true if the constant folding phase is run
+     */
+    public boolean isFoldingConstants() {return optimizationLevel > 0;}
+
+    /**
+     * Create the optimizer for a compilation with these options.
+     * @return A new optimizer
+     */
+    public Optimizer newOptimizer() {
+        Optimizer optimizer = new Optimizer(optimizationLevel);
+        passToggles.forEach(optimizer::setEnabled);
+        return optimizer;
+    }
+
+    /**
+     * Return a string that identifies every option that changes the
+     * generated class file. It is part of the compile cache key.
+     * @return The options that affect the output
+     */
+    public String fingerprint() {
+        StringBuilder sb = new StringBuilder("source=").append(sourceFileName);
+        if (ssa) {
+            sb.append(";ssa");
+        }
+        if (directWriter) {
+            sb.append(";writer=direct");
+        }
+        if (optimizationLevel > 0) {
+            sb.append(";O=").append(optimizationLevel);
+        }
+        if (!directWriter) {
+            passToggles.forEach((name, enabled) -> sb.append(enabled ? ";+" : ";-").append(name));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,429 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import static edu.temple.cis.c4324.microcompilerv1.PrimitiveType.BOOL;
+import static edu.temple.cis.c4324.microcompilerv1.PrimitiveType.CHAR;
+import static edu.temple.cis.c4324.microcompilerv1.PrimitiveType.INT;
+import static edu.temple.cis.c4324.microcompilerv1.PrimitiveType.REAL;
+import static edu.temple.cis.c4324.microcompilerv1.PrimitiveType.VOID;
+import edu.temple.cis.c4324.codegen.InstructionList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The constant folding phase runs between the reference and compile phases
+ * and rewrites the Ast in place. An expression whose operands are all
+ * literals is replaced by the literal of its value, computed exactly as the
+ * instructions the compile phase would generate compute it: int arithmetic
+ * wraps around, a real converted to int is truncated as d2i does, a
+ * comparison with NaN gives the result of the dcmpl or dcmpg the compiled
+ * comparison uses, and ** has the value of Math.pow that every compiled
+ * form of ** gives. A division or remainder by a zero int is left for the
+ * program to throw. An int literal that would be converted to real is
+ * written as a real literal.
+ * <p>
+ * A local variable or parameter of a procedure or function that is
+ * assigned a literal once, by a statement of the routine body itself rather
+ * than one nested in an if or loop, and never assigned anywhere else, has
+ * that value in every later statement, so its uses there are replaced by
+ * the literal. The if and elif arms whose guards fold to false are removed,
+ * and an arm whose guard folds to true becomes the else part. The phase is
+ * repeated until it finds nothing more to do, as each step may make more
+ * expressions constant.</p>
+ */
+public class ConstantFolder {
+
+    private final Ast ast;
+
+    public ConstantFolder(Ast ast) {
+        this.ast = ast;
+    }
+
+    /**
+     * Fold the constants of the Ast, whose types have been set by the
+     * reference visitor.
+     */
+    public void visit() {
+        boolean changed;
+        do {
+            // The nodes are numbered in post order, so the operands of an
+            // expression are folded before it.
+            for (int node = 0; node < ast.size(); node++) {
+                fold(node);
+            }
+            for (int node = 0; node < ast.size(); node++) {
+                if (ast.getKind(node) == Ast.IF) {
+                    prune(node);
+                }
+            }
+            changed = false;
+            for (int node = 0; node < ast.size(); node++) {
+                int kind = ast.getKind(node);
+                if (kind == Ast.PROCEDURE || kind == Ast.FUNCTION) {
+                    changed |= propagate(node);
+                }
+            }
+        } while (changed);
+    }
+
+    private void fold(int node) {
+        switch (ast.getKind(node)) {
+            case Ast.UNARY:
+                foldUnary(node);
+                break;
+            case Ast.POWER:
+                foldPower(node);
+                break;
+            case Ast.ARITHMETIC:
+                if (ast.getType(node) == REAL) {
+                    toReal(ast.getChild(node, 0));
+                    toReal(ast.getChild(node, 1));
+                }
+                foldArithmetic(node);
+                break;
+            case Ast.COMPARISON:
+                if (comparisonType(node) == REAL) {
+                    toReal(ast.getChild(node, 0));
+                    toReal(ast.getChild(node, 1));
+                }
+                foldComparison(node);
+                break;
+            case Ast.LOGICAL:
+                foldLogical(node);
+                break;
+            case Ast.ASSIGN:
+                if (ast.getType(ast.getChild(node, 0)) == REAL) {
+                    toReal(ast.getChild(node, 1));
+                }
+                break;
+        }
+    }
+
+    private void foldUnary(int node) {
+        Object operand = value(ast.getChild(node, 0));
+        if (operand == null) {
+            return;
+        }
+        switch (ast.getOp(node)) {
+            case Ast.PLUS:
+                setValue(node, operand);
+                break;
+            case Ast.MINUS:
+                if (operand instanceof Integer) {
+                    setValue(node, -(Integer) operand);
+                } else if (operand instanceof Double) {
+                    setValue(node, -(Double) operand);
+                }
+                break;
+            case Ast.COMPLEMENT:
+                if (operand instanceof Integer) {
+                    setValue(node, ~(Integer) operand);
+                }
+                break;
+            case Ast.NOT:
+                if (operand instanceof Boolean) {
+                    setValue(node, !(Boolean) operand);
+                }
+                break;
+        }
+    }
+
+    private void foldPower(int node) {
+        Object base = value(ast.getChild(node, 0));
+        Object exponent = value(ast.getChild(node, 1));
+        if (!(base instanceof Number) || !(exponent instanceof Number)) {
+            return;
+        }
+        double result = Math.pow(((Number) base).doubleValue(), ((Number) exponent).doubleValue());
+        if (ast.getType(node) == INT) {
+            setValue(node, (int) result);
+        } else if (ast.getType(node) == REAL) {
+            setValue(node, result);
+        }
+    }
+
+    private void foldArithmetic(int node) {
+        Object lhs = value(ast.getChild(node, 0));
+        Object rhs = value(ast.getChild(node, 1));
+        int op = ast.getOp(node);
+        if (ast.getType(node) == INT && lhs instanceof Integer && rhs instanceof Integer) {
+            int a = (Integer) lhs;
+            int b = (Integer) rhs;
+            switch (op) {
+                case Ast.PLUS: setValue(node, a + b); break;
+                case Ast.MINUS: setValue(node, a - b); break;
+                case Ast.TIMES: setValue(node, a * b); break;
+                case Ast.DIVIDE: if (b != 0) {setValue(node, a / b);} break;
+                case Ast.REMAINDER: if (b != 0) {setValue(node, a % b);} break;
+                case Ast.SHIFT_LEFT: setValue(node, a << b); break;
+                case Ast.SHIFT_RIGHT: setValue(node, a >> b); break;
+                case Ast.UNSIGNED_SHIFT_RIGHT: setValue(node, a >>> b); break;
+                case Ast.BITWISE_AND: setValue(node, a & b); break;
+                case Ast.BITWISE_XOR: setValue(node, a ^ b); break;
+                case Ast.BITWISE_OR: setValue(node, a | b); break;
+            }
+        } else if (ast.getType(node) == REAL && lhs instanceof Double && rhs instanceof Double) {
+            double a = (Double) lhs;
+            double b = (Double) rhs;
+            switch (op) {
+                case Ast.PLUS: setValue(node, a + b); break;
+                case Ast.MINUS: setValue(node, a - b); break;
+                case Ast.TIMES: setValue(node, a * b); break;
+                case Ast.DIVIDE: setValue(node, a / b); break;
+                case Ast.REMAINDER: setValue(node, a % b); break;
+            }
+        }
+    }
+
+    private void foldComparison(int node) {
+        Object lhs = value(ast.getChild(node, 0));
+        Object rhs = value(ast.getChild(node, 1));
+        // A comparison of chars has no compare instruction, and the error
+        // is left for the compile phase to report.
+        if (lhs == null || rhs == null || comparisonType(node) == VOID) {
+            return;
+        }
+        int op = ast.getOp(node);
+        int compare;
+        if (lhs instanceof Double && rhs instanceof Double) {
+            double a = (Double) lhs;
+            double b = (Double) rhs;
+            // As the compiled comparison, > and >= use dcmpg, which gives 1
+            // for NaN, and the others dcmpl, which gives -1.
+            if (a < b) {
+                compare = -1;
+            } else if (a > b) {
+                compare = 1;
+            } else if (a == b) {
+                compare = 0;
+            } else {
+                compare = op == Ast.GREATER || op == Ast.GREATER_EQUAL ? 1 : -1;
+            }
+        } else if (!(lhs instanceof Double) && !(rhs instanceof Double)) {
+            compare = Integer.compare(intValue(lhs), intValue(rhs));
+        } else {
+            return;
+        }
+        switch (op) {
+            case Ast.LESS: setValue(node, compare < 0); break;
+            case Ast.LESS_EQUAL: setValue(node, compare <= 0); break;
+            case Ast.GREATER_EQUAL: setValue(node, compare >= 0); break;
+            case Ast.GREATER: setValue(node, compare > 0); break;
+            case Ast.EQUAL: setValue(node, compare == 0); break;
+            default: setValue(node, compare != 0); break;
+        }
+    }
+
+    private void foldLogical(int node) {
+        Object lhs = value(ast.getChild(node, 0));
+        Object rhs = value(ast.getChild(node, 1));
+        if (!(lhs instanceof Boolean)) {
+            return;
+        }
+        // The right operand is not evaluated once the left one decides the
+        // value, so it may be dropped even if it is not constant.
+        boolean deciding = ast.getOp(node) == Ast.OR;
+        if ((Boolean) lhs == deciding) {
+            setValue(node, deciding);
+        } else if (rhs instanceof Boolean) {
+            setValue(node, rhs);
+        }
+    }
+
+    /**
+     * Write an int literal that is converted to real as a real literal.
+     */
+    private void toReal(int node) {
+        Object value = value(node);
+        if (value instanceof Integer) {
+            setValue(node, (double) (Integer) value);
+        }
+    }
+
+    /**
+     * Remove the arms of an if statement whose guards are false, and make
+     * the first arm whose guard is true the else part. An if statement that
+     * is left with no arms becomes the statements of its else part, if it
+     * has one.
+     */
+    private void prune(int node) {
+        int n = ast.getChildCount(node);
+        boolean hasElse = ast.getKind(ast.getLastChild(node)) == Ast.ELSE;
+        int arms = hasElse ? n - 1 : n;
+        // The first arm is the guard and statements of the if itself, and
+        // the others are its ELSIF children.
+        int[] guards = new int[arms - 1];
+        int[] statements = new int[arms - 1];
+        guards[0] = ast.getChild(node, 0);
+        statements[0] = ast.getChild(node, 1);
+        for (int i = 2; i < arms; i++) {
+            guards[i - 1] = ast.getChild(ast.getChild(node, i), 0);
+            statements[i - 1] = ast.getChild(ast.getChild(node, i), 1);
+        }
+        List<Integer> kept = new ArrayList<>();
+        int elsePart = hasElse ? ast.getLastChild(node) : -1;
+        int elseStatements = hasElse ? ast.getChild(elsePart, 0) : -1;
+        boolean pruned = false;
+        for (int i = 0; i < guards.length; i++) {
+            if (ast.getKind(guards[i]) != Ast.BOOL_LITERAL) {
+                kept.add(i);
+            } else if (ast.getText(guards[i]).equals("true")) {
+                // This arm is always taken if it is reached, so the arms
+                // after it and the else part are never taken. Its ELSIF node
+                // becomes the else part.
+                pruned = true;
+                elsePart = i == 0 ? -1 : ast.getChild(node, i + 1);
+                elseStatements = statements[i];
+                break;
+            } else {
+                pruned = true;
+            }
+        }
+        if (!pruned) {
+            return;
+        }
+        if (kept.isEmpty()) {
+            int[] children = {elseStatements};
+            ast.replace(node, Ast.STATEMENTS, children, 0, elseStatements < 0 ? 0 : 1);
+            return;
+        }
+        int[] children = new int[kept.size() + 2];
+        children[0] = guards[kept.get(0)];
+        children[1] = statements[kept.get(0)];
+        int count = 2;
+        for (int arm : kept.subList(1, kept.size())) {
+            children[count++] = ast.getChild(node, arm + 1);
+        }
+        if (elseStatements >= 0) {
+            int[] elseChildren = {elseStatements};
+            ast.replace(elsePart, Ast.ELSE, elseChildren, 0, 1);
+            children[count++] = elsePart;
+        }
+        ast.replace(node, Ast.IF, children, 0, count);
+    }
+
+    /**
+     * Replace the uses of the variables of a procedure or function that
+     * hold a constant.
+     * @param routine The PROCEDURE or FUNCTION node
+     * @return true if a use was replaced
+     */
+    private boolean propagate(int routine) {
+        // The nodes of the routine are numbered from its leftmost leaf up.
+        int first = routine;
+        while (ast.getChildCount(first) > 0) {
+            first = ast.getChild(first, 0);
+        }
+        Map<Identifier, Integer> assignments = new HashMap<>();
+        for (int node = first; node < routine; node++) {
+            if (ast.getKind(node) == Ast.ID_LVALUE) {
+                assignments.merge(ast.getIdentifier(node), 1, Integer::sum);
+            }
+        }
+        boolean changed = false;
+        int body = ast.getLastChild(routine);
+        int n = ast.getChildCount(body);
+        for (int i = 0; i < n; i++) {
+            int statement = ast.getChild(body, i);
+            if (ast.getKind(statement) != Ast.ASSIGN) {
+                continue;
+            }
+            int lvalue = ast.getChild(statement, 0);
+            int expr = ast.getChild(statement, 1);
+            if (ast.getKind(lvalue) != Ast.ID_LVALUE || value(expr) == null) {
+                continue;
+            }
+            Identifier id = ast.getIdentifier(lvalue);
+            if (id == null || id.isStatic() || assignments.get(id) != 1) {
+                continue;
+            }
+            Object constant = convert(value(expr), ast.getType(lvalue));
+            if (constant == null) {
+                continue;
+            }
+            // The statements that follow the assignment are numbered after it.
+            for (int node = statement + 1; node < routine; node++) {
+                if (ast.getKind(node) == Ast.ID && ast.getIdentifier(node) == id) {
+                    if (constant instanceof Character) {
+                        ast.replaceByLiteral(node, Ast.CHAR_LITERAL, ast.getText(expr), CHAR);
+                    } else {
+                        setValue(node, constant);
+                    }
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Convert a constant to the type of the variable it is assigned to, as
+     * the assignment does.
+     * @return The converted constant, or null if it is not converted
+     */
+    private static Object convert(Object value, Type type) {
+        if (type == REAL && value instanceof Integer) {
+            return (double) (Integer) value;
+        }
+        if (type == INT && value instanceof Double) {
+            return (int) (double) (Double) value;
+        }
+        if (type == INT && value instanceof Integer || type == REAL && value instanceof Double
+                || type == BOOL && value instanceof Boolean || type == CHAR && value instanceof Character) {
+            return value;
+        }
+        return null;
+    }
+
+    /**
+     * Get the value of a literal.
+     * @return An Integer, Double, Boolean or Character, or null if the node
+     * is not a literal
+     */
+    private Object value(int node) {
+        switch (ast.getKind(node)) {
+            case Ast.INT_LITERAL:
+                try {
+                    return Integer.parseInt(ast.getText(node));
+                } catch (NumberFormatException ex) {
+                    return null;
+                }
+            case Ast.REAL_LITERAL:
+                return Double.parseDouble(ast.getText(node));
+            case Ast.CHAR_LITERAL:
+                return InstructionList.charValue(ast.getText(node));
+            case Ast.BOOL_LITERAL:
+                return ast.getText(node).equals("true");
+            default:
+                return null;
+        }
+    }
+
+    private static int intValue(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return (Integer) value;
+    }
+
+    /**
+     * Replace an expression by the literal of its value.
+     */
+    private void setValue(int node, Object value) {
+        if (value instanceof Integer) {
+            ast.replaceByLiteral(node, Ast.INT_LITERAL, value.toString(), INT);
+        } else if (value instanceof Double) {
+            ast.replaceByLiteral(node, Ast.REAL_LITERAL, value.toString(), REAL);
+        } else if (value instanceof Boolean) {
+            ast.replaceByLiteral(node, Ast.BOOL_LITERAL, value.toString(), BOOL);
+        }
+    }
+
+    private Type comparisonType(int node) {
+        Type lhsType = ast.getType(ast.getChild(node, 0));
+        Type rhsType = ast.getType(ast.getChild(node, 1));
+        return ReferenceVisitor.determineExpressionResult(lhsType, rhsType);
+    }
+
+}
@@ -1,185 +1,142 @@
 package edu.temple.cis.c4324.microcompilerv1;
 
-import edu.temple.cis.c4324.micro.MicroBaseVisitor;
-import edu.temple.cis.c4324.micro.MicroParser;
-import edu.temple.cis.c4324.micro.MicroParser.PrimitiveTypeContext;
-import edu.temple.cis.c4324.micro.MicroParser.ProgramContext;
 import java.util.ArrayList;
 import java.util.List;
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
 
 
 /**
- * The definition phase visits the parse tree and defines all of the
- * identifiers.
+ * The definition phase visits the Ast and defines all of the
+ * identifiers. The scope of the program and of each procedure and function
+ * is recorded in the Ast.
  *
  * @author Paul
  */
-public class DefinitionVisitor extends MicroBaseVisitor<Type> {
+public class DefinitionVisitor {
 
-    private final ParseTreeProperty<Scope> scopeMap;
+    private Ast ast;
     private Scope globalScope;
     private Scope currentScope;
     private String programName;
 
-    public DefinitionVisitor() {
-        scopeMap = new ParseTreeProperty<>();
+    /**
+     * Get the global scope. It holds the global variables and the
+     * procedures and functions defined so far.
+     * @return The global scope
+     */
+    public Scope getGlobalScope() {
+        return globalScope;
+    }
+
+    /**
+     * Visit an Ast. Its root may be a program, or a declaration if
+     * beginProgram has been called.
+     * @param ast The Ast
+     */
+    public void visit(Ast ast) {
+        this.ast = ast;
+        visit(ast.getRoot());
     }
 
-    public ParseTreeProperty<Scope> getScopeMap() {
-        return scopeMap;
+    private void visit(int node) {
+        switch (ast.getKind(node)) {
+            case Ast.PROGRAM:
+                visitProgram(node);
+                break;
+            case Ast.PROCEDURE:
+            case Ast.FUNCTION:
+                visitProcedureOrFunction(node);
+                break;
+            case Ast.VARIABLE:
+            case Ast.PARAMETER:
+                visitSimpleDecl(node);
+                break;
+            case Ast.ARRAY_VARIABLE:
+                visitArrayVariableDecl(node);
+                break;
+            case Ast.ARRAY_PARAMETER:
+                visitArrayParamDecl(node);
+                break;
+        }
+    }
+
+    private void visitProgram(int node) {
+        beginProgram(ast.getText(node));
+        ast.setScope(node, currentScope);
+        int declarations = ast.getChildCount(node) - 1;
+        for (int i = 0; i < declarations; i++) {
+            visit(ast.getChild(node, i));
+        }
     }
 
-    @Override
-    public Type visitProgram(ProgramContext ctx) {
-        programName = ctx.ID().getText();
+    /**
+     * Create the global scope of a program. The declarations may then be
+     * visited one at a time instead of visiting the whole program.
+     * @param programName The program name
+     */
+    public void beginProgram(String programName) {
+        this.programName = programName;
         globalScope = new Scope(Scope.Kind.GLOBAL, null);
         globalScope.define(programName, null);
         currentScope = globalScope;
-        scopeMap.put(ctx, currentScope);
-        visitChildren(ctx);
-        return null;
     }
 
-    @Override
-    public Type visitProcedureDeclaration(MicroParser.ProcedureDeclarationContext ctx) {
-        String procedureName = ctx.ID().getText();
+    private void visitProcedureOrFunction(int node) {
+        String name = ast.getText(node);
+        Type returnType = ast.getKind(node) == Ast.FUNCTION
+                ? ast.getDeclaredType(node) : PrimitiveType.VOID;
         currentScope = new Scope(Scope.Kind.LOCAL, currentScope);
-        scopeMap.put(ctx, currentScope);
+        ast.setScope(node, currentScope);
         List<String> parameterNameList = new ArrayList<>();
         List<String> parameterTypeList = new ArrayList<>();
-        ctx.parameterList().parameterDeclaration().forEach(pd -> {
-            visit(pd);
-            String parameterName;
-            if (pd instanceof MicroParser.SimpleParamDeclContext) {
-                parameterName = ((MicroParser.SimpleParamDeclContext) pd).ID().getText();
-            } else {
-                parameterName = ((MicroParser.ArrayParamDeclContext) pd).ID().getText();
+        int declarations = ast.getChildCount(node) - 1;
+        int i = 0;
+        for (; i < declarations; i++) {
+            int pd = ast.getChild(node, i);
+            int kind = ast.getKind(pd);
+            if (kind != Ast.PARAMETER && kind != Ast.ARRAY_PARAMETER) {
+                break;
             }
-            parameterNameList.add(parameterName);
-            Identifier parameterId = currentScope.resolve(parameterName);
-            String parameterType = parameterId.getType().getJavaTypeName();
-            parameterTypeList.add(parameterType);
-        });
-        ProcedureOrFunction procedureType = new ProcedureOrFunction(
-                programName + "." + procedureName,
-                PrimitiveType.VOID,
-                parameterNameList,
-                parameterTypeList);
-        ctx.variableDeclaration().forEach(vd -> {
-            visit(vd);
-        });
-        currentScope = currentScope.getParent();
-        currentScope.define(procedureName, procedureType);
-        return null;
-    }
-
-    @Override
-    public Type visitFunctionDeclaration(MicroParser.FunctionDeclarationContext ctx) {
-        String functionName = ctx.ID().getText();
-        Type returnType = visit(ctx.type());
-        currentScope = new Scope(Scope.Kind.LOCAL, currentScope);
-        scopeMap.put(ctx, currentScope);
-        List<String> parameterNameList = new ArrayList<>();
-        List<String> parameterTypeList = new ArrayList<>();
-        ctx.parameterList().parameterDeclaration().forEach(pd -> {
             visit(pd);
-            String parameterName;
-            if (pd instanceof MicroParser.SimpleParamDeclContext) {
-                parameterName = ((MicroParser.SimpleParamDeclContext) pd).ID().getText();
-            } else {
-                parameterName = ((MicroParser.ArrayParamDeclContext) pd).ID().getText();
-            }
+            String parameterName = ast.getText(pd);
             parameterNameList.add(parameterName);
             Identifier parameterId = currentScope.resolve(parameterName);
             String parameterType = parameterId.getType().getJavaTypeName();
             parameterTypeList.add(parameterType);
-        });
+        }
         ProcedureOrFunction procedureType = new ProcedureOrFunction(
-                programName + "." + functionName,
+                programName + "." + name,
                 returnType,
                 parameterNameList,
                 parameterTypeList);
-        ctx.variableDeclaration().forEach(vd -> {
-            visit(vd);
-        });
-        currentScope = currentScope.getParent();
-        currentScope.define(functionName, procedureType);
-        return null;
-    }
-
-    @Override
-    public Type visitPrimitiveType(PrimitiveTypeContext ctx) {
-        String text = ctx.getText();
-        switch (text) {
-            case "int":
-                return PrimitiveType.INT;
-            case "real":
-                return PrimitiveType.REAL;
-            case "char":
-                return PrimitiveType.CHAR;
-            case "bool":
-                return PrimitiveType.BOOL;
+        for (; i < declarations; i++) {
+            visit(ast.getChild(node, i));
         }
-        return null;
+        currentScope = currentScope.getParent();
+        currentScope.define(name, procedureType);
     }
 
-    @Override
-    public Type visitSimpleVariableDecl(MicroParser.SimpleVariableDeclContext ctx) {
-        String idName = ctx.ID().getText();
-        Type type = visit(ctx.type());
+    private void visitSimpleDecl(int node) {
+        String idName = ast.getText(node);
+        Type type = ast.getDeclaredType(node);
         if (!currentScope.define(idName, type)) {
-            MicroCompilerV1.error(ctx, idName + " is already defined");
+            MicroCompilerV1.error(ast, node, idName + " is already defined");
         }
-        return type;
     }
 
-    /**
-     * {@inheritDoc}
-     *
-     * <p>
-     * The default implementation returns the result of calling
-     * {@link #visitChildren} on {@code ctx}.</p>
-     */
-    @Override
-    public Type visitArrayVariableDecl(MicroParser.ArrayVariableDeclContext ctx) {
-        String arrayVariableName = ctx.ID().getText();
-        Type componentType = visit(ctx.primitiveType());
-        int length = Integer.parseInt(ctx.INT().getText());
+    private void visitArrayVariableDecl(int node) {
+        String arrayVariableName = ast.getText(node);
+        Type componentType = ast.getDeclaredType(node);
+        int length = Integer.parseInt(ast.getText(ast.getChild(node, 0)));
         ArrayType arrayType = new ArrayType(componentType, length);
-        Identifier id = new Identifier(arrayVariableName, arrayType, currentScope);
         currentScope.define(arrayVariableName, arrayType);
-        return arrayType;
-    }
-
-    @Override
-    public Type visitSimpleParamDecl(MicroParser.SimpleParamDeclContext ctx) {
-        String idName = ctx.ID().getText();
-        Type type = visit(ctx.type());
-        if (!currentScope.define(idName, type)) {
-            MicroCompilerV1.error(ctx, idName + " is already defined");
-        }
-        return type;
     }
 
-    /**
-     * {@inheritDoc}
-     *
-     * <p>
-     * The default implementation returns the result of calling
-     * {@link #visitChildren} on {@code ctx}.</p>
-     * @param ctx The current parse tree node
-     * @return The type of this node.
-     */
-    @Override
-    public Type visitArrayParamDecl(MicroParser.ArrayParamDeclContext ctx) {
-        String idName = ctx.ID().getText();
-        PrimitiveType componentType = (PrimitiveType)visit(ctx.primitiveType());
-        ArrayType arrayType = new ArrayType(componentType, 0);
+    private void visitArrayParamDecl(int node) {
+        String idName = ast.getText(node);
+        ArrayType arrayType = new ArrayType(ast.getDeclaredType(node), 0);
         if (!currentScope.define(idName, arrayType)) {
-            MicroCompilerV1.error(ctx, idName + " is already defined");
+            MicroCompilerV1.error(ast, node, idName + " is already defined");
         }
-        return arrayType;
     }
 
 }
@@ -0,0 +1,33 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+/**
+ * Class to represent an error message reported against a source position.
+ */
+public class Diagnostic {
+
+    private final int line;
+    private final int column;
+    private final String message;
+
+    public Diagnostic(int line, int column, String message) {
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    public int getLine() {return line;}
+
+    public int getColumn() {return column;}
+
+    public String getMessage() {return message;}
+
+    /**
+     * Format the diagnostic the same way ANTLR reports syntax errors.
+     * @return line:column followed by the message
+     */
+    @Override
+    public String toString() {
+        return String.format("line %d:%d %s", line, column, message);
+    }
+
+}
@@ -0,0 +1,271 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import edu.temple.cis.c4324.micro.MicroLexer;
+import edu.temple.cis.c4324.micro.MicroParser;
+import java.io.Reader;
+import java.util.concurrent.atomic.AtomicLong;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Class to hold a lexer and parser that are reused from one compilation to
+ * the next. The lexer and parser are reset for each input, so a long running
+ * process does not construct new recognizers for every file. A FrontEnd may
+ * only be used by one thread at a time; use forCurrentThread to get one.
+ * <p>
+ * Programs are parsed in two stages. The first stage uses SLL prediction,
+ * which is much cheaper on the long expressions of the left recursive expr
+ * rule, and gives up at the first syntax error. Only if it gives up is the
+ * program parsed again with full LL prediction and the usual error
+ * recovery, so the parse tree and the syntax errors are the same as a
+ * single LL parse would give.</p>
+ * <p>
+ * A FrontEnd also holds a MicroScanner and an AstParser, the hand written
+ * alternative to the generated lexer and parser, which build the Ast
+ * directly.</p>
+ */
+public class FrontEnd {
+
+    private static final ThreadLocal<FrontEnd> perThread = ThreadLocal.withInitial(FrontEnd::new);
+
+    private static final AtomicLong sllParses = new AtomicLong();
+    private static final AtomicLong llFallbacks = new AtomicLong();
+    private static final AtomicLong descentParses = new AtomicLong();
+    private static final AtomicLong descentFallbacks = new AtomicLong();
+
+    /**
+     * Listener for the scanner of the hand written front end. Its errors are
+     * not reported, since the program is then compiled again with the
+     * generated lexer and parser, which report them.
+     */
+    private static final ANTLRErrorListener ignoreErrors = new BaseErrorListener();
+
+    /**
+     * Token factory for unbuffered input. The characters of a token are gone
+     * from an unbuffered char stream once the token is consumed, so the text
+     * is copied into each token when it is created.
+     */
+    private static final CommonTokenFactory copyingTokenFactory = new CommonTokenFactory(true);
+
+    private final MicroLexer lexer;
+    private final MicroParser parser;
+    private final BailErrorStrategy bailErrorStrategy;
+    private final DefaultErrorStrategy defaultErrorStrategy;
+    private MicroScanner scanner;
+    private AstParser astParser;
+    private boolean twoStage;
+    private boolean fellBack;
+
+    public FrontEnd() {
+        lexer = new MicroLexer(null);
+        parser = new MicroParser(null);
+        bailErrorStrategy = new BailErrorStrategy();
+        defaultErrorStrategy = new DefaultErrorStrategy();
+        twoStage = true;
+    }
+
+    /**
+     * Return the FrontEnd owned by the calling thread.
+     * @return The FrontEnd for this thread
+     */
+    public static FrontEnd forCurrentThread() {
+        return perThread.get();
+    }
+
+    /**
+     * Parse a program.
+     * @param input The source text
+     * @param errorListener The listener for syntax errors
+     * @return The parse tree
+     */
+    public ParseTree parse(CharStream input, ANTLRErrorListener errorListener) {
+        return parse(tokenize(input, errorListener), errorListener);
+    }
+
+    /**
+     * Attach the lexer to a new input. Tokens are produced as the parser
+     * asks for them unless the stream is filled first.
+     * @param input The source text
+     * @param errorListener The listener for lexical errors
+     * @return The token stream
+     */
+    public CommonTokenStream tokenize(CharStream input, ANTLRErrorListener errorListener) {
+        lexer.setInputStream(input);
+        lexer.setTokenFactory(CommonTokenFactory.DEFAULT);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errorListener);
+        return new CommonTokenStream(lexer);
+    }
+
+    /**
+     * Attach the lexer to a reader without buffering the input. Only the
+     * characters of the current token and the tokens the parser is looking
+     * ahead at are kept in memory, so a stream may not be rewound.
+     * @param reader The source text
+     * @param errorListener The listener for lexical errors
+     * @return The token stream
+     */
+    public TokenStream tokenize(Reader reader, ANTLRErrorListener errorListener) {
+        lexer.setInputStream(new UnbufferedCharStream(reader));
+        lexer.setTokenFactory(copyingTokenFactory);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errorListener);
+        return new UnbufferedTokenStream<Token>(lexer);
+    }
+
+    /**
+     * Attach the parser to a token stream so that the caller can parse one
+     * rule at a time. Since an unbuffered stream cannot be parsed twice,
+     * LL prediction and the usual error recovery are used from the start.
+     * The caller must remove any parse listeners it adds.
+     * @param tokens The token stream
+     * @param errorListener The listener for syntax errors
+     * @return The parser
+     */
+    public MicroParser parser(TokenStream tokens, ANTLRErrorListener errorListener) {
+        parser.setTokenStream(tokens);
+        parser.removeErrorListeners();
+        parser.removeParseListeners();
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.setErrorHandler(defaultErrorStrategy);
+        parser.addErrorListener(errorListener);
+        fellBack = false;
+        return parser;
+    }
+
+    /**
+     * Parse a program from a token stream returned by tokenize.
+     * @param tokens The token stream
+     * @param errorListener The listener for syntax errors
+     * @return The parse tree
+     */
+    public ParseTree parse(CommonTokenStream tokens, ANTLRErrorListener errorListener) {
+        parser.setTokenStream(tokens);
+        parser.removeErrorListeners();
+        fellBack = false;
+        if (twoStage) {
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.setErrorHandler(bailErrorStrategy);
+            try {
+                ParseTree tree = parser.program();
+                sllParses.incrementAndGet();
+                return tree;
+            } catch (ParseCancellationException ex) {
+                llFallbacks.incrementAndGet();
+                fellBack = true;
+                parser.reset();
+            }
+        }
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.setErrorHandler(defaultErrorStrategy);
+        parser.addErrorListener(errorListener);
+        return parser.program();
+    }
+
+    /**
+     * Scan a program with the hand written scanner. Token recognition
+     * errors are counted but not reported.
+     * @param text The source text
+     * @param length The number of characters of source text
+     * @return The scanner holding the tokens
+     */
+    public MicroScanner scan(char[] text, int length) {
+        if (scanner == null) {
+            scanner = new MicroScanner();
+        }
+        scanner.scan(text, length, ignoreErrors);
+        return scanner;
+    }
+
+    /**
+     * Parse the tokens of the last program scanned with the recursive
+     * descent parser.
+     * @return The Ast, or null if the program has a token recognition error
+     * or the parser gave up, in which case it must be parsed with the
+     * generated parser instead
+     */
+    public Ast parseAst() {
+        if (astParser == null) {
+            astParser = new AstParser();
+        }
+        Ast ast = scanner.getErrorCount() == 0 ? astParser.parse(scanner) : null;
+        if (ast != null) {
+            descentParses.incrementAndGet();
+        } else {
+            descentFallbacks.incrementAndGet();
+        }
+        return ast;
+    }
+
+    /**
+     * Detach the lexer and parser from their input, so that the tokens and
+     * the source text of the last program are not kept alive by a FrontEnd
+     * that is waiting to be reused.
+     */
+    public void release() {
+        parser.setTokenStream(null);
+        lexer.setInputStream(null);
+        if (scanner != null) {
+            scanner.release();
+        }
+    }
+
+    /**
+     * Determine if programs are parsed with SLL prediction first.
+     * @return true if two stage parsing is enabled (the default)
+     */
+    public boolean isTwoStage() {return twoStage;}
+
+    public void setTwoStage(boolean twoStage) {
+        this.twoStage = twoStage;
+    }
+
+    /**
+     * Determine if the last parse had to be repeated with LL prediction.
+     * @return true if the SLL stage gave up
+     */
+    public boolean fellBack() {return fellBack;}
+
+    /**
+     * Get the number of programs parsed by the SLL stage alone, by every
+     * FrontEnd in this process.
+     * @return The number of SLL parses
+     */
+    public static long getSllParses() {return sllParses.get();}
+
+    /**
+     * Get the number of programs that had to be parsed again with LL
+     * prediction, by every FrontEnd in this process. Programs with syntax
+     * errors always fall back.
+     * @return The number of LL fallbacks
+     */
+    public static long getLlFallbacks() {return llFallbacks.get();}
+
+    /**
+     * Get the number of programs parsed by the recursive descent parser, by
+     * every FrontEnd in this process.
+     * @return The number of recursive descent parses
+     */
+    public static long getDescentParses() {return descentParses.get();}
+
+    /**
+     * Get the number of programs the recursive descent parser gave up on,
+     * by every FrontEnd in this process. Programs with syntax errors always
+     * fall back to the generated parser.
+     * @return The number of fallbacks to the generated parser
+     */
+    public static long getDescentFallbacks() {return descentFallbacks.get();}
+
+}
@@ -1,7 +1,15 @@
 package edu.temple.cis.c4324.microcompilerv1;
 
+import edu.temple.cis.c4324.codegen.Backend;
+import edu.temple.cis.c4324.codegen.CodeGenerator;
+
 /**
- *
+ * An identifier and where it is stored. A global variable is a static field
+ * of the program class and any other variable is a local variable of its
+ * method. Each use of an identifier is bound to its Identifier by the
+ * reference visitor, so that code generation can emit loads and stores
+ * from the slot, type and field reference kept here without looking the
+ * name up again.
  * @author Paul
  */
 public class Identifier {
@@ -9,11 +17,21 @@ public class Identifier {
     private final String name;
     private final Type type;
     private final Scope scope;
+    private final org.apache.bcel.generic.Type storageType;
+    private int slot;
+    private int fieldRef;
     
     public Identifier(String name, Type type, Scope scope) {
         this.name = name;
         this.type = type;
         this.scope = scope;
+        if (type instanceof PrimitiveType || type instanceof ArrayType) {
+            storageType = CodeGenerator.getType(type.getJavaTypeName());
+        } else {
+            storageType = null;
+        }
+        slot = -1;
+        fieldRef = -1;
     }
     
     public Type getType() {return type;}
@@ -21,5 +39,73 @@ public class Identifier {
     public Scope getScope() {return scope;}
     
     public String getName() {return name;}
+
+    /**
+     * Determine if this identifier is stored in a static field.
+     * @return true for a global variable
+     */
+    public boolean isStatic() {return scope.getKind() == Scope.Kind.GLOBAL;}
+
+    /**
+     * Get the type of the field or local variable holding this identifier.
+     * @return The BCEL type, or null if this is not a variable
+     */
+    public org.apache.bcel.generic.Type getStorageType() {return storageType;}
+
+    /**
+     * Get the index of the local variable, which is assigned when its
+     * method is generated.
+     * @return The index, or -1 if it has not been assigned
+     */
+    public int getSlot() {return slot;}
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * Get the constant pool index of the field reference of a static field,
+     * or of the method reference of a procedure or function.
+     * @return The index, or -1 if it is not yet in the constant pool
+     */
+    public int getFieldRef() {return fieldRef;}
+
+    public void setFieldRef(int fieldRef) {
+        this.fieldRef = fieldRef;
+    }
+
+    /**
+     * Get the constant pool index of the static field of a global variable,
+     * adding the reference to the constant pool on its first use.
+     * @param cg The backend generating the class
+     * @return The index of the Fieldref constant
+     */
+    public int fieldRef(Backend cg) {
+        if (fieldRef < 0) {
+            fieldRef = cg.getFieldRef(cg.getClassName(), name, storageType);
+        }
+        return fieldRef;
+    }
+
+    /**
+     * Get the constant pool index of the method of a procedure or function,
+     * adding the reference to the constant pool on its first use.
+     * @param cg The backend generating the class
+     * @return The index of the Methodref constant
+     */
+    public int methodRef(Backend cg) {
+        if (fieldRef < 0) {
+            String[] invocationArgs = ((ProcedureOrFunction) type).getInvocationArgs();
+            String classAndMethod = invocationArgs[0];
+            int lastDot = classAndMethod.lastIndexOf('.');
+            org.apache.bcel.generic.Type[] argumentTypes = new org.apache.bcel.generic.Type[invocationArgs.length - 2];
+            for (int i = 0; i < argumentTypes.length; i++) {
+                argumentTypes[i] = CodeGenerator.getType(invocationArgs[i + 2]);
+            }
+            fieldRef = cg.getMethodRef(classAndMethod.substring(0, lastDot), classAndMethod.substring(lastDot + 1),
+                    CodeGenerator.getType(invocationArgs[1]), argumentTypes);
+        }
+        return fieldRef;
+    }
     
 }
@@ -0,0 +1,51 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Class loader for programs compiled in memory by MicroCompiler. Each
+ * program is defined in its own loader, so programs with the same name can
+ * be loaded side by side and are unloaded when no longer referenced.
+ */
+public class MicroClassLoader extends ClassLoader {
+
+    public MicroClassLoader(ClassLoader parent) {
+        super(parent);
+    }
+
+    public MicroClassLoader() {
+        this(MicroClassLoader.class.getClassLoader());
+    }
+
+    /**
+     * Define the class produced by a compilation.
+     * @param result A successful compile result
+     * @return The loaded class
+     */
+    public Class<?> define(CompileResult result) {
+        if (!result.isSuccess()) {
+            throw new IllegalArgumentException("The compilation did not succeed");
+        }
+        byte[] bytes = result.getClassBytes();
+        return defineClass(result.getClassName(), bytes, 0, bytes.length);
+    }
+
+    /**
+     * Load a compiled program into a new loader and run its main method on
+     * the calling thread.
+     * @param result A successful compile result
+     * @param args The arguments passed to main
+     * @throws InvocationTargetException if the program throws an exception
+     */
+    public static void runMain(CompileResult result, String... args) throws InvocationTargetException {
+        Class<?> programClass = new MicroClassLoader().define(result);
+        try {
+            Method main = programClass.getMethod("main", String[].class);
+            main.invoke(null, (Object) args);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+}
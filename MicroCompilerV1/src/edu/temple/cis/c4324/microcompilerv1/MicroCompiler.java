@@ -0,0 +1,98 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import edu.temple.cis.c4324.codegen.Backend;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Library interface to the compiler. Source text is compiled in memory and
+ * the class file bytes are returned; nothing is written to the file system.
+ * The methods may be called from several threads at once.
+ */
+public class MicroCompiler {
+
+    private MicroCompiler() {
+    }
+
+    /**
+     * Compile a program using the default options.
+     * @param text The program text
+     * @return The class bytes and diagnostics
+     */
+    public static CompileResult compile(String text) {
+        return compile(text, new CompilerOptions());
+    }
+
+    /**
+     * Compile a program.
+     * @param text The program text
+     * @param options The compiler options
+     * @return The class bytes and diagnostics
+     */
+    public static CompileResult compile(String text, CompilerOptions options) {
+        Compilation compilation = new Compilation(options);
+        Backend backend;
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        try {
+            backend = compilation.compile(text, FrontEnd.forCurrentThread());
+            diagnostics.addAll(compilation.getDiagnostics());
+        } catch (RuntimeException ex) {
+            backend = null;
+            diagnostics.addAll(compilation.getDiagnostics());
+            diagnostics.add(new Diagnostic(0, 0, ex.toString()));
+        }
+        return result(compilation, backend, diagnostics);
+    }
+
+    /**
+     * Compile a source file. If the options enable streaming the file is
+     * compiled one routine at a time without reading all of it into memory;
+     * otherwise it is read and compiled as by compile(String, ...).
+     * @param source The source file
+     * @param options The compiler options
+     * @return The class bytes and diagnostics
+     * @throws IOException if the file cannot be read
+     */
+    public static CompileResult compile(Path source, CompilerOptions options) throws IOException {
+        if (!options.isStreaming()) {
+            return compile(new String(Files.readAllBytes(source), StandardCharsets.UTF_8), options);
+        }
+        Compilation compilation = new Compilation(options);
+        Backend backend;
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        try {
+            backend = compilation.compileStreaming(source, FrontEnd.forCurrentThread());
+            diagnostics.addAll(compilation.getDiagnostics());
+        } catch (RuntimeException ex) {
+            backend = null;
+            diagnostics.addAll(compilation.getDiagnostics());
+            diagnostics.add(new Diagnostic(0, 0, ex.toString()));
+        }
+        return result(compilation, backend, diagnostics);
+    }
+
+    private static CompileResult result(Compilation compilation, Backend backend,
+            List<Diagnostic> diagnostics) {
+        CompileProfile profile = compilation.getProfile();
+        if (backend == null) {
+            return new CompileResult(null, null, diagnostics, profile);
+        }
+        if (profile != null) {
+            profile.begin(CompileProfile.DUMP);
+        }
+        byte[] classBytes;
+        try {
+            classBytes = backend.getClassBytes();
+        } finally {
+            if (profile != null) {
+                profile.end();
+            }
+        }
+        return new CompileResult(backend.getClassName(), classBytes, diagnostics, profile);
+    }
+
+}
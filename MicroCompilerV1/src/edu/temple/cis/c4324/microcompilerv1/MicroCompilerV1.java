@@ -1,64 +1,172 @@
 package edu.temple.cis.c4324.microcompilerv1;
 
-import edu.temple.cis.c4324.codegen.CodeGenerator;
-import edu.temple.cis.c4324.micro.MicroLexer;
-import edu.temple.cis.c4324.micro.MicroParser;
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
-import org.apache.bcel.classfile.JavaClass;
 
 public class MicroCompilerV1 {
-    
-    private static boolean errorOccured = false;
 
     /**
+     * The compiler version. It is part of the compile cache key, so it must
+     * be changed whenever the generated code changes.
+     */
+    public static final String VERSION = "1.7";
+
+    /**
+     * Compile one or more Micro programs. With a single file argument the
+     * file is compiled on the calling thread. With several files, a
+     * directory, or the -j option the files are compiled in batch mode.
+     * <pre>
+     * MicroCompilerV1 [options] &lt;file or directory&gt;...
+     *   -j &lt;threads&gt;        compile in batch mode on this many threads
+     *   -cache &lt;dir&gt;        reuse classes compiled from identical sources
+     *   -cache-size &lt;MB&gt;    bound on the size of the cache (default 64)
+     *   -cache-stats        print the cache hit and miss statistics
+     *   -profile &lt;file&gt;     write a JSON report of the time, CPU time and
+     *                       allocation of each compiler phase
+     *   -stream             compile one routine at a time, so that memory use
+     *                       does not grow with the size of the file
+     *   -rd                 parse with the hand written recursive descent
+     *                       parser instead of the ANTLR parser
+     *   -parallel-check     type check the procedures and functions of a
+     *                       program concurrently
+     *   -direct             write the class file directly instead of
+     *                       building it with BCEL
+     *   -O0, -O1, -O2       the optimization level (default 0); -O1 folds
+     *                       constants and runs the peephole passes and -O2
+     *                       also threads jumps and removes unreachable code.
+     *                       With -direct the constants are only folded.
+     *   -ssa                compile each routine through the SSA
+     *                       intermediate representation
+     *   -enable-pass &lt;name&gt;  run an optimization pass whatever the level;
+     *                       not with -direct
+     *   -disable-pass &lt;name&gt; do not run an optimization pass
+     * </pre>
+     * The change each optimization pass makes to the number of instructions
+     * is part of the -profile report.
      * @param args the command line arguments
      * @throws java.lang.Exception
      */
     public static void main(String[] args) throws Exception {
-        String inputFileName = args[0];
-        int lastDot = inputFileName.lastIndexOf(".");
-        String outputFileName;
-        if (lastDot != -1) {
-            outputFileName = inputFileName.substring(0, lastDot) + ".class";
+        int threads = 0;
+        String cacheDirectory = null;
+        long cacheMegabytes = 64;
+        boolean printCacheStatistics = false;
+        String profileFileName = null;
+        boolean streaming = false;
+        boolean recursiveDescent = false;
+        boolean parallelChecking = false;
+        boolean directWriter = false;
+        boolean ssa = false;
+        CompilerOptions options = new CompilerOptions();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-j":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-cache":
+                    cacheDirectory = args[++i];
+                    break;
+                case "-cache-size":
+                    cacheMegabytes = Long.parseLong(args[++i]);
+                    break;
+                case "-cache-stats":
+                    printCacheStatistics = true;
+                    break;
+                case "-profile":
+                    profileFileName = args[++i];
+                    break;
+                case "-stream":
+                    streaming = true;
+                    break;
+                case "-rd":
+                    recursiveDescent = true;
+                    break;
+                case "-parallel-check":
+                    parallelChecking = true;
+                    break;
+                case "-direct":
+                    directWriter = true;
+                    break;
+                case "-ssa":
+                    ssa = true;
+                    break;
+                case "-O0":
+                case "-O1":
+                case "-O2":
+                    options.setOptimizationLevel(args[i].charAt(2) - '0');
+                    break;
+                case "-enable-pass":
+                    options.setPassEnabled(args[++i], true);
+                    break;
+                case "-disable-pass":
+                    options.setPassEnabled(args[++i], false);
+                    break;
+                default:
+                    paths.add(args[i]);
+            }
+        }
+        CompileCache cache = null;
+        if (cacheDirectory != null) {
+            cache = new CompileCache(new File(cacheDirectory), cacheMegabytes * 1024 * 1024);
+        }
+        if (directWriter && options.getPassToggles().containsValue(true)) {
+            System.err.println("-direct does not run the instruction list passes, so they cannot be enabled with it");
+            System.exit(1);
+        }
+        options.setProfiling(profileFileName != null);
+        options.setStreaming(streaming);
+        options.setRecursiveDescent(recursiveDescent);
+        options.setParallelChecking(parallelChecking);
+        options.setDirectWriter(directWriter);
+        options.setSsa(ssa);
+        List<BatchCompiler.Result> results;
+        if (threads == 0 && paths.size() == 1 && !new File(paths.get(0)).isDirectory()) {
+            BatchCompiler.Result result = BatchCompiler.compileFile(paths.get(0), options, cache);
+            result.getDiagnostics().forEach(d -> System.err.println(d));
+            results = Collections.singletonList(result);
         } else {
-            outputFileName = inputFileName + ".class";
+            if (threads == 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            long start = System.nanoTime();
+            BatchCompiler batchCompiler = new BatchCompiler(threads, options, cache);
+            results = batchCompiler.compileAll(BatchCompiler.collectSources(paths));
+            BatchCompiler.printSummary(results, System.nanoTime() - start, System.out);
+        }
+        if (profileFileName != null) {
+            List<CompileProfile> profiles = new ArrayList<>();
+            results.stream().filter(result -> result.getProfile() != null)
+                    .forEach(result -> profiles.add(result.getProfile()));
+            Files.write(Paths.get(profileFileName),
+                    CompileProfile.toJson(profiles).getBytes(StandardCharsets.UTF_8));
+        }
+        if (printCacheStatistics && cache != null) {
+            System.out.println(cache);
+        }
+        int status = BatchCompiler.exitStatus(results);
+        if (status != 0) {
+            System.exit(status);
         }
-        InputStream inStream = new FileInputStream(inputFileName);      
-        ANTLRInputStream input = new ANTLRInputStream(new InputStreamReader(inStream, "UTF-8"));
-        MicroLexer lexer = new MicroLexer(input);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-        MicroParser parser = new MicroParser(tokens);
-        ParseTree tree = parser.program();
-        DefinitionVisitor defVisitor = new DefinitionVisitor();
-        defVisitor.visit(tree);
-        ParseTreeProperty<Scope> scopeMap = defVisitor.getScopeMap();
-        ReferenceVisitor refVisitor = new ReferenceVisitor(scopeMap);
-        refVisitor.visit(tree);
-        ParseTreeProperty<Type> typeMap = refVisitor.getTypeMap();
-        CodeGenerator cg = new CodeGenerator();
-        CompileVisitor visitor = new CompileVisitor(scopeMap, typeMap, inputFileName, cg);
-        visitor.visit(tree);
-        JavaClass javaClass = cg.getJavaClass();
-        javaClass.dump(outputFileName);
     }
 
     public static void error(Token t, String msg) {
-        errorOccured = true;
-        System.err.printf("line %d:%d %s\n", t.getLine(), t.getCharPositionInLine(),
-                msg);
-        throw new RuntimeException(msg);
+        throw new CompileError(new Diagnostic(t.getLine(), t.getCharPositionInLine(), msg));
     }
 
     public static void error(ParserRuleContext ctx, String msg) {
         error(ctx.getStart(), msg);
     }
 
+    public static void error(Ast ast, int node, String msg) {
+        throw new CompileError(new Diagnostic(ast.getLine(node), ast.getColumn(node), msg));
+    }
+
 }
@@ -0,0 +1,526 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import edu.temple.cis.c4324.micro.MicroLexer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.Token;
+
+/**
+ * A hand written scanner for the tokens of Micro.g4. It recognizes exactly
+ * the tokens that MicroLexer does, with the same token types, positions and
+ * token recognition errors, but scans a char array directly and records the
+ * tokens in parallel int arrays instead of creating a Token object for each.
+ * Token i is described by its kind, the index of its first character, the
+ * index after its last character, and the line and column of its first
+ * character. The last token is always EOF.
+ * <p>
+ * Like MicroLexer, a token is the longest match at the current position
+ * and a keyword is preferred to an identifier of the same length. An
+ * unknown character is reported and skipped. A ':' or '!' that is not
+ * followed by '=' is reported together with the character after it, and
+ * both are skipped, since that is what the generated lexer does.</p>
+ * The arrays are reused from one input to the next, so a scanner may only
+ * be used by one thread at a time.
+ */
+public class MicroScanner {
+
+    public static final int EOF = Token.EOF;
+    public static final int PROGRAM = 1;
+    public static final int BEGIN = 2;
+    public static final int END = 3;
+    public static final int SEMI = 4;
+    public static final int PROCEDURE = 5;
+    public static final int LPAREN = 6;
+    public static final int RPAREN = 7;
+    public static final int FUNCTION = 8;
+    public static final int COMMA = 9;
+    public static final int LBRACKET = 10;
+    public static final int RBRACKET = 11;
+    public static final int INT_TYPE = 12;
+    public static final int REAL_TYPE = 13;
+    public static final int CHAR_TYPE = 14;
+    public static final int BOOL_TYPE = 15;
+    public static final int READ = 16;
+    public static final int WRITE = 17;
+    public static final int ASSIGN = 18;
+    public static final int CALL = 19;
+    public static final int RETURN = 20;
+    public static final int IF = 21;
+    public static final int THEN = 22;
+    public static final int FI = 23;
+    public static final int ELIF = 24;
+    public static final int ELSE = 25;
+    public static final int WHILE = 26;
+    public static final int DO = 27;
+    public static final int OD = 28;
+    public static final int UNTIL = 29;
+    public static final int PLUS = 30;
+    public static final int MINUS = 31;
+    public static final int COMPLEMENT = 32;
+    public static final int NOT = 33;
+    public static final int POWER = 34;
+    public static final int TIMES = 35;
+    public static final int DIVIDE = 36;
+    public static final int REMAINDER = 37;
+    public static final int SHIFT_LEFT = 38;
+    public static final int SHIFT_RIGHT = 39;
+    public static final int UNSIGNED_SHIFT_RIGHT = 40;
+    public static final int LESS = 41;
+    public static final int LESS_EQUAL = 42;
+    public static final int GREATER_EQUAL = 43;
+    public static final int GREATER = 44;
+    public static final int EQUAL = 45;
+    public static final int NOT_EQUAL = 46;
+    public static final int BITWISE_AND = 47;
+    public static final int BITWISE_XOR = 48;
+    public static final int BITWISE_OR = 49;
+    public static final int AND = 50;
+    public static final int OR = 51;
+    public static final int BOOL = MicroLexer.BOOL;
+    public static final int ID = MicroLexer.ID;
+    public static final int INT = MicroLexer.INT;
+    public static final int FLOAT = MicroLexer.FLOAT;
+    public static final int CHAR = MicroLexer.CHAR;
+
+    private char[] chars;
+    private int length;
+    private int[] kinds;
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    private int[] columns;
+    private int size;
+    private int errors;
+    private CharsetDecoder decoder;
+    private CharBuffer decoded;
+
+    public MicroScanner() {
+        kinds = new int[256];
+        starts = new int[256];
+        ends = new int[256];
+        lines = new int[256];
+        columns = new int[256];
+    }
+
+    /**
+     * Scan a string.
+     * @param input The source text
+     * @param errorListener The listener for token recognition errors
+     * @return The number of tokens, including EOF
+     */
+    public int scan(String input, ANTLRErrorListener errorListener) {
+        return scan(input.toCharArray(), input.length(), errorListener);
+    }
+
+    /**
+     * Scan UTF-8 encoded source text. The text is decoded into a buffer
+     * that is reused for the next input; malformed input is replaced, as
+     * it is when a file is read through a Reader. The position of input is
+     * not changed.
+     * @param input The source text
+     * @param errorListener The listener for token recognition errors
+     * @return The number of tokens, including EOF
+     */
+    public int scan(ByteBuffer input, ANTLRErrorListener errorListener) {
+        if (decoder == null) {
+            decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        // A UTF-8 byte never decodes to more than one char.
+        if (decoded == null || decoded.capacity() < input.remaining()) {
+            decoded = CharBuffer.allocate(input.remaining());
+        }
+        decoded.clear();
+        decoder.reset();
+        decoder.decode(input.duplicate(), decoded, true);
+        decoder.flush(decoded);
+        return scan(decoded.array(), decoded.position(), errorListener);
+    }
+
+    /**
+     * Scan the first length characters of an array. The array is kept
+     * until the next input is scanned, and must not be changed before then.
+     * @param input The source text
+     * @param length The number of characters to scan
+     * @param errorListener The listener for token recognition errors
+     * @return The number of tokens, including EOF
+     */
+    public int scan(char[] input, int length, ANTLRErrorListener errorListener) {
+        this.chars = input;
+        this.length = length;
+        size = 0;
+        errors = 0;
+        char[] c = input;
+        int pos = 0;
+        int line = 1;
+        int lineStart = 0;
+        while (pos < length) {
+            int start = pos;
+            int kind;
+            char ch = c[pos++];
+            switch (ch) {
+                case ' ':
+                case '\t':
+                case '\r':
+                    continue;
+                case '\n':
+                    line++;
+                    lineStart = pos;
+                    continue;
+                case ';':
+                    kind = SEMI;
+                    break;
+                case '(':
+                    kind = LPAREN;
+                    break;
+                case ')':
+                    kind = RPAREN;
+                    break;
+                case ',':
+                    kind = COMMA;
+                    break;
+                case '[':
+                    kind = LBRACKET;
+                    break;
+                case ']':
+                    kind = RBRACKET;
+                    break;
+                case '+':
+                    kind = PLUS;
+                    break;
+                case '-':
+                    kind = MINUS;
+                    break;
+                case '~':
+                    kind = COMPLEMENT;
+                    break;
+                case '\u00ac':
+                    kind = NOT;
+                    break;
+                case '/':
+                    kind = DIVIDE;
+                    break;
+                case '%':
+                    kind = REMAINDER;
+                    break;
+                case '=':
+                    kind = EQUAL;
+                    break;
+                case '&':
+                    kind = BITWISE_AND;
+                    break;
+                case '^':
+                    kind = BITWISE_XOR;
+                    break;
+                case '|':
+                    kind = BITWISE_OR;
+                    break;
+                case '\u2227':
+                    kind = AND;
+                    break;
+                case '\u2228':
+                    kind = OR;
+                    break;
+                case '*':
+                    if (pos < length && c[pos] == '*') {
+                        pos++;
+                        kind = POWER;
+                    } else {
+                        kind = TIMES;
+                    }
+                    break;
+                case '<':
+                    if (pos < length && c[pos] == '<') {
+                        pos++;
+                        kind = SHIFT_LEFT;
+                    } else if (pos < length && c[pos] == '=') {
+                        pos++;
+                        kind = LESS_EQUAL;
+                    } else {
+                        kind = LESS;
+                    }
+                    break;
+                case '>':
+                    if (pos < length && c[pos] == '>') {
+                        pos++;
+                        if (pos < length && c[pos] == '>') {
+                            pos++;
+                            kind = UNSIGNED_SHIFT_RIGHT;
+                        } else {
+                            kind = SHIFT_RIGHT;
+                        }
+                    } else if (pos < length && c[pos] == '=') {
+                        pos++;
+                        kind = GREATER_EQUAL;
+                    } else {
+                        kind = GREATER;
+                    }
+                    break;
+                case ':':
+                case '!':
+                    if (pos < length && c[pos] == '=') {
+                        pos++;
+                        kind = ch == ':' ? ASSIGN : NOT_EQUAL;
+                        break;
+                    }
+                    // The generated lexer fails on the character after the
+                    // ':' or '!', reports both and skips both.
+                    if (pos < length) {
+                        error(start, pos + 1, line, start - lineStart, errorListener);
+                        if (c[pos] == '\n') {
+                            line++;
+                            lineStart = pos + 1;
+                        }
+                        pos++;
+                    } else {
+                        error(start, pos, line, start - lineStart, errorListener);
+                    }
+                    continue;
+                case '\'': {
+                    int startLine = line;
+                    int startLineStart = lineStart;
+                    while (pos < length && c[pos] != '\'') {
+                        if (c[pos] == '\n') {
+                            line++;
+                            lineStart = pos + 1;
+                        }
+                        pos++;
+                    }
+                    if (pos == length) {
+                        error(start, pos, startLine, start - startLineStart, errorListener);
+                        continue;
+                    }
+                    pos++;
+                    add(CHAR, start, pos, startLine, start - startLineStart);
+                    continue;
+                }
+                default:
+                    if (isLetter(ch)) {
+                        while (pos < length && (isLetter(c[pos]) || isDigit(c[pos]))) {
+                            pos++;
+                        }
+                        kind = identifierKind(c, start, pos - start);
+                    } else if (isDigit(ch)) {
+                        while (pos < length && isDigit(c[pos])) {
+                            pos++;
+                        }
+                        if (pos < length && c[pos] == '.') {
+                            pos++;
+                            while (pos < length && isDigit(c[pos])) {
+                                pos++;
+                            }
+                            kind = FLOAT;
+                        } else {
+                            kind = INT;
+                        }
+                    } else {
+                        error(start, pos, line, start - lineStart, errorListener);
+                        continue;
+                    }
+            }
+            add(kind, start, pos, line, start - lineStart);
+        }
+        add(EOF, length, length, line, length - lineStart);
+        return size;
+    }
+
+    private static boolean isLetter(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_';
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    /**
+     * Find the kind of a word: a keyword, a bool literal or an identifier.
+     */
+    private static int identifierKind(char[] c, int start, int length) {
+        switch (c[start]) {
+            case 'b':
+                if (is(c, start, length, "begin")) return BEGIN;
+                if (is(c, start, length, "bool")) return BOOL_TYPE;
+                break;
+            case 'c':
+                if (is(c, start, length, "call")) return CALL;
+                if (is(c, start, length, "char")) return CHAR_TYPE;
+                break;
+            case 'd':
+                if (is(c, start, length, "do")) return DO;
+                break;
+            case 'e':
+                if (is(c, start, length, "end")) return END;
+                if (is(c, start, length, "elif")) return ELIF;
+                if (is(c, start, length, "else")) return ELSE;
+                break;
+            case 'f':
+                if (is(c, start, length, "fi")) return FI;
+                if (is(c, start, length, "function")) return FUNCTION;
+                if (is(c, start, length, "false")) return BOOL;
+                break;
+            case 'i':
+                if (is(c, start, length, "if")) return IF;
+                if (is(c, start, length, "int")) return INT_TYPE;
+                break;
+            case 'o':
+                if (is(c, start, length, "od")) return OD;
+                break;
+            case 'p':
+                if (is(c, start, length, "program")) return PROGRAM;
+                if (is(c, start, length, "procedure")) return PROCEDURE;
+                break;
+            case 'r':
+                if (is(c, start, length, "read")) return READ;
+                if (is(c, start, length, "real")) return REAL_TYPE;
+                if (is(c, start, length, "return")) return RETURN;
+                break;
+            case 't':
+                if (is(c, start, length, "then")) return THEN;
+                if (is(c, start, length, "true")) return BOOL;
+                break;
+            case 'u':
+                if (is(c, start, length, "until")) return UNTIL;
+                break;
+            case 'w':
+                if (is(c, start, length, "write")) return WRITE;
+                if (is(c, start, length, "while")) return WHILE;
+                break;
+        }
+        return ID;
+    }
+
+    private static boolean is(char[] c, int start, int length, String word) {
+        if (length != word.length()) {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            if (c[start + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(int kind, int start, int end, int line, int column) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        columns[size] = column;
+        size++;
+    }
+
+    /**
+     * Report a token recognition error with the message MicroLexer gives.
+     */
+    private void error(int start, int end, int line, int column, ANTLRErrorListener errorListener) {
+        errors++;
+        StringBuilder text = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            char ch = chars[i];
+            switch (ch) {
+                case '\n':
+                    text.append("\\n");
+                    break;
+                case '\t':
+                    text.append("\\t");
+                    break;
+                case '\r':
+                    text.append("\\r");
+                    break;
+                default:
+                    text.append(ch);
+            }
+        }
+        errorListener.syntaxError(null, null, line, column,
+                "token recognition error at: '" + text + "'", null);
+    }
+
+    /**
+     * Drop the reference to the last input, so that a scanner waiting to be
+     * reused does not keep the source text alive.
+     */
+    public void release() {
+        chars = null;
+        length = 0;
+        size = 0;
+    }
+
+    /**
+     * Get the number of tokens of the last input, including EOF.
+     * @return The number of tokens
+     */
+    public int size() {return size;}
+
+    /**
+     * Get the number of token recognition errors in the last input.
+     * @return The number of errors
+     */
+    public int getErrorCount() {return errors;}
+
+    /**
+     * Get the characters of the last input. Only the first getLength
+     * characters are source text.
+     * @return The characters
+     */
+    public char[] getChars() {return chars;}
+
+    public int getLength() {return length;}
+
+    public int getKind(int token) {return kinds[token];}
+
+    /**
+     * Get the index of the first character of a token.
+     * @param token The token
+     * @return The start index
+     */
+    public int getStart(int token) {return starts[token];}
+
+    /**
+     * Get the index after the last character of a token.
+     * @param token The token
+     * @return The end index
+     */
+    public int getEnd(int token) {return ends[token];}
+
+    public int getLine(int token) {return lines[token];}
+
+    public int getColumn(int token) {return columns[token];}
+
+    /**
+     * Get the text of a token. A new string is created on each call.
+     * @param token The token
+     * @return The text, or &lt;EOF&gt; for the EOF token
+     */
+    public String getText(int token) {
+        if (kinds[token] == EOF) {
+            return "<EOF>";
+        }
+        return new String(chars, starts[token], ends[token] - starts[token]);
+    }
+
+    /**
+     * Get the name of a kind of token as ANTLR displays it, such as 'begin'
+     * or ID.
+     * @param kind The token kind
+     * @return The display name
+     */
+    public static String kindName(int kind) {
+        return MicroLexer.VOCABULARY.getDisplayName(kind);
+    }
+
+}
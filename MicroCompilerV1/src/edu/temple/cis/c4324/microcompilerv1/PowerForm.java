@@ -0,0 +1,87 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+/**
+ * The ways a ** node is compiled, and the choice among them, which the
+ * compile visitor and the IR builder share. The power is defined by
+ * Math.pow on the operands converted to double, with an int result
+ * converted back by d2i, so an int power too large for an int is
+ * Integer.MAX_VALUE or MIN_VALUE and one with a negative exponent is
+ * truncated. The other forms give the same results without calling
+ * Math.pow:
+ * <ul>
+ * <li>CHAIN: a power of 0, 1 or 2 is 1.0, the base, or the base times
+ * itself, and an int power of 3 or 4 is the base multiplied in double,
+ * which is exact while the result fits in an int;</li>
+ * <li>SQRT: a real power of 0.5 is the square root, which Math.pow returns
+ * for a base with no sign bit;</li>
+ * <li>SHIFT: an int power of 2 is 1 shifted by the exponent when that is
+ * from 0 to 30;</li>
+ * <li>METHOD: any other int power is found by the power method generated
+ * in the class, which never leaves integer arithmetic.</li>
+ * </ul>
+ * Anything else is POW, a call of Math.pow.
+ */
+public final class PowerForm {
+
+    public static final int POW = 0;
+    public static final int CHAIN = 1;
+    public static final int SQRT = 2;
+    public static final int SHIFT = 3;
+    public static final int METHOD = 4;
+
+    private PowerForm() {
+    }
+
+    /**
+     * Choose how a ** node is compiled.
+     * @param ast The Ast, with the types found by the reference visitor
+     * @param node The POWER node
+     * @return One of the forms
+     */
+    public static int of(Ast ast, int node) {
+        boolean intResult = ast.getType(node) == PrimitiveType.INT;
+        double exponent = literalValue(ast, ast.getChild(node, 1));
+        if (exponent == 0.5 && !intResult) {
+            return SQRT;
+        }
+        if (exponent == 0 || exponent == 1 || exponent == 2 || intResult && (exponent == 3 || exponent == 4)) {
+            return CHAIN;
+        }
+        if (intResult) {
+            return literalValue(ast, ast.getChild(node, 0)) == 2 ? SHIFT : METHOD;
+        }
+        return POW;
+    }
+
+    /**
+     * Get the exponent of a ** node compiled as a CHAIN.
+     * @param ast The Ast
+     * @param node The POWER node
+     * @return The exponent, from 0 to 4
+     */
+    public static int chainExponent(Ast ast, int node) {
+        return (int) literalValue(ast, ast.getChild(node, 1));
+    }
+
+    /**
+     * Get the value of an int or real literal.
+     * @param ast The Ast
+     * @param node The node
+     * @return The value, or NaN if the node is not a number literal
+     */
+    public static double literalValue(Ast ast, int node) {
+        switch (ast.getKind(node)) {
+            case Ast.INT_LITERAL:
+                try {
+                    return Integer.parseInt(ast.getText(node));
+                } catch (NumberFormatException ex) {
+                    return Double.NaN;
+                }
+            case Ast.REAL_LITERAL:
+                return Double.parseDouble(ast.getText(node));
+            default:
+                return Double.NaN;
+        }
+    }
+
+}
@@ -23,5 +23,19 @@ public enum PrimitiveType implements Type {
         }
         return "error";
     }
+
+    /**
+     * Get the type of the JVM values of this type.
+     * @return The BCEL type
+     */
+    public org.apache.bcel.generic.Type getStorageType() {
+        switch(this) {
+            case INT: return org.apache.bcel.generic.Type.INT;
+            case REAL: return org.apache.bcel.generic.Type.DOUBLE;
+            case CHAR: return org.apache.bcel.generic.Type.CHAR;
+            case BOOL: return org.apache.bcel.generic.Type.BOOLEAN;
+        }
+        return org.apache.bcel.generic.Type.VOID;
+    }
     
 }
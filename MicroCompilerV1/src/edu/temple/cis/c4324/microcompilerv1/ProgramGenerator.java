@@ -0,0 +1,697 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Class to generate large, valid Micro programs for scaling tests. The
+ * generator follows the rules of Micro.g4: there is one method for each
+ * rule it uses, and each method only emits text that the rule accepts.
+ * The programs also pass the reference pass and the code generator: every
+ * expression is well typed, every local is assigned before it is read,
+ * divisors are non-zero constants, array indexes are in range and loops
+ * run a fixed number of times. Functions only call functions declared
+ * before them and procedures only call procedures declared before them, and
+ * there are no calls inside loops, so a generated program also runs
+ * quickly. The same seed and settings always give the same program.
+ * <p>
+ * Some of the language is left out because this compiler rejects it or
+ * generates bad code for it: the &amp;, ^ and | operators, which the
+ * grammar parses as postfix operators without a right operand; char
+ * locals, parameters and arrays; comparisons and arithmetic on chars; and
+ * reading into an array element. Chars are therefore only global
+ * variables that are assigned and written, and read statements only read
+ * int globals. A program that reads needs that many ints on its standard
+ * input, so there are none unless setReads asks for them.
+ */
+public class ProgramGenerator {
+
+    private static final String[] INT_OPS = {"+", "-", "*", "/", "%", "<<", ">>", ">>>"};
+    private static final String[] REAL_OPS = {"+", "-", "*", "/"};
+    private static final String[] COMPARE_OPS = {"<", "<=", ">=", ">", "=", "!="};
+    private static final String AND = "\u2227";
+    private static final String OR = "\u2228";
+    private static final String NOT = "\u00ac";
+    private static final int LOOP_COUNT = 2;
+
+    private enum Kind {
+        INT("int"), REAL("real"), BOOL("bool"), CHAR("char");
+
+        private final String keyword;
+
+        Kind(String keyword) {
+            this.keyword = keyword;
+        }
+
+        boolean isNumeric() {return this == INT || this == REAL;}
+    }
+
+    private static class Variable {
+
+        private final String name;
+        private final Kind kind;
+
+        Variable(String name, Kind kind) {
+            this.name = name;
+            this.kind = kind;
+        }
+    }
+
+    private static class Routine {
+
+        private final String name;
+        private final Kind returnKind;
+        private final List<Variable> parameters;
+
+        Routine(String name, Kind returnKind, List<Variable> parameters) {
+            this.name = name;
+            this.returnKind = returnKind;
+            this.parameters = parameters;
+        }
+    }
+
+    private int procedures;
+    private int functions;
+    private int globals;
+    private int arrays;
+    private int arraySize;
+    private int locals;
+    private int statements;
+    private int depth;
+    private int expressionLength;
+    private int targetLines;
+    private int reads;
+    private long seed;
+
+    private Random random;
+    private StringBuilder sb;
+    private int lines;
+    private List<Variable> globalVariables;
+    private List<Variable> globalArrays;
+    private List<Routine> functionList;
+    private List<Routine> procedureList;
+    private List<Variable> scalars;
+    private int callableFunctions;
+    private int callableProcedures;
+    private int nesting;
+    private int loopDepth;
+
+    public ProgramGenerator() {
+        procedures = 10;
+        functions = 10;
+        globals = 10;
+        arrays = 2;
+        arraySize = 16;
+        locals = 4;
+        statements = 20;
+        depth = 3;
+        expressionLength = 4;
+        seed = 4324;
+    }
+
+    public int getProcedures() {return procedures;}
+    public void setProcedures(int procedures) {this.procedures = procedures;}
+    public int getFunctions() {return functions;}
+    public void setFunctions(int functions) {this.functions = functions;}
+    public int getGlobals() {return globals;}
+    public void setGlobals(int globals) {this.globals = globals;}
+    public int getArrays() {return arrays;}
+    public void setArrays(int arrays) {this.arrays = arrays;}
+    public int getArraySize() {return arraySize;}
+    public void setArraySize(int arraySize) {this.arraySize = Math.max(arraySize, LOOP_COUNT);}
+    public int getLocals() {return locals;}
+    public void setLocals(int locals) {this.locals = locals;}
+
+    /**
+     * Get the number of statements in the top level of each body. Nested
+     * statements are not counted.
+     * @return The statements per body
+     */
+    public int getStatements() {return statements;}
+    public void setStatements(int statements) {this.statements = statements;}
+
+    /**
+     * Get the maximum nesting depth of if and while statements.
+     * @return The nesting depth
+     */
+    public int getDepth() {return depth;}
+    public void setDepth(int depth) {this.depth = depth;}
+
+    /**
+     * Get the number of operands in a generated arithmetic expression.
+     * @return The expression length
+     */
+    public int getExpressionLength() {return expressionLength;}
+    public void setExpressionLength(int expressionLength) {this.expressionLength = Math.max(expressionLength, 1);}
+
+    /**
+     * Get the approximate number of lines to generate. If it is not zero
+     * the procedure and function counts are ignored; procedures and
+     * functions are added in turn until the program is this long.
+     * @return The number of lines, or zero
+     */
+    public int getTargetLines() {return targetLines;}
+    public void setTargetLines(int targetLines) {this.targetLines = targetLines;}
+
+    /**
+     * Get the number of int globals the main body reads before its other
+     * statements. The program needs that many ints on its standard input.
+     * @return The number of values read
+     */
+    public int getReads() {return reads;}
+    public void setReads(int reads) {this.reads = reads;}
+    public long getSeed() {return seed;}
+    public void setSeed(long seed) {this.seed = seed;}
+
+    /**
+     * Generate a program.
+     * @param programName The program name
+     * @return The program text
+     */
+    public String generate(String programName) {
+        random = new Random(seed);
+        sb = new StringBuilder();
+        lines = 0;
+        globalVariables = new ArrayList<>();
+        globalArrays = new ArrayList<>();
+        functionList = new ArrayList<>();
+        procedureList = new ArrayList<>();
+        program(programName);
+        return sb.toString();
+    }
+
+    /**
+     * Count the lines of a program.
+     * @param text The program text
+     * @return The number of lines
+     */
+    public static int lineCount(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // program: 'program' ID decleration* body
+    private void program(String programName) {
+        line(0, "program " + programName);
+        for (int i = 0; i < depth; i++) {
+            // Loop counters are not scalars, so nothing but the loop that
+            // owns a counter assigns it.
+            variableDeclaration(1, "i" + i, Kind.INT);
+        }
+        for (int i = 0; i < globals; i++) {
+            // Only globals can be chars.
+            Variable global = new Variable("g" + i, Kind.values()[i % 4]);
+            variableDeclaration(1, global.name, global.kind);
+            globalVariables.add(global);
+        }
+        for (int i = 0; i < arrays; i++) {
+            Variable array = new Variable("a" + i, i % 2 == 0 ? Kind.INT : Kind.REAL);
+            line(1, array.kind.keyword + " " + array.name + "[" + arraySize + "];");
+            globalArrays.add(array);
+        }
+        if (targetLines > 0) {
+            // Leave room for the main body, which calls every routine.
+            int mainLines = statements * 2 + globals + 2;
+            while (lines + mainLines + functionList.size() + procedureList.size() < targetLines) {
+                if (functionList.size() <= procedureList.size()) {
+                    functionDeclaration();
+                } else {
+                    procedureDeclaration();
+                }
+            }
+        } else {
+            for (int i = 0; i < functions; i++) {
+                functionDeclaration();
+            }
+            for (int i = 0; i < procedures; i++) {
+                procedureDeclaration();
+            }
+        }
+        scalars = new ArrayList<>(globalVariables);
+        callableFunctions = functionList.size();
+        callableProcedures = procedureList.size();
+        line(0, "begin");
+        for (Variable global : globalVariables) {
+            line(1, global.name + " := " + literal(global.kind) + ";");
+        }
+        read_statement(1);
+        statement_list(1, statements);
+        for (Routine procedure : procedureList) {
+            line(1, "call " + call(procedure) + ";");
+        }
+        for (Routine function : functionList) {
+            line(1, "write(" + call(function) + ");");
+        }
+        line(0, "end;");
+    }
+
+    private void variableDeclaration(int indent, String name, Kind kind) {
+        line(indent, kind.keyword + " " + name + ";");
+    }
+
+    // functionDeclaration: 'function' type ID '(' parameterList ')' (variableDeclaration ';')* body
+    private void functionDeclaration() {
+        Kind returnKind = random.nextBoolean() ? Kind.INT : Kind.REAL;
+        Routine function = new Routine("f" + functionList.size(), returnKind, parameterList());
+        callableFunctions = functionList.size();
+        callableProcedures = 0;
+        routine("function " + returnKind.keyword + " " + function.name, function);
+        functionList.add(function);
+    }
+
+    // procedureDeclaration: 'procedure' ID '(' parameterList ')' (variableDeclaration ';')* body
+    private void procedureDeclaration() {
+        Routine procedure = new Routine("p" + procedureList.size(), null, parameterList());
+        callableFunctions = functionList.size();
+        callableProcedures = procedureList.size();
+        routine("procedure " + procedure.name, procedure);
+        procedureList.add(procedure);
+    }
+
+    // parameterList: parameterDeclaration (',' parameterDeclaration)* |
+    private List<Variable> parameterList() {
+        int count = random.nextInt(4);
+        List<Variable> parameters = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            parameters.add(new Variable("x" + i, random.nextBoolean() ? Kind.INT : Kind.REAL));
+        }
+        return parameters;
+    }
+
+    private void routine(String heading, Routine routine) {
+        StringBuilder header = new StringBuilder(heading).append("(");
+        String sep = "";
+        for (Variable parameter : routine.parameters) {
+            header.append(sep).append(parameter.kind.keyword).append(" ").append(parameter.name);
+            sep = ", ";
+        }
+        line(1, header.append(")").toString());
+        scalars = new ArrayList<>(globalVariables);
+        scalars.addAll(routine.parameters);
+        for (int i = 0; i < depth; i++) {
+            variableDeclaration(2, "i" + i, Kind.INT);
+        }
+        List<Variable> localVariables = new ArrayList<>();
+        for (int i = 0; i < locals; i++) {
+            Variable local = new Variable("v" + i, Kind.values()[i % 3]);
+            variableDeclaration(2, local.name, local.kind);
+            localVariables.add(local);
+        }
+        // body: 'begin' statement_list 'end' ';'
+        line(1, "begin");
+        for (Variable local : localVariables) {
+            line(2, local.name + " := " + literal(local.kind) + ";");
+        }
+        scalars.addAll(localVariables);
+        statement_list(2, statements);
+        if (routine.returnKind != null) {
+            line(2, "return " + expr(routine.returnKind, expressionLength) + ";");
+        }
+        line(1, "end;");
+    }
+
+    // statement_list: statement*
+    private void statement_list(int indent, int count) {
+        for (int i = 0; i < count; i++) {
+            statement(indent);
+        }
+    }
+
+    // statement: assignment_statement | call_statement | if_statement | while_statement
+    //     | do_until_statement | write_statement
+    private void statement(int indent) {
+        int choice = random.nextInt(20);
+        if (choice < 3 && nesting < depth) {
+            if_statement(indent);
+        } else if (choice < 4 && nesting < depth) {
+            while_statement(indent);
+        } else if (choice < 5 && nesting < depth) {
+            do_until_statement(indent);
+        } else if (choice < 6 && callableProcedures > 0 && loopDepth == 0) {
+            line(indent, "call " + call(procedureList.get(random.nextInt(callableProcedures))) + ";");
+        } else if (choice < 7) {
+            write_statement(indent);
+        } else {
+            assignment_statement(indent);
+        }
+    }
+
+    // read_statement: 'read' '(' lvalue_list ')' ';'
+    private void read_statement(int indent) {
+        List<String> targets = new ArrayList<>();
+        for (Variable global : globalVariables) {
+            if (global.kind == Kind.INT && targets.size() < reads) {
+                targets.add(global.name);
+            }
+        }
+        if (!targets.isEmpty()) {
+            line(indent, "read(" + String.join(", ", targets) + ");");
+        }
+    }
+
+    // write_statement: 'write' '(' expr_list ')' ';'
+    private void write_statement(int indent) {
+        Variable character = random.nextInt(4) == 0 ? variableOf(Kind.CHAR) : null;
+        if (character != null) {
+            line(indent, "write(" + character.name + ", ' ');");
+        } else {
+            line(indent, "write(" + expr(randomNumericKind(), expressionLength) + ");");
+        }
+    }
+
+    // assignment_statement: lvalue ':=' expr ';'
+    private void assignment_statement(int indent) {
+        if (!globalArrays.isEmpty() && random.nextInt(4) == 0) {
+            Variable array = globalArrays.get(random.nextInt(globalArrays.size()));
+            line(indent, array.name + "[" + index() + "] := " + expr(array.kind, expressionLength) + ";");
+        } else {
+            Variable target = scalars.get(random.nextInt(scalars.size()));
+            line(indent, target.name + " := " + expr(target.kind, expressionLength) + ";");
+        }
+    }
+
+    // if_statement: 'if' expr 'then' statement_list elsif_part* else_part? 'fi' ';'
+    private void if_statement(int indent) {
+        int armLength = 1 + random.nextInt(3);
+        nesting++;
+        line(indent, "if " + expr(Kind.BOOL, expressionLength) + " then");
+        statement_list(indent + 1, armLength);
+        int elifs = random.nextInt(4);
+        for (int i = 0; i < elifs; i++) {
+            // elsif_part: 'elif' expr 'then' statement_list
+            line(indent, "elif " + expr(Kind.BOOL, expressionLength) + " then");
+            statement_list(indent + 1, armLength);
+        }
+        if (random.nextBoolean()) {
+            // else_part: 'else' statement_list
+            line(indent, "else");
+            statement_list(indent + 1, armLength);
+        }
+        nesting--;
+        line(indent, "fi;");
+    }
+
+    // while_statement: 'while' expr 'do' statement_list 'od' ';'
+    private void while_statement(int indent) {
+        String counter = "i" + loopDepth;
+        line(indent, counter + " := 0;");
+        line(indent, "while " + counter + " < " + LOOP_COUNT + " do");
+        nesting++;
+        loopDepth++;
+        statement_list(indent + 1, 1 + random.nextInt(3));
+        loopDepth--;
+        nesting--;
+        line(indent + 1, counter + " := " + counter + " + 1;");
+        line(indent, "od;");
+    }
+
+    // do_until_statement: 'do' statement_list 'od' 'until' expr ';'
+    private void do_until_statement(int indent) {
+        String counter = "i" + loopDepth;
+        line(indent, counter + " := 0;");
+        line(indent, "do");
+        nesting++;
+        loopDepth++;
+        statement_list(indent + 1, 1 + random.nextInt(3));
+        loopDepth--;
+        nesting--;
+        line(indent + 1, counter + " := " + counter + " + 1;");
+        line(indent, "od until " + counter + " >= " + LOOP_COUNT + ";");
+    }
+
+    private String call(Routine routine) {
+        StringBuilder call = new StringBuilder(routine.name).append("(");
+        String sep = "";
+        for (Variable parameter : routine.parameters) {
+            call.append(sep).append(expr(parameter.kind, 2, false));
+            sep = ", ";
+        }
+        return call.append(")").toString();
+    }
+
+    private String expr(Kind kind, int length) {
+        return expr(kind, length, loopDepth == 0);
+    }
+
+    // expr: the arithop, compop, logicalop, powop and unaryop alternatives
+    private String expr(Kind kind, int length, boolean allowCalls) {
+        StringBuilder expr = new StringBuilder();
+        if (kind == Kind.CHAR) {
+            Variable variable = random.nextBoolean() ? variableOf(Kind.CHAR) : null;
+            return variable != null ? variable.name : literal(Kind.CHAR);
+        }
+        if (kind == Kind.BOOL) {
+            int comparisons = Math.max(1, length / 2);
+            for (int i = 0; i < comparisons; i++) {
+                if (i > 0) {
+                    expr.append(random.nextBoolean() ? " " + AND + " " : " " + OR + " ");
+                }
+                expr.append(boolOperand(length, allowCalls));
+            }
+            return expr.toString();
+        }
+        // Arguments and return values are not converted, so a real
+        // expression must have a real type even if every other operand is
+        // an int. Starting with a real operand makes sure of that.
+        expr.append(kind == Kind.REAL ? realOperand() : operand(kind, allowCalls));
+        for (int i = 1; i < length; i++) {
+            String op = kind == Kind.INT
+                    ? INT_OPS[random.nextInt(INT_OPS.length)]
+                    : REAL_OPS[random.nextInt(REAL_OPS.length)];
+            expr.append(" ").append(op).append(" ");
+            switch (op) {
+                case "/":
+                case "%":
+                    expr.append(kind == Kind.INT ? 1 + random.nextInt(9) : (1 + random.nextInt(9)) + ".5");
+                    break;
+                case "<<":
+                case ">>":
+                case ">>>":
+                    expr.append(1 + random.nextInt(4));
+                    break;
+                default:
+                    expr.append(operand(kind, allowCalls));
+            }
+        }
+        return expr.toString();
+    }
+
+    private String boolOperand(int length, boolean allowCalls) {
+        int choice = random.nextInt(10);
+        if (choice == 0) {
+            return random.nextBoolean() ? "true" : "false";
+        }
+        if (choice == 1) {
+            Variable variable = variableOf(Kind.BOOL);
+            if (variable != null) {
+                return variable.name;
+            }
+        }
+        Kind kind = randomNumericKind();
+        int operandLength = Math.max(1, length / 2);
+        String comparison = expr(kind, operandLength, allowCalls) + " "
+                + COMPARE_OPS[random.nextInt(COMPARE_OPS.length)] + " "
+                + expr(kind, operandLength, allowCalls);
+        return choice == 2 ? NOT + "(" + comparison + ")" : comparison;
+    }
+
+    private String operand(Kind kind, boolean allowCalls) {
+        switch (random.nextInt(9)) {
+            case 0:
+                return literal(kind);
+            case 1:
+            case 2: {
+                Variable variable = variableOf(kind);
+                return variable != null ? variable.name : literal(kind);
+            }
+            case 3: {
+                Variable array = arrayOf(kind);
+                return array != null ? array.name + "[" + index() + "]" : literal(kind);
+            }
+            case 4:
+                if (allowCalls && callableFunctions > 0) {
+                    Routine function = functionList.get(random.nextInt(callableFunctions));
+                    if (function.returnKind == kind || kind == Kind.REAL) {
+                        return call(function);
+                    }
+                }
+                return literal(kind);
+            case 5:
+                return "(" + expr(kind, 2, false) + ")";
+            case 6:
+                return (kind == Kind.INT && random.nextBoolean() ? "~" : "-") + operand(kind, false);
+            case 7:
+                return "(" + operand(kind, false) + " ** 2)";
+            default:
+                return "(" + operand(kind, false) + " ** " + exponent(kind) + ")";
+        }
+    }
+
+    /**
+     * Get the exponent of a power: a small int, an int variable, or for a
+     * real power also one half.
+     */
+    private String exponent(Kind kind) {
+        int choice = random.nextInt(4);
+        if (choice == 0) {
+            Variable variable = variableOf(Kind.INT);
+            if (variable != null) {
+                return variable.name;
+            }
+        } else if (choice == 1 && kind == Kind.REAL) {
+            return "0.5";
+        }
+        return Integer.toString(random.nextInt(6));
+    }
+
+    private String realOperand() {
+        for (Variable variable : scalars) {
+            if (variable.kind == Kind.REAL && random.nextBoolean()) {
+                return variable.name;
+            }
+        }
+        return literal(Kind.REAL);
+    }
+
+    private Variable variableOf(Kind kind) {
+        int start = random.nextInt(scalars.size() + 1);
+        for (int i = 0; i < scalars.size(); i++) {
+            Variable variable = scalars.get((start + i) % scalars.size());
+            if (variable.kind == kind || (kind == Kind.REAL && variable.kind == Kind.INT)) {
+                return variable;
+            }
+        }
+        return null;
+    }
+
+    private Variable arrayOf(Kind kind) {
+        for (Variable array : globalArrays) {
+            if (array.kind == kind || (kind == Kind.REAL && array.kind == Kind.INT)) {
+                return array;
+            }
+        }
+        return null;
+    }
+
+    private String index() {
+        if (loopDepth > 0 && random.nextBoolean()) {
+            return "i" + random.nextInt(loopDepth);
+        }
+        return Integer.toString(random.nextInt(arraySize));
+    }
+
+    private String literal(Kind kind) {
+        switch (kind) {
+            case INT:
+                return Integer.toString(random.nextInt(100));
+            case REAL:
+                return random.nextInt(100) + "." + random.nextInt(10);
+            case CHAR:
+                return "'" + (char) ('a' + random.nextInt(26)) + "'";
+            default:
+                return random.nextBoolean() ? "true" : "false";
+        }
+    }
+
+    private Kind randomNumericKind() {
+        return random.nextBoolean() ? Kind.INT : Kind.REAL;
+    }
+
+    private void line(int indent, String text) {
+        for (int i = 0; i < indent; i++) {
+            sb.append("    ");
+        }
+        sb.append(text).append('\n');
+        lines++;
+    }
+
+    /**
+     * Write a generated program to a file.
+     * <pre>
+     * ProgramGenerator [options] &lt;file.mic&gt;
+     *   -lines &lt;n&gt;          approximate length; overrides the routine counts
+     *   -procedures &lt;n&gt;     number of procedures
+     *   -functions &lt;n&gt;      number of functions
+     *   -globals &lt;n&gt;        number of global scalars
+     *   -arrays &lt;n&gt;         number of global arrays
+     *   -locals &lt;n&gt;         number of locals in each routine
+     *   -statements &lt;n&gt;     statements in the top level of each body
+     *   -depth &lt;n&gt;          nesting depth of if and while statements
+     *   -expr &lt;n&gt;           operands in each expression
+     *   -reads &lt;n&gt;          int globals read by the main body
+     *   -seed &lt;n&gt;           random seed
+     * </pre>
+     * The program name is the file name without the extension.
+     * @param args the command line arguments
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        ProgramGenerator generator = new ProgramGenerator();
+        String fileName = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-lines":
+                    generator.setTargetLines(Integer.parseInt(args[++i]));
+                    break;
+                case "-procedures":
+                    generator.setProcedures(Integer.parseInt(args[++i]));
+                    break;
+                case "-functions":
+                    generator.setFunctions(Integer.parseInt(args[++i]));
+                    break;
+                case "-globals":
+                    generator.setGlobals(Integer.parseInt(args[++i]));
+                    break;
+                case "-arrays":
+                    generator.setArrays(Integer.parseInt(args[++i]));
+                    break;
+                case "-locals":
+                    generator.setLocals(Integer.parseInt(args[++i]));
+                    break;
+                case "-statements":
+                    generator.setStatements(Integer.parseInt(args[++i]));
+                    break;
+                case "-depth":
+                    generator.setDepth(Integer.parseInt(args[++i]));
+                    break;
+                case "-expr":
+                    generator.setExpressionLength(Integer.parseInt(args[++i]));
+                    break;
+                case "-reads":
+                    generator.setReads(Integer.parseInt(args[++i]));
+                    break;
+                case "-seed":
+                    generator.setSeed(Long.parseLong(args[++i]));
+                    break;
+                default:
+                    fileName = args[i];
+            }
+        }
+        if (fileName == null) {
+            System.err.println("Usage: ProgramGenerator [options] <file.mic>");
+            System.exit(1);
+        }
+        String programName = Paths.get(fileName).getFileName().toString();
+        int lastDot = programName.lastIndexOf('.');
+        if (lastDot != -1) {
+            programName = programName.substring(0, lastDot);
+        }
+        String text = generator.generate(programName);
+        try (Writer out = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            out.write(text);
+        }
+        System.out.println(fileName + ": " + lineCount(text) + " lines");
+    }
+
+}
@@ -1,463 +1,548 @@
 package edu.temple.cis.c4324.microcompilerv1;
 
-import edu.temple.cis.c4324.micro.MicroBaseVisitor;
-import edu.temple.cis.c4324.micro.MicroParser.ArithopContext;
-import edu.temple.cis.c4324.micro.MicroParser.ArrayLvalueContext;
-import edu.temple.cis.c4324.micro.MicroParser.ArrayAccessContext;
-import edu.temple.cis.c4324.micro.MicroParser.Assignment_statementContext;
-import edu.temple.cis.c4324.micro.MicroParser.BoolContext;
-import edu.temple.cis.c4324.micro.MicroParser.CharContext;
-import edu.temple.cis.c4324.micro.MicroParser.CompopContext;
-import edu.temple.cis.c4324.micro.MicroParser.Elsif_partContext;
-import edu.temple.cis.c4324.micro.MicroParser.FcnCallContext;
-import edu.temple.cis.c4324.micro.MicroParser.FloatContext;
-import edu.temple.cis.c4324.micro.MicroParser.FunctionDeclarationContext;
-import edu.temple.cis.c4324.micro.MicroParser.IdContext;
-import edu.temple.cis.c4324.micro.MicroParser.IdLvalueContext;
-import edu.temple.cis.c4324.micro.MicroParser.ProgramContext;
 import static edu.temple.cis.c4324.microcompilerv1.PrimitiveType.BOOL;
 import static edu.temple.cis.c4324.microcompilerv1.PrimitiveType.VOID;
-import edu.temple.cis.c4324.micro.MicroParser.If_statementContext;
-import edu.temple.cis.c4324.micro.MicroParser.IntContext;
-import edu.temple.cis.c4324.micro.MicroParser.LogicalopContext;
-import edu.temple.cis.c4324.micro.MicroParser.ParensContext;
-import edu.temple.cis.c4324.micro.MicroParser.PowopContext;
-import edu.temple.cis.c4324.micro.MicroParser.ProcedureDeclarationContext;
-import edu.temple.cis.c4324.micro.MicroParser.UnaryopContext;
-import edu.temple.cis.c4324.micro.MicroParser.While_statementContext;
 import static edu.temple.cis.c4324.microcompilerv1.MicroCompilerV1.error;
 import static edu.temple.cis.c4324.microcompilerv1.PrimitiveType.CHAR;
 import static edu.temple.cis.c4324.microcompilerv1.PrimitiveType.REAL;
 import static edu.temple.cis.c4324.microcompilerv1.PrimitiveType.INT;
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
-
-public class ReferenceVisitor extends MicroBaseVisitor<Type> {
-
-    private final ParseTreeProperty<Scope> scopeMap;
-    private final ParseTreeProperty<Type> typeMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The reference phase checks each use of an identifier and the types of the
+ * expressions. The type of each expression and lvalue is recorded in the
+ * Ast, and each declaration and each use of a name is bound to its
+ * Identifier.
+ * <p>
+ * Once the definition phase has filled in the scopes, checking a procedure
+ * or function body only reads the global scope and its own local scope, and
+ * only writes the annotations of its own nodes. If a fork/join pool is
+ * given, the routines of a program and the main body are therefore checked
+ * concurrently, each by its own visitor. The error reported is still the
+ * first one a sequential check would find: that of the first routine, in
+ * source order, that has an error.</p>
+ */
+public class ReferenceVisitor {
+
+    private final Ast ast;
 
     private Scope globalScope;
     private Scope currentScope;
+    private ForkJoinPool pool;
+    private int[] stack;
+    private int[] nextChild;
+    private int top;
+
+    public ReferenceVisitor(Ast ast) {
+        this.ast = ast;
+        stack = new int[64];
+        nextChild = new int[64];
+    }
 
-    public ReferenceVisitor(ParseTreeProperty<Scope> scopeMap) {
-        this.scopeMap = scopeMap;
-        typeMap = new ParseTreeProperty<>();
+    /**
+     * Set the pool on which the routines of a program are checked. With no
+     * pool (the default) they are checked one after another on the calling
+     * thread.
+     * @param pool The fork/join pool, or null
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
     }
 
-    public ParseTreeProperty<Type> getTypeMap() {
-        return typeMap;
+    /**
+     * Set the global scope, so that a declaration or the main body may be
+     * visited on its own instead of visiting the whole program.
+     * @param globalScope The global scope created by the definition visitor
+     */
+    public void setGlobalScope(Scope globalScope) {
+        this.globalScope = globalScope;
+        currentScope = globalScope;
     }
 
-    @Override
-    public Type visitProgram(ProgramContext ctx) {
-        currentScope = scopeMap.get(ctx);
-        globalScope = currentScope;
-        visitChildren(ctx);
-        typeMap.put(ctx, VOID);
-        return VOID;
+    /**
+     * Visit the root of the Ast.
+     */
+    public void visit() {
+        visit(ast.getRoot());
     }
 
-    @Override
-    public Type visitProcedureDeclaration(ProcedureDeclarationContext ctx) {
-        currentScope = scopeMap.get(ctx);
-        visitChildren(ctx);
-        typeMap.put(ctx, VOID);
-        currentScope = currentScope.getParent();
+    private Type visit(int node) {
+        switch (ast.getKind(node)) {
+            case Ast.PROGRAM:
+                return visitProgram(node);
+            case Ast.PROCEDURE:
+            case Ast.FUNCTION:
+                return visitProcedureOrFunction(node);
+            case Ast.VARIABLE:
+            case Ast.ARRAY_VARIABLE:
+            case Ast.PARAMETER:
+            case Ast.ARRAY_PARAMETER:
+                ast.setIdentifier(node, currentScope.resolve(ast.getText(node)));
+                return VOID;
+            case Ast.ASSIGN:
+                return visitAssignment_statement(node);
+            case Ast.CALL:
+                return visitCall_statement(node);
+            case Ast.IF:
+                return visitIf_statement(node);
+            case Ast.ELSIF:
+                return visitElsif_part(node);
+            case Ast.WHILE:
+                return visitWhile_statement(node);
+            case Ast.ID_LVALUE:
+                return visitIdLvalue(node);
+            case Ast.ARRAY_LVALUE:
+                return visitArrayElement(node);
+            case Ast.ARRAY_ACCESS:
+            case Ast.FUNCTION_CALL:
+            case Ast.UNARY:
+            case Ast.POWER:
+            case Ast.ARITHMETIC:
+            case Ast.COMPARISON:
+            case Ast.LOGICAL:
+            case Ast.ID:
+            case Ast.INT_LITERAL:
+            case Ast.REAL_LITERAL:
+            case Ast.CHAR_LITERAL:
+            case Ast.BOOL_LITERAL:
+                return visitExpression(node);
+            default:
+                visitChildren(node);
+                return VOID;
+        }
+    }
+
+    /**
+     * Check an expression. The expression is walked with an explicit stack
+     * instead of by recursion, so that a long chain of operators does not
+     * need a deep thread stack. Each node is checked once its operands have
+     * their types, and an array is resolved before its index is checked,
+     * so the errors are found in the same order as by a recursive walk.
+     * @param root The root of the expression
+     * @return The type of the expression
+     */
+    private Type visitExpression(int root) {
+        int base = top;
+        push(root);
+        while (top > base) {
+            int node = stack[top - 1];
+            int next = nextChild[top - 1];
+            if (next == 0 && ast.getKind(node) == Ast.ARRAY_ACCESS) {
+                resolveArray(node);
+            }
+            if (next < ast.getChildCount(node)) {
+                nextChild[top - 1] = next + 1;
+                push(ast.getChild(node, next));
+            } else {
+                top--;
+                checkExpression(node);
+            }
+        }
+        return ast.getType(root);
+    }
+
+    private void push(int node) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+            nextChild = Arrays.copyOf(nextChild, top * 2);
+        }
+        stack[top] = node;
+        nextChild[top] = 0;
+        top++;
+    }
+
+    /**
+     * Check an expression node whose operands have been checked.
+     * @param node The node
+     * @return The type of the node
+     */
+    private Type checkExpression(int node) {
+        switch (ast.getKind(node)) {
+            case Ast.ARRAY_ACCESS:
+                return setType(node, ((ArrayType) ast.getIdentifier(node).getType()).getComponentType());
+            case Ast.FUNCTION_CALL:
+                return visitFcnCall(node);
+            case Ast.UNARY:
+                return visitUnaryop(node);
+            case Ast.POWER:
+                return visitPowop(node);
+            case Ast.ARITHMETIC:
+                return visitArithop(node);
+            case Ast.COMPARISON:
+                return visitCompop(node);
+            case Ast.LOGICAL:
+                return visitLogicalop(node);
+            case Ast.ID:
+                return visitId(node);
+            case Ast.INT_LITERAL:
+                return setType(node, INT);
+            case Ast.REAL_LITERAL:
+                return setType(node, REAL);
+            case Ast.CHAR_LITERAL:
+                return setType(node, CHAR);
+            default:
+                return setType(node, BOOL);
+        }
+    }
+
+    private void visitChildren(int node) {
+        int n = ast.getChildCount(node);
+        for (int i = 0; i < n; i++) {
+            visit(ast.getChild(node, i));
+        }
+    }
+
+    private Type setType(int node, Type type) {
+        ast.setType(node, type);
+        return type;
+    }
+
+    private Type visitProgram(int node) {
+        setGlobalScope(ast.getScope(node));
+        if (pool == null) {
+            visitChildren(node);
+            return VOID;
+        }
+        List<RoutineCheck> checks = new ArrayList<>();
+        int n = ast.getChildCount(node);
+        for (int i = 0; i < n; i++) {
+            int child = ast.getChild(node, i);
+            int kind = ast.getKind(child);
+            if (kind == Ast.PROCEDURE || kind == Ast.FUNCTION || kind == Ast.STATEMENTS) {
+                checks.add(new RoutineCheck(child));
+            } else {
+                visit(child);
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(checks);
+            }
+        });
+        for (RoutineCheck check : checks) {
+            if (check.error != null) {
+                throw check.error;
+            }
+        }
         return VOID;
     }
 
-    @Override
-    public Type visitFunctionDeclaration(FunctionDeclarationContext ctx) {
-        currentScope = scopeMap.get(ctx);
-        visitChildren(ctx);
-        typeMap.put(ctx, VOID);
+    /**
+     * Task to check one routine, or the main body, with a visitor of its
+     * own. An error is kept rather than thrown, so that visitProgram can
+     * report the first one in source order.
+     */
+    private class RoutineCheck extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int node;
+        private RuntimeException error;
+
+        RoutineCheck(int node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            ReferenceVisitor visitor = new ReferenceVisitor(ast);
+            visitor.setGlobalScope(globalScope);
+            try {
+                visitor.visit(node);
+            } catch (RuntimeException ex) {
+                error = ex;
+            }
+        }
+
+    }
+
+    private Type visitProcedureOrFunction(int node) {
+        ast.setIdentifier(node, currentScope.resolve(ast.getText(node)));
+        currentScope = ast.getScope(node);
+        visitChildren(node);
         currentScope = currentScope.getParent();
         return VOID;
     }
 
     /**
-     * {@inheritDoc}
-     *
-     * <p>
      * Determine if the assignment is valid. BOOL and only be assigned to BOOL.
-     * INT or REAL can be assigned to INT or REAL.</p>
+     * INT or REAL can be assigned to INT or REAL.
      *
-     * @param ctx The Assignment_Statement Context parse tree node
+     * @param node The ASSIGN node
      * @return VOID
      */
-    @Override
-    public Type visitAssignment_statement(Assignment_statementContext ctx) {
-        Type lhsType = visit(ctx.lvalue());
-        Type rhsType = visit(ctx.expr());
+    private Type visitAssignment_statement(int node) {
+        Type lhsType = visit(ast.getChild(node, 0));
+        Type rhsType = visit(ast.getChild(node, 1));
         if (!assignmentValid(lhsType, rhsType)) {
-            MicroCompilerV1.error(ctx, rhsType + " cannot be assigned to " + lhsType);
+            error(ast, node, rhsType + " cannot be assigned to " + lhsType);
         }
-        typeMap.put(ctx, VOID);
         return VOID;
     }
 
     /**
-     * {@inheritDoc}
-     *
-     * <p>
-     * The default implementation returns the result of calling
-     * {@link #visitChildren} on {@code ctx}.</p>
-     * @param ctx The IdLvalue context
+     * Determine the type of a variable that is assigned to.
+     * @param node The ID_LVALUE node
      * @return The type of the lvalue, if defined, else VOID
      */
-    @Override
-    public Type visitIdLvalue(IdLvalueContext ctx) {
-        Identifier id = currentScope.resolve(ctx.ID().getText());
+    private Type visitIdLvalue(int node) {
+        Identifier id = currentScope.resolve(ast.getText(node));
         if (id == null) {
-            MicroCompilerV1.error(ctx, ctx.ID().getText() + " is not defined");
+            error(ast, node, ast.getText(node) + " is not defined");
             return VOID;
         }
-        Type lhsType = id.getType();
-        typeMap.put(ctx, lhsType);
-        return lhsType;
+        ast.setIdentifier(node, id);
+        return setType(node, id.getType());
     }
 
     /**
-     * {@inheritDoc}
-     *
-     * <p>
-     * The default implementation returns the result of calling
-     * {@link #visitChildren} on {@code ctx}.</p>
-     * @param ctx The ArrayLValue context
-     * @return The component type of the array or VOID if not defined.
+     * Determine the type of an array element that is assigned to. The index
+     * is visited too, so that its types are known when it is compiled.
+     * @param node The ARRAY_LVALUE node
+     * @return The component type of the array
+     */
+    private Type visitArrayElement(int node) {
+        Identifier id = resolveArray(node);
+        visit(ast.getChild(node, 0));
+        ArrayType arrayType = (ArrayType)id.getType();
+        return setType(node, arrayType.getComponentType());
+    }
+
+    /**
+     * Bind an array element, either assigned to or used in an expression,
+     * to its array.
+     * @param node The ARRAY_LVALUE or ARRAY_ACCESS node
+     * @return The identifier of the array
      */
-    @Override
-    public Type visitArrayLvalue(ArrayLvalueContext ctx) {
-        Identifier id = currentScope.resolve(ctx.ID().getText());
+    private Identifier resolveArray(int node) {
+        Identifier id = currentScope.resolve(ast.getText(node));
         if (id == null) {
-            MicroCompilerV1.error(ctx, ctx.ID().getText() + " is not defined");
-            typeMap.put(ctx, VOID);
-            return VOID;            
+            error(ast, node, ast.getText(node) + " is not defined");
         }
-        ArrayType arrayType = (ArrayType)id.getType();
-        Type lhsType = arrayType.getComponentType();
-        typeMap.put(ctx, lhsType);
-        return lhsType;
+        ast.setIdentifier(node, id);
+        return id;
     }
 
     /**
-     * {@inheritDoc}
-     *
-     * <p>
      * Determine if the if statement is valid. The guard expression must be of
      * type BOOL.
-     * </p>
      *
-     * @param ctx The If_statement context parse tree node.
+     * @param node The IF node
      * @return VOID
      */
-    @Override
-    public Type visitIf_statement(If_statementContext ctx) {
-        Type guardType = visit(ctx.expr());
+    private Type visitIf_statement(int node) {
+        Type guardType = visit(ast.getChild(node, 0));
         if (guardType != BOOL) {
-            error(ctx, "If statement guard is not a boolean type");
+            error(ast, node, "If statement guard is not a boolean type");
         }
-        visit(ctx.statement_list());
-        ctx.elsif_part().forEach(elsif_part -> visit(elsif_part));
-        if (ctx.else_part() != null) {
-            visit(ctx.else_part());
+        int n = ast.getChildCount(node);
+        for (int i = 1; i < n; i++) {
+            visit(ast.getChild(node, i));
         }
-        typeMap.put(ctx, VOID);
         return VOID;
     }
 
     /**
-     * {@inheritDoc}
-     *
-     * <p>
      * Determine if the elsif part is valid. The guard expression must be of
      * type BOOL.
-     * </p>
      *
-     * @param ctx The elsif_part context parse tree node.
+     * @param node The ELSIF node
      * @return VOID
      */
-    @Override
-    public Type visitElsif_part(Elsif_partContext ctx) {
-        Type guardType = visit(ctx.expr());
+    private Type visitElsif_part(int node) {
+        Type guardType = visit(ast.getChild(node, 0));
         if (guardType != BOOL) {
-            error(ctx, "If statement guard is not a boolean type");
+            error(ast, node, "If statement guard is not a boolean type");
         }
-        visit(ctx.statement_list());
-        typeMap.put(ctx, VOID);
+        visit(ast.getChild(node, 1));
         return VOID;
     }
 
     /**
-     * {@inheritDoc}
-     *
-     * <p>
      * Determine if the while_statement part is valid. The guard expression must
      * be of type BOOL.
-     * </p>
      *
-     * @param ctx The If_statement context parse tree node.
+     * @param node The WHILE node
      * @return VOID
      */
-    @Override
-    public Type visitWhile_statement(While_statementContext ctx) {
-        Type guardType = visit(ctx.expr());
+    private Type visitWhile_statement(int node) {
+        Type guardType = visit(ast.getChild(node, 0));
         if (guardType != BOOL) {
-            error(ctx, "While statement guard is not a boolean type");
+            error(ast, node, "While statement guard is not a boolean type");
         }
-        visit(ctx.statement_list());
-        typeMap.put(ctx, VOID);
+        visit(ast.getChild(node, 1));
         return VOID;
     }
 
     /**
-     * {@inheritDoc}
-     *
-     * <p>
-     * Determine the result type of a POW expression.</p>
+     * Determine the result type of a POW expression.
      *
-     * @param ctx The POW op context parse tree node
+     * @param node The POWER node
      * @return The result type or VOID if invalid.
      */
-    @Override
-    public Type visitPowop(PowopContext ctx) {
-        Type lhsType = visit(ctx.expr(0));
-        Type rhsType = visit(ctx.expr(1));
+    private Type visitPowop(int node) {
+        Type lhsType = ast.getType(ast.getChild(node, 0));
+        Type rhsType = ast.getType(ast.getChild(node, 1));
         Type resultType = determineExpressionResult(lhsType, rhsType);
         if (VOID == resultType) {
-            error(ctx, lhsType + " cannot be combined with " + rhsType);
-            typeMap.put(ctx, VOID);
-            return VOID;
+            error(ast, node, lhsType + " cannot be combined with " + rhsType);
+            return setType(node, VOID);
         }
-        typeMap.put(ctx, resultType);
-        return resultType;
+        return setType(node, resultType);
     }
 
     /**
-     * {@inheritDoc}
+     * Determine the result type of a unary operator.
      *
-     * <p>
-     * Determine the result type of a unary operator.</p>
-     *
-     * @param ctx The UnaryOpContext parse tree node
+     * @param node The UNARY node
      * @return The result type of VOID if not valid.
      */
-    @Override
-    public Type visitUnaryop(UnaryopContext ctx) {
-        String op = ctx.op.getText();
-        Type rhsType = visit(ctx.expr());
+    private Type visitUnaryop(int node) {
+        int op = ast.getOp(node);
+        Type rhsType = ast.getType(ast.getChild(node, 0));
         if (rhsType instanceof PrimitiveType) {
             switch ((PrimitiveType) rhsType) {
                 case REAL:
-                    if (op.equals("-") || op.equals("+")) {
-                        typeMap.put(ctx, REAL);
-                        return REAL;
+                    if (op == Ast.MINUS || op == Ast.PLUS) {
+                        return setType(node, REAL);
                     }
-                    error(ctx, op + " cannot be applied to REAL");
+                    error(ast, node, Ast.operatorText(op) + " cannot be applied to REAL");
                     break;
                 case INT:
-                    if (op.equals("-") || op.equals("+") || op.equals("~")) {
-                        typeMap.put(ctx, INT);
-                        return INT;
+                    if (op == Ast.MINUS || op == Ast.PLUS || op == Ast.COMPLEMENT) {
+                        return setType(node, INT);
                     }
-                    error(ctx, op + " cannot be applied to INT");
+                    error(ast, node, Ast.operatorText(op) + " cannot be applied to INT");
                     break;
                 case BOOL:
-                    if (op.equals("\00ac")) {
-                        typeMap.put(ctx, BOOL);
-                        return BOOL;
+                    if (op == Ast.NOT) {
+                        return setType(node, BOOL);
                     }
-                    error(ctx, op + " cannot be applied to BOOL");
+                    error(ast, node, Ast.operatorText(op) + " cannot be applied to BOOL");
                     break;
             }
         }
-        typeMap.put(ctx, VOID);
-        return VOID;
+        return setType(node, VOID);
     }
 
     /**
-     * {@inheritDoc}
-     *
-     * <p>
-     * Determine result type of logical op. Both operands must be BOOL</p>
+     * Determine result type of logical op. Both operands must be BOOL
      *
-     * @param ctx LogicalopContext node.
+     * @param node The LOGICAL node
      * @return BOOL if valid, VOID otherwise
      */
-    @Override
-    public Type visitLogicalop(LogicalopContext ctx) {
-        Type lhsType = visit(ctx.expr(0));
-        Type rhsType = visit(ctx.expr(1));
+    private Type visitLogicalop(int node) {
+        Type lhsType = ast.getType(ast.getChild(node, 0));
+        Type rhsType = ast.getType(ast.getChild(node, 1));
         if (BOOL == lhsType && BOOL == rhsType) {
-            typeMap.put(ctx, BOOL);
-            return BOOL;
+            return setType(node, BOOL);
         }
-        error(ctx, lhsType + " cannot be combined using a logical operator with " + rhsType);
-        typeMap.put(ctx, VOID);
-        return VOID;
+        error(ast, node, lhsType + " cannot be combined using a logical operator with " + rhsType);
+        return setType(node, VOID);
     }
 
     /**
-     * {@inheritDoc}
+     * Determine the type of an ID
      *
-     * <p>
-     * Determine the type of an ID</p>
-     *
-     * @param ctx The parse tree node.
+     * @param node The ID node
      * @return The type of the identifier.
      */
-    @Override
-    public Type visitId(IdContext ctx) {
-        String idName = ctx.ID().getText();
+    private Type visitId(int node) {
+        String idName = ast.getText(node);
         Identifier id = currentScope.resolve(idName);
         if (id != null) {
-            typeMap.put(ctx, id.getType());
-            return id.getType();
+            ast.setIdentifier(node, id);
+            return setType(node, id.getType());
         }
-        error(ctx, "Undefined identifier " + idName);
-        typeMap.put(ctx, VOID);
-        return VOID;
-    }
-
-    /**
-     * {@inheritDoc}
-     *
-     * <p>
-     * The type of an Int litteral is INT.</p>
-     *
-     * @param ctx The parse tree node.
-     * @return INT
-     */
-    @Override
-    public Type visitInt(IntContext ctx) {
-        typeMap.put(ctx, INT);
-        return INT;
-    }
-
-    @Override
-    public Type visitFloat(FloatContext ctx) {
-        typeMap.put(ctx, REAL);
-        return REAL;
-    }
-
-    @Override
-    public Type visitChar(CharContext ctx) {
-        typeMap.put(ctx, CHAR);
-        return CHAR;
-    }
-
-    @Override
-    public Type visitBool(BoolContext ctx) {
-        typeMap.put(ctx, BOOL);
-        return BOOL;
-    }
-
-    @Override
-    public Type visitParens(ParensContext ctx) {
-        Type resultType = visit(ctx.expr());
-        typeMap.put(ctx, resultType);
-        return resultType;
+        error(ast, node, "Undefined identifier " + idName);
+        return setType(node, VOID);
     }
 
     /**
-     * {@inheritDoc}
+     * Determine the result type of an arithmetic expression.
      *
-     * <p>
-     * Determine the result type of an arithmetic expression.</p>
-     *
-     * @param ctx The parse tree node.
+     * @param node The ARITHMETIC node
      * @return The result type or VOID if invalid.
      */
-    @Override
-    public Type visitArithop(ArithopContext ctx) {
+    private Type visitArithop(int node) {
 
-        Type lhsType = visit(ctx.expr(0));
-        Type rhsType = visit(ctx.expr(1));
+        Type lhsType = ast.getType(ast.getChild(node, 0));
+        Type rhsType = ast.getType(ast.getChild(node, 1));
         Type resultType = determineExpressionResult(lhsType, rhsType);
-        String op = ctx.op.getText();
+        int op = ast.getOp(node);
 
         if (lhsType == CHAR) {
             if (rhsType == CHAR) {
                 //can only subtract chars not add
-                if (op.equals("-")) {
-                    typeMap.put(ctx, INT);
-                    return INT;
+                if (op == Ast.MINUS) {
+                    return setType(node, INT);
                 } else {
-                    error(ctx, lhsType + " cannot be combined with " + rhsType);
+                    error(ast, node, lhsType + " cannot be combined with " + rhsType);
                 }
-                typeMap.put(ctx, VOID);
-                return VOID;
+                return setType(node, VOID);
             }
 
             if (rhsType == INT) {
                 //can only subtract or add char with int
-                if (op.equals("-") || op.equals("+")) {
-                    typeMap.put(ctx, CHAR);
-                    return CHAR;
+                if (op == Ast.MINUS || op == Ast.PLUS) {
+                    return setType(node, CHAR);
                 } else {
-                    error(ctx, lhsType + " cannot be combined with " + rhsType);
+                    error(ast, node, lhsType + " cannot be combined with " + rhsType);
                 }
-                typeMap.put(ctx, VOID);
-                return VOID;
+                return setType(node, VOID);
             }
         }
         if (lhsType == INT) {
 
             if (rhsType == CHAR) {
                 //can only add int with char
-                if (op.equals("+")) {
-                    typeMap.put(ctx, CHAR);
-                    return CHAR;
+                if (op == Ast.PLUS) {
+                    return setType(node, CHAR);
                 } else {
-                    error(ctx, lhsType + " cannot be combined with " + rhsType);
+                    error(ast, node, lhsType + " cannot be combined with " + rhsType);
                 }
-                typeMap.put(ctx, VOID);
-                return VOID;
+                return setType(node, VOID);
             }
         }
         if (VOID == resultType) {
-            error(ctx, lhsType + " cannot be combined with " + rhsType);
-            typeMap.put(ctx, VOID);
-            return VOID;
+            error(ast, node, lhsType + " cannot be combined with " + rhsType);
+            return setType(node, VOID);
         }
 
-        typeMap.put(ctx, resultType);
-        return resultType;
+        return setType(node, resultType);
 
     }
 
     /**
-     * {@inheritDoc}
-     *
-     * <p>
      * Determine the result of a comparison operation. REAL and INT can be
-     * compared. INT is converted to REAL if one operand is REAL.</p>
+     * compared. INT is converted to REAL if one operand is REAL.
      *
-     * @param ctx The parse tree node
+     * @param node The COMPARISON node
      * @return BOOL or VOID if not valid.
      */
-    @Override
-    public Type visitCompop(CompopContext ctx) {
-        Type lhsType = visit(ctx.expr(0));
-        Type rhsType = visit(ctx.expr(1));
+    private Type visitCompop(int node) {
+        Type lhsType = ast.getType(ast.getChild(node, 0));
+        Type rhsType = ast.getType(ast.getChild(node, 1));
         Type resultType = determineExpressionResult(lhsType, rhsType);
         if (lhsType == CHAR || rhsType == CHAR) {
             //Can only comapare two chars
             if (lhsType == rhsType) {
-                typeMap.put(ctx, BOOL);
-                return BOOL;
+                return setType(node, BOOL);
             }
             //error comparing char with something else
-            typeMap.put(ctx, VOID);
-            return VOID;
+            return setType(node, VOID);
         }
         if (resultType != VOID) {
-            typeMap.put(ctx, BOOL);
-            return BOOL;
+            return setType(node, BOOL);
         }
 
-        typeMap.put(ctx, VOID);
-        return VOID;
+        return setType(node, VOID);
     }
 
     /**
@@ -525,38 +610,41 @@ public class ReferenceVisitor extends MicroBaseVisitor<Type> {
         }
         return VOID;
     }
-    
-    @Override
-    public Type visitArrayAccess(ArrayAccessContext ctx){
-        Identifier id = currentScope.resolve(ctx.ID().getText());
-        if (id == null) {
-            MicroCompilerV1.error(ctx, ctx.ID().getText() + " is not defined");
-            typeMap.put(ctx, VOID);
-            return VOID;            
+
+    /**
+     * Bind a call statement to the procedure it calls.
+     *
+     * @param node The CALL node
+     * @return VOID
+     */
+    private Type visitCall_statement(int node) {
+        visitChildren(node);
+        String name = ast.getText(node);
+        Identifier procId = currentScope.resolve(name);
+        if (procId == null) {
+            error(ast, node, name + " is not defined");
+        } else if (!(procId.getType() instanceof ProcedureOrFunction)) {
+            error(ast, node, name + " is not a procedure");
         }
-        ArrayType arrayType = (ArrayType)id.getType();
-        Type lhsType = arrayType.getComponentType();
-        typeMap.put(ctx, lhsType);
-        return lhsType;
+        ast.setIdentifier(node, procId);
+        return VOID;
     }
-    
-    @Override
-    public Type visitFcnCall(FcnCallContext ctx){
-        ctx.expr_list().expr().forEach(expr -> visit(expr));
-        Identifier fcnId = currentScope.resolve(ctx.ID().getText());
+
+    private Type visitFcnCall(int node){
+        String name = ast.getText(node);
+        Identifier fcnId = currentScope.resolve(name);
         if(fcnId != null){
             Type fcnType = fcnId.getType();
             if (fcnType instanceof ProcedureOrFunction){
+                ast.setIdentifier(node, fcnId);
                 Type returnType = ((ProcedureOrFunction)fcnType).getReturnType();
-                typeMap.put(ctx, returnType);
-                return returnType;
+                return setType(node, returnType);
             } else {
-                MicroCompilerV1.error(ctx, ctx.ID().getText() + " is not a function");
-            }       
+                error(ast, node, name + " is not a function");
+            }
         } else {
-            MicroCompilerV1.error(ctx, ctx.ID().getText() + " is not defined");
+            error(ast, node, name + " is not defined");
         }
-        typeMap.put(ctx, VOID);
-        return VOID;
+        return setType(node, VOID);
     }
 }
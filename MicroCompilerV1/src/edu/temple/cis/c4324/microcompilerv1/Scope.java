@@ -1,5 +1,6 @@
 package edu.temple.cis.c4324.microcompilerv1;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -43,5 +44,11 @@ public class Scope {
     }
     
     public Scope getParent() {return parent;}
+
+    /**
+     * Get the identifiers defined in this scope.
+     * @return The identifiers, in no particular order
+     */
+    public Collection<Identifier> getIdentifiers() {return symbolTable.values();}
   
 }
@@ -0,0 +1,59 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Request latency and throughput counters for the CompileServer. The
+ * counters may be updated from several worker threads at once.
+ */
+public class ServerStatistics {
+
+    private final long startNanos;
+    private final AtomicLong requests;
+    private final AtomicLong failures;
+    private final AtomicLong totalLatencyNanos;
+    private final LongAccumulator maxLatencyNanos;
+
+    public ServerStatistics() {
+        startNanos = System.nanoTime();
+        requests = new AtomicLong();
+        failures = new AtomicLong();
+        totalLatencyNanos = new AtomicLong();
+        maxLatencyNanos = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Record a completed compile request.
+     * @param latencyNanos The time taken to serve the request
+     * @param success true if the compilation succeeded
+     */
+    public void record(long latencyNanos, boolean success) {
+        requests.incrementAndGet();
+        if (!success) {
+            failures.incrementAndGet();
+        }
+        totalLatencyNanos.addAndGet(latencyNanos);
+        maxLatencyNanos.accumulate(latencyNanos);
+    }
+
+    public long getRequests() {return requests.get();}
+
+    public long getFailures() {return failures.get();}
+
+    /**
+     * Format the counters for display.
+     * @return The counters as a single line
+     */
+    @Override
+    public String toString() {
+        long n = requests.get();
+        double uptimeSeconds = (System.nanoTime() - startNanos) / 1e9;
+        double meanMillis = n == 0 ? 0.0 : totalLatencyNanos.get() / 1e6 / n;
+        return String.format("requests=%d failures=%d mean=%.3f ms max=%.3f ms throughput=%.1f requests/s"
+                + " sllParses=%d llFallbacks=%d",
+                n, failures.get(), meanMillis, maxLatencyNanos.get() / 1e6, n / uptimeSeconds,
+                FrontEnd.getSllParses(), FrontEnd.getLlFallbacks());
+    }
+
+}
@@ -0,0 +1,145 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A basic block: phi instructions, then instructions that are executed in
+ * order, then a terminator that leaves the block. The operands of each phi
+ * are in the order of the predecessors of the block.
+ */
+public final class BasicBlock {
+
+    private final int id;
+    private final List<Instruction> phis;
+    private final List<Instruction> instructions;
+    private final List<BasicBlock> predecessors;
+    private Instruction terminator;
+
+    BasicBlock(int id) {
+        this.id = id;
+        phis = new ArrayList<>();
+        instructions = new ArrayList<>();
+        predecessors = new ArrayList<>();
+    }
+
+    /**
+     * Get the id of the block, which is unique in its graph and less than
+     * ControlFlowGraph.getBlockIdLimit.
+     * @return The id
+     */
+    public int getId() {return id;}
+
+    public String getName() {return "b" + id;}
+
+    public List<Instruction> getPhis() {return Collections.unmodifiableList(phis);}
+
+    /**
+     * Get the instructions between the phis and the terminator.
+     * @return The instructions
+     */
+    public List<Instruction> getInstructions() {return Collections.unmodifiableList(instructions);}
+
+    /**
+     * Get the terminator of the block.
+     * @return The terminator, or null if the block is not yet finished
+     */
+    public Instruction getTerminator() {return terminator;}
+
+    public List<BasicBlock> getPredecessors() {return Collections.unmodifiableList(predecessors);}
+
+    /**
+     * Get the blocks the terminator may go to.
+     * @return The successors, the true one first for a BRANCH
+     */
+    public List<BasicBlock> getSuccessors() {
+        if (terminator == null || terminator.getTargetCount() == 0) {
+            return Collections.emptyList();
+        }
+        BasicBlock[] successors = new BasicBlock[terminator.getTargetCount()];
+        for (int i = 0; i < successors.length; i++) {
+            successors[i] = terminator.getTarget(i);
+        }
+        return Arrays.asList(successors);
+    }
+
+    /**
+     * Add an instruction after the ones added before.
+     * @param instruction The instruction, which is not a phi or terminator
+     * @return The instruction
+     */
+    Instruction add(Instruction instruction) {
+        instruction.setBlock(this);
+        instructions.add(instruction);
+        return instruction;
+    }
+
+    /**
+     * Add a phi instruction, whose operands are filled in later.
+     * @param phi The phi, with an operand for each predecessor
+     * @return The phi
+     */
+    Instruction addPhi(Instruction phi) {
+        phi.setBlock(this);
+        phis.add(phi);
+        return phi;
+    }
+
+    /**
+     * End the block, making it a predecessor of each target.
+     * @param terminator The terminator
+     * @param targets The successors
+     */
+    void terminate(Instruction terminator, BasicBlock... targets) {
+        terminator.setBlock(this);
+        terminator.setTargets(targets);
+        this.terminator = terminator;
+        for (BasicBlock target : targets) {
+            target.predecessors.add(this);
+        }
+    }
+
+    /**
+     * Remove the instructions for which keep is false, in place.
+     */
+    void retainInstructions(Predicate<Instruction> keep) {
+        instructions.removeIf(instruction -> {
+            if (keep.test(instruction)) {
+                return false;
+            }
+            instruction.setBlock(null);
+            return true;
+        });
+    }
+
+    /**
+     * Remove a predecessor that is no longer reachable, with the operands
+     * of the phis that come from it.
+     */
+    void removePredecessor(BasicBlock predecessor) {
+        int index = predecessors.indexOf(predecessor);
+        predecessors.remove(index);
+        for (Instruction phi : phis) {
+            phi.removeOperand(index);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getName()).append(':');
+        for (Instruction phi : phis) {
+            sb.append("\n  ").append(phi);
+        }
+        for (Instruction instruction : instructions) {
+            sb.append("\n  ").append(instruction);
+        }
+        if (terminator != null) {
+            sb.append("\n  ").append(terminator);
+        }
+        return sb.toString();
+    }
+
+}
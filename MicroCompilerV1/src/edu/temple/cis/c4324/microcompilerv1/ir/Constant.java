@@ -0,0 +1,86 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import edu.temple.cis.c4324.codegen.InstructionList;
+import edu.temple.cis.c4324.microcompilerv1.PrimitiveType;
+
+/**
+ * A constant of a primitive type. An int, char or bool constant is held as
+ * the int the JVM pushes for it. Constants are pushed again at each use
+ * rather than being kept in a local variable.
+ */
+public final class Constant extends Value {
+
+    private final double value;
+
+    private Constant(PrimitiveType type, double value) {
+        super(type);
+        this.value = value;
+    }
+
+    /**
+     * Get the constant written as a literal.
+     * @param type The type of the literal
+     * @param text The literal as written in the source
+     * @return The constant
+     */
+    public static Constant literal(PrimitiveType type, String text) {
+        switch (type) {
+            case INT:
+                return new Constant(type, Integer.parseInt(text));
+            case REAL:
+                return new Constant(type, Double.parseDouble(text));
+            case CHAR:
+                return new Constant(type, InstructionList.charValue(text));
+            default:
+                return of(type, text.equals("true") ? 1 : 0);
+        }
+    }
+
+    /**
+     * Get a constant, converting the value to the type as a JVM conversion
+     * instruction would.
+     * @param type The type of the constant
+     * @param value The value
+     * @return The constant
+     */
+    public static Constant of(PrimitiveType type, double value) {
+        switch (type) {
+            case INT:
+            case BOOL:
+                return new Constant(type, (int) value);
+            case CHAR:
+                return new Constant(type, (char) (int) value);
+            default:
+                return new Constant(type, value);
+        }
+    }
+
+    /**
+     * Get the zero of a type, which is the value of a local variable that is
+     * read before it is assigned.
+     * @param type The type
+     * @return The constant 0, 0.0, '\0' or false
+     */
+    public static Constant zero(PrimitiveType type) {
+        return new Constant(type, 0);
+    }
+
+    public int intValue() {return (int) value;}
+
+    public double doubleValue() {return value;}
+
+    @Override
+    public String getName() {
+        switch ((PrimitiveType) getType()) {
+            case REAL:
+                return Double.toString(value);
+            case CHAR:
+                return "'" + (char) value + "'";
+            case BOOL:
+                return value != 0 ? "true" : "false";
+            default:
+                return Integer.toString((int) value);
+        }
+    }
+
+}
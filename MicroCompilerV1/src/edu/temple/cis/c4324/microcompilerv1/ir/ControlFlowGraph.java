@@ -0,0 +1,167 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import edu.temple.cis.c4324.microcompilerv1.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The control flow graph of a routine: the main body of a program, a
+ * procedure or a function. The first block is the entry, which has no
+ * predecessors. IrBuilder builds the graph in SSA form.
+ */
+public final class ControlFlowGraph {
+
+    private final String name;
+    private final Type returnType;
+    private final List<Parameter> parameters;
+    private final List<BasicBlock> blocks;
+    private int blockIdLimit;
+    private int valueCount;
+
+    /**
+     * Construct a graph holding only the entry block.
+     * @param name The name of the method
+     * @param returnType The type a function returns, or VOID
+     * @param parameters The parameters
+     */
+    ControlFlowGraph(String name, Type returnType, List<Parameter> parameters) {
+        this.name = name;
+        this.returnType = returnType;
+        this.parameters = parameters;
+        blocks = new ArrayList<>();
+        newBlock();
+    }
+
+    public String getName() {return name;}
+
+    public Type getReturnType() {return returnType;}
+
+    public List<Parameter> getParameters() {return Collections.unmodifiableList(parameters);}
+
+    public BasicBlock getEntry() {return blocks.get(0);}
+
+    /**
+     * Get the blocks, in the order they were created.
+     * @return The blocks
+     */
+    public List<BasicBlock> getBlocks() {return Collections.unmodifiableList(blocks);}
+
+    /**
+     * Get the limit of the block ids, which index arrays over the blocks.
+     * @return One more than the largest block id
+     */
+    public int getBlockIdLimit() {return blockIdLimit;}
+
+    /**
+     * Get the number of parameters and instruction results, as numbered by
+     * the last call of number.
+     * @return The number of numbered values
+     */
+    public int getValueCount() {return valueCount;}
+
+    BasicBlock newBlock() {
+        BasicBlock block = new BasicBlock(blockIdLimit++);
+        blocks.add(block);
+        return block;
+    }
+
+    /**
+     * Get the blocks reachable from the entry in reverse postorder, in which
+     * each block comes before its successors except along loop back edges.
+     * The successors of a block are visited last to first, so the first,
+     * such as the body of a loop or the then part of an if, is placed right
+     * after it.
+     * @return The reachable blocks in reverse postorder
+     */
+    public List<BasicBlock> reversePostorder() {
+        List<BasicBlock> postorder = new ArrayList<>(blocks.size());
+        boolean[] visited = new boolean[blockIdLimit];
+        // The walk is iterative, so that a long chain of blocks does not need
+        // a deep thread stack.
+        BasicBlock[] stack = new BasicBlock[blocks.size()];
+        int[] next = new int[blocks.size()];
+        int depth = 0;
+        stack[depth] = getEntry();
+        next[depth++] = getEntry().getSuccessors().size() - 1;
+        visited[getEntry().getId()] = true;
+        while (depth > 0) {
+            BasicBlock block = stack[depth - 1];
+            List<BasicBlock> successors = block.getSuccessors();
+            int i = next[depth - 1]--;
+            if (i < 0) {
+                postorder.add(block);
+                depth--;
+            } else if (!visited[successors.get(i).getId()]) {
+                BasicBlock successor = successors.get(i);
+                visited[successor.getId()] = true;
+                stack[depth] = successor;
+                next[depth++] = successor.getSuccessors().size() - 1;
+            }
+        }
+        Collections.reverse(postorder);
+        return postorder;
+    }
+
+    /**
+     * Remove the blocks that cannot be reached from the entry, such as the
+     * statements after a return.
+     */
+    void removeUnreachableBlocks() {
+        List<BasicBlock> reachable = reversePostorder();
+        if (reachable.size() == blocks.size()) {
+            return;
+        }
+        boolean[] live = new boolean[blockIdLimit];
+        reachable.forEach(block -> live[block.getId()] = true);
+        for (BasicBlock block : blocks) {
+            if (!live[block.getId()]) {
+                for (BasicBlock successor : block.getSuccessors()) {
+                    if (live[successor.getId()]) {
+                        successor.removePredecessor(block);
+                    }
+                }
+            }
+        }
+        blocks.removeIf(block -> !live[block.getId()]);
+    }
+
+    /**
+     * Number the parameters and the instructions that have results, in
+     * the order of the blocks.
+     * @return The number of values numbered
+     */
+    public int number() {
+        int count = 0;
+        for (Parameter parameter : parameters) {
+            parameter.setNumber(count++);
+        }
+        for (BasicBlock block : blocks) {
+            for (Instruction phi : block.getPhis()) {
+                phi.setNumber(count++);
+            }
+            for (Instruction instruction : block.getInstructions()) {
+                if (instruction.hasResult()) {
+                    instruction.setNumber(count++);
+                }
+            }
+        }
+        valueCount = count;
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        number();
+        StringBuilder sb = new StringBuilder(name).append('(');
+        for (int i = 0; i < parameters.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append(parameters.get(i).getName());
+        }
+        sb.append(')');
+        for (BasicBlock block : blocks) {
+            sb.append('\n').append(block);
+        }
+        return sb.append('\n').toString();
+    }
+
+}
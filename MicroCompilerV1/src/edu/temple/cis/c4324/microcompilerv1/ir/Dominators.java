@@ -0,0 +1,185 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The dominator tree and dominance frontiers of a control flow graph. A
+ * block dominates another if every path from the entry to the other goes
+ * through it. The immediate dominators are found by the iterative algorithm
+ * of Cooper, Harvey and Kennedy, "A Simple, Fast Dominance Algorithm",
+ * which intersects the dominators of the predecessors of each block in
+ * reverse postorder until nothing changes.
+ */
+public final class Dominators {
+
+    private final List<BasicBlock> reversePostorder;
+    private final BasicBlock[] idoms;
+    private final List<List<BasicBlock>> children;
+    private final List<List<BasicBlock>> frontiers;
+    private final List<BasicBlock> preorder;
+    private final int[] preorderIndex;
+    private final int[] subtreeSize;
+
+    /**
+     * Compute the dominators of a graph whose unreachable blocks have been
+     * removed.
+     * @param cfg The graph
+     */
+    public Dominators(ControlFlowGraph cfg) {
+        int limit = cfg.getBlockIdLimit();
+        reversePostorder = cfg.reversePostorder();
+        int[] order = new int[limit];
+        for (int i = 0; i < reversePostorder.size(); i++) {
+            order[reversePostorder.get(i).getId()] = i;
+        }
+        idoms = new BasicBlock[limit];
+        BasicBlock entry = cfg.getEntry();
+        idoms[entry.getId()] = entry;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : reversePostorder) {
+                if (block == entry) {
+                    continue;
+                }
+                BasicBlock idom = null;
+                for (BasicBlock predecessor : block.getPredecessors()) {
+                    if (idoms[predecessor.getId()] != null) {
+                        idom = idom == null ? predecessor : intersect(predecessor, idom, order);
+                    }
+                }
+                if (idoms[block.getId()] != idom) {
+                    idoms[block.getId()] = idom;
+                    changed = true;
+                }
+            }
+        }
+
+        children = new ArrayList<>(limit);
+        frontiers = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            children.add(new ArrayList<>());
+            frontiers.add(new ArrayList<>());
+        }
+        for (BasicBlock block : reversePostorder) {
+            if (block != entry) {
+                children.get(idoms[block.getId()].getId()).add(block);
+            }
+        }
+
+        // A join point is in the frontier of each block that dominates one of
+        // its predecessors but does not strictly dominate the join point.
+        for (BasicBlock block : reversePostorder) {
+            if (block.getPredecessors().size() < 2) {
+                continue;
+            }
+            BasicBlock idom = idoms[block.getId()];
+            for (BasicBlock runner : block.getPredecessors()) {
+                while (runner != idom) {
+                    List<BasicBlock> frontier = frontiers.get(runner.getId());
+                    if (frontier.isEmpty() || frontier.get(frontier.size() - 1) != block) {
+                        frontier.add(block);
+                    }
+                    runner = idoms[runner.getId()];
+                }
+            }
+        }
+
+        // Number the tree in preorder, so that the blocks a block dominates
+        // are the ones numbered from it to the end of its subtree.
+        preorder = new ArrayList<>(reversePostorder.size());
+        preorderIndex = new int[limit];
+        subtreeSize = new int[limit];
+        List<BasicBlock> stack = new ArrayList<>();
+        stack.add(entry);
+        while (!stack.isEmpty()) {
+            BasicBlock block = stack.remove(stack.size() - 1);
+            preorderIndex[block.getId()] = preorder.size();
+            preorder.add(block);
+            List<BasicBlock> blockChildren = children.get(block.getId());
+            for (int i = blockChildren.size() - 1; i >= 0; i--) {
+                stack.add(blockChildren.get(i));
+            }
+        }
+        for (int i = preorder.size() - 1; i >= 0; i--) {
+            BasicBlock block = preorder.get(i);
+            subtreeSize[block.getId()]++;
+            if (block != entry) {
+                subtreeSize[idoms[block.getId()].getId()] += subtreeSize[block.getId()];
+            }
+        }
+    }
+
+    private BasicBlock intersect(BasicBlock a, BasicBlock b, int[] order) {
+        while (a != b) {
+            while (order[a.getId()] > order[b.getId()]) {
+                a = idoms[a.getId()];
+            }
+            while (order[b.getId()] > order[a.getId()]) {
+                b = idoms[b.getId()];
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Get the immediate dominator of a block.
+     * @param block The block
+     * @return The immediate dominator, or null for the entry
+     */
+    public BasicBlock getImmediateDominator(BasicBlock block) {
+        BasicBlock idom = idoms[block.getId()];
+        return idom == block ? null : idom;
+    }
+
+    /**
+     * Get the blocks whose immediate dominator is a block.
+     * @param block The block
+     * @return The children of the block in the dominator tree
+     */
+    public List<BasicBlock> getChildren(BasicBlock block) {
+        return Collections.unmodifiableList(children.get(block.getId()));
+    }
+
+    /**
+     * Get the dominance frontier of a block: the blocks that have a
+     * predecessor it dominates, but that it does not strictly dominate.
+     * @param block The block
+     * @return The dominance frontier
+     */
+    public List<BasicBlock> getFrontier(BasicBlock block) {
+        return Collections.unmodifiableList(frontiers.get(block.getId()));
+    }
+
+    /**
+     * Determine if one block dominates another. Every block dominates
+     * itself.
+     * @param a The dominating block
+     * @param b The dominated block
+     * @return true if a dominates b
+     */
+    public boolean dominates(BasicBlock a, BasicBlock b) {
+        int offset = preorderIndex[b.getId()] - preorderIndex[a.getId()];
+        return offset >= 0 && offset < subtreeSize[a.getId()];
+    }
+
+    /**
+     * Get the blocks in a preorder of the dominator tree, in which each
+     * block comes after every block that dominates it.
+     * @return The blocks
+     */
+    public List<BasicBlock> preorder() {
+        return Collections.unmodifiableList(preorder);
+    }
+
+    /**
+     * Get the blocks in reverse postorder, as the dominators were computed.
+     * @return The blocks
+     */
+    public List<BasicBlock> reversePostorder() {
+        return Collections.unmodifiableList(reversePostorder);
+    }
+
+}
@@ -0,0 +1,188 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import edu.temple.cis.c4324.microcompilerv1.Ast;
+import edu.temple.cis.c4324.microcompilerv1.Identifier;
+import edu.temple.cis.c4324.microcompilerv1.PrimitiveType;
+import edu.temple.cis.c4324.microcompilerv1.Type;
+
+/**
+ * A three-address instruction. Its operands are values, and its result, if
+ * its type is not VOID, is the instruction itself. The operands of a binary
+ * operator have already been converted to the type it operates on.
+ * <p>
+ * The operands and other fields of each opcode are:</p>
+ * <pre>
+ * GET_LOCAL      none (identifier: the variable)
+ * SET_LOCAL      value (identifier: the variable)
+ * PHI            one value for each predecessor of the block
+ * CONVERT        value; the result has the type converted to
+ * UNARY          operand (op: MINUS, COMPLEMENT or NOT)
+ * ARITHMETIC     left, right (op: the operator)
+ * COMPARE        left, right (op: the operator); the result is a bool
+ * POWER          base, exponent; both int for an int power, else both real
+ * LOAD_GLOBAL    none (identifier: the global variable)
+ * STORE_GLOBAL   value (identifier: the global variable)
+ * NEW_ARRAY      length; the result has the array type
+ * ARRAY_LOAD     array, index
+ * ARRAY_STORE    array, index, value
+ * CALL           arguments... (identifier: the procedure or function)
+ * READ           none; the result is the value read
+ * WRITE          value
+ * JUMP           none (targets: the successor)
+ * BRANCH         condition (targets: the successors if it is true and false)
+ * RETURN         value?
+ * </pre>
+ * GET_LOCAL and SET_LOCAL are the reads and assignments of the local
+ * variables and parameters before the graph is put in SSA form, which
+ * replaces them by the values they read and phi instructions. The last
+ * three opcodes are the terminators that end each block.
+ */
+public final class Instruction extends Value {
+
+    public static final int GET_LOCAL = 0;
+    public static final int SET_LOCAL = 1;
+    public static final int PHI = 2;
+    public static final int CONVERT = 3;
+    public static final int UNARY = 4;
+    public static final int ARITHMETIC = 5;
+    public static final int COMPARE = 6;
+    public static final int POWER = 7;
+    public static final int LOAD_GLOBAL = 8;
+    public static final int STORE_GLOBAL = 9;
+    public static final int NEW_ARRAY = 10;
+    public static final int ARRAY_LOAD = 11;
+    public static final int ARRAY_STORE = 12;
+    public static final int CALL = 13;
+    public static final int READ = 14;
+    public static final int WRITE = 15;
+    public static final int JUMP = 16;
+    public static final int BRANCH = 17;
+    public static final int RETURN = 18;
+
+    private static final String[] NAMES = {
+        "get", "set", "phi", "convert", "unary", "arith", "compare", "power",
+        "load", "store", "newarray", "aload", "astore", "call", "read", "write",
+        "jump", "branch", "return"
+    };
+
+    private static final Value[] NO_OPERANDS = {};
+
+    private final int opcode;
+    private final int op;
+    private Value[] operands;
+    private final Identifier identifier;
+    private BasicBlock[] targets;
+    private BasicBlock block;
+
+    /**
+     * Construct an instruction.
+     * @param opcode The opcode
+     * @param type The type of the result, or VOID
+     * @param op The operator, or 0
+     * @param identifier The variable, global or routine, or null
+     * @param operands The operands
+     */
+    Instruction(int opcode, Type type, int op, Identifier identifier, Value... operands) {
+        super(type);
+        this.opcode = opcode;
+        this.op = op;
+        this.identifier = identifier;
+        this.operands = operands.length == 0 ? NO_OPERANDS : operands;
+    }
+
+    public int getOpcode() {return opcode;}
+
+    /**
+     * Get the operator of a UNARY, ARITHMETIC or COMPARE instruction.
+     * @return The operator, as an Ast operator
+     */
+    public int getOp() {return op;}
+
+    public Identifier getIdentifier() {return identifier;}
+
+    public int getOperandCount() {return operands.length;}
+
+    public Value getOperand(int i) {return operands[i];}
+
+    void setOperand(int i, Value value) {
+        operands[i] = value;
+    }
+
+    /**
+     * Remove an operand, moving the ones after it down.
+     * @param i The index of the operand
+     */
+    void removeOperand(int i) {
+        Value[] remaining = new Value[operands.length - 1];
+        System.arraycopy(operands, 0, remaining, 0, i);
+        System.arraycopy(operands, i + 1, remaining, i, remaining.length - i);
+        operands = remaining;
+    }
+
+    /**
+     * Get the block the instruction is in.
+     * @return The block, or null if it has been removed
+     */
+    public BasicBlock getBlock() {return block;}
+
+    void setBlock(BasicBlock block) {
+        this.block = block;
+    }
+
+    /**
+     * Get a successor of the block that a JUMP or BRANCH ends.
+     * @param i 0, or 1 for the false successor of a BRANCH
+     * @return The successor
+     */
+    public BasicBlock getTarget(int i) {return targets[i];}
+
+    public int getTargetCount() {return targets == null ? 0 : targets.length;}
+
+    void setTargets(BasicBlock... targets) {
+        this.targets = targets;
+    }
+
+    /**
+     * Determine if the instruction ends a block.
+     * @return true for JUMP, BRANCH and RETURN
+     */
+    public boolean isTerminator() {return opcode >= JUMP;}
+
+    /**
+     * Determine if the instruction has a result.
+     * @return true if its type is not VOID
+     */
+    public boolean hasResult() {return getType() != PrimitiveType.VOID;}
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (hasResult()) {
+            sb.append(getName()).append(" = ");
+        }
+        sb.append(NAMES[opcode]);
+        if (opcode == UNARY || opcode == ARITHMETIC || opcode == COMPARE) {
+            sb.append(' ').append(Ast.operatorText(op));
+        } else if (opcode == CONVERT) {
+            sb.append(' ').append(getType());
+        }
+        if (identifier != null) {
+            sb.append(' ').append(identifier.getName());
+        }
+        for (int i = 0; i < operands.length; i++) {
+            sb.append(i == 0 ? " " : ", ");
+            if (opcode == PHI) {
+                sb.append('[').append(block.getPredecessors().get(i).getName()).append(": ");
+            }
+            sb.append(operands[i] == null ? "?" : operands[i].getName());
+            if (opcode == PHI) {
+                sb.append(']');
+            }
+        }
+        for (int i = 0; i < getTargetCount(); i++) {
+            sb.append(i == 0 && operands.length == 0 ? " " : ", ").append(targets[i].getName());
+        }
+        return sb.toString();
+    }
+
+}
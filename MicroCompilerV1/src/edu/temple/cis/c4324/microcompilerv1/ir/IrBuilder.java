@@ -0,0 +1,696 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import edu.temple.cis.c4324.microcompilerv1.ArrayType;
+import edu.temple.cis.c4324.microcompilerv1.Ast;
+import edu.temple.cis.c4324.microcompilerv1.Identifier;
+import edu.temple.cis.c4324.microcompilerv1.MicroCompilerV1;
+import edu.temple.cis.c4324.microcompilerv1.PowerForm;
+import edu.temple.cis.c4324.microcompilerv1.PrimitiveType;
+import edu.temple.cis.c4324.microcompilerv1.ProcedureOrFunction;
+import edu.temple.cis.c4324.microcompilerv1.ReferenceVisitor;
+import edu.temple.cis.c4324.microcompilerv1.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build the control flow graph of a routine from its type checked Ast. The
+ * statements and expressions are lowered to three-address instructions in
+ * the order the compile visitor generates their code, so that reads,
+ * writes, calls and global variables are used in the same order. The local
+ * variables and parameters are first read and assigned by GET_LOCAL and
+ * SET_LOCAL, and the graph is then put in SSA form by SsaConstruction.
+ * Global variables stay in their static fields and are loaded and stored.
+ * <p>
+ * Conditions are lowered to branches as the compile visitor jumps on them,
+ * and an ∧ or ∨ that is not a condition joins its two values with a phi. A
+ * ** is multiplied out where PowerForm chooses a CHAIN, and is otherwise a
+ * POWER of reals, or of ints if its result is an int.</p>
+ */
+public class IrBuilder {
+
+    private final Ast ast;
+    private ControlFlowGraph cfg;
+    private BasicBlock current;
+    private Map<Identifier, Value> initialValues;
+    private Frame[] frames;
+    private int depth;
+    private Value[] values;
+    private int top;
+
+    /**
+     * Construct the builder.
+     * @param ast The Ast, with the scopes created by the definition visitor
+     * and the types found by the reference visitor
+     */
+    public IrBuilder(Ast ast) {
+        this.ast = ast;
+        frames = new Frame[16];
+        values = new Value[16];
+    }
+
+    /**
+     * Build the graph of the main body of a program.
+     * @param body The STATEMENTS node of the body of the program
+     * @return The graph in SSA form
+     */
+    public ControlFlowGraph buildMain(int body) {
+        begin("main", PrimitiveType.VOID, new ArrayList<>());
+        return finish(body);
+    }
+
+    /**
+     * Build the graph of a procedure or function.
+     * @param node The PROCEDURE or FUNCTION node
+     * @return The graph in SSA form
+     */
+    public ControlFlowGraph build(int node) {
+        Type returnType = PrimitiveType.VOID;
+        if (ast.getKind(node) == Ast.FUNCTION) {
+            returnType = ((ProcedureOrFunction) ast.getIdentifier(node).getType()).getReturnType();
+        }
+        List<Parameter> parameters = new ArrayList<>();
+        int n = ast.getChildCount(node);
+        for (int i = 0; i < n - 1; i++) {
+            int decl = ast.getChild(node, i);
+            int kind = ast.getKind(decl);
+            if (kind == Ast.PARAMETER || kind == Ast.ARRAY_PARAMETER) {
+                parameters.add(new Parameter(ast.getIdentifier(decl)));
+            }
+        }
+        begin(ast.getText(node), returnType, parameters);
+        parameters.forEach(parameter -> initialValues.put(parameter.getIdentifier(), parameter));
+        for (int i = 0; i < n - 1; i++) {
+            int decl = ast.getChild(node, i);
+            Identifier id = ast.getIdentifier(decl);
+            if (ast.getKind(decl) == Ast.VARIABLE) {
+                initialValues.put(id, Constant.zero((PrimitiveType) id.getType()));
+            } else if (ast.getKind(decl) == Ast.ARRAY_VARIABLE) {
+                ArrayType arrayType = (ArrayType) id.getType();
+                int length = Integer.parseInt(ast.getText(ast.getChild(decl, 0)));
+                // The array is created when the routine is entered, and the
+                // variable is never assigned again.
+                initialValues.put(id, add(Instruction.NEW_ARRAY, arrayType, 0, null,
+                        Constant.of(PrimitiveType.INT, length)));
+            }
+        }
+        return finish(ast.getLastChild(node));
+    }
+
+    private void begin(String name, Type returnType, List<Parameter> parameters) {
+        cfg = new ControlFlowGraph(name, returnType, parameters);
+        current = cfg.getEntry();
+        initialValues = new HashMap<>();
+    }
+
+    /**
+     * Build the body of the routine, return at its end, and put the graph
+     * in SSA form. A function that reaches its end returns the zero of its
+     * return type.
+     */
+    private ControlFlowGraph finish(int body) {
+        visitStatements(body);
+        Type returnType = cfg.getReturnType();
+        if (returnType == PrimitiveType.VOID) {
+            terminate(new Instruction(Instruction.RETURN, PrimitiveType.VOID, 0, null));
+        } else {
+            terminate(new Instruction(Instruction.RETURN, PrimitiveType.VOID, 0, null,
+                    Constant.zero((PrimitiveType) returnType)));
+        }
+        cfg.removeUnreachableBlocks();
+        new SsaConstruction(cfg, initialValues).run();
+        ControlFlowGraph result = cfg;
+        cfg = null;
+        current = null;
+        initialValues = null;
+        return result;
+    }
+
+    private Instruction add(int opcode, Type type, int op, Identifier identifier, Value... operands) {
+        return current.add(new Instruction(opcode, type, op, identifier, operands));
+    }
+
+    /**
+     * End the current block. The statements that follow are added to a new
+     * block, which is unreachable unless it is branched to.
+     */
+    private void terminate(Instruction terminator, BasicBlock... targets) {
+        current.terminate(terminator, targets);
+        current = cfg.newBlock();
+    }
+
+    private void jump(BasicBlock target) {
+        terminate(new Instruction(Instruction.JUMP, PrimitiveType.VOID, 0, null), target);
+    }
+
+    private void branch(Value condition, BasicBlock trueTarget, BasicBlock falseTarget) {
+        if (trueTarget == falseTarget) {
+            jump(trueTarget);
+        } else {
+            terminate(new Instruction(Instruction.BRANCH, PrimitiveType.VOID, 0, null, condition),
+                    trueTarget, falseTarget);
+        }
+    }
+
+    private void visitStatements(int node) {
+        int n = ast.getChildCount(node);
+        for (int i = 0; i < n; i++) {
+            visitStatement(ast.getChild(node, i));
+        }
+    }
+
+    private void visitStatement(int node) {
+        switch (ast.getKind(node)) {
+            case Ast.READ:
+                visitRead(node);
+                break;
+            case Ast.WRITE:
+                for (int i = 0; i < ast.getChildCount(node); i++) {
+                    add(Instruction.WRITE, PrimitiveType.VOID, 0, null, visitExpression(ast.getChild(node, i)));
+                }
+                break;
+            case Ast.ASSIGN:
+                visitAssignment(node);
+                break;
+            case Ast.CALL:
+                add(Instruction.CALL, PrimitiveType.VOID, 0, ast.getIdentifier(node), visitArguments(node));
+                break;
+            case Ast.IF:
+                visitIf(node);
+                break;
+            case Ast.WHILE:
+                visitWhile(node);
+                break;
+            case Ast.DO_UNTIL:
+                visitDoUntil(node);
+                break;
+            case Ast.RETURN:
+                visitReturn(node);
+                break;
+            case Ast.STATEMENTS:
+                // Constant folding replaces an if whose arms are all pruned
+                // by the statements of the arm that is always taken.
+                visitStatements(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void visitRead(int node) {
+        int n = ast.getChildCount(node);
+        for (int i = 0; i < n; i++) {
+            int lvalue = ast.getChild(node, i);
+            Type type = ast.getType(lvalue);
+            if (ast.getKind(lvalue) == Ast.ID_LVALUE) {
+                assign(ast.getIdentifier(lvalue), add(Instruction.READ, type, 0, null), node);
+            } else {
+                Value array = arrayReference(lvalue);
+                Value index = visitExpression(ast.getChild(lvalue, 0));
+                Value value = add(Instruction.READ, type, 0, null);
+                add(Instruction.ARRAY_STORE, PrimitiveType.VOID, 0, null, array, index, value);
+            }
+        }
+    }
+
+    private void visitAssignment(int node) {
+        int lvalue = ast.getChild(node, 0);
+        int expr = ast.getChild(node, 1);
+        Type type = ast.getType(lvalue);
+        if (ast.getKind(lvalue) == Ast.ID_LVALUE) {
+            assign(ast.getIdentifier(lvalue), convert(visitExpression(expr), type), lvalue);
+        } else {
+            Value array = arrayReference(lvalue);
+            Value index = visitExpression(ast.getChild(lvalue, 0));
+            Value value = convert(visitExpression(expr), type);
+            add(Instruction.ARRAY_STORE, PrimitiveType.VOID, 0, null, array, index, value);
+        }
+    }
+
+    /**
+     * Assign a variable. Like the compile visitor, this does not support
+     * local variables or parameters that are chars.
+     * @param node The node at which an error is reported
+     */
+    private void assign(Identifier id, Value value, int node) {
+        if (id.isStatic()) {
+            add(Instruction.STORE_GLOBAL, PrimitiveType.VOID, 0, id, value);
+        } else {
+            if (id.getType() != PrimitiveType.INT && id.getType() != PrimitiveType.BOOL
+                    && id.getType() != PrimitiveType.REAL) {
+                MicroCompilerV1.error(ast, node, id.getType() + " is not a supported variable type");
+            }
+            add(Instruction.SET_LOCAL, PrimitiveType.VOID, 0, id, value);
+        }
+    }
+
+    private Value read(Identifier id) {
+        if (id.isStatic()) {
+            return add(Instruction.LOAD_GLOBAL, id.getType(), 0, id);
+        }
+        return add(Instruction.GET_LOCAL, id.getType(), 0, id);
+    }
+
+    /**
+     * Get the array of an ARRAY_LVALUE or ARRAY_ACCESS node.
+     */
+    private Value arrayReference(int node) {
+        return read(ast.getIdentifier(node));
+    }
+
+    private Value[] visitArguments(int node) {
+        int n = ast.getChildCount(node);
+        Value[] arguments = new Value[n];
+        for (int i = 0; i < n; i++) {
+            arguments[i] = visitExpression(ast.getChild(node, i));
+        }
+        return arguments;
+    }
+
+    private void visitIf(int node) {
+        BasicBlock end = cfg.newBlock();
+        int n = ast.getChildCount(node);
+        boolean hasElse = ast.getKind(ast.getLastChild(node)) == Ast.ELSE;
+        int arms = hasElse ? n - 1 : n;
+        for (int i = 1; i < arms; i++) {
+            int guard = i == 1 ? ast.getChild(node, 0) : ast.getChild(ast.getChild(node, i), 0);
+            int statements = i == 1 ? ast.getChild(node, 1) : ast.getChild(ast.getChild(node, i), 1);
+            BasicBlock then = cfg.newBlock();
+            BasicBlock next = cfg.newBlock();
+            visitCondition(guard, then, next);
+            current = then;
+            visitStatements(statements);
+            jump(end);
+            current = next;
+        }
+        if (hasElse) {
+            visitStatements(ast.getChild(ast.getLastChild(node), 0));
+        }
+        jump(end);
+        current = end;
+    }
+
+    private void visitWhile(int node) {
+        BasicBlock test = cfg.newBlock();
+        BasicBlock body = cfg.newBlock();
+        BasicBlock exit = cfg.newBlock();
+        jump(test);
+        current = test;
+        visitCondition(ast.getChild(node, 0), body, exit);
+        current = body;
+        visitStatements(ast.getChild(node, 1));
+        jump(test);
+        current = exit;
+    }
+
+    private void visitDoUntil(int node) {
+        BasicBlock body = cfg.newBlock();
+        BasicBlock exit = cfg.newBlock();
+        jump(body);
+        current = body;
+        visitStatements(ast.getChild(node, 0));
+        visitCondition(ast.getChild(node, 1), exit, body);
+        current = exit;
+    }
+
+    private void visitReturn(int node) {
+        if (ast.getChildCount(node) == 0) {
+            terminate(new Instruction(Instruction.RETURN, PrimitiveType.VOID, 0, null));
+            return;
+        }
+        Value value = visitExpression(ast.getChild(node, 0));
+        if (cfg.getReturnType() != PrimitiveType.VOID) {
+            value = convert(value, cfg.getReturnType());
+        }
+        terminate(new Instruction(Instruction.RETURN, PrimitiveType.VOID, 0, null, value));
+    }
+
+    /**
+     * A condition waiting to be lowered, or a chain of ∧ or of ∨ operators
+     * whose operands are being lowered in turn.
+     */
+    private static final class Condition {
+        final int node;
+        final BasicBlock trueTarget;
+        final BasicBlock falseTarget;
+        int[] operands;
+        int next;
+        BasicBlock block;
+
+        Condition(int node, BasicBlock trueTarget, BasicBlock falseTarget) {
+            this.node = node;
+            this.trueTarget = trueTarget;
+            this.falseTarget = falseTarget;
+        }
+    }
+
+    /**
+     * Lower a condition to branches to one block if it is true and another if
+     * it is false. A comparison becomes a COMPARE that the branch tests, ¬
+     * swaps the targets, and ∧ and ∨ branch as soon as their value is known.
+     * The chains of ∧ and ∨ operators are kept on an explicit stack instead
+     * of lowered by recursion, so that a long condition, however its
+     * operators mix, does not need a deep thread stack. The current block is
+     * ended.
+     */
+    private void visitCondition(int root, BasicBlock rootTrueTarget, BasicBlock rootFalseTarget) {
+        Deque<Condition> conditions = new ArrayDeque<>();
+        conditions.push(new Condition(root, rootTrueTarget, rootFalseTarget));
+        while (!conditions.isEmpty()) {
+            Condition condition = conditions.peek();
+            if (condition.operands != null) {
+                visitLogicalOperand(condition, conditions);
+                continue;
+            }
+            conditions.pop();
+            int node = condition.node;
+            BasicBlock trueTarget = condition.trueTarget;
+            BasicBlock falseTarget = condition.falseTarget;
+            while (ast.getKind(node) == Ast.UNARY && ast.getOp(node) == Ast.NOT
+                    && ast.getType(ast.getChild(node, 0)) == PrimitiveType.BOOL) {
+                node = ast.getChild(node, 0);
+                BasicBlock swap = trueTarget;
+                trueTarget = falseTarget;
+                falseTarget = swap;
+            }
+            switch (ast.getKind(node)) {
+                case Ast.LOGICAL:
+                    conditions.push(logicalCondition(node, trueTarget, falseTarget));
+                    break;
+                case Ast.BOOL_LITERAL:
+                    jump(ast.getText(node).equals("true") ? trueTarget : falseTarget);
+                    break;
+                default:
+                    branch(visitExpression(node), trueTarget, falseTarget);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Collect the operands of a chain of ∧ or of ∨ operators, which nests to
+     * the left.
+     */
+    private Condition logicalCondition(int node, BasicBlock trueTarget, BasicBlock falseTarget) {
+        int op = ast.getOp(node);
+        int length = 1;
+        for (int n = ast.getChild(node, 0); isLogical(n, op); n = ast.getChild(n, 0)) {
+            length++;
+        }
+        int[] operands = new int[length + 1];
+        int n = node;
+        for (int i = length; i > 0; i--) {
+            operands[i] = ast.getChild(n, 1);
+            n = ast.getChild(n, 0);
+        }
+        operands[0] = n;
+        Condition chain = new Condition(node, trueTarget, falseTarget);
+        chain.operands = operands;
+        return chain;
+    }
+
+    /**
+     * Push the next operand of a chain of ∧ or of ∨ operators. Each operand
+     * but the last branches to a new block, in which the next one is lowered,
+     * when it does not decide the value of the chain.
+     */
+    private void visitLogicalOperand(Condition chain, Deque<Condition> conditions) {
+        if (chain.block != null) {
+            current = chain.block;
+        }
+        int operand = chain.operands[chain.next++];
+        if (chain.next == chain.operands.length) {
+            conditions.pop();
+            conditions.push(new Condition(operand, chain.trueTarget, chain.falseTarget));
+            return;
+        }
+        chain.block = cfg.newBlock();
+        if (ast.getOp(chain.node) == Ast.AND) {
+            conditions.push(new Condition(operand, chain.block, chain.falseTarget));
+        } else {
+            conditions.push(new Condition(operand, chain.trueTarget, chain.block));
+        }
+    }
+
+    private boolean isLogical(int node, int op) {
+        return ast.getKind(node) == Ast.LOGICAL && ast.getOp(node) == op;
+    }
+
+    /**
+     * The state of an expression node whose operands are being lowered.
+     */
+    private static final class Frame {
+        int node;
+        int next;
+        /** The block that branches to the join of an ∧ or ∨ without its right operand. */
+        BasicBlock shortCircuit;
+        BasicBlock join;
+    }
+
+    /**
+     * Lower an expression. The expression is walked with an explicit stack
+     * of frames, as the compile visitor walks it, and the value of each
+     * operand is pushed on a stack of values until its operator is lowered.
+     * @param root The root of the expression
+     * @return The value of the expression
+     */
+    private Value visitExpression(int root) {
+        int base = depth;
+        enterExpression(root);
+        while (true) {
+            Frame frame = frames[depth - 1];
+            if (frame.next < ast.getChildCount(frame.node)) {
+                enterExpression(ast.getChild(frame.node, frame.next++));
+                continue;
+            }
+            depth--;
+            exitExpression(frame);
+            if (depth == base) {
+                return values[--top];
+            }
+            Frame parent = frames[depth - 1];
+            afterOperand(parent, parent.next - 1);
+        }
+    }
+
+    private void enterExpression(int node) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        Frame frame = frames[depth];
+        if (frame == null) {
+            frame = new Frame();
+            frames[depth] = frame;
+        }
+        depth++;
+        frame.node = node;
+        frame.next = 0;
+        frame.shortCircuit = null;
+        frame.join = null;
+    }
+
+    private void push(Value value) {
+        if (top == values.length) {
+            values = Arrays.copyOf(values, top * 2);
+        }
+        values[top++] = value;
+    }
+
+    /**
+     * Lower what follows an operand of an expression node: its conversion
+     * to the type the node operates on, or the branch of an ∧ or ∨.
+     */
+    private void afterOperand(Frame frame, int operand) {
+        int node = frame.node;
+        switch (ast.getKind(node)) {
+            case Ast.ARITHMETIC:
+                values[top - 1] = convert(values[top - 1], ast.getType(node));
+                break;
+            case Ast.COMPARISON:
+                values[top - 1] = convert(values[top - 1], comparisonType(node));
+                break;
+            case Ast.POWER:
+                if (ast.getType(node) == PrimitiveType.REAL || PowerForm.of(ast, node) == PowerForm.CHAIN) {
+                    values[top - 1] = convert(values[top - 1], PrimitiveType.REAL);
+                }
+                break;
+            case Ast.LOGICAL:
+                if (operand == 0) {
+                    Value left = values[--top];
+                    BasicBlock right = cfg.newBlock();
+                    frame.join = cfg.newBlock();
+                    frame.shortCircuit = current;
+                    if (ast.getOp(node) == Ast.AND) {
+                        branch(left, right, frame.join);
+                    } else {
+                        branch(left, frame.join, right);
+                    }
+                    current = right;
+                } else {
+                    jump(frame.join);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Lower an expression node whose operands have been lowered.
+     */
+    private void exitExpression(Frame frame) {
+        int node = frame.node;
+        Type type = ast.getType(node);
+        switch (ast.getKind(node)) {
+            case Ast.ARRAY_ACCESS: {
+                Value index = values[--top];
+                push(add(Instruction.ARRAY_LOAD, type, 0, null, arrayReference(node), index));
+                break;
+            }
+            case Ast.FUNCTION_CALL: {
+                int n = ast.getChildCount(node);
+                top -= n;
+                push(add(Instruction.CALL, type, 0, ast.getIdentifier(node), Arrays.copyOfRange(values, top, top + n)));
+                break;
+            }
+            case Ast.UNARY:
+                exitUnary(node);
+                break;
+            case Ast.POWER: {
+                Value exponent = values[--top];
+                Value base = values[--top];
+                push(power(node, base, exponent));
+                break;
+            }
+            case Ast.ARITHMETIC: {
+                Value right = values[--top];
+                Value left = values[--top];
+                push(add(Instruction.ARITHMETIC, type, ast.getOp(node), null, left, right));
+                break;
+            }
+            case Ast.COMPARISON: {
+                Value right = values[--top];
+                Value left = values[--top];
+                push(add(Instruction.COMPARE, PrimitiveType.BOOL, ast.getOp(node), null, left, right));
+                break;
+            }
+            case Ast.LOGICAL: {
+                Value right = values[--top];
+                current = frame.join;
+                Constant shortValue = Constant.of(PrimitiveType.BOOL, ast.getOp(node) == Ast.OR ? 1 : 0);
+                Value[] operands = new Value[current.getPredecessors().size()];
+                for (int i = 0; i < operands.length; i++) {
+                    operands[i] = current.getPredecessors().get(i) == frame.shortCircuit ? shortValue : right;
+                }
+                push(current.addPhi(new Instruction(Instruction.PHI, PrimitiveType.BOOL, 0, null, operands)));
+                break;
+            }
+            case Ast.ID:
+                push(read(ast.getIdentifier(node)));
+                break;
+            case Ast.INT_LITERAL:
+            case Ast.REAL_LITERAL:
+            case Ast.CHAR_LITERAL:
+            case Ast.BOOL_LITERAL:
+                push(Constant.literal((PrimitiveType) type, ast.getText(node)));
+                break;
+        }
+    }
+
+    private void exitUnary(int node) {
+        Type exprType = ast.getType(ast.getChild(node, 0));
+        int op = ast.getOp(node);
+        switch (op) {
+            case Ast.PLUS:
+                return;  // The + unary operator does nothing.
+            case Ast.MINUS:
+                if (exprType != PrimitiveType.INT && exprType != PrimitiveType.REAL) {
+                    MicroCompilerV1.error(ast, node, "- cannot be applied to " + exprType.toString());
+                }
+                break;
+            case Ast.COMPLEMENT:
+                if (exprType != PrimitiveType.INT) {
+                    MicroCompilerV1.error(ast, node, "~ cannot be applied to " + exprType.toString());
+                }
+                break;
+            case Ast.NOT:
+                if (exprType != PrimitiveType.BOOL) {
+                    MicroCompilerV1.error(ast, node, "~ cannot be applied to " + exprType.toString());
+                }
+                break;
+        }
+        Value operand = values[--top];
+        push(add(Instruction.UNARY, exprType, op, null, operand));
+    }
+
+    /**
+     * The type in which the operands of a comparison are compared, which is
+     * VOID for chars, as in the compile visitor.
+     */
+    private Type comparisonType(int node) {
+        Type lhsType = ast.getType(ast.getChild(node, 0));
+        Type rhsType = ast.getType(ast.getChild(node, 1));
+        return ReferenceVisitor.determineExpressionResult(lhsType, rhsType);
+    }
+
+    /**
+     * Lower a ** node. A CHAIN multiplies the base in double, and an int
+     * result is converted by d2i, so the values are those of Math.pow.
+     */
+    private Value power(int node, Value base, Value exponent) {
+        Type type = ast.getType(node);
+        if (PowerForm.of(ast, node) != PowerForm.CHAIN) {
+            return add(Instruction.POWER, type, 0, null, base, exponent);
+        }
+        Value result;
+        switch (PowerForm.chainExponent(ast, node)) {
+            case 0:
+                result = Constant.of(PrimitiveType.REAL, 1.0);
+                break;
+            case 1:
+                result = base;
+                break;
+            case 2:
+                result = multiply(base, base);
+                break;
+            case 3:
+                result = multiply(base, multiply(base, base));
+                break;
+            default: {
+                Value square = multiply(base, base);
+                result = multiply(square, square);
+                break;
+            }
+        }
+        return convert(result, type);
+    }
+
+    private Value multiply(Value left, Value right) {
+        return add(Instruction.ARITHMETIC, PrimitiveType.REAL, Ast.TIMES, null, left, right);
+    }
+
+    /**
+     * Convert a value to a type, if it has another type. A constant is
+     * converted as it is built. The compile visitor has no conversion from
+     * a char or to VOID, so neither has this, and a program that needs one
+     * fails on both paths with the same error.
+     */
+    private Value convert(Value value, Type type) {
+        if (value.getType() == type) {
+            return value;
+        }
+        if (value.getType() == PrimitiveType.CHAR || type == PrimitiveType.VOID) {
+            throw new RuntimeException("No instruction to convert " + ((PrimitiveType) value.getType()).getStorageType()
+                    + " to " + ((PrimitiveType) type).getStorageType());
+        }
+        if (value instanceof Constant && type instanceof PrimitiveType) {
+            Constant constant = (Constant) value;
+            return Constant.of((PrimitiveType) type,
+                    value.getType() == PrimitiveType.REAL ? constant.doubleValue() : constant.intValue());
+        }
+        return add(Instruction.CONVERT, type, 0, null, value);
+    }
+
+}
@@ -0,0 +1,684 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import edu.temple.cis.c4324.codegen.Backend;
+import edu.temple.cis.c4324.codegen.Code;
+import edu.temple.cis.c4324.codegen.CodeGenerator;
+import edu.temple.cis.c4324.codegen.Label;
+import edu.temple.cis.c4324.microcompilerv1.ArrayType;
+import edu.temple.cis.c4324.microcompilerv1.Ast;
+import edu.temple.cis.c4324.microcompilerv1.PrimitiveType;
+import edu.temple.cis.c4324.microcompilerv1.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.apache.bcel.Constants.DUP;
+import static org.apache.bcel.Constants.IADD;
+import static org.apache.bcel.Constants.IAND;
+import static org.apache.bcel.Constants.IDIV;
+import static org.apache.bcel.Constants.IFEQ;
+import static org.apache.bcel.Constants.IFNE;
+import static org.apache.bcel.Constants.IF_ICMPEQ;
+import static org.apache.bcel.Constants.IF_ICMPGE;
+import static org.apache.bcel.Constants.IF_ICMPGT;
+import static org.apache.bcel.Constants.IF_ICMPLE;
+import static org.apache.bcel.Constants.IF_ICMPLT;
+import static org.apache.bcel.Constants.IF_ICMPNE;
+import static org.apache.bcel.Constants.IMUL;
+import static org.apache.bcel.Constants.INEG;
+import static org.apache.bcel.Constants.INVOKESPECIAL;
+import static org.apache.bcel.Constants.INVOKESTATIC;
+import static org.apache.bcel.Constants.INVOKEVIRTUAL;
+import static org.apache.bcel.Constants.IOR;
+import static org.apache.bcel.Constants.IREM;
+import static org.apache.bcel.Constants.ISHL;
+import static org.apache.bcel.Constants.ISHR;
+import static org.apache.bcel.Constants.ISUB;
+import static org.apache.bcel.Constants.IUSHR;
+import static org.apache.bcel.Constants.IXOR;
+import static org.apache.bcel.Constants.POP;
+import static org.apache.bcel.Constants.POP2;
+import org.apache.bcel.generic.ObjectType;
+
+/**
+ * Generate the code of a method from a graph in SSA form. Each value that is
+ * used is kept in a local variable of the method, except constants, which
+ * are pushed at each use, and a value whose only use directly follows it,
+ * which is left on the stack. Values that are never live at the same point
+ * share a local variable: the blocks are walked in a preorder of the
+ * dominator tree, in which every value is defined before the blocks that
+ * use it, and each value takes the first local variable of its type that no
+ * live value holds. A parameter stays in the local variable it is passed
+ * in until it is dead.
+ * <p>
+ * The phis are taken out of SSA form by copies. The phis and the operands
+ * that PhiCoalescing puts in one class share a local variable of their own,
+ * so an operand in the class of its phi needs no copy, and any other operand
+ * is copied to the class's variable at the end of its predecessor. The
+ * copies at the end of a block are made together: if one of them overwrites
+ * a variable that another reads, every operand is pushed before any is
+ * stored. A phi without a class has a second variable that its
+ * predecessors store their operands in and that its block copies to the
+ * phi's variable, so the copies cannot overwrite a value that is still live,
+ * even on an edge that goes from a block with several successors to a block
+ * with several predecessors.</p>
+ * <p>
+ * The blocks are laid out in reverse postorder, and a jump to the next
+ * block is left out. A comparison that only decides the branch ending its
+ * block is compiled into the branch.</p>
+ */
+public class IrLowering {
+
+    private static final ObjectType PRINT_STREAM = new ObjectType("java.io.PrintStream");
+    private static final ObjectType SCANNER = new ObjectType("java.util.Scanner");
+    private static final ObjectType INPUT_STREAM = new ObjectType("java.io.InputStream");
+
+    private final Backend cg;
+    private final Code code;
+    private ControlFlowGraph cfg;
+    private Value[] values;
+    private int[] uses;
+    private int[] slots;
+    private int[] phiSlots;
+    private BitSet fused;
+    private BitSet stacked;
+    // The values pushed before an instruction for a later one, where null
+    // is System.out, and the number of operands of an instruction that are
+    // on the stack when it is lowered.
+    private Map<Instruction, List<Value>> pushedBefore;
+    private Map<Instruction, Integer> pushedOperands;
+    private Label[] labels;
+    private final Map<String, List<Integer>> pools;
+    private int localCount;
+    private int in;
+    private boolean powerMethodUsed;
+
+    /**
+     * Construct the lowering of one method.
+     * @param cg The backend generating the class
+     * @param code The code of the method, whose parameters are defined
+     */
+    public IrLowering(Backend cg, Code code) {
+        this.cg = cg;
+        this.code = code;
+        pools = new HashMap<>();
+        in = -1;
+    }
+
+    /**
+     * Determine if the code calls the $power method of the class, which the
+     * compile visitor then generates.
+     * @return true if an int ** was lowered to a call
+     */
+    public boolean usesPowerMethod() {return powerMethodUsed;}
+
+    /**
+     * Generate the code of a graph.
+     * @param cfg The graph, in SSA form
+     */
+    public void lower(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        Liveness liveness = new Liveness(cfg);
+        Dominators dominators = new Dominators(cfg);
+        countUses();
+        findStackedValues();
+        assignSlots(liveness, dominators);
+        List<BasicBlock> layout = dominators.reversePostorder();
+        labels = new Label[cfg.getBlockIdLimit()];
+        for (BasicBlock block : layout) {
+            labels[block.getId()] = new Label();
+        }
+        if (in >= 0) {
+            code.addNew(cg.getClassRef("java.util.Scanner"));
+            code.addInstruction(DUP);
+            code.addGetStatic(cg.getFieldRef("java.lang.System", "in", INPUT_STREAM));
+            code.addInvoke(INVOKESPECIAL, cg.getMethodRef("java.util.Scanner", "<init>",
+                    org.apache.bcel.generic.Type.VOID, INPUT_STREAM));
+            code.addStore(SCANNER, in);
+        }
+        for (int i = 0; i < layout.size(); i++) {
+            BasicBlock next = i + 1 < layout.size() ? layout.get(i + 1) : null;
+            lowerBlock(layout.get(i), next);
+        }
+    }
+
+    /**
+     * Index the numbered values, count the uses of each, and find the
+     * comparisons that are compiled into branches. A scanner is created if
+     * the method reads.
+     */
+    private void countUses() {
+        values = new Value[cfg.getValueCount()];
+        uses = new int[values.length];
+        fused = new BitSet();
+        for (Parameter parameter : cfg.getParameters()) {
+            values[parameter.getNumber()] = parameter;
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Instruction phi : block.getPhis()) {
+                values[phi.getNumber()] = phi;
+                countOperands(phi);
+            }
+            for (Instruction instruction : block.getInstructions()) {
+                if (instruction.hasResult()) {
+                    values[instruction.getNumber()] = instruction;
+                }
+                countOperands(instruction);
+                if (instruction.getOpcode() == Instruction.READ && in < 0) {
+                    in = cg.addLocalVariable("$in", "java.util.Scanner");
+                }
+            }
+            countOperands(block.getTerminator());
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            List<Instruction> instructions = block.getInstructions();
+            Instruction terminator = block.getTerminator();
+            if (terminator.getOpcode() == Instruction.BRANCH && !instructions.isEmpty()) {
+                Instruction last = instructions.get(instructions.size() - 1);
+                if (last.getOpcode() == Instruction.COMPARE && terminator.getOperand(0) == last
+                        && uses[last.getNumber()] == 1) {
+                    fused.set(last.getNumber());
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the values that are left on the stack for their only use instead
+     * of being stored and loaded again. An operand can be left there if it
+     * is computed just before the next operand that is left there, or just
+     * before the instruction if it is the last one, with nothing else lowered
+     * in between. The operands loaded before an operand left on the stack,
+     * and System.out for a write, are then pushed before the first
+     * instruction that computes it, which stores nothing they could read.
+     */
+    private void findStackedValues() {
+        stacked = new BitSet();
+        pushedBefore = new HashMap<>();
+        pushedOperands = new HashMap<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            List<Instruction> lowered = new ArrayList<>();
+            for (Instruction instruction : block.getInstructions()) {
+                if (!isFused(instruction)) {
+                    lowered.add(instruction);
+                }
+            }
+            // The position of the first instruction lowered for each
+            // instruction and the operands left on the stack for it.
+            int[] treeStarts = new int[lowered.size() + 1];
+            for (int i = 0; i <= lowered.size(); i++) {
+                Instruction user = i < lowered.size() ? lowered.get(i) : block.getTerminator();
+                List<Value> operands = i < lowered.size() ? operands(user) : terminatorOperands(user);
+                int start = i;
+                int pushed = 0;
+                List<Value> pending = new ArrayList<>();
+                for (int k = operands.size() - 1; k >= 0; k--) {
+                    Instruction previous = start > 0 ? lowered.get(start - 1) : null;
+                    if (operands.get(k) == previous && canStack(previous)) {
+                        stacked.set(previous.getNumber());
+                        pushed = Math.max(pushed, k + 1);
+                        pushBefore(lowered, start, pending);
+                        start = treeStarts[start - 1];
+                    } else if (pushed > 0) {
+                        pending.add(0, operands.get(k));
+                    }
+                }
+                if (pushed > 0) {
+                    if (user.getOpcode() == Instruction.WRITE) {
+                        pending.add(0, null);
+                    }
+                    pushBefore(lowered, start, pending);
+                    pushedOperands.put(user, pushed);
+                }
+                treeStarts[i] = start;
+            }
+        }
+    }
+
+    /**
+     * Push values before an instruction, below any pushed there for the
+     * operands of its operands.
+     */
+    private void pushBefore(List<Instruction> lowered, int position, List<Value> pending) {
+        if (!pending.isEmpty()) {
+            pushedBefore.computeIfAbsent(lowered.get(position), key -> new ArrayList<>()).addAll(0, pending);
+            pending.clear();
+        }
+    }
+
+    private boolean canStack(Instruction instruction) {
+        return instruction.hasResult() && uses[instruction.getNumber()] == 1;
+    }
+
+    private static List<Value> operands(Instruction instruction) {
+        List<Value> operands = new ArrayList<>();
+        for (int i = 0; i < instruction.getOperandCount(); i++) {
+            operands.add(instruction.getOperand(i));
+        }
+        return operands;
+    }
+
+    /**
+     * Get the values a terminator loads, which for a branch on a fused
+     * comparison are the operands of the comparison.
+     */
+    private List<Value> terminatorOperands(Instruction terminator) {
+        if (terminator.getOperandCount() > 0 && isFused(terminator.getOperand(0))) {
+            return operands((Instruction) terminator.getOperand(0));
+        }
+        return operands(terminator);
+    }
+
+    private void countOperands(Instruction instruction) {
+        for (int i = 0; i < instruction.getOperandCount(); i++) {
+            int number = instruction.getOperand(i).getNumber();
+            if (number >= 0) {
+                uses[number]++;
+            }
+        }
+    }
+
+    /**
+     * Give each used value a local variable, sharing them between values that
+     * are not live at the same point, give each class of phis a variable of
+     * its own, and give each phi without a class the variable its
+     * predecessors copy to.
+     */
+    private void assignSlots(Liveness liveness, Dominators dominators) {
+        slots = new int[values.length];
+        phiSlots = new int[values.length];
+        Arrays.fill(slots, -1);
+        Arrays.fill(phiSlots, -1);
+        for (Parameter parameter : cfg.getParameters()) {
+            int slot = cg.getLocalVariableIndex(parameter.getIdentifier().getName());
+            slots[parameter.getNumber()] = slot;
+            pool(parameter.getType()).add(slot);
+        }
+        BitSet kept = new BitSet();
+        for (int number = 0; number < values.length; number++) {
+            if (values[number] instanceof Instruction && uses[number] > 0 && !fused.get(number)
+                    && !stacked.get(number)) {
+                kept.set(number);
+            }
+        }
+        for (List<Instruction> members : new PhiCoalescing(cfg, liveness, kept, fused).getClasses()) {
+            if (!members.isEmpty()) {
+                int slot = newLocal(members.get(0).getType());
+                for (Instruction member : members) {
+                    slots[member.getNumber()] = slot;
+                }
+            }
+        }
+        // The position in its block of the last use of each value that dies
+        // there: -1 for the phis, then the instructions, then the terminator.
+        int[] lastUse = new int[values.length];
+        int[] lastUseBlock = new int[values.length];
+        Arrays.fill(lastUseBlock, -1);
+        BitSet occupied = new BitSet();
+        for (BasicBlock block : dominators.preorder()) {
+            List<Instruction> instructions = block.getInstructions();
+            BitSet live = (BitSet) liveness.getLiveOut(block).clone();
+            markLastUses(block.getTerminator(), instructions.size(), block, live, lastUse, lastUseBlock);
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                Instruction instruction = instructions.get(i);
+                if (instruction.hasResult()) {
+                    live.clear(instruction.getNumber());
+                }
+                markLastUses(instruction, i, block, live, lastUse, lastUseBlock);
+            }
+
+            occupied.clear();
+            BitSet liveIn = liveness.getLiveIn(block);
+            for (int n = liveIn.nextSetBit(0); n >= 0; n = liveIn.nextSetBit(n + 1)) {
+                occupied.set(slots[n]);
+            }
+            for (Instruction phi : block.getPhis()) {
+                if (uses[phi.getNumber()] > 0 && slots[phi.getNumber()] < 0) {
+                    slots[phi.getNumber()] = allocate(phi, occupied);
+                    phiSlots[phi.getNumber()] = newLocal(phi.getType());
+                }
+            }
+            for (Instruction phi : block.getPhis()) {
+                if (slots[phi.getNumber()] >= 0 && !live.get(phi.getNumber())) {
+                    occupied.clear(slots[phi.getNumber()]);
+                }
+            }
+            for (int i = 0; i < instructions.size(); i++) {
+                Instruction instruction = instructions.get(i);
+                releaseLastUses(instruction, i, block, lastUse, lastUseBlock, occupied);
+                int number = instruction.getNumber();
+                if (instruction.hasResult() && uses[number] > 0 && !fused.get(number) && !stacked.get(number)
+                        && slots[number] < 0) {
+                    slots[number] = allocate(instruction, occupied);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record the operands of an instruction that are not live after it as
+     * dying there, and make them live before it.
+     */
+    private static void markLastUses(Instruction instruction, int position, BasicBlock block, BitSet live,
+            int[] lastUse, int[] lastUseBlock) {
+        for (int i = 0; i < instruction.getOperandCount(); i++) {
+            int number = instruction.getOperand(i).getNumber();
+            if (number >= 0 && !live.get(number)) {
+                live.set(number);
+                lastUse[number] = position;
+                lastUseBlock[number] = block.getId();
+            }
+        }
+    }
+
+    private void releaseLastUses(Instruction instruction, int position, BasicBlock block,
+            int[] lastUse, int[] lastUseBlock, BitSet occupied) {
+        for (int i = 0; i < instruction.getOperandCount(); i++) {
+            int number = instruction.getOperand(i).getNumber();
+            if (number >= 0 && lastUseBlock[number] == block.getId() && lastUse[number] == position
+                    && slots[number] >= 0) {
+                occupied.clear(slots[number]);
+            }
+        }
+    }
+
+    /**
+     * Take the first local variable of the type of a value that no live
+     * value holds, adding one if they all are.
+     */
+    private int allocate(Value value, BitSet occupied) {
+        List<Integer> pool = pool(value.getType());
+        for (int slot : pool) {
+            if (!occupied.get(slot)) {
+                occupied.set(slot);
+                return slot;
+            }
+        }
+        int slot = newLocal(value.getType());
+        pool.add(slot);
+        occupied.set(slot);
+        return slot;
+    }
+
+    private List<Integer> pool(Type type) {
+        return pools.computeIfAbsent(type.getJavaTypeName(), name -> new ArrayList<>());
+    }
+
+    private int newLocal(Type type) {
+        return cg.addLocalVariable("$" + localCount++, type.getJavaTypeName());
+    }
+
+    private boolean isFused(Value value) {
+        return value.getNumber() >= 0 && fused.get(value.getNumber());
+    }
+
+    private void lowerBlock(BasicBlock block, BasicBlock next) {
+        code.bind(labels[block.getId()]);
+        for (Instruction phi : block.getPhis()) {
+            int number = phi.getNumber();
+            if (phiSlots[number] >= 0) {
+                code.addLoad(storageType(phi.getType()), phiSlots[number]);
+                code.addStore(storageType(phi.getType()), slots[number]);
+            }
+        }
+        for (Instruction instruction : block.getInstructions()) {
+            if (!isFused(instruction)) {
+                lowerInstruction(instruction);
+            }
+        }
+        copyPhiOperands(block);
+        lowerTerminator(block.getTerminator(), next);
+    }
+
+    /**
+     * Copy the operands that a block gives its successors' phis to the
+     * variables of the phis, leaving out those already there. If a copy
+     * overwrites a variable that a later one reads, all the operands are
+     * pushed first and then stored in reverse order.
+     */
+    private void copyPhiOperands(BasicBlock block) {
+        List<Instruction> phis = new ArrayList<>();
+        List<Value> operands = new ArrayList<>();
+        List<Integer> targets = new ArrayList<>();
+        for (BasicBlock successor : block.getSuccessors()) {
+            int index = successor.getPredecessors().indexOf(block);
+            for (Instruction phi : successor.getPhis()) {
+                int number = phi.getNumber();
+                if (slots[number] < 0) {
+                    continue;
+                }
+                int target = phiSlots[number] >= 0 ? phiSlots[number] : slots[number];
+                Value operand = phi.getOperand(index);
+                if (operand.getNumber() < 0 || slots[operand.getNumber()] != target) {
+                    phis.add(phi);
+                    operands.add(operand);
+                    targets.add(target);
+                }
+            }
+        }
+        boolean overlapping = false;
+        for (Value operand : operands) {
+            overlapping |= operand.getNumber() >= 0 && targets.contains(slots[operand.getNumber()]);
+        }
+        for (int i = 0; i < phis.size(); i++) {
+            load(operands.get(i));
+            if (!overlapping) {
+                code.addStore(storageType(phis.get(i).getType()), targets.get(i));
+            }
+        }
+        for (int i = phis.size() - 1; i >= 0 && overlapping; i--) {
+            code.addStore(storageType(phis.get(i).getType()), targets.get(i));
+        }
+    }
+
+    private void lowerInstruction(Instruction instruction) {
+        for (Value value : pushedBefore.getOrDefault(instruction, Collections.emptyList())) {
+            if (value == null) {
+                code.addGetStatic(cg.getFieldRef("java.lang.System", "out", PRINT_STREAM));
+            } else {
+                load(value);
+            }
+        }
+        int pushed = pushedOperands.getOrDefault(instruction, 0);
+        if (instruction.getOpcode() == Instruction.WRITE && pushed == 0) {
+            code.addGetStatic(cg.getFieldRef("java.lang.System", "out", PRINT_STREAM));
+        }
+        for (int i = pushed; i < instruction.getOperandCount(); i++) {
+            load(instruction.getOperand(i));
+        }
+        Type type = instruction.getType();
+        org.apache.bcel.generic.Type intType = org.apache.bcel.generic.Type.INT;
+        org.apache.bcel.generic.Type doubleType = org.apache.bcel.generic.Type.DOUBLE;
+        switch (instruction.getOpcode()) {
+            case Instruction.CONVERT:
+                convert(instruction.getOperand(0).getType(), type);
+                break;
+            case Instruction.UNARY:
+                switch (instruction.getOp()) {
+                    case Ast.MINUS:
+                        code.addArithmetic(INEG, storageType(type));
+                        break;
+                    case Ast.COMPLEMENT:
+                        code.addConstant(-1);
+                        code.addArithmetic(IXOR, intType);
+                        break;
+                    default:
+                        code.addConstant(1);
+                        code.addArithmetic(IXOR, intType);
+                        break;
+                }
+                break;
+            case Instruction.ARITHMETIC:
+                code.addArithmetic(arithmeticOpcode(instruction.getOp()), storageType(type));
+                break;
+            case Instruction.COMPARE: {
+                Label trueLabel = new Label();
+                Label endLabel = new Label();
+                code.addIf(comparisonOpcode(instruction.getOp()),
+                        storageType(instruction.getOperand(0).getType()), trueLabel);
+                code.addConstant(0);
+                code.addGoTo(endLabel);
+                code.bind(trueLabel);
+                code.addConstant(1);
+                code.bind(endLabel);
+                break;
+            }
+            case Instruction.POWER:
+                if (type == PrimitiveType.INT) {
+                    powerMethodUsed = true;
+                    code.addInvoke(INVOKESTATIC, cg.getMethodRef(cg.getClassName(), "$power", intType, intType, intType));
+                } else {
+                    code.addInvoke(INVOKESTATIC, cg.getMethodRef("java.lang.Math", "pow", doubleType, doubleType, doubleType));
+                }
+                break;
+            case Instruction.LOAD_GLOBAL:
+                code.addGetStatic(instruction.getIdentifier().fieldRef(cg));
+                break;
+            case Instruction.STORE_GLOBAL:
+                code.addPutStatic(instruction.getIdentifier().fieldRef(cg));
+                break;
+            case Instruction.NEW_ARRAY:
+                code.addNewArray(storageType(((ArrayType) type).getComponentType()), 1);
+                break;
+            case Instruction.ARRAY_LOAD:
+                code.addArrayLoad(storageType(type));
+                break;
+            case Instruction.ARRAY_STORE:
+                code.addArrayStore(storageType(((ArrayType) instruction.getOperand(0).getType()).getComponentType()));
+                break;
+            case Instruction.CALL:
+                code.addInvoke(INVOKESTATIC, instruction.getIdentifier().methodRef(cg));
+                break;
+            case Instruction.READ: {
+                String typeName = type.getJavaTypeName();
+                code.addLoad(SCANNER, in);
+                code.addInvoke(INVOKEVIRTUAL, cg.getMethodRef("java.util.Scanner",
+                        "next" + Character.toUpperCase(typeName.charAt(0)) + typeName.substring(1),
+                        CodeGenerator.getType(typeName)));
+                break;
+            }
+            case Instruction.WRITE: {
+                org.apache.bcel.generic.Type valueType = storageType(instruction.getOperand(0).getType());
+                code.addInvoke(INVOKEVIRTUAL, cg.getMethodRef("java.io.PrintStream", "print",
+                        org.apache.bcel.generic.Type.VOID, valueType));
+                break;
+            }
+        }
+        if (instruction.hasResult() && !stacked.get(instruction.getNumber())) {
+            int slot = slots[instruction.getNumber()];
+            if (slot >= 0) {
+                code.addStore(storageType(type), slot);
+            } else {
+                code.addInstruction(type == PrimitiveType.REAL ? POP2 : POP);
+            }
+        }
+    }
+
+    private void lowerTerminator(Instruction terminator, BasicBlock next) {
+        List<Value> operands = terminatorOperands(terminator);
+        for (int i = pushedOperands.getOrDefault(terminator, 0); i < operands.size(); i++) {
+            load(operands.get(i));
+        }
+        switch (terminator.getOpcode()) {
+            case Instruction.JUMP:
+                if (terminator.getTarget(0) != next) {
+                    code.addGoTo(labels[terminator.getTarget(0).getId()]);
+                }
+                break;
+            case Instruction.BRANCH: {
+                Value condition = terminator.getOperand(0);
+                short opcode = IFNE;
+                org.apache.bcel.generic.Type type = org.apache.bcel.generic.Type.INT;
+                if (isFused(condition)) {
+                    Instruction compare = (Instruction) condition;
+                    opcode = comparisonOpcode(compare.getOp());
+                    type = storageType(compare.getOperand(0).getType());
+                }
+                BasicBlock trueTarget = terminator.getTarget(0);
+                BasicBlock falseTarget = terminator.getTarget(1);
+                if (trueTarget == next) {
+                    code.addIfNot(opcode, type, labels[falseTarget.getId()]);
+                } else {
+                    code.addIf(opcode, type, labels[trueTarget.getId()]);
+                    if (falseTarget != next) {
+                        code.addGoTo(labels[falseTarget.getId()]);
+                    }
+                }
+                break;
+            }
+            default:
+                if (terminator.getOperandCount() == 0) {
+                    code.addReturn(org.apache.bcel.generic.Type.VOID);
+                } else {
+                    code.addReturn(storageType(cfg.getReturnType()));
+                }
+                break;
+        }
+    }
+
+    private void load(Value value) {
+        if (value instanceof Constant) {
+            Constant constant = (Constant) value;
+            if (value.getType() == PrimitiveType.REAL) {
+                code.addConstant(constant.doubleValue());
+            } else {
+                code.addConstant(constant.intValue());
+            }
+        } else {
+            code.addLoad(storageType(value.getType()), slots[value.getNumber()]);
+        }
+    }
+
+    /**
+     * Convert a value on the stack. A char, bool or int is already an int
+     * on the stack, so only a conversion to char or to or from real needs an
+     * instruction.
+     */
+    private void convert(Type from, Type to) {
+        if (from != PrimitiveType.REAL && to != PrimitiveType.REAL && to != PrimitiveType.CHAR) {
+            return;
+        }
+        code.addCast(storageType(from), storageType(to));
+    }
+
+    /**
+     * Get the type of the JVM values of a type.
+     */
+    private static org.apache.bcel.generic.Type storageType(Type type) {
+        if (type instanceof PrimitiveType) {
+            return ((PrimitiveType) type).getStorageType();
+        }
+        return CodeGenerator.getType(type.getJavaTypeName());
+    }
+
+    private static short arithmeticOpcode(int op) {
+        switch (op) {
+            case Ast.PLUS: return IADD;
+            case Ast.MINUS: return ISUB;
+            case Ast.TIMES: return IMUL;
+            case Ast.DIVIDE: return IDIV;
+            case Ast.REMAINDER: return IREM;
+            case Ast.SHIFT_LEFT: return ISHL;
+            case Ast.SHIFT_RIGHT: return ISHR;
+            case Ast.UNSIGNED_SHIFT_RIGHT: return IUSHR;
+            case Ast.BITWISE_AND: return IAND;
+            case Ast.BITWISE_XOR: return IXOR;
+            default: return IOR;
+        }
+    }
+
+    private static short comparisonOpcode(int op) {
+        switch (op) {
+            case Ast.LESS: return IF_ICMPLT;
+            case Ast.LESS_EQUAL: return IF_ICMPLE;
+            case Ast.GREATER_EQUAL: return IF_ICMPGE;
+            case Ast.GREATER: return IF_ICMPGT;
+            case Ast.EQUAL: return IF_ICMPEQ;
+            default: return IF_ICMPNE;
+        }
+    }
+
+}
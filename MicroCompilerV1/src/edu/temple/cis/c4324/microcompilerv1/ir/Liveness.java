@@ -0,0 +1,124 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The values live at the start and end of each block of a graph in SSA
+ * form. A value is live at a point if some path from the point reaches a
+ * use of it. Sets are indexed by value number; constants are not numbered
+ * and are never live.
+ * <p>
+ * The phis of a block define their results at its start and use each
+ * operand at the end of the predecessor it comes from. So the live-in set
+ * of a block holds neither its phi results nor its phi operands, and the
+ * live-out set of a block holds the operands of its successors' phis that
+ * come from it.</p>
+ */
+public final class Liveness {
+
+    private final BitSet[] liveIn;
+    private final BitSet[] liveOut;
+
+    /**
+     * Compute the liveness of a graph, numbering its values first. The sets
+     * are found by iterating over the blocks in postorder until nothing
+     * changes.
+     * @param cfg The graph
+     */
+    public Liveness(ControlFlowGraph cfg) {
+        cfg.number();
+        int limit = cfg.getBlockIdLimit();
+        liveIn = new BitSet[limit];
+        liveOut = new BitSet[limit];
+        BitSet[] uses = new BitSet[limit];
+        BitSet[] defs = new BitSet[limit];
+        List<BasicBlock> order = cfg.reversePostorder();
+        for (BasicBlock block : order) {
+            int id = block.getId();
+            liveIn[id] = new BitSet();
+            liveOut[id] = new BitSet();
+            uses[id] = new BitSet();
+            defs[id] = new BitSet();
+            for (Instruction phi : block.getPhis()) {
+                defs[id].set(phi.getNumber());
+            }
+            for (Instruction instruction : block.getInstructions()) {
+                addUses(instruction, uses[id], defs[id]);
+                if (instruction.hasResult()) {
+                    defs[id].set(instruction.getNumber());
+                }
+            }
+            addUses(block.getTerminator(), uses[id], defs[id]);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = order.size() - 1; i >= 0; i--) {
+                BasicBlock block = order.get(i);
+                int id = block.getId();
+                BitSet out = liveOut[id];
+                for (BasicBlock successor : block.getSuccessors()) {
+                    out.or(liveIn[successor.getId()]);
+                    int index = successor.getPredecessors().indexOf(block);
+                    for (Instruction phi : successor.getPhis()) {
+                        int number = phi.getOperand(index).getNumber();
+                        if (number >= 0) {
+                            out.set(number);
+                        }
+                    }
+                }
+                BitSet in = (BitSet) out.clone();
+                in.andNot(defs[id]);
+                in.or(uses[id]);
+                if (!in.equals(liveIn[id])) {
+                    liveIn[id] = in;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the operands of an instruction that are not defined earlier in
+     * its block to the uses of the block.
+     */
+    private static void addUses(Instruction instruction, BitSet uses, BitSet defs) {
+        for (int i = 0; i < instruction.getOperandCount(); i++) {
+            int number = instruction.getOperand(i).getNumber();
+            if (number >= 0 && !defs.get(number)) {
+                uses.set(number);
+            }
+        }
+    }
+
+    /**
+     * Get the values live at the start of a block, before its phis.
+     * @param block The block
+     * @return The value numbers, which must not be modified
+     */
+    public BitSet getLiveIn(BasicBlock block) {
+        return liveIn[block.getId()];
+    }
+
+    /**
+     * Get the values live at the end of a block, after its terminator has
+     * been reached but before it has gone to a successor.
+     * @param block The block
+     * @return The value numbers, which must not be modified
+     */
+    public BitSet getLiveOut(BasicBlock block) {
+        return liveOut[block.getId()];
+    }
+
+    /**
+     * Determine if a value is live at the end of a block.
+     * @param value The value
+     * @param block The block
+     * @return true if the value is live out of the block
+     */
+    public boolean isLiveOut(Value value, BasicBlock block) {
+        return value.getNumber() >= 0 && liveOut[block.getId()].get(value.getNumber());
+    }
+
+}
@@ -0,0 +1,25 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import edu.temple.cis.c4324.microcompilerv1.Identifier;
+
+/**
+ * A parameter of a procedure or function, which is the value of its
+ * variable when the routine is entered.
+ */
+public final class Parameter extends Value {
+
+    private final Identifier identifier;
+
+    public Parameter(Identifier identifier) {
+        super(identifier.getType());
+        this.identifier = identifier;
+    }
+
+    public Identifier getIdentifier() {return identifier;}
+
+    @Override
+    public String getName() {
+        return super.getName() + "." + identifier.getName();
+    }
+
+}
@@ -0,0 +1,274 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The classes of values that can share one local variable so that the phis
+ * joining them need no copies. Each class holds phis and operands of its
+ * phis, and starts as a single phi. A phi and one of its operands, or the
+ * classes holding them, are merged if no two of their values are live at
+ * the same point: a value is live at the definition of another if it is
+ * used after it in the definition's block or is live out of that block.
+ * <p>
+ * An operand outside the class of its phi is still copied to the class's
+ * variable at the end of the predecessor it comes from, where the copies
+ * for all the successors' phis are made together. That copy overwrites
+ * every value of the class, so a class is only formed if none of them is
+ * live into a successor of such a predecessor or used by its terminator,
+ * and if no predecessor gives values to two phis of the class. A phi that
+ * fails this on its own has no class, and is copied through a variable of
+ * its own.</p>
+ * <p>
+ * Checking a merge compares every value of one class with every value of
+ * the other, so classes are kept to at most MAX_CLASS_SIZE values.</p>
+ */
+public final class PhiCoalescing {
+
+    /**
+     * The largest class, which keeps a long chain of phis from making the
+     * merges quadratic in the size of the method.
+     */
+    private static final int MAX_CLASS_SIZE = 64;
+
+    private final Liveness liveness;
+    private final BitSet fused;
+    private final int[] positions;
+    private final Map<Long, Integer> lastUses;
+    private final int[] classOf;
+    private final List<List<Instruction>> classes;
+    private final BitSet members;
+
+    /**
+     * Find the classes of a graph.
+     * @param cfg The graph, numbered
+     * @param liveness The liveness of the graph
+     * @param kept The values that are kept in local variables
+     * @param fused The comparisons that are compiled into the branches ending
+     * their blocks, whose operands are used by the branches
+     */
+    public PhiCoalescing(ControlFlowGraph cfg, Liveness liveness, BitSet kept, BitSet fused) {
+        this.liveness = liveness;
+        this.fused = fused;
+        int count = cfg.getValueCount();
+        positions = new int[count];
+        lastUses = new HashMap<>();
+        classOf = new int[count];
+        classes = new ArrayList<>();
+        members = new BitSet();
+        List<Instruction> phis = new ArrayList<>();
+        BitSet candidates = new BitSet();
+        for (BasicBlock block : cfg.reversePostorder()) {
+            for (Instruction phi : block.getPhis()) {
+                if (kept.get(phi.getNumber())) {
+                    phis.add(phi);
+                    candidates.set(phi.getNumber());
+                    positions[phi.getNumber()] = -1;
+                    for (int i = 0; i < phi.getOperandCount(); i++) {
+                        int number = phi.getOperand(i).getNumber();
+                        if (number >= 0 && kept.get(number) && phi.getOperand(i) instanceof Instruction) {
+                            candidates.set(number);
+                        }
+                    }
+                }
+            }
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            List<Instruction> instructions = block.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                if (instructions.get(i).hasResult()) {
+                    positions[instructions.get(i).getNumber()] = i;
+                }
+                recordUses(instructions.get(i), i, block, candidates);
+            }
+            for (Value used : terminatorUses(block)) {
+                recordUse(used, instructions.size(), block, candidates);
+            }
+        }
+        Arrays.fill(classOf, -1);
+        List<Instruction> singletons = new ArrayList<>();
+        for (Instruction phi : phis) {
+            singletons.add(phi);
+            if (copiesAreSafe(singletons)) {
+                classOf[phi.getNumber()] = classes.size();
+                classes.add(new ArrayList<>(singletons));
+            }
+            singletons.clear();
+        }
+        for (Instruction phi : phis) {
+            for (int i = 0; i < phi.getOperandCount() && classOf[phi.getNumber()] >= 0; i++) {
+                Value operand = phi.getOperand(i);
+                int number = operand.getNumber();
+                if (number >= 0 && candidates.get(number) && operand.getType() == phi.getType()
+                        && (classOf[number] >= 0 || !isPhi(operand))) {
+                    merge(classOf[phi.getNumber()], (Instruction) operand);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the class of a value.
+     * @param number The value number
+     * @return The index of its class, or -1 if it has none
+     */
+    public int getClassOf(int number) {
+        return classOf[number];
+    }
+
+    /**
+     * Get the classes, some of which may have been emptied by merges.
+     * @return The values of each class
+     */
+    public List<List<Instruction>> getClasses() {
+        return Collections.unmodifiableList(classes);
+    }
+
+    private static boolean isPhi(Value value) {
+        return ((Instruction) value).getOpcode() == Instruction.PHI;
+    }
+
+    private void recordUses(Instruction instruction, int position, BasicBlock block, BitSet candidates) {
+        for (int i = 0; i < instruction.getOperandCount(); i++) {
+            recordUse(instruction.getOperand(i), position, block, candidates);
+        }
+    }
+
+    private void recordUse(Value used, int position, BasicBlock block, BitSet candidates) {
+        if (used.getNumber() >= 0 && candidates.get(used.getNumber())) {
+            lastUses.put(key(block, used.getNumber()), position);
+        }
+    }
+
+    private static long key(BasicBlock block, int number) {
+        return (long) block.getId() << 32 | number;
+    }
+
+    /**
+     * Get the values used by the terminator of a block, which are loaded
+     * after the copies made at its end.
+     */
+    private List<Value> terminatorUses(BasicBlock block) {
+        Instruction terminator = block.getTerminator();
+        List<Value> used = new ArrayList<>();
+        for (int i = 0; i < terminator.getOperandCount(); i++) {
+            Value operand = terminator.getOperand(i);
+            if (operand.getNumber() >= 0 && fused.get(operand.getNumber())) {
+                Instruction compare = (Instruction) operand;
+                used.add(compare.getOperand(0));
+                used.add(compare.getOperand(1));
+            } else {
+                used.add(operand);
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Merge a value, or the class holding it, into a class if none of their
+     * values interfere and the copies to the merged class are safe.
+     */
+    private void merge(int target, Instruction value) {
+        int source = classOf[value.getNumber()];
+        if (source == target) {
+            return;
+        }
+        List<Instruction> into = classes.get(target);
+        List<Instruction> from = source >= 0 ? classes.get(source) : Collections.singletonList(value);
+        if (into.size() + from.size() > MAX_CLASS_SIZE) {
+            return;
+        }
+        for (Instruction a : into) {
+            for (Instruction b : from) {
+                if (interfere(a, b)) {
+                    return;
+                }
+            }
+        }
+        List<Instruction> merged = new ArrayList<>(into);
+        merged.addAll(from);
+        if (!copiesAreSafe(merged)) {
+            return;
+        }
+        for (Instruction moved : from) {
+            classOf[moved.getNumber()] = target;
+        }
+        classes.set(target, merged);
+        if (source >= 0) {
+            classes.set(source, Collections.emptyList());
+        }
+    }
+
+    private boolean interfere(Instruction a, Instruction b) {
+        return isLiveAfter(a, b.getBlock(), positions[b.getNumber()])
+                || isLiveAfter(b, a.getBlock(), positions[a.getNumber()]);
+    }
+
+    /**
+     * Determine if a value is live after a position in a block, where -1 is
+     * the position of the phis.
+     */
+    private boolean isLiveAfter(Instruction value, BasicBlock block, int position) {
+        int number = value.getNumber();
+        if (value.getBlock() == block && positions[number] > position) {
+            return false;
+        }
+        if (liveness.getLiveOut(block).get(number)) {
+            return true;
+        }
+        Integer last = lastUses.get(key(block, number));
+        return last != null && last > position;
+    }
+
+    /**
+     * Determine if the copies to the variable of a class leave every value of
+     * the class intact where it is still needed.
+     */
+    private boolean copiesAreSafe(List<Instruction> values) {
+        for (Instruction value : values) {
+            members.set(value.getNumber());
+        }
+        try {
+            Set<BasicBlock> predecessors = new HashSet<>();
+            for (Instruction phi : values) {
+                if (!isPhi(phi)) {
+                    continue;
+                }
+                List<BasicBlock> from = phi.getBlock().getPredecessors();
+                for (int i = 0; i < from.size(); i++) {
+                    BasicBlock predecessor = from.get(i);
+                    if (!predecessors.add(predecessor)) {
+                        return false;
+                    }
+                    int number = phi.getOperand(i).getNumber();
+                    if (number >= 0 && members.get(number)) {
+                        continue;
+                    }
+                    for (BasicBlock successor : predecessor.getSuccessors()) {
+                        if (liveness.getLiveIn(successor).intersects(members)) {
+                            return false;
+                        }
+                    }
+                    for (Value used : terminatorUses(predecessor)) {
+                        if (used.getNumber() >= 0 && members.get(used.getNumber())) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        } finally {
+            for (Instruction value : values) {
+                members.clear(value.getNumber());
+            }
+        }
+    }
+
+}
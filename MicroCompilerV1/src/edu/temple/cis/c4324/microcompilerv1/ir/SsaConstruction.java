@@ -0,0 +1,236 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import edu.temple.cis.c4324.microcompilerv1.Identifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Put a graph whose local variables are read by GET_LOCAL and assigned by
+ * SET_LOCAL into SSA form, by the method of Cytron et al., "Efficiently
+ * Computing Static Single Assignment Form and the Control Dependence
+ * Graph". A phi is placed for a variable in the iterated dominance frontier
+ * of the blocks that assign it. Then the dominator tree is walked with a
+ * stack of the values of each variable, replacing each read by the value
+ * on top and filling in the phi operands of each successor.
+ * <p>
+ * Only the variables that are read in a block before they are assigned
+ * there can be live across blocks, so only they are given phis. This is
+ * the semi-pruned form of Briggs et al.</p>
+ */
+final class SsaConstruction {
+
+    private final ControlFlowGraph cfg;
+    private final Map<Identifier, Value> initialValues;
+    private final Map<Identifier, Integer> variables;
+    private final List<Identifier> identifiers;
+    private final Map<Instruction, Value> replacements;
+
+    /**
+     * Construct the pass.
+     * @param cfg The graph, with its unreachable blocks removed
+     * @param initialValues The value of each variable when the routine is
+     * entered: the parameter, or the zero of its type
+     */
+    SsaConstruction(ControlFlowGraph cfg, Map<Identifier, Value> initialValues) {
+        this.cfg = cfg;
+        this.initialValues = initialValues;
+        variables = new HashMap<>();
+        identifiers = new ArrayList<>();
+        replacements = new HashMap<>();
+    }
+
+    void run() {
+        Dominators dominators = new Dominators(cfg);
+        boolean[] global = findVariables();
+        placePhis(dominators, global);
+        rename(dominators);
+    }
+
+    private int variable(Identifier id) {
+        Integer index = variables.get(id);
+        if (index == null) {
+            index = identifiers.size();
+            variables.put(id, index);
+            identifiers.add(id);
+        }
+        return index;
+    }
+
+    /**
+     * Number the variables, and find the ones read in some block before
+     * they are assigned there.
+     * @return Whether each variable is read before it is assigned in a block
+     */
+    private boolean[] findVariables() {
+        List<Boolean> global = new ArrayList<>();
+        for (BasicBlock block : cfg.getBlocks()) {
+            Map<Identifier, Boolean> assigned = new HashMap<>();
+            for (Instruction instruction : block.getInstructions()) {
+                int opcode = instruction.getOpcode();
+                if (opcode == Instruction.GET_LOCAL || opcode == Instruction.SET_LOCAL) {
+                    int index = variable(instruction.getIdentifier());
+                    while (global.size() <= index) {
+                        global.add(false);
+                    }
+                    if (opcode == Instruction.SET_LOCAL) {
+                        assigned.put(instruction.getIdentifier(), true);
+                    } else if (!assigned.containsKey(instruction.getIdentifier())) {
+                        global.set(index, true);
+                    }
+                }
+            }
+        }
+        boolean[] result = new boolean[global.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = global.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Place a phi for each variable read across blocks at the iterated
+     * dominance frontier of the blocks that assign it. The entry assigns
+     * every variable its initial value.
+     */
+    private void placePhis(Dominators dominators, boolean[] global) {
+        int limit = cfg.getBlockIdLimit();
+        List<List<BasicBlock>> assigningBlocks = new ArrayList<>();
+        for (int i = 0; i < identifiers.size(); i++) {
+            List<BasicBlock> blocks = new ArrayList<>();
+            blocks.add(cfg.getEntry());
+            assigningBlocks.add(blocks);
+        }
+        for (BasicBlock block : cfg.getBlocks()) {
+            for (Instruction instruction : block.getInstructions()) {
+                if (instruction.getOpcode() == Instruction.SET_LOCAL) {
+                    List<BasicBlock> blocks = assigningBlocks.get(variables.get(instruction.getIdentifier()));
+                    if (blocks.get(blocks.size() - 1) != block) {
+                        blocks.add(block);
+                    }
+                }
+            }
+        }
+        // The marks hold the variable index plus one, so that they need not be
+        // cleared between variables.
+        int[] hasPhi = new int[limit];
+        int[] onWorklist = new int[limit];
+        for (int v = 0; v < identifiers.size(); v++) {
+            if (!global[v]) {
+                continue;
+            }
+            Identifier id = identifiers.get(v);
+            List<BasicBlock> worklist = new ArrayList<>(assigningBlocks.get(v));
+            for (BasicBlock block : worklist) {
+                onWorklist[block.getId()] = v + 1;
+            }
+            while (!worklist.isEmpty()) {
+                BasicBlock block = worklist.remove(worklist.size() - 1);
+                for (BasicBlock frontier : dominators.getFrontier(block)) {
+                    if (hasPhi[frontier.getId()] == v + 1) {
+                        continue;
+                    }
+                    hasPhi[frontier.getId()] = v + 1;
+                    frontier.addPhi(new Instruction(Instruction.PHI, id.getType(), 0, id,
+                            new Value[frontier.getPredecessors().size()]));
+                    if (onWorklist[frontier.getId()] != v + 1) {
+                        onWorklist[frontier.getId()] = v + 1;
+                        worklist.add(frontier);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Walk the dominator tree, replacing each GET_LOCAL by the value of its
+     * variable and dropping the SET_LOCALs. The walk is iterative, so that a
+     * deep tree does not need a deep thread stack.
+     */
+    private void rename(Dominators dominators) {
+        List<List<Value>> stacks = new ArrayList<>();
+        for (Identifier id : identifiers) {
+            List<Value> stack = new ArrayList<>();
+            stack.add(initialValues.get(id));
+            stacks.add(stack);
+        }
+        // The variables pushed by the blocks being walked, in order, and the
+        // length of the log when each block was entered.
+        List<Integer> log = new ArrayList<>();
+        int[] mark = new int[cfg.getBlockIdLimit()];
+        boolean[] entered = new boolean[cfg.getBlockIdLimit()];
+        List<BasicBlock> walk = new ArrayList<>();
+        walk.add(cfg.getEntry());
+        while (!walk.isEmpty()) {
+            BasicBlock block = walk.get(walk.size() - 1);
+            if (entered[block.getId()]) {
+                walk.remove(walk.size() - 1);
+                for (int i = log.size() - 1; i >= mark[block.getId()]; i--) {
+                    List<Value> stack = stacks.get(log.remove(i));
+                    stack.remove(stack.size() - 1);
+                }
+                continue;
+            }
+            entered[block.getId()] = true;
+            mark[block.getId()] = log.size();
+            for (Instruction phi : block.getPhis()) {
+                if (phi.getIdentifier() != null) {
+                    int v = variables.get(phi.getIdentifier());
+                    stacks.get(v).add(phi);
+                    log.add(v);
+                }
+            }
+            for (Instruction instruction : block.getInstructions()) {
+                resolveOperands(instruction);
+                switch (instruction.getOpcode()) {
+                    case Instruction.GET_LOCAL: {
+                        List<Value> stack = stacks.get(variables.get(instruction.getIdentifier()));
+                        replacements.put(instruction, stack.get(stack.size() - 1));
+                        break;
+                    }
+                    case Instruction.SET_LOCAL: {
+                        int v = variables.get(instruction.getIdentifier());
+                        stacks.get(v).add(instruction.getOperand(0));
+                        log.add(v);
+                        break;
+                    }
+                }
+            }
+            resolveOperands(block.getTerminator());
+            block.retainInstructions(instruction -> instruction.getOpcode() != Instruction.GET_LOCAL
+                    && instruction.getOpcode() != Instruction.SET_LOCAL);
+            for (BasicBlock successor : block.getSuccessors()) {
+                int index = successor.getPredecessors().indexOf(block);
+                for (Instruction phi : successor.getPhis()) {
+                    if (phi.getIdentifier() != null) {
+                        List<Value> stack = stacks.get(variables.get(phi.getIdentifier()));
+                        phi.setOperand(index, stack.get(stack.size() - 1));
+                    } else {
+                        phi.setOperand(index, resolve(phi.getOperand(index)));
+                    }
+                }
+            }
+            List<BasicBlock> children = dominators.getChildren(block);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                walk.add(children.get(i));
+            }
+        }
+    }
+
+    private void resolveOperands(Instruction instruction) {
+        for (int i = 0; i < instruction.getOperandCount(); i++) {
+            instruction.setOperand(i, resolve(instruction.getOperand(i)));
+        }
+    }
+
+    /**
+     * Get the value a GET_LOCAL read, which the walk has already found since
+     * the read dominates its uses.
+     */
+    private Value resolve(Value value) {
+        Value replacement = replacements.get(value);
+        return replacement != null ? replacement : value;
+    }
+
+}
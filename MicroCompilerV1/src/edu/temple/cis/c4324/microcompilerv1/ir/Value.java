@@ -0,0 +1,43 @@
+package edu.temple.cis.c4324.microcompilerv1.ir;
+
+import edu.temple.cis.c4324.microcompilerv1.Type;
+
+/**
+ * A value of the intermediate representation: a constant, a parameter of
+ * the routine, or the result of an instruction. In SSA form every value is
+ * defined exactly once. Its type is a PrimitiveType or an ArrayType, or
+ * VOID for an instruction that has no result.
+ */
+public abstract class Value {
+
+    private final Type type;
+    private int number;
+
+    protected Value(Type type) {
+        this.type = type;
+        number = -1;
+    }
+
+    public Type getType() {return type;}
+
+    /**
+     * Get the number of the value in its graph, which indexes the sets of
+     * the analyses. Parameters and the results of instructions are numbered
+     * by ControlFlowGraph.number; constants are not numbered.
+     * @return The number, or -1 if the value is not numbered
+     */
+    public int getNumber() {return number;}
+
+    void setNumber(int number) {
+        this.number = number;
+    }
+
+    /**
+     * Get the name of the value as an operand is printed.
+     * @return The name
+     */
+    public String getName() {
+        return "v" + number;
+    }
+
+}
@@ -0,0 +1,205 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.tree.ParseTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check the Ast that lowering the ANTLR parse tree builds: the children,
+ * operators, text and positions of each kind of node, the numbering of the
+ * nodes in post order, and the error for a postfix operator.
+ */
+public class AstBuilderTest {
+
+    private static Ast lower(String text) {
+        FrontEnd frontEnd = new FrontEnd();
+        CommonTokenStream tokens = frontEnd.tokenize(new ANTLRInputStream(text), ConsoleErrorListener.INSTANCE);
+        ParseTree tree = frontEnd.parse(tokens, ConsoleErrorListener.INSTANCE);
+        return new AstBuilder().lower(tree, tokens.size());
+    }
+
+    /**
+     * Check a node and get one of its children.
+     */
+    private static int child(Ast ast, int node, int kind, int childCount, int i) {
+        assertNode(ast, node, kind, childCount);
+        return ast.getChild(node, i);
+    }
+
+    private static void assertNode(Ast ast, int node, int kind, int childCount) {
+        assertEquals("kind of " + node, kind, ast.getKind(node));
+        assertEquals("children of " + node, childCount, ast.getChildCount(node));
+        for (int i = 0; i < childCount; i++) {
+            assertTrue("post order of " + node, ast.getChild(node, i) < node);
+        }
+    }
+
+    private static void assertText(Ast ast, int node, String text, int line, int column) {
+        assertEquals(text, ast.getText(node));
+        assertEquals(text + " line", line, ast.getLine(node));
+        assertEquals(text + " column", column, ast.getColumn(node));
+    }
+
+    @Test
+    public void testDeclarations() {
+        Ast ast = lower("program P\nint a;\nreal r[10];\n"
+                + "function bool f(int x, char c[])\nbool t;\nbegin\n  return t;\nend;\n"
+                + "begin\nend;\n");
+        int root = ast.getRoot();
+        assertEquals(ast.size() - 1, root);
+        assertNode(ast, root, Ast.PROGRAM, 4);
+        assertText(ast, root, "P", 1, 0);
+
+        int a = ast.getChild(root, 0);
+        assertNode(ast, a, Ast.VARIABLE, 0);
+        assertText(ast, a, "a", 2, 0);
+        assertEquals(PrimitiveType.INT, ast.getDeclaredType(a));
+
+        int r = ast.getChild(root, 1);
+        int length = child(ast, r, Ast.ARRAY_VARIABLE, 1, 0);
+        assertText(ast, r, "r", 3, 0);
+        assertEquals(PrimitiveType.REAL, ast.getDeclaredType(r));
+        assertNode(ast, length, Ast.INT_LITERAL, 0);
+        assertText(ast, length, "10", 3, 7);
+
+        int f = ast.getChild(root, 2);
+        assertNode(ast, f, Ast.FUNCTION, 4);
+        assertText(ast, f, "f", 4, 0);
+        assertEquals(PrimitiveType.BOOL, ast.getDeclaredType(f));
+        int x = ast.getChild(f, 0);
+        assertNode(ast, x, Ast.PARAMETER, 0);
+        assertText(ast, x, "x", 4, 16);
+        int c = ast.getChild(f, 1);
+        assertNode(ast, c, Ast.ARRAY_PARAMETER, 0);
+        assertText(ast, c, "c", 4, 23);
+        assertEquals(PrimitiveType.CHAR, ast.getDeclaredType(c));
+        assertNode(ast, ast.getChild(f, 2), Ast.VARIABLE, 0);
+        int ret = child(ast, ast.getChild(f, 3), Ast.STATEMENTS, 1, 0);
+        int t = child(ast, ret, Ast.RETURN, 1, 0);
+        assertNode(ast, t, Ast.ID, 0);
+        assertText(ast, t, "t", 7, 9);
+
+        assertNode(ast, ast.getChild(root, 3), Ast.STATEMENTS, 0);
+    }
+
+    @Test
+    public void testExpressions() {
+        Ast ast = lower("program P\nint a;\nbool p;\nbegin\n"
+                + "  a := 1 + 2 * -a;\n"
+                + "  p := ¬(a < 1) ∧ p;\n"
+                + "end;\n");
+        int statements = ast.getChild(ast.getRoot(), 2);
+        assertNode(ast, statements, Ast.STATEMENTS, 2);
+
+        int assign = ast.getChild(statements, 0);
+        assertNode(ast, assign, Ast.ASSIGN, 2);
+        assertText(ast, assign, null, 5, 2);
+        int lvalue = ast.getChild(assign, 0);
+        assertNode(ast, lvalue, Ast.ID_LVALUE, 0);
+        assertText(ast, lvalue, "a", 5, 2);
+        // Multiplication binds tighter, so the sum is the root.
+        int sum = ast.getChild(assign, 1);
+        assertNode(ast, sum, Ast.ARITHMETIC, 2);
+        assertEquals(Ast.PLUS, ast.getOp(sum));
+        assertText(ast, ast.getChild(sum, 0), "1", 5, 7);
+        int product = ast.getChild(sum, 1);
+        assertNode(ast, product, Ast.ARITHMETIC, 2);
+        assertEquals(Ast.TIMES, ast.getOp(product));
+        assertText(ast, product, null, 5, 11);
+        int negation = ast.getChild(product, 1);
+        assertNode(ast, negation, Ast.UNARY, 1);
+        assertEquals(Ast.MINUS, ast.getOp(negation));
+        assertText(ast, ast.getChild(negation, 0), "a", 5, 16);
+
+        // The parentheses are not kept, and the ¬ applies to the comparison.
+        int conjunction = ast.getChild(ast.getChild(statements, 1), 1);
+        assertNode(ast, conjunction, Ast.LOGICAL, 2);
+        assertEquals(Ast.AND, ast.getOp(conjunction));
+        assertText(ast, conjunction, null, 6, 7);
+        int not = ast.getChild(conjunction, 0);
+        assertNode(ast, not, Ast.UNARY, 1);
+        assertEquals(Ast.NOT, ast.getOp(not));
+        int comparison = ast.getChild(not, 0);
+        assertNode(ast, comparison, Ast.COMPARISON, 2);
+        assertEquals(Ast.LESS, ast.getOp(comparison));
+        assertText(ast, comparison, null, 6, 9);
+        assertNode(ast, ast.getChild(conjunction, 1), Ast.ID, 0);
+    }
+
+    @Test
+    public void testStatements() {
+        Ast ast = lower("program P\nint a;\nint b[3];\nprocedure q(int n)\nbegin\n  return;\nend;\nbegin\n"
+                + "  read(a, b[a]);\n"
+                + "  call q(a);\n"
+                + "  if a < 1 then elif a < 2 then a := 2; else write(a, b[a + 1]); fi;\n"
+                + "  while a > 0 do a := a - 1; od;\n"
+                + "  do od until a = 0;\n"
+                + "end;\n");
+        int root = ast.getRoot();
+        int q = ast.getChild(root, 2);
+        assertNode(ast, q, Ast.PROCEDURE, 2);
+        assertNode(ast, child(ast, ast.getChild(q, 1), Ast.STATEMENTS, 1, 0), Ast.RETURN, 0);
+
+        int statements = ast.getChild(root, 3);
+        assertNode(ast, statements, Ast.STATEMENTS, 5);
+        int read = ast.getChild(statements, 0);
+        assertNode(ast, read, Ast.READ, 2);
+        assertNode(ast, ast.getChild(read, 0), Ast.ID_LVALUE, 0);
+        int element = ast.getChild(read, 1);
+        assertNode(ast, element, Ast.ARRAY_LVALUE, 1);
+        assertText(ast, element, "b", 9, 10);
+        assertNode(ast, ast.getChild(element, 0), Ast.ID, 0);
+
+        int call = ast.getChild(statements, 1);
+        assertNode(ast, call, Ast.CALL, 1);
+        assertText(ast, call, "q", 10, 2);
+
+        int ifStatement = ast.getChild(statements, 2);
+        assertNode(ast, ifStatement, Ast.IF, 4);
+        assertNode(ast, ast.getChild(ifStatement, 0), Ast.COMPARISON, 2);
+        assertNode(ast, ast.getChild(ifStatement, 1), Ast.STATEMENTS, 0);
+        int elsif = ast.getChild(ifStatement, 2);
+        assertNode(ast, elsif, Ast.ELSIF, 2);
+        assertNode(ast, ast.getChild(elsif, 1), Ast.STATEMENTS, 1);
+        int write = child(ast, child(ast, ast.getChild(ifStatement, 3), Ast.ELSE, 1, 0), Ast.STATEMENTS, 1, 0);
+        assertNode(ast, write, Ast.WRITE, 2);
+        int access = ast.getChild(write, 1);
+        assertNode(ast, access, Ast.ARRAY_ACCESS, 1);
+        assertText(ast, access, "b", 11, 54);
+        assertNode(ast, ast.getChild(access, 0), Ast.ARITHMETIC, 2);
+
+        int whileStatement = ast.getChild(statements, 3);
+        assertNode(ast, whileStatement, Ast.WHILE, 2);
+        assertEquals(Ast.GREATER, ast.getOp(ast.getChild(whileStatement, 0)));
+        assertNode(ast, ast.getChild(whileStatement, 1), Ast.STATEMENTS, 1);
+
+        int doUntil = ast.getChild(statements, 4);
+        assertNode(ast, doUntil, Ast.DO_UNTIL, 2);
+        assertNode(ast, ast.getChild(doUntil, 0), Ast.STATEMENTS, 0);
+        assertEquals(Ast.EQUAL, ast.getOp(ast.getChild(doUntil, 1)));
+    }
+
+    @Test
+    public void testPostfixOperatorIsAnError() {
+        for (String op : new String[] {"&", "^", "|"}) {
+            String text = "program Postfix\nint a;\nbegin\n  a := (a + 1) " + op + ";\nend;\n";
+            for (boolean recursiveDescent : new boolean[] {false, true}) {
+                CompilerOptions options = new CompilerOptions();
+                options.setRecursiveDescent(recursiveDescent);
+                CompileResult result = MicroCompiler.compile(text, options);
+                assertFalse(op, result.isSuccess());
+                assertNull(op, result.getClassBytes());
+                assertEquals(op, 1, result.getDiagnostics().size());
+                assertEquals(op, op + " needs a right operand", result.getDiagnostics().get(0).getMessage());
+                assertEquals(op, 4, result.getDiagnostics().get(0).getLine());
+            }
+        }
+    }
+
+}
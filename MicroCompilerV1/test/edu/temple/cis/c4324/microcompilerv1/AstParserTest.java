@@ -0,0 +1,141 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.IOException;
+import java.util.Map;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.tree.ParseTree;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that the recursive descent parser builds the same Ast as lowering
+ * the ANTLR parse tree, and that compiling with it gives the same class and
+ * the same diagnostics.
+ */
+public class AstParserTest {
+
+    private static Ast lower(String text) {
+        FrontEnd frontEnd = new FrontEnd();
+        CommonTokenStream tokens = frontEnd.tokenize(new ANTLRInputStream(text), ConsoleErrorListener.INSTANCE);
+        ParseTree tree = frontEnd.parse(tokens, ConsoleErrorListener.INSTANCE);
+        return new AstBuilder().lower(tree, tokens.size());
+    }
+
+    private static Ast parse(String text) {
+        FrontEnd frontEnd = new FrontEnd();
+        char[] chars = text.toCharArray();
+        frontEnd.scan(chars, chars.length);
+        return frontEnd.parseAst();
+    }
+
+    private static String describe(Ast ast, int node) {
+        StringBuilder s = new StringBuilder();
+        s.append(node).append(' ').append(ast.getKind(node)).append(' ').append(ast.getOp(node))
+                .append(' ').append(ast.getText(node)).append(' ').append(ast.getLine(node))
+                .append(':').append(ast.getColumn(node)).append(" [");
+        for (int i = 0; i < ast.getChildCount(node); i++) {
+            s.append(' ').append(ast.getChild(node, i));
+        }
+        return s.append(" ]").toString();
+    }
+
+    private static void assertSameAst(String name, String text) {
+        Ast expected = lower(text);
+        Ast actual = parse(text);
+        assertNotNull(name, actual);
+        assertEquals(name, expected.size(), actual.size());
+        assertEquals(name, expected.getRoot(), actual.getRoot());
+        for (int node = 0; node < expected.size(); node++) {
+            assertEquals(name, describe(expected, node), describe(actual, node));
+        }
+    }
+
+    private static void assertSameResult(String name, String text) {
+        CompilerOptions options = new CompilerOptions();
+        options.setSourceFileName(name + ".mic");
+        CompileResult expected = MicroCompiler.compile(text, options);
+        options.setRecursiveDescent(true);
+        CompileResult actual = MicroCompiler.compile(text, options);
+        assertEquals(name, expected.getDiagnostics().toString(), actual.getDiagnostics().toString());
+        assertArrayEquals(name, expected.getClassBytes(), actual.getClassBytes());
+    }
+
+    private static String program(String declarations, String body) {
+        return "program P\n" + declarations + "begin\n" + body + "end;\n";
+    }
+
+    @Test
+    public void testSamples() throws IOException {
+        int count = 0;
+        for (Map.Entry<String, String> sample : TestPrograms.samples().entrySet()) {
+            String text = sample.getValue();
+            if (parse(text) != null) {
+                assertSameAst(sample.getKey(), text);
+                count++;
+            }
+            assertSameResult(sample.getKey(), text);
+        }
+        assertTrue(count > 0);
+    }
+
+    @Test
+    public void testGeneratedPrograms() {
+        for (long seed = 1; seed <= 10; seed++) {
+            ProgramGenerator generator = new ProgramGenerator();
+            generator.setProcedures(5);
+            generator.setFunctions(5);
+            generator.setGlobals(4);
+            generator.setArrays(2);
+            generator.setStatements(10);
+            generator.setExpressionLength(8);
+            generator.setSeed(seed);
+            String name = "Parsed" + seed;
+            String text = generator.generate(name);
+            assertSameAst(name, text);
+            assertSameResult(name, text);
+        }
+    }
+
+    @Test
+    public void testExpressions() {
+        assertSameAst("precedence", program("int a;\nint b[3];\nbool p;\n",
+                "a := 1 + 2 * 3 - 4 / 5 % 6 << 7 >> 8 >>> 9;\n"
+                + "a := 2 ** 3 ** 2 * -a ** 2;\n"
+                + "p := a < 1 = (b[0] >= 2) \u2227 \u00acp \u2228 a != 3;\n"
+                + "a := - - ~ (a + (b[a - 1])) * +f(a, (a), 1.5, 'c', true);\n"
+                + "a := ((((a))));\n"));
+        assertSameAst("statements", program(
+                "int a;\nreal r[10];\nprocedure q()\nbegin\nend;\n"
+                + "function int f(int x, real y[], char c, bool b)\nint t;\nbegin\n  return x;\nend;\n",
+                "read();\nread(a, r[a]);\nwrite();\nwrite(a, r[1] + 2.);\ncall q();\n"
+                + "if a then fi;\nif a then a := 1; elif r then elif a then a := 2; else fi;\n"
+                + "while a > 0 do a := a - 1; od;\ndo od until a;\nreturn;\nreturn a;\n"));
+    }
+
+    @Test
+    public void testGivesUp() {
+        assertNull(parse(program("", "a := ;\n")));
+        assertNull(parse(program("", "a := b &;\n")));
+        assertNull(parse(program("", "a := @;\n")));
+        assertNull(parse("program P begin end"));
+        assertNotNull(parse(program("", "") + "trailing tokens ignored"));
+    }
+
+    @Test
+    public void testErrors() {
+        assertSameResult("SyntaxError", program("", "  a := a + ;\n  write(1 2);\n"));
+        assertSameResult("LexicalError", program("int a;\n", "  a := 1 # 2;\n  a :x 3;\n"));
+        assertSameResult("Postfix", program("int a;\n", "  a := (a + 1) &;\n"));
+        assertSameResult("Undefined", program("", "  write(y);\n"));
+        assertSameResult("Redefined", program("int x;\nreal x;\n", "  x := 1;\n"));
+        assertSameResult("Mismatch", program("int x;\n", "  x := 1 + true;\n"));
+        assertSameResult("Trailing", program("int x;\n", "  x := 1;\n") + "x := @");
+    }
+
+}
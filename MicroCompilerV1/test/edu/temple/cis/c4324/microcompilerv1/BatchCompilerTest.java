@@ -0,0 +1,130 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Check that the batch compiler finds the source files under a directory,
+ * returns one result per file in the order given whatever order they finish
+ * in, keeps a failing file from affecting the others, and reports it in its
+ * summary and exit status.
+ */
+public class BatchCompilerTest {
+
+    private static final String UNDEFINED = "program Undefined\nint x;\nbegin\n  x := y;\n  write(x);\nend;\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String write(String path, String text) throws IOException {
+        File file = new File(folder.getRoot(), path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file.getPath();
+    }
+
+    private static List<String> names(List<BatchCompiler.Result> results) {
+        List<String> names = new ArrayList<>();
+        results.forEach(result -> names.add(result.getInputFileName()));
+        return names;
+    }
+
+    @Test
+    public void testCollectSources() throws Exception {
+        String b = write("src/b.mic", "");
+        String a = write("src/a.mic", "");
+        String d = write("src/sub/b/d.mic", "");
+        String c = write("src/sub/c.mic", "");
+        write("src/sub/notes.txt", "not a program");
+        String other = write("other.txt", "");
+        File src = new File(folder.getRoot(), "src");
+        // Directories are searched in name order, and a file named on its
+        // own is taken whatever its extension.
+        assertEquals(Arrays.asList(other, a, b, d, c),
+                BatchCompiler.collectSources(Arrays.asList(other, src.getPath())));
+        assertEquals(Arrays.asList(d, c, a),
+                BatchCompiler.collectSources(Arrays.asList(new File(src, "sub").getPath(), a)));
+        assertEquals(Collections.emptyList(),
+                BatchCompiler.collectSources(Collections.singletonList(folder.newFolder("empty").getPath())));
+    }
+
+    @Test
+    public void testResultsInInputOrder() throws Exception {
+        List<String> inputs = new ArrayList<>();
+        // The first file is by far the largest, so the small files after it
+        // finish first.
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setTargetLines(3000);
+        inputs.add(write("Large.mic", generator.generate("Large")));
+        for (int i = 0; i < 8; i++) {
+            inputs.add(write("Small" + i + ".mic", TestPrograms.generate("Small" + i, i)));
+        }
+        BatchCompiler compiler = new BatchCompiler(4, new CompilerOptions(), null);
+        List<BatchCompiler.Result> results = compiler.compileAll(inputs);
+        assertEquals(inputs, names(results));
+        for (BatchCompiler.Result result : results) {
+            assertTrue(result.getInputFileName() + ": " + result.getDiagnostics(), result.isSuccess());
+            assertTrue(new File(Compilation.outputFileName(result.getInputFileName())).isFile());
+        }
+        assertEquals(0, BatchCompiler.exitStatus(results));
+    }
+
+    @Test
+    public void testFailureIsIsolated() throws Exception {
+        List<String> inputs = new ArrayList<>();
+        inputs.add(write("First.mic", TestPrograms.generate("First", 1)));
+        inputs.add(write("Undefined.mic", UNDEFINED));
+        inputs.add(new File(folder.getRoot(), "Missing.mic").getPath());
+        inputs.add(write("Last.mic", TestPrograms.generate("Last", 2)));
+        BatchCompiler compiler = new BatchCompiler(2, new CompilerOptions(), null);
+        List<BatchCompiler.Result> results = compiler.compileAll(inputs);
+        assertEquals(inputs, names(results));
+
+        assertTrue(results.get(0).getDiagnostics().toString(), results.get(0).isSuccess());
+        assertTrue(results.get(3).getDiagnostics().toString(), results.get(3).isSuccess());
+        assertTrue(new File(Compilation.outputFileName(inputs.get(0))).isFile());
+        assertTrue(new File(Compilation.outputFileName(inputs.get(3))).isFile());
+
+        BatchCompiler.Result undefined = results.get(1);
+        assertFalse(undefined.isSuccess());
+        assertEquals(1, undefined.getDiagnostics().size());
+        assertTrue(undefined.getDiagnostics().get(0).getMessage(),
+                undefined.getDiagnostics().get(0).getMessage().contains("Undefined identifier y"));
+        assertFalse(new File(Compilation.outputFileName(inputs.get(1))).exists());
+
+        BatchCompiler.Result missing = results.get(2);
+        assertFalse(missing.isSuccess());
+        assertEquals(1, missing.getDiagnostics().size());
+        assertTrue(missing.getDiagnostics().get(0).getMessage(),
+                missing.getDiagnostics().get(0).getMessage().contains("NoSuchFileException"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        BatchCompiler.printSummary(results, 0, out);
+        List<String> lines = Arrays.asList(new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\\R"));
+        assertEquals(lines.toString(), 7, lines.size());
+        assertTrue(lines.get(0), lines.get(0).startsWith("OK     " + inputs.get(0) + " ("));
+        assertTrue(lines.get(1), lines.get(1).startsWith("FAILED " + inputs.get(1) + " ("));
+        assertEquals("       " + undefined.getDiagnostics().get(0), lines.get(2));
+        assertTrue(lines.get(3), lines.get(3).startsWith("FAILED " + inputs.get(2) + " ("));
+        assertEquals("       " + missing.getDiagnostics().get(0), lines.get(4));
+        assertTrue(lines.get(5), lines.get(5).startsWith("OK     " + inputs.get(3) + " ("));
+        assertTrue(lines.get(6), lines.get(6).startsWith("4 files: 2 succeeded, 2 failed in "));
+        assertEquals(1, BatchCompiler.exitStatus(results));
+    }
+
+}
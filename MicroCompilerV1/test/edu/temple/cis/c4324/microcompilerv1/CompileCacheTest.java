@@ -0,0 +1,147 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.File;
+import java.util.Arrays;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Check the keys of the compile cache, the eviction of the least recently
+ * used entries, the order kept in the file modification times from one
+ * run to the next, and entries whose files have gone.
+ */
+public class CompileCacheTest {
+
+    /** The size of every entry; the cache holds two of them. */
+    private static final int SIZE = 100;
+    private static final long MAX_BYTES = 2 * SIZE + SIZE / 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] classBytes(int value) {
+        byte[] bytes = new byte[SIZE];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+
+    private File entryFile(String key) {
+        return new File(folder.getRoot(), key + ".class");
+    }
+
+    /**
+     * Make the entries of the given keys look used in turn, a second apart,
+     * since an entry put or read within the same millisecond as another
+     * would leave their order to chance.
+     */
+    private void setUseOrder(String... keys) {
+        long time = System.currentTimeMillis() - 60_000;
+        for (String key : keys) {
+            assertTrue(key, entryFile(key).setLastModified(time));
+            time += 1000;
+        }
+    }
+
+    @Test
+    public void testKey() {
+        CompilerOptions options = new CompilerOptions();
+        options.setSourceFileName("A.mic");
+        String key = CompileCache.key(options, "text");
+        assertEquals(key, CompileCache.key(new CompilerOptions(options), "text"));
+        assertNotEquals(key, CompileCache.key(options, "text "));
+        CompilerOptions other = new CompilerOptions(options);
+        other.setSourceFileName("B.mic");
+        assertNotEquals(key, CompileCache.key(other, "text"));
+        other = new CompilerOptions(options);
+        other.setSsa(true);
+        assertNotEquals(key, CompileCache.key(other, "text"));
+        other = new CompilerOptions(options);
+        other.setOptimizationLevel(2);
+        assertNotEquals(key, CompileCache.key(other, "text"));
+    }
+
+    @Test
+    public void testChangedOptionsOrTextMiss() throws Exception {
+        CompileCache cache = new CompileCache(folder.getRoot(), MAX_BYTES);
+        CompilerOptions options = new CompilerOptions();
+        options.setSourceFileName("A.mic");
+        cache.put(CompileCache.key(options, "text"), classBytes(1));
+        assertArrayEquals(classBytes(1), cache.get(CompileCache.key(options, "text")));
+        assertNull(cache.get(CompileCache.key(options, "text2")));
+        CompilerOptions other = new CompilerOptions(options);
+        other.setSsa(true);
+        assertNull(cache.get(CompileCache.key(other, "text")));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        CompileCache cache = new CompileCache(folder.getRoot(), MAX_BYTES);
+        cache.put("a", classBytes(1));
+        cache.put("b", classBytes(2));
+        assertEquals(2 * SIZE, cache.getTotalBytes());
+        // Reading a makes b the least recently used.
+        assertArrayEquals(classBytes(1), cache.get("a"));
+        cache.put("c", classBytes(3));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(2 * SIZE, cache.getTotalBytes());
+        assertFalse(entryFile("b").exists());
+        assertNull(cache.get("b"));
+        assertArrayEquals(classBytes(1), cache.get("a"));
+        assertArrayEquals(classBytes(3), cache.get("c"));
+        // Putting an entry again replaces it rather than adding to the size.
+        cache.put("c", classBytes(4));
+        assertEquals(2 * SIZE, cache.getTotalBytes());
+        assertArrayEquals(classBytes(4), cache.get("c"));
+    }
+
+    @Test
+    public void testOrderRestored() throws Exception {
+        CompileCache cache = new CompileCache(folder.getRoot(), MAX_BYTES);
+        cache.put("a", classBytes(1));
+        cache.put("b", classBytes(2));
+        setUseOrder("a", "b");
+        cache = new CompileCache(folder.getRoot(), MAX_BYTES);
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(2 * SIZE, cache.getTotalBytes());
+        cache.put("c", classBytes(3));
+        assertFalse(entryFile("a").exists());
+        assertTrue(entryFile("b").exists());
+        // A read in one run is the most recent use in the next.
+        setUseOrder("b", "c");
+        cache = new CompileCache(folder.getRoot(), MAX_BYTES);
+        assertArrayEquals(classBytes(2), cache.get("b"));
+        cache = new CompileCache(folder.getRoot(), MAX_BYTES);
+        cache.put("d", classBytes(4));
+        assertFalse(entryFile("c").exists());
+        assertArrayEquals(classBytes(2), cache.get("b"));
+        assertArrayEquals(classBytes(4), cache.get("d"));
+    }
+
+    @Test
+    public void testDeletedEntryFile() throws Exception {
+        CompileCache cache = new CompileCache(folder.getRoot(), MAX_BYTES);
+        cache.put("a", classBytes(1));
+        cache.put("b", classBytes(2));
+        assertTrue(entryFile("a").delete());
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(SIZE, cache.getTotalBytes());
+        // The entry is gone, so it does not count towards the size bound.
+        cache.put("c", classBytes(3));
+        assertEquals(0, cache.getEvictions());
+        assertArrayEquals(classBytes(2), cache.get("b"));
+    }
+
+}
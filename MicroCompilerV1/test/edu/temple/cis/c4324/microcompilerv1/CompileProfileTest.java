@@ -0,0 +1,47 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that the phase in which a compilation fails is still recorded in
+ * its profile.
+ */
+public class CompileProfileTest {
+
+    private static final String TEXT = "program Undefined\nint x;\nbegin\n  x := y;\n  write(x);\nend;\n";
+
+    private static void assertFailedIn(String phase, CompileResult result) {
+        assertFalse(result.isSuccess());
+        Map<String, CompileProfile.Phase> phases = result.getProfile().getPhases();
+        assertTrue(phases.keySet().toString(), phases.containsKey(phase));
+    }
+
+    @Test
+    public void testFailedPhaseIsRecorded() throws Exception {
+        for (boolean recursiveDescent : new boolean[]{false, true}) {
+            CompilerOptions options = new CompilerOptions();
+            options.setProfiling(true);
+            options.setRecursiveDescent(recursiveDescent);
+            assertFailedIn(CompileProfile.REFERENCE, MicroCompiler.compile(TEXT, options));
+        }
+        Path source = Files.createTempFile("Undefined", ".mic");
+        try {
+            Files.write(source, TEXT.getBytes(StandardCharsets.UTF_8));
+            CompilerOptions options = new CompilerOptions();
+            options.setProfiling(true);
+            options.setStreaming(true);
+            // The undefined name in the main body is found when the body is
+            // compiled.
+            assertFailedIn(CompileProfile.COMPILE, MicroCompiler.compile(source, options));
+        } finally {
+            Files.delete(source);
+        }
+    }
+
+}
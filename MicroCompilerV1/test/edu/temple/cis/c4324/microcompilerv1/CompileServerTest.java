@@ -0,0 +1,111 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check each request of the compile server protocol through CompileClient,
+ * with more clients connected at once than the server has compile threads.
+ */
+public class CompileServerTest {
+
+    private static final int THREADS = 2;
+    private static final int CLIENTS = 3 * THREADS;
+
+    /**
+     * Compile the sample programs through one client.
+     * @return The number of programs compiled
+     */
+    private static int compileSamples(int port) throws Exception {
+        int count = 0;
+        try (CompileClient client = new CompileClient(port)) {
+            for (String name : TestPrograms.samples().keySet()) {
+                File file = TestPrograms.directory().resolve(name + ".mic").toFile();
+                CompileClient.Response response = client.compileFile(file.getPath());
+                CompilerOptions options = new CompilerOptions();
+                options.setSourceFileName(file.getAbsolutePath());
+                CompileResult expected = MicroCompiler.compile(TestPrograms.sample(name), options);
+                assertEquals(name, expected.isSuccess(), response.isSuccess());
+                assertEquals(name, expected.getDiagnostics().size(), response.getDiagnostics().size());
+                if (expected.isSuccess()) {
+                    assertEquals(name, expected.getClassName(), response.getClassName());
+                    assertArrayEquals(name, expected.getClassBytes(), response.getClassBytes());
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test(timeout = 120000)
+    public void testProtocol() throws Exception {
+        CompileServer server = new CompileServer(0, THREADS);
+        ExecutorService threads = Executors.newCachedThreadPool();
+        Future<?> serving = threads.submit(() -> {
+            server.serve();
+            return null;
+        });
+        try {
+            // Every client stays connected until all of them are done, so
+            // a server with a thread per connection from a pool of THREADS
+            // would never answer the last ones.
+            List<CompileClient> clients = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                clients.add(new CompileClient(server.getPort()));
+            }
+            List<Future<Integer>> compiled = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                compiled.add(threads.submit(() -> compileSamples(server.getPort())));
+            }
+            int programs = 0;
+            for (Future<Integer> count : compiled) {
+                programs += count.get();
+            }
+            assertTrue(programs > 0);
+
+            CompileClient client = clients.get(0);
+            String text = "program Served\nint x;\nbegin\n  read(x);\n  write(x * 2);\nend;\n";
+            CompileClient.Response response = client.compileSource("Served.mic", text);
+            assertTrue(response.getDiagnostics().toString(), response.isSuccess());
+            assertEquals("Served", response.getClassName());
+            CompilerOptions options = new CompilerOptions();
+            options.setSourceFileName("Served.mic");
+            assertArrayEquals(MicroCompiler.compile(text, options).getClassBytes(), response.getClassBytes());
+
+            response = clients.get(1).compileSource("Broken.mic", text.replace("x * 2", "y"));
+            assertFalse(response.isSuccess());
+            assertEquals(1, response.getDiagnostics().size());
+            assertTrue(response.getDiagnostics().get(0), response.getDiagnostics().get(0).contains("y"));
+            assertEquals("", response.getClassName());
+            assertEquals(0, response.getClassBytes().length);
+
+            response = clients.get(2).compileFile(new File("NoSuchFile.mic").getPath());
+            assertFalse(response.isSuccess());
+            assertEquals(1, response.getDiagnostics().size());
+
+            int requests = CLIENTS * TestPrograms.samples().size() + 3;
+            assertEquals(requests, server.getStatistics().getRequests());
+            assertTrue(client.statistics().length() > 0);
+
+            client.shutdown();
+            serving.get(30, TimeUnit.SECONDS);
+            for (CompileClient connected : clients) {
+                connected.close();
+            }
+        } finally {
+            server.close();
+            threads.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that the conditions of if, while and do-until statements, which are
+ * compiled to branches, have the values the same expressions have when
+ * they are assigned to a variable.
+ */
+public class ConditionTest {
+
+    private static final String[] CONDITIONS = {
+        "a < b",
+        "¬(a < b)",
+        "a = b ∧ p",
+        "a < b ∨ ¬p",
+        "¬(a > b ∧ (p ∨ b < 0))",
+        "¬¬p",
+        "true",
+        "¬true ∨ a != b",
+        "p ∧ true",
+        "a <= b ∧ b <= 10 ∧ p",
+        "a > b ∨ b > 10 ∨ ¬p ∨ a = 5",
+        "(a < b ∨ p) ∧ ¬(b < 0 ∨ a = b)",
+        "r >= a",
+        "¬(r < b)",
+        "r > b ∨ r = b",
+        "¬(r != a)",
+    };
+
+    /**
+     * Generate a program that writes the value of each condition, then 1 or
+     * 0 as the if statement on it takes its then or else part, then the
+     * number of times a while and a do-until loop run on it.
+     */
+    private static String program() {
+        StringBuilder text = new StringBuilder("program Conditions\nint a;\nint b;\nreal r;\nbool p;\n"
+                + "bool t;\nint n;\nbegin\n  read(a, b, r);\n  p := a < 10;\n");
+        for (String condition : CONDITIONS) {
+            text.append("  t := ").append(condition).append(";\n  write(t);\n");
+            text.append("  if ").append(condition).append(" then\n    write(1);\n  else\n    write(0);\n  fi;\n");
+            text.append("  n := 0;\n  while n < 2 ∧ (").append(condition).append(") do\n    n := n + 1;\n  od;\n");
+            text.append("  do\n    n := n + 1;\n  od until n > 3 ∨ ¬(").append(condition).append(");\n");
+            text.append("  write(n);\n");
+        }
+        text.append("end;\n");
+        return text.toString();
+    }
+
+    @Test
+    public void testConditions() throws Exception {
+        CompileResult result = TestPrograms.assertCompiles("Conditions", program(), new CompilerOptions());
+        int trueCount = 0;
+        for (String input : new String[]{"12 18 3.5", "5 5 5.0", "-3 -7 0.5", "4 2 NaN"}) {
+            // Each condition writes true14 or false01: the while loop runs
+            // twice if it is true, and the do-until loop runs until n is 4
+            // if it is true and once if it is false.
+            String output = TestPrograms.run(result, input);
+            String rest = output;
+            for (String condition : CONDITIONS) {
+                String expected = rest.startsWith("true") ? "true14" : "false01";
+                assertTrue(condition + " for " + input + ": " + output, rest.startsWith(expected));
+                trueCount += expected.startsWith("true") ? 1 : 0;
+                rest = rest.substring(expected.length());
+            }
+            assertEquals("", rest);
+        }
+        assertTrue(trueCount > 0 && trueCount < 4 * CONDITIONS.length);
+    }
+
+    @Test
+    public void testLoopConditionIsOneBranch() throws Exception {
+        // while y > 0 is iload, iconst_0 and if_icmple, with no boolean
+        // pushed and tested.
+        CompilerOptions options = new CompilerOptions();
+        options.setProfiling(true);
+        CompileResult result = TestPrograms.assertCompiles("Gcd2", TestPrograms.sample("Gcd2"), options);
+        assertEquals(16, (int) result.getProfile().getMethodInstructions().get("Gcd"));
+        assertEquals("6", TestPrograms.run(result, "12 18"));
+    }
+
+}
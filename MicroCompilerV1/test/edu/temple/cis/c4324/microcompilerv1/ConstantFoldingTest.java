@@ -0,0 +1,114 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that the constant expressions folded at -O1 have the values the
+ * unfolded code computes, and that the uses of constant variables and the
+ * if arms with constant guards are gone, with either backend.
+ */
+public class ConstantFoldingTest {
+
+    private static final String EXPRESSIONS = "program Expressions\nint i;\nreal r;\nbool b;\nbegin\n"
+            + "  i := 2147483647 + 1;\n"
+            + "  write(i, -7 / 2, -7 % 2, 1 << 33, -8 >> 1, -8 >>> 28, ~5, 3 - 4 * 2);\n"
+            + "  write(2 ** 31, 2 ** -1, 2 ** 0.5, 7 / 2.0, 1 + 2.5, 7.5 % 2, 1.0 / 0.0);\n"
+            + "  r := 0.0 / 0.0;\n"
+            + "  write(r, r < 1.0, 0.0 / 0.0 < 1.0, 0.0 / 0.0 >= 1, 0.0 / 0.0 = 0.0 / 0.0, 0.0 / 0.0 != 1);\n"
+            + "  b := 1 < 2 ∧ 2.5 > 2 ∨ false;\n"
+            + "  write(b, true ∨ i > 0, false ∧ i > 0, ¬(3 >= 3), 3 = 3.0, true = ¬false);\n"
+            + "  i := 7.9;\n"
+            + "  write(i, -(2.5 * 2), -(-3), -0.0, 1.0 / -0.0);\n"
+            + "end;\n";
+
+    private static final String ROUTINE = "program Routine\nint n;\n"
+            + "procedure show(int n)\n  int k;\n  int m;\n  real h;\n  bool p;\nbegin\n"
+            + "  k := 3 * 4 - 2;\n  h := k;\n  p := k > 5;\n  m := 1;\n"
+            + "  write(k + n, h / 4, p, m);\n"
+            + "  if p then\n    write(1);\n  elif n > 0 then\n    write(2);\n  else\n    write(3);\n  fi;\n"
+            + "  if ¬p then\n    write(4);\n  elif n > 0 then\n    write(5);\n  fi;\n"
+            + "  if k < 0 then\n    write(6);\n  elif k = 10 then\n    write(7);\n  else\n    write(8);\n  fi;\n"
+            + "  if n > 1 then\n    write(9);\n  elif k != 10 then\n    write(10);\n  elif true then\n"
+            + "    write(11);\n  else\n    write(12);\n  fi;\n"
+            + "  while m < 4 do\n    m := m + 1;\n  od;\n"
+            + "  write(m, h);\n"
+            + "end;\n"
+            + "begin\n  read(n);\n  call show(n);\nend;\n";
+
+    private static CompileResult compile(String name, String text, int level) throws Exception {
+        return compile(name, text, level, false);
+    }
+
+    private static CompileResult compile(String name, String text, int level, boolean directWriter) throws Exception {
+        CompilerOptions options = new CompilerOptions();
+        options.setProfiling(true);
+        options.setOptimizationLevel(level);
+        options.setDirectWriter(directWriter);
+        return TestPrograms.assertCompiles(name, text, options);
+    }
+
+    private static int instructions(CompileResult result, String method) {
+        return result.getProfile().getMethodInstructions().get(method);
+    }
+
+    @Test
+    public void testFoldedValues() throws Exception {
+        CompileResult unfolded = compile("Expressions", EXPRESSIONS, 0);
+        CompileResult folded = compile("Expressions", EXPRESSIONS, 1);
+        assertEquals(TestPrograms.run(unfolded, ""), TestPrograms.run(folded, ""));
+        // Only the stores, loads and writes are left.
+        assertTrue(instructions(folded, "main") * 2 < instructions(unfolded, "main"));
+    }
+
+    @Test
+    public void testPowerIsFolded() throws Exception {
+        CompileResult folded = compile("PowTest", TestPrograms.sample("PowTest"), 1);
+        assertEquals("2147483647", TestPrograms.run(folded, ""));
+        assertFalse(new String(folded.getClassBytes(), StandardCharsets.ISO_8859_1).contains("pow"));
+    }
+
+    @Test
+    public void testConstantsArePropagated() throws Exception {
+        CompileResult unfolded = compile("Routine", ROUTINE, 0);
+        CompileResult folded = compile("Routine", ROUTINE, 1);
+        for (String input : new String[]{"0", "1", "2", "-5"}) {
+            assertEquals(input, TestPrograms.run(unfolded, input), TestPrograms.run(folded, input));
+        }
+        // m is assigned again in the loop, so it is not replaced.
+        assertTrue(instructions(folded, "show") * 2 < instructions(unfolded, "show"));
+        assertEquals("122.5true11579410.0", TestPrograms.run(folded, "2"));
+    }
+
+    @Test
+    public void testDirectWriterFolds() throws Exception {
+        CompileResult unfolded = compile("Routine", ROUTINE, 0, true);
+        CompileResult folded = compile("Routine", ROUTINE, 1, true);
+        assertFalse(unfolded.getProfile().getPhases().containsKey(CompileProfile.FOLD));
+        assertTrue(folded.getProfile().getPhases().containsKey(CompileProfile.FOLD));
+        for (String input : new String[]{"0", "1", "2", "-5"}) {
+            assertEquals(input, TestPrograms.run(unfolded, input), TestPrograms.run(folded, input));
+        }
+        assertTrue(folded.getClassBytes().length < unfolded.getClassBytes().length);
+        unfolded = compile("Expressions", EXPRESSIONS, 0, true);
+        folded = compile("Expressions", EXPRESSIONS, 1, true);
+        assertEquals(TestPrograms.run(unfolded, ""), TestPrograms.run(folded, ""));
+        assertTrue(folded.getClassBytes().length < unfolded.getClassBytes().length);
+    }
+
+    @Test
+    public void testDivisionByZeroIsLeft() throws Exception {
+        CompileResult folded = compile("Divide", "program Divide\nbegin\n  write(1 / 0);\nend;\n", 1);
+        try {
+            TestPrograms.run(folded, "");
+            throw new AssertionError("1 / 0 was folded");
+        } catch (InvocationTargetException ex) {
+            assertTrue(ex.getCause() instanceof ArithmeticException);
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that expressions and conditions made of long chains of operators
+ * are compiled without running out of stack, on a thread with a small stack.
+ */
+public class DeepExpressionTest {
+
+    /** The stack size of the compiling thread, far less than the default. */
+    private static final long STACK_SIZE = 256 * 1024;
+
+    /**
+     * The number of ∧ and ∨ operators in a guard, as many as keep its
+     * branches within the reach of a 16 bit offset.
+     */
+    private static final int OPERATORS = 3000;
+
+    /**
+     * Generate a program with a chain of additions and a chain of
+     * disjunctions of comparisons, which is assigned and then tested.
+     */
+    private static String program(int additions, int disjunctions) {
+        StringBuilder text = new StringBuilder("program Deep\nint x;\nbool b;\nbegin\n  x := 1");
+        for (int i = 0; i < additions; i++) {
+            text.append(" + x");
+        }
+        text.append(";\n  b := x < 1");
+        for (int i = 0; i < disjunctions; i++) {
+            text.append(" ∨ x < ").append(i);
+        }
+        // The same chain as the condition of an if statement.
+        text.append(";\n  if x < 1");
+        for (int i = 0; i < disjunctions; i++) {
+            text.append(" ∨ x < ").append(i);
+        }
+        text.append(" then\n    x := x + 1;\n  fi;\n  write(x, b);\nend;\n");
+        return text.toString();
+    }
+
+    /**
+     * Generate a guard of alternating ∧ and ∨ operators. The two have the
+     * same precedence, so the guard nests to the left with a change of
+     * operator at every level. Half of its operands are under one or two ¬.
+     * It is false once x reaches 10.
+     */
+    private static String guard() {
+        StringBuilder text = new StringBuilder("x < 0");
+        for (int i = 1; i < OPERATORS; i++) {
+            text.append(i % 2 == 1 ? " ∧ " : " ∨ ");
+            switch (i % 4) {
+                case 0:
+                    text.append("x < ").append(i % 13);
+                    break;
+                case 1:
+                    text.append("¬b");
+                    break;
+                case 2:
+                    text.append("¬(x < ").append(i % 11).append(')');
+                    break;
+                default:
+                    text.append("¬¬b");
+                    break;
+            }
+        }
+        return text.append(" ∧ x < 10").toString();
+    }
+
+    /**
+     * Evaluate the guard.
+     */
+    private static boolean guard(int x, boolean b) {
+        boolean value = x < 0;
+        for (int i = 1; i < OPERATORS; i++) {
+            boolean operand;
+            switch (i % 4) {
+                case 0:
+                    operand = x < i % 13;
+                    break;
+                case 1:
+                    operand = !b;
+                    break;
+                case 2:
+                    operand = !(x < i % 11);
+                    break;
+                default:
+                    operand = b;
+                    break;
+            }
+            value = i % 2 == 1 ? value && operand : value || operand;
+        }
+        return value && x < 10;
+    }
+
+    /**
+     * Generate a program that reads x and s, sets b to s > 0, runs a
+     * statement that counts in n, and writes n.
+     */
+    private static String guarded(String statement) {
+        return "program Guards\nint x;\nint s;\nint n;\nbool b;\nbegin\n"
+                + "  read(x, s);\n  b := s > 0;\n  n := 0;\n  " + statement
+                + "\n  write(n);\nend;\n";
+    }
+
+    /**
+     * Compile on a thread with a small stack.
+     */
+    private static CompileResult compile(String text, boolean recursiveDescent) throws InterruptedException {
+        CompilerOptions options = new CompilerOptions();
+        options.setRecursiveDescent(recursiveDescent);
+        return compile(text, options);
+    }
+
+    private static CompileResult compile(String text, CompilerOptions options) throws InterruptedException {
+        AtomicReference<CompileResult> result = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                result.set(MicroCompiler.compile(text, options));
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "compile", STACK_SIZE);
+        thread.start();
+        thread.join();
+        assertNull(String.valueOf(failure.get()), failure.get());
+        return result.get();
+    }
+
+    /**
+     * Compile the guard as the condition of an if, a while and a do-until
+     * statement, and check the count each program writes.
+     */
+    private static void assertGuards(CompilerOptions options) throws Exception {
+        String guard = guard();
+        CompileResult ifResult = compile(guarded("if " + guard + " then\n    n := 1;\n  fi;"), options);
+        assertTrue(ifResult.getDiagnostics().toString(), ifResult.isSuccess());
+        CompileResult whileResult = compile(guarded("while " + guard
+                + " do\n    x := x + 1;\n    n := n + 1;\n  od;"), options);
+        assertTrue(whileResult.getDiagnostics().toString(), whileResult.isSuccess());
+        CompileResult untilResult = compile(guarded("do\n    x := x + 1;\n    n := n + 1;\n  od until ¬("
+                + guard + ");"), options);
+        assertTrue(untilResult.getDiagnostics().toString(), untilResult.isSuccess());
+        for (int x : new int[] {0, 4, 9}) {
+            for (int s = 0; s < 2; s++) {
+                boolean b = s > 0;
+                String input = x + " " + s;
+                assertEquals(input, guard(x, b) ? "1" : "0", TestPrograms.run(ifResult, input));
+                int n = 0;
+                while (guard(x + n, b)) {
+                    n++;
+                }
+                assertEquals(input, String.valueOf(n), TestPrograms.run(whileResult, input));
+                n = 0;
+                do {
+                    n++;
+                } while (guard(x + n, b));
+                assertEquals(input, String.valueOf(n), TestPrograms.run(untilResult, input));
+            }
+        }
+    }
+
+    @Test
+    public void testLongChains() throws Exception {
+        String text = program(5000, 1000);
+        CompileResult expected = compile(text, false);
+        assertTrue(expected.getDiagnostics().toString(), expected.isSuccess());
+        CompileResult actual = compile(text, true);
+        assertTrue(actual.getDiagnostics().toString(), actual.isSuccess());
+        assertArrayEquals(expected.getClassBytes(), actual.getClassBytes());
+        assertEquals("2true", TestPrograms.run(actual));
+    }
+
+    @Test
+    public void testVeryLongChain() throws Exception {
+        // Too much code for one method, but the compiler must get that far.
+        CompileResult result = compile(program(50000, 0), true);
+        assertTrue(result.getDiagnostics().toString(), result.isSuccess());
+    }
+
+    @Test
+    public void testErrorDeepInChain() throws Exception {
+        String text = program(5000, 0).replace("x + x;", "x + y;");
+        CompileResult expected = compile(text, false);
+        CompileResult actual = compile(text, true);
+        assertEquals(1, actual.getDiagnostics().size());
+        assertTrue(actual.getDiagnostics().get(0).getMessage(),
+                actual.getDiagnostics().get(0).getMessage().contains("Undefined identifier y"));
+        assertEquals(expected.getDiagnostics().toString(), actual.getDiagnostics().toString());
+    }
+
+    @Test
+    public void testAlternatingGuards() throws Exception {
+        CompilerOptions options = new CompilerOptions();
+        options.setRecursiveDescent(true);
+        assertGuards(options);
+    }
+
+    @Test
+    public void testAlternatingGuardsSsa() throws Exception {
+        CompilerOptions options = new CompilerOptions();
+        options.setRecursiveDescent(true);
+        options.setSsa(true);
+        assertGuards(options);
+    }
+
+}
@@ -0,0 +1,74 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that the class file writer generates classes that verify and
+ * behave as the ones built with BCEL, and that the diagnostics are the
+ * same.
+ */
+public class DirectWriterTest {
+
+    private static CompileResult assertSameResult(String name, String text) throws Exception {
+        CompilerOptions options = new CompilerOptions();
+        CompileResult expected = TestPrograms.compile(name, text, options);
+        options.setDirectWriter(true);
+        CompileResult actual = TestPrograms.compile(name, text, options);
+        assertEquals(name, expected.getDiagnostics().toString(), actual.getDiagnostics().toString());
+        assertEquals(name, expected.isSuccess(), actual.isSuccess());
+        if (expected.isSuccess()) {
+            assertEquals(name, expected.getClassName(), actual.getClassName());
+            assertEquals(name, TestPrograms.run(expected), TestPrograms.run(actual));
+        }
+        return expected;
+    }
+
+    @Test
+    public void testSamples() throws Exception {
+        for (Map.Entry<String, String> sample : TestPrograms.samples().entrySet()) {
+            assertSameResult(sample.getKey(), sample.getValue());
+        }
+    }
+
+    @Test
+    public void testGeneratedPrograms() throws Exception {
+        for (long seed = 1; seed <= 10; seed++) {
+            String name = "Direct" + seed;
+            assertSameResult(name, TestPrograms.generate(name, seed));
+        }
+    }
+
+    @Test
+    public void testManyLocalsAndConstants() throws Exception {
+        // Locals beyond slot 255 and constants beyond index 255 need the
+        // wide instruction forms.
+        StringBuilder text = new StringBuilder("program Wide\nprocedure p(real a)\n");
+        for (int i = 0; i < 300; i++) {
+            text.append("real r").append(i).append(";\n");
+        }
+        text.append("begin\n");
+        for (int i = 0; i < 300; i++) {
+            text.append("  r").append(i).append(" := a + ").append(i).append(".5;\n");
+        }
+        text.append("  write(r299 + r150);\nend;\nbegin\n  call p(1.25);\n  write(100000, 3.75);\nend;\n");
+        CompileResult result = assertSameResult("Wide", text.toString());
+        assertTrue(result.getDiagnostics().toString(), result.isSuccess());
+    }
+
+    @Test
+    public void testOptionChangesFingerprint() {
+        CompilerOptions options = new CompilerOptions();
+        String bcel = options.fingerprint();
+        options.setDirectWriter(true);
+        String direct = options.fingerprint();
+        assertTrue(!bcel.equals(direct));
+        assertEquals(direct, new CompilerOptions(options).fingerprint());
+        // The level folds constants with the direct writer too.
+        options.setOptimizationLevel(1);
+        assertTrue(!direct.equals(options.fingerprint()));
+    }
+
+}
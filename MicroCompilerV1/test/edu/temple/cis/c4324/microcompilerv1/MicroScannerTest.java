@@ -0,0 +1,145 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import edu.temple.cis.c4324.micro.MicroLexer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Differential test of MicroScanner against the lexer generated from
+ * Micro.g4. Both must produce the same tokens, with the same positions, and
+ * report the same token recognition errors.
+ */
+public class MicroScannerTest {
+
+    private static class Errors extends BaseErrorListener {
+
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+                int line, int charPositionInLine, String msg, RecognitionException e) {
+            messages.add(line + ":" + charPositionInLine + " " + msg);
+        }
+
+    }
+
+    private static String describe(int kind, int start, int end, int line, int column, String text) {
+        return MicroScanner.kindName(kind) + " " + start + ".." + end
+                + " " + line + ":" + column + " " + text;
+    }
+
+    private static List<String> lex(String text, Errors errors) {
+        MicroLexer lexer = new MicroLexer(new ANTLRInputStream(text));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errors);
+        List<String> tokens = new ArrayList<>();
+        for (Token token = lexer.nextToken(); ; token = lexer.nextToken()) {
+            tokens.add(describe(token.getType(), token.getStartIndex(), token.getStopIndex() + 1,
+                    token.getLine(), token.getCharPositionInLine(), token.getText()));
+            if (token.getType() == Token.EOF) {
+                return tokens;
+            }
+        }
+    }
+
+    private static List<String> tokens(MicroScanner scanner) {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < scanner.size(); i++) {
+            int kind = scanner.getKind(i);
+            int start = scanner.getStart(i);
+            // MicroLexer gives the EOF token an empty range at the end.
+            int end = kind == MicroScanner.EOF ? start : scanner.getEnd(i);
+            tokens.add(describe(kind, start, end, scanner.getLine(i), scanner.getColumn(i),
+                    scanner.getText(i)));
+        }
+        return tokens;
+    }
+
+    private static void assertSameTokens(String name, String text) {
+        Errors expectedErrors = new Errors();
+        List<String> expected = lex(text, expectedErrors);
+        MicroScanner scanner = new MicroScanner();
+        Errors actualErrors = new Errors();
+        assertEquals(name, expected.size(), scanner.scan(text, actualErrors));
+        assertEquals(name, expected, tokens(scanner));
+        assertEquals(name, expectedErrors.messages, actualErrors.messages);
+        assertEquals(name, expectedErrors.messages.size(), scanner.getErrorCount());
+        actualErrors = new Errors();
+        scanner.scan(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), actualErrors);
+        assertEquals(name, expected, tokens(scanner));
+        assertEquals(name, expectedErrors.messages, actualErrors.messages);
+    }
+
+    @Test
+    public void testSamples() throws IOException {
+        for (Map.Entry<String, String> sample : TestPrograms.samples().entrySet()) {
+            assertSameTokens(sample.getKey(), sample.getValue());
+        }
+    }
+
+    @Test
+    public void testGeneratedPrograms() {
+        for (long seed = 1; seed <= 10; seed++) {
+            ProgramGenerator generator = new ProgramGenerator();
+            generator.setTargetLines(500);
+            generator.setSeed(seed);
+            String name = "Scanned" + seed;
+            assertSameTokens(name, generator.generate(name));
+        }
+    }
+
+    @Test
+    public void testKeywordsAndIdentifiers() {
+        assertSameTokens("keywords", "program begin end procedure function int real char bool"
+                + " read write call return if then fi elif else while do od until true false");
+        assertSameTokens("identifiers", "programs begins ends _x x_1 If TRUE truer falsey f fi2"
+                + " do_ od1 i in int8 r rea realx w whil");
+    }
+
+    @Test
+    public void testNumbers() {
+        assertSameTokens("numbers", "0 12 3.5 4. 12.34.5 6..7 8a 9_ .5");
+    }
+
+    @Test
+    public void testOperators() {
+        assertSameTokens("operators", "+-~\u00ac*** * / % << >> >>> >>>> < <= >= > = != & ^ |"
+                + " \u2227 \u2228 := ( ) [ ] , ;");
+        assertSameTokens("adjacent", "a:=b**-c<<=d>>=e>>>=f");
+    }
+
+    @Test
+    public void testCharLiterals() {
+        assertSameTokens("chars", "'a' '' 'ab' '\n' ''' 'x'y'");
+        assertSameTokens("unterminated", "x := 'abc\n  def");
+    }
+
+    @Test
+    public void testErrors() {
+        assertSameTokens("unknown", "a @ b # c $ \u00e9 .");
+        assertSameTokens("colon", "a : b :x c:\nd ::= e");
+        assertSameTokens("bang", "a ! b !\n c !x");
+        assertSameTokens("colon at end", "a :");
+        assertSameTokens("bang at end", "a !");
+        assertSameTokens("other whitespace", "a\fb\u000bc\u00a0d");
+    }
+
+    @Test
+    public void testPositions() {
+        assertSameTokens("empty", "");
+        assertSameTokens("whitespace", " \t\r\n\r\n  ");
+        assertSameTokens("lines", "program P\r\n\tbegin\n\n  write( 'q'\n, 1);\nend;\n");
+    }
+
+}
@@ -0,0 +1,100 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that the optimized classes of the sample programs verify when they
+ * are loaded, print the same output as the unoptimized ones, and have no
+ * more instructions.
+ */
+public class OptimizationLevelTest {
+
+    private static int instructions(CompileResult result) {
+        return result.getProfile().getMethodInstructions().values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private static CompileResult compile(String name, String text, int level) throws Exception {
+        CompilerOptions options = new CompilerOptions();
+        options.setProfiling(true);
+        options.setOptimizationLevel(level);
+        return TestPrograms.compile(name, text, options);
+    }
+
+    /**
+     * Compile a program at each level and compare the results.
+     * @return The number of instructions removed at the highest level
+     */
+    private static int assertSameBehavior(String name, String text) throws Exception {
+        CompileResult expected = compile(name, text, 0);
+        int previous = expected.isSuccess() ? instructions(expected) : 0;
+        int removed = 0;
+        for (int level = 1; level <= 2; level++) {
+            CompileResult actual = compile(name, text, level);
+            assertEquals(name, expected.getDiagnostics().toString(), actual.getDiagnostics().toString());
+            assertEquals(name, expected.isSuccess(), actual.isSuccess());
+            if (expected.isSuccess()) {
+                assertEquals(name + " -O" + level, TestPrograms.run(expected), TestPrograms.run(actual));
+                int count = instructions(actual);
+                assertTrue(name + " -O" + level, count <= previous);
+                removed = instructions(expected) - count;
+                previous = count;
+            }
+        }
+        return removed;
+    }
+
+    @Test
+    public void testSamples() throws Exception {
+        int removed = 0;
+        for (Map.Entry<String, String> sample : TestPrograms.samples().entrySet()) {
+            removed += assertSameBehavior(sample.getKey(), sample.getValue());
+        }
+        assertTrue(removed > 0);
+    }
+
+    @Test
+    public void testGeneratedPrograms() throws Exception {
+        for (long seed = 1; seed <= 10; seed++) {
+            String name = "Optimized" + seed;
+            assertSameBehavior(name, TestPrograms.generate(name, seed));
+        }
+    }
+
+    @Test
+    public void testProfileReportsPassDeltas() throws Exception {
+        String text = "program P\nint x;\nbegin\n  read(x);\n  while x > 0 do\n    x := x - 1;\n  od;\n"
+                + "  write(x);\nend;\n";
+        CompileResult unoptimized = compile("P", text, 0);
+        assertTrue(unoptimized.getProfile().getPassDeltas().isEmpty());
+        assertFalse(unoptimized.getProfile().toJson().contains("passDeltas"));
+        CompileResult optimized = compile("P", text, 1);
+        // The loop condition is compiled to a single branch, so there is no
+        // boolean left for the conditions pass to fold.
+        assertEquals(0, (int) optimized.getProfile().getPassDeltas().get("conditions"));
+        assertTrue(optimized.getProfile().getPassDeltas().get("nops") < 0);
+        assertTrue(optimized.getProfile().toJson().contains("\"passDeltas\": {\"conditions\": 0, \"nops\": -"));
+    }
+
+    @Test
+    public void testOptionsChangeFingerprint() {
+        CompilerOptions options = new CompilerOptions();
+        String unoptimized = options.fingerprint();
+        options.setOptimizationLevel(1);
+        String level1 = options.fingerprint();
+        assertNotEquals(unoptimized, level1);
+        options.setPassEnabled("nops", false);
+        assertNotEquals(level1, options.fingerprint());
+        assertEquals(options.fingerprint(), new CompilerOptions(options).fingerprint());
+        assertTrue(options.isOptimizing());
+        options.setOptimizationLevel(0);
+        assertFalse(options.isOptimizing());
+        options.setPassEnabled("unreachable-code", true);
+        assertTrue(options.isOptimizing());
+    }
+
+}
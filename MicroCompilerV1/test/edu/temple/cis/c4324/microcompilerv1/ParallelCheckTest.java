@@ -0,0 +1,88 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.IOException;
+import java.util.Map;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that type checking the routines of a program concurrently gives the
+ * same class and the same diagnostics as checking them one at a time.
+ */
+public class ParallelCheckTest {
+
+    private static void assertSameResult(String name, String text) {
+        CompilerOptions options = new CompilerOptions();
+        options.setSourceFileName(name + ".mic");
+        CompileResult expected = MicroCompiler.compile(text, options);
+        options.setParallelChecking(true);
+        CompileResult actual = MicroCompiler.compile(text, options);
+        assertEquals(name, expected.getDiagnostics().toString(), actual.getDiagnostics().toString());
+        assertArrayEquals(name, expected.getClassBytes(), actual.getClassBytes());
+    }
+
+    /**
+     * Generate a program with many small procedures. The procedures whose
+     * numbers are given each contain a different semantic error.
+     */
+    private static String program(int procedures, int... broken) {
+        StringBuilder text = new StringBuilder("program Many\nint g;\n");
+        for (int i = 0; i < procedures; i++) {
+            text.append("procedure p").append(i).append("(int a)\nint b;\nbegin\n");
+            text.append("  b := a + g * ").append(i).append(";\n");
+            for (int j : broken) {
+                if (j == i) {
+                    text.append("  b := undefined").append(i).append(";\n");
+                }
+            }
+            text.append("  g := b;\nend;\n");
+        }
+        text.append("begin\n  call p0(1);\n  write(g);\nend;\n");
+        return text.toString();
+    }
+
+    @Test
+    public void testSamples() throws IOException {
+        for (Map.Entry<String, String> sample : TestPrograms.samples().entrySet()) {
+            assertSameResult(sample.getKey(), sample.getValue());
+        }
+    }
+
+    @Test
+    public void testGeneratedPrograms() {
+        for (long seed = 1; seed <= 5; seed++) {
+            ProgramGenerator generator = new ProgramGenerator();
+            generator.setProcedures(40);
+            generator.setFunctions(40);
+            generator.setStatements(10);
+            generator.setSeed(seed);
+            String name = "Checked" + seed;
+            assertSameResult(name, generator.generate(name));
+        }
+    }
+
+    @Test
+    public void testFirstErrorIsReported() {
+        String text = program(100, 70, 7, 33);
+        for (int i = 0; i < 20; i++) {
+            assertSameResult("Many", text);
+        }
+        CompilerOptions options = new CompilerOptions();
+        options.setParallelChecking(true);
+        CompileResult result = MicroCompiler.compile(text, options);
+        assertEquals(1, result.getDiagnostics().size());
+        assertTrue(result.getDiagnostics().get(0).getMessage(),
+                result.getDiagnostics().get(0).getMessage().contains("undefined7"));
+    }
+
+    @Test
+    public void testErrorInMainBody() {
+        String text = program(50).replace("write(g);", "write(h);");
+        for (int i = 0; i < 5; i++) {
+            assertSameResult("MainError", text);
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that each compiled form of ** gives the value of Math.pow, with an
+ * int power converted by d2i, for every backend and optimization level.
+ */
+public class PowerTest {
+
+    private static final int[] BASES = {0, 1, -1, 2, -2, 3, -3, 46340, 46341, 1291, -1291, 2147483647, -2147483648};
+    private static final int MIN_EXPONENT = -3;
+    private static final int MAX_EXPONENT = 33;
+    private static final String[] REALS = {"0.0", "-0.0", "1.0 / 0.0", "-1.0 / 0.0", "0.0 / 0.0", "2.0", "-4.0", "1.5"};
+    private static final double[] REAL_VALUES = {0.0, -0.0, 1.0 / 0.0, -1.0 / 0.0, 0.0 / 0.0, 2.0, -4.0, 1.5};
+
+    /**
+     * Generate a program that reads an int base and exponent from each line
+     * of its input and writes their powers, then writes the powers of some
+     * reals.
+     */
+    private static String program() {
+        StringBuilder text = new StringBuilder("program Powers\nint n;\nint b;\nint e;\nreal r;\nbegin\n"
+                + "  read(n);\n  while n > 0 do\n    read(b, e);\n"
+                + "    write(b ** e, ' ', 2 ** e, ' ', b ** 0, ' ', b ** 1, ' ', b ** 2, ' ', b ** 3, ' ',"
+                + " b ** 4, ' ', b ** 5, ' ', b ** 2.0, ' ', b ** 0.5, '\\n');\n"
+                + "    n := n - 1;\n  od;\n");
+        for (String real : REALS) {
+            text.append("  r := ").append(real).append(";\n");
+            text.append("  write(r ** 0.5, ' ', r ** 0, ' ', r ** 1, ' ', r ** 2, ' ', r ** 3, ' ', r ** e, '\\n');\n");
+        }
+        return text.append("end;\n").toString();
+    }
+
+    /**
+     * Get the base and exponent of each line of input: every base with
+     * every exponent from MIN_EXPONENT to MAX_EXPONENT, then the extremes.
+     */
+    private static List<int[]> operands() {
+        List<int[]> operands = new ArrayList<>();
+        for (int base : BASES) {
+            for (int exponent = MIN_EXPONENT; exponent <= MAX_EXPONENT; exponent++) {
+                operands.add(new int[]{base, exponent});
+            }
+        }
+        int[] extremes = {Integer.MIN_VALUE, Integer.MIN_VALUE + 1, Integer.MAX_VALUE};
+        for (int base : new int[]{0, 1, -1, 2, -2}) {
+            for (int exponent : extremes) {
+                operands.add(new int[]{base, exponent});
+            }
+        }
+        return operands;
+    }
+
+    private static String input(List<int[]> operands) {
+        StringBuilder input = new StringBuilder().append(operands.size());
+        for (int[] pair : operands) {
+            input.append('\n').append(pair[0]).append(' ').append(pair[1]);
+        }
+        return input.toString();
+    }
+
+    private static int power(int base, int exponent) {
+        return (int) Math.pow(base, exponent);
+    }
+
+    /**
+     * Compute the output of the program with Math.pow.
+     */
+    private static String expected(List<int[]> operands) {
+        StringBuilder output = new StringBuilder();
+        for (int[] pair : operands) {
+            int b = pair[0];
+            int e = pair[1];
+            output.append(power(b, e)).append(' ').append(power(2, e)).append(' ')
+                    .append(power(b, 0)).append(' ').append(power(b, 1)).append(' ')
+                    .append(power(b, 2)).append(' ').append(power(b, 3)).append(' ')
+                    .append(power(b, 4)).append(' ').append(power(b, 5)).append(' ')
+                    .append(Math.pow(b, 2.0)).append(' ').append(Math.pow(b, 0.5)).append('\n');
+        }
+        // The reals are raised to the last exponent read as well.
+        int e = operands.get(operands.size() - 1)[1];
+        for (double r : REAL_VALUES) {
+            output.append(Math.pow(r, 0.5)).append(' ').append(Math.pow(r, 0)).append(' ')
+                    .append(Math.pow(r, 1)).append(' ').append(Math.pow(r, 2)).append(' ')
+                    .append(Math.pow(r, 3)).append(' ').append(Math.pow(r, e)).append('\n');
+        }
+        return output.toString();
+    }
+
+    private static CompileResult compile(String text, int level, boolean directWriter) throws Exception {
+        CompilerOptions options = new CompilerOptions();
+        options.setOptimizationLevel(level);
+        options.setDirectWriter(directWriter);
+        return TestPrograms.assertCompiles("Powers", text, options);
+    }
+
+    @Test
+    public void testPowers() throws Exception {
+        String text = program();
+        List<int[]> operands = operands();
+        String input = input(operands);
+        String expected = expected(operands);
+        assertEquals(expected, TestPrograms.run(compile(text, 0, false), input));
+        assertEquals(expected, TestPrograms.run(compile(text, 2, false), input));
+        assertEquals(expected, TestPrograms.run(compile(text, 0, true), input));
+    }
+
+    @Test
+    public void testIntPowersDoNotCallPow() throws Exception {
+        String text = "program IntPowers\nint b;\nint e;\nbegin\n  read(b, e);\n"
+                + "  write(b ** e, ' ', 2 ** e, ' ', b ** 3);\nend;\n";
+        CompileResult result = compile(text, 0, false);
+        // The name of Math.pow would be a CONSTANT_Utf8 of length 3.
+        String classFile = new String(result.getClassBytes(), StandardCharsets.ISO_8859_1);
+        assertFalse(classFile.contains("\u0001\u0000\u0003pow"));
+        assertTrue(classFile.contains("$power"));
+        assertEquals("-2147483648 2147483647 -8", TestPrograms.run(result, "-2 31"));
+    }
+
+}
@@ -0,0 +1,64 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ProgramGeneratorTest {
+
+    private static String generate(long seed) {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setProcedures(5);
+        generator.setFunctions(5);
+        generator.setStatements(10);
+        generator.setSeed(seed);
+        return generator.generate("Generated" + seed);
+    }
+
+    @Test
+    public void testSameSeedSameProgram() {
+        assertEquals(generate(1), generate(1));
+        assertTrue(!generate(1).equals(generate(2)));
+    }
+
+    @Test
+    public void testProgramsCompileAndRun() throws Exception {
+        PrintStream savedOut = System.out;
+        try {
+            for (long seed = 1; seed <= 10; seed++) {
+                CompileResult result = MicroCompiler.compile(generate(seed));
+                assertTrue("seed " + seed + ": " + result.getDiagnostics(), result.isSuccess());
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                System.setOut(new PrintStream(output));
+                // The class is verified as it is loaded.
+                MicroClassLoader.runMain(result);
+                System.setOut(savedOut);
+                assertTrue(output.size() > 0);
+            }
+        } finally {
+            System.setOut(savedOut);
+        }
+    }
+
+    @Test
+    public void testReads() throws Exception {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setGlobals(5);
+        generator.setReads(2);
+        String text = generator.generate("Reads");
+        assertTrue(text, text.contains("read(g0, g4);"));
+        CompileResult result = TestPrograms.assertCompiles("Reads", text, new CompilerOptions());
+        assertTrue(TestPrograms.run(result).length() > 0);
+    }
+
+    @Test
+    public void testTargetLines() {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setTargetLines(5000);
+        int lines = ProgramGenerator.lineCount(generator.generate("Lines"));
+        assertTrue(Integer.toString(lines), lines >= 5000 && lines < 6000);
+    }
+
+}
@@ -0,0 +1,74 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ * Check the reference pass on programs that used to crash the compiler:
+ * ¬ on a bool, an array index that is an expression, and a return
+ * statement without a value. Each program is compiled with both parsers
+ * and both code paths.
+ */
+public class ReferenceVisitorTest {
+
+    private static List<CompilerOptions> allOptions() {
+        List<CompilerOptions> all = new ArrayList<>();
+        for (boolean recursiveDescent : new boolean[] {false, true}) {
+            for (boolean ssa : new boolean[] {false, true}) {
+                CompilerOptions options = new CompilerOptions();
+                options.setRecursiveDescent(recursiveDescent);
+                options.setSsa(ssa);
+                all.add(options);
+            }
+        }
+        return all;
+    }
+
+    private static void assertRuns(String name, String text, String input, String expected) throws Exception {
+        for (CompilerOptions options : allOptions()) {
+            CompileResult result = TestPrograms.assertCompiles(name, text, options);
+            assertEquals(name + " " + options.fingerprint(), expected, TestPrograms.run(result, input));
+        }
+    }
+
+    private static void assertError(String name, String text, int line, String message) throws Exception {
+        for (CompilerOptions options : allOptions()) {
+            CompileResult result = TestPrograms.compile(name, text, options);
+            assertFalse(name, result.isSuccess());
+            assertEquals(name, 1, result.getDiagnostics().size());
+            Diagnostic diagnostic = result.getDiagnostics().get(0);
+            assertEquals(name, line, diagnostic.getLine());
+            assertEquals(name, message, diagnostic.getMessage());
+        }
+    }
+
+    @Test
+    public void testNotOnBool() throws Exception {
+        assertRuns("NotBool", "program NotBool\nint a;\nbool p;\nbegin\n"
+                + "  read(a);\n  p := ¬(a < 2);\n  write(p, ¬p, ¬¬p);\nend;\n",
+                "1", "falsetruefalse");
+        assertError("NotInt", "program NotInt\nint a;\nbegin\n  a := ¬a;\nend;\n",
+                4, "¬ cannot be applied to INT");
+    }
+
+    @Test
+    public void testIndexExpression() throws Exception {
+        assertRuns("Index", "program Index\nint i;\nint b[4];\nbegin\n"
+                + "  read(i);\n  b[i + 1] := 5;\n  b[i * 2 - 1] := b[i + 1] + 1;\n  write(b[1], b[2]);\nend;\n",
+                "1", "65");
+        assertError("IndexUndefined", "program IndexUndefined\nint b[4];\nbegin\n  b[1] := b[y + 1];\nend;\n",
+                4, "Undefined identifier y");
+    }
+
+    @Test
+    public void testReturnWithoutValue() throws Exception {
+        assertRuns("Return", "program Return\nint n;\n"
+                + "procedure add(int x)\nbegin\n  if x < 0 then\n    return;\n  fi;\n  n := n + x;\nend;\n"
+                + "begin\n  n := 0;\n  call add(-1);\n  call add(2);\n  write(n);\n  return;\n  write(n);\nend;\n",
+                "", "2");
+    }
+
+}
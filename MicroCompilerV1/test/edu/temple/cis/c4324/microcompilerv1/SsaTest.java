@@ -0,0 +1,170 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.StoreInstruction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that the classes compiled through the SSA intermediate
+ * representation verify when they are loaded and print the same output as
+ * the ones compiled from the Ast, with either writer and at each level.
+ */
+public class SsaTest {
+
+    private static CompileResult compile(String name, String text, boolean ssa, boolean direct, int level)
+            throws Exception {
+        CompilerOptions options = new CompilerOptions();
+        options.setSsa(ssa);
+        options.setDirectWriter(direct);
+        options.setOptimizationLevel(level);
+        return TestPrograms.compile(name, text, options);
+    }
+
+    private static void assertSameBehavior(String name, String text) throws Exception {
+        CompileResult expected = compile(name, text, false, false, 0);
+        String expectedOutput = expected.isSuccess() ? TestPrograms.run(expected) : null;
+        for (int variant = 0; variant < 3; variant++) {
+            CompileResult actual = compile(name, text, true, variant == 2, variant == 1 ? 2 : 0);
+            String label = name + " variant " + variant;
+            assertEquals(label, expected.getDiagnostics().toString(), actual.getDiagnostics().toString());
+            assertEquals(label, expected.isSuccess(), actual.isSuccess());
+            if (expected.isSuccess()) {
+                assertEquals(label, expectedOutput, TestPrograms.run(actual));
+            }
+        }
+    }
+
+    @Test
+    public void testSamples() throws Exception {
+        for (Map.Entry<String, String> sample : TestPrograms.samples().entrySet()) {
+            assertSameBehavior(sample.getKey(), sample.getValue());
+        }
+    }
+
+    @Test
+    public void testGeneratedPrograms() throws Exception {
+        for (long seed = 1; seed <= 10; seed++) {
+            String name = "Ssa" + seed;
+            assertSameBehavior(name, TestPrograms.generate(name, seed));
+        }
+    }
+
+    @Test
+    public void testLocalsAcrossLoops() throws Exception {
+        // The locals of the function are assigned in loops and branches, so
+        // they need phis, and the logical operators and comparisons are used
+        // both as conditions and as values.
+        String text = "program L\n"
+                + "int n;\n"
+                + "function int f(int a, real r)\n"
+                + "  int i; int s; bool b; real t;\n"
+                + "begin\n"
+                + "  i := 0; s := 1; t := 0.0; b := false;\n"
+                + "  while i < a do\n"
+                + "    b := i % 2 = 0 \u2227 s < 100 \u2228 i = 3;\n"
+                + "    if b then s := s * 2; elif i > 4 then s := s - i; else s := s + 1; fi;\n"
+                + "    t := t + r * i;\n"
+                + "    i := i + 1;\n"
+                + "  od;\n"
+                + "  do s := s - 1; od until s < 50;\n"
+                + "  write(t, ' ', b, ' ', i ** 3, ' ');\n"
+                + "  return s;\n"
+                + "end;\n"
+                + "begin\n"
+                + "  read(n);\n"
+                + "  write(f(n, 0.5), ' ', f(3, 2.0), ' ', f(0, 1.0));\n"
+                + "end;\n";
+        assertSameBehavior("L", text);
+        CompileResult result = compile("L", text, true, false, 0);
+        assertTrue(result.getDiagnostics().toString(), result.isSuccess());
+        assertNotEquals("", TestPrograms.run(result));
+    }
+
+    private static int countStores(CompileResult result, String methodName) throws Exception {
+        JavaClass parsed = new ClassParser(new ByteArrayInputStream(result.getClassBytes()),
+                result.getClassName() + ".class").parse();
+        int stores = 0;
+        for (Method method : parsed.getMethods()) {
+            if (method.getName().equals(methodName)) {
+                for (InstructionHandle handle : new InstructionList(method.getCode().getCode()).getInstructionHandles()) {
+                    if (handle.getInstruction() instanceof StoreInstruction) {
+                        stores++;
+                    }
+                }
+            }
+        }
+        return stores;
+    }
+
+    @Test
+    public void testPhisShareLocals() throws Exception {
+        // The phis of x and y swap them in the loop. Copying each phi through
+        // a second local took seven stores; now the parameters are copied to
+        // the phis' locals before the loop, and the loop stores t and then
+        // y and x together.
+        String text = "program G\n"
+                + "function int gcd(int x, int y)\n"
+                + "  int t;\n"
+                + "begin\n"
+                + "  while y > 0 do t := x % y; x := y; y := t; od;\n"
+                + "  return x;\n"
+                + "end;\n"
+                + "begin\n"
+                + "  write(gcd(84, 36), ' ', gcd(17, 5));\n"
+                + "end;\n";
+        assertSameBehavior("G", text);
+        assertEquals(5, countStores(compile("G", text, true, false, 0), "gcd"));
+    }
+
+    @Test
+    public void testSingleUsesStayOnStack() throws Exception {
+        // Each value is used once, by the next instruction, so the only store
+        // left in main is of the scanner, and System.out is pushed before
+        // the sum that is written.
+        String text = "program S\n"
+                + "int x;\n"
+                + "real r;\n"
+                + "begin\n"
+                + "  read(x);\n"
+                + "  r := x * 0.5;\n"
+                + "  write(x + 1, ' ', r - 2.0 * x);\n"
+                + "end;\n";
+        assertSameBehavior("S", text);
+        assertEquals(1, countStores(compile("S", text, true, false, 0), "main"));
+    }
+
+    @Test
+    public void testSameErrorsForChars() throws Exception {
+        // The code generator supports neither char locals nor comparing or
+        // subtracting chars, so neither path compiles these.
+        String[] texts = {
+            "program C\nprocedure p()\n  char c;\nbegin\n  c := 'a';\n  write(c);\nend;\nbegin\n  call p();\nend;\n",
+            "program C\nchar c;\nbegin\n  c := 'a';\n  if c < 'b' then write(1); fi;\nend;\n",
+            "program C\nchar c;\nint x;\nbegin\n  c := 'c';\n  x := c - 'a';\n  write(x);\nend;\n"
+        };
+        for (String text : texts) {
+            assertSameBehavior("C", text);
+            assertFalse(text, compile("C", text, true, false, 0).isSuccess());
+        }
+    }
+
+    @Test
+    public void testOptionChangesFingerprint() {
+        CompilerOptions options = new CompilerOptions();
+        String plain = options.fingerprint();
+        options.setSsa(true);
+        assertNotEquals(plain, options.fingerprint());
+        assertEquals(options.fingerprint(), new CompilerOptions(options).fingerprint());
+    }
+
+}
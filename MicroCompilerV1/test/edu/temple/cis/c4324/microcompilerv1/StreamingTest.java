@@ -0,0 +1,73 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that a streaming compilation generates the same class and reports
+ * the same diagnostics as compiling the program in memory.
+ */
+public class StreamingTest {
+
+    private static void assertSameResult(Path source) throws IOException {
+        CompilerOptions options = new CompilerOptions();
+        options.setSourceFileName(source.getFileName().toString());
+        CompileResult expected = MicroCompiler.compile(source, options);
+        options.setStreaming(true);
+        CompileResult actual = MicroCompiler.compile(source, options);
+        assertEquals(source.toString(), expected.getDiagnostics().toString(),
+                actual.getDiagnostics().toString());
+        assertArrayEquals(source.toString(), expected.getClassBytes(), actual.getClassBytes());
+    }
+
+    private static Path write(String name, String text) throws IOException {
+        Path file = Files.createTempFile(name, ".mic");
+        file.toFile().deleteOnExit();
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testSamples() throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> samples = Files.newDirectoryStream(TestPrograms.directory(), "*.mic")) {
+            for (Path sample : samples) {
+                assertSameResult(sample);
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+    }
+
+    @Test
+    public void testGeneratedPrograms() throws IOException {
+        for (long seed = 1; seed <= 10; seed++) {
+            String name = "Streamed" + seed;
+            Path source = write(name, TestPrograms.generate(name, seed));
+            assertSameResult(source);
+        }
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        // Syntax errors in a routine and in the main body.
+        assertSameResult(write("SyntaxError", "program SyntaxError\n"
+                + "procedure p(int a)\nbegin\n  a := a + ;\nend;\n"
+                + "begin\n  write(1 2);\nend;\n"));
+        // A global defined twice.
+        assertSameResult(write("Redefined", "program Redefined\n"
+                + "int x;\nreal x;\nbegin\n  write(1);\nend;\n"));
+        // An undefined variable after a routine that compiles.
+        assertSameResult(write("Undefined", "program Undefined\n"
+                + "function int f(int a)\nbegin\n  return a;\nend;\n"
+                + "begin\n  write(y);\nend;\n"));
+    }
+
+}
@@ -0,0 +1,159 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The programs the compiler tests compile and the ways they compile and run
+ * them: the sample programs, generated programs of a size that compiles
+ * quickly, and compiling, linking and running a program with its standard
+ * input and output redirected.
+ */
+final class TestPrograms {
+
+    /**
+     * The input the sample programs are run on. Each sample reads at most
+     * this many numbers.
+     */
+    static final String INPUT = "12 18 3 4 5 6 7 8";
+
+    private TestPrograms() {
+    }
+
+    /**
+     * Get the directory that holds the sample programs: the project
+     * directory, in which the tests run, or the directory named by the
+     * micro.samples system property.
+     * @return The sample directory
+     */
+    static Path directory() {
+        return Paths.get(System.getProperty("micro.samples", "."));
+    }
+
+    /**
+     * Read the sample programs.
+     * @return The text of each sample, by program name, in name order
+     * @throws IOException if a sample cannot be read
+     */
+    static Map<String, String> samples() throws IOException {
+        Map<String, String> samples = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory(), "*.mic")) {
+            for (Path file : files) {
+                String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                samples.put(file.getFileName().toString().replace(".mic", ""), text);
+            }
+        }
+        assertTrue("no samples in " + directory(), !samples.isEmpty());
+        return samples;
+    }
+
+    /**
+     * Read one sample program.
+     * @param name The program name
+     * @return The program text
+     * @throws IOException if the sample cannot be read
+     */
+    static String sample(String name) throws IOException {
+        return new String(Files.readAllBytes(directory().resolve(name + ".mic")), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generate a program with five procedures, five functions, five global
+     * scalars and two global arrays. The program reads its two int globals
+     * from INPUT.
+     * @param name The program name
+     * @param seed The seed of the generator
+     * @return The program text
+     */
+    static String generate(String name, long seed) {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.setProcedures(5);
+        generator.setFunctions(5);
+        generator.setGlobals(5);
+        generator.setArrays(2);
+        generator.setReads(2);
+        generator.setStatements(10);
+        generator.setSeed(seed);
+        return generator.generate(name);
+    }
+
+    /**
+     * Compile a program and, if it compiles, link its class, which verifies
+     * every method.
+     * @param name The program name, which names the source file
+     * @param text The program text
+     * @param options The options, which are copied
+     * @return The result
+     * @throws Exception if the class does not load
+     */
+    static CompileResult compile(String name, String text, CompilerOptions options) throws Exception {
+        CompilerOptions copy = new CompilerOptions(options);
+        copy.setSourceFileName(name + ".mic");
+        CompileResult result = MicroCompiler.compile(text, copy);
+        if (result.isSuccess()) {
+            MicroClassLoader loader = new MicroClassLoader();
+            loader.define(result);
+            Class.forName(result.getClassName(), true, loader);
+        }
+        return result;
+    }
+
+    /**
+     * Compile a program that must compile, and link its class.
+     * @param name The program name, which names the source file
+     * @param text The program text
+     * @param options The options, which are copied
+     * @return The result
+     * @throws Exception if the class does not load
+     */
+    static CompileResult assertCompiles(String name, String text, CompilerOptions options) throws Exception {
+        CompileResult result = compile(name, text, options);
+        assertTrue(name + ": " + result.getDiagnostics(), result.isSuccess());
+        return result;
+    }
+
+    /**
+     * Run the main method of a compiled program on INPUT.
+     * @param result The compiled program
+     * @return What the program wrote
+     * @throws Exception if the program throws
+     */
+    static String run(CompileResult result) throws Exception {
+        return run(result, INPUT);
+    }
+
+    /**
+     * Run the main method of a compiled program.
+     * @param result The compiled program
+     * @param input The standard input of the program
+     * @return What the program wrote
+     * @throws Exception if the program throws, wrapped in an
+     * InvocationTargetException
+     */
+    static String run(CompileResult result, String input) throws Exception {
+        InputStream savedIn = System.in;
+        PrintStream savedOut = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            System.setIn(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+            System.setOut(new PrintStream(output));
+            MicroClassLoader.runMain(result);
+        } finally {
+            System.setIn(savedIn);
+            System.setOut(savedOut);
+        }
+        return output.toString();
+    }
+
+}
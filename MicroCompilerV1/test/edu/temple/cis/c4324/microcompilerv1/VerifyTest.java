@@ -0,0 +1,61 @@
+package edu.temple.cis.c4324.microcompilerv1;
+
+import edu.temple.cis.c4324.codegen.CodeGenerator;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Check that the classes of every sample program have the Java 8 class
+ * file version and pass the type checking verifier, from both backends.
+ * Classes defined by a class loader other than the boot loader are
+ * verified by default, and the type checker of a version 52 class does not
+ * fall back to inferring the types, so a missing or wrong stack map frame
+ * fails the test.
+ */
+public class VerifyTest {
+
+    /**
+     * Compile a program and load its class.
+     * @return true if the program compiled, false if it has errors
+     */
+    private static boolean assertVerifies(String name, String text, boolean directWriter) throws Exception {
+        CompilerOptions options = new CompilerOptions();
+        options.setDirectWriter(directWriter);
+        CompileResult result = TestPrograms.compile(name, text, options);
+        if (!result.isSuccess()) {
+            return false;
+        }
+        byte[] bytes = result.getClassBytes();
+        assertEquals(name, CodeGenerator.MAJOR_VERSION, (bytes[6] & 0xff) << 8 | bytes[7] & 0xff);
+        return true;
+    }
+
+    @Test
+    public void testSamples() throws Exception {
+        int count = 0;
+        for (Map.Entry<String, String> sample : TestPrograms.samples().entrySet()) {
+            String name = sample.getKey();
+            String text = sample.getValue();
+            if (assertVerifies(name, text, false) & assertVerifies(name, text, true)) {
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+    }
+
+    @Test
+    public void testGeneratedPrograms() throws Exception {
+        int count = 0;
+        for (long seed = 1; seed <= 10; seed++) {
+            String name = "Verify" + seed;
+            String text = TestPrograms.generate(name, seed);
+            if (assertVerifies(name, text, false) & assertVerifies(name, text, true)) {
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+    }
+
+}